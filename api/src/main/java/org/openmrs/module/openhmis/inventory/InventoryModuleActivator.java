@@ -16,13 +16,33 @@ package org.openmrs.module.openhmis.inventory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
+import org.openmrs.module.openhmis.commons.api.util.ModuleUtil;
+import org.openmrs.module.openhmis.inventory.api.impl.IdgenOperationNumberSource;
+import org.openmrs.module.openhmis.inventory.api.impl.OperationNumberPool;
+import org.openmrs.module.openhmis.inventory.api.impl.ItemSearchIndex;
+import org.openmrs.module.openhmis.inventory.api.impl.ItemStockCache;
+import org.openmrs.module.openhmis.inventory.api.impl.ReferenceDataRegistry;
+import org.openmrs.module.openhmis.inventory.api.impl.StockOperationSubmissionProcessor;
+import org.openmrs.module.openhmis.inventory.api.impl.StockOperationSubmissionQueue;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
  */
-public class InventoryModuleActivator extends BaseModuleActivator {
+public class InventoryModuleActivator extends BaseModuleActivator implements DaemonTokenAware {
 	private static final Log LOG = LogFactory.getLog(InventoryModuleActivator.class);
 
+	private DaemonToken daemonToken;
+
+	/**
+	 * @see DaemonTokenAware#setDaemonToken(DaemonToken)
+	 */
+	@Override
+	public void setDaemonToken(DaemonToken token) {
+		this.daemonToken = token;
+	}
+
 	/**
 	 * @see BaseModuleActivator#contextRefreshed()
 	 */
@@ -36,6 +56,34 @@ public class InventoryModuleActivator extends BaseModuleActivator {
 	 */
 	@Override
 	public void started() {
+		StockOperationSubmissionQueue queue =
+		        new StockOperationSubmissionQueue(ModuleSettings.getSubmissionQueueCapacity(),
+		                ModuleSettings.getSubmissionQueueWorkerCount(), new StockOperationSubmissionProcessor());
+		queue.setDaemonToken(daemonToken);
+		StockOperationSubmissionQueue.setInstance(queue);
+
+		int blockSize = ModuleSettings.getOperationNumberBlockSize();
+		if (blockSize > 1 && ModuleUtil.isLoaded(ModuleUtil.IDGEN_MODULE_ID)) {
+			OperationNumberPool pool = new OperationNumberPool(blockSize, new IdgenOperationNumberSource());
+			pool.setDaemonToken(daemonToken);
+			OperationNumberPool.setInstance(pool);
+		}
+
+		// Other nodes that share the database would not invalidate the cached item stock so it must expire instead
+		if (!ModuleSettings.useDatabaseStockLocks()) {
+			ItemStockCache.setInstance(new ItemStockCache(ModuleSettings.getItemStockCacheSize()));
+		} else if (ModuleSettings.getItemStockCacheMaxAge() > 0) {
+			ItemStockCache.setInstance(new ItemStockCache(ModuleSettings.getItemStockCacheSize(),
+			        ModuleSettings.getItemStockCacheMaxAge() * 1000L));
+		}
+
+		try {
+			ReferenceDataRegistry.warmAll();
+		} catch (Exception ex) {
+			// The registries are filled as the reference data is requested so this is not fatal
+			LOG.warn("Could not load the inventory reference data registries", ex);
+		}
+
 		LOG.info("OpenHMIS Inventory Module started");
 	}
 
@@ -44,6 +92,21 @@ public class InventoryModuleActivator extends BaseModuleActivator {
 	 */
 	@Override
 	public void stopped() {
+		StockOperationSubmissionQueue.setInstance(null);
+		OperationNumberPool.setInstance(null);
+
+		LOG.info("Operation type registry: " + ReferenceDataRegistry.OPERATION_TYPES.getHitCount() + " hits, "
+		        + ReferenceDataRegistry.OPERATION_TYPES.getMissCount() + " misses");
+		ReferenceDataRegistry.clearAll();
+		ItemSearchIndex.getInstance().clear();
+
+		ItemStockCache cache = ItemStockCache.getInstance();
+		if (cache != null) {
+			LOG.info("Item stock cache: " + cache.getHitCount() + " hits, " + cache.getMissCount() + " misses, "
+			        + cache.getEvictionCount() + " evictions");
+			ItemStockCache.setInstance(null);
+		}
+
 		LOG.info("OpenHMIS Inventory Module stopped");
 	}
 }
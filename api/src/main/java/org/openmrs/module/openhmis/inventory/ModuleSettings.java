@@ -18,12 +18,21 @@ import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.idgen.IdentifierSource;
 import org.openmrs.module.openhmis.commons.api.util.IdgenUtil;
+import org.openmrs.module.openhmis.inventory.api.impl.OperationNumberPool;
 import org.openmrs.module.openhmis.inventory.api.model.Settings;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Helper class to load and save the inventory module global settings.
+ * <p>
+ * The settings used while processing operations and searching for items are read from an immutable snapshot rather than
+ * from the global properties on each call. The snapshot is reloaded after any inventory global property is changed, see
+ * {@link ModuleSettingsListener}.
+ * </p>
  */
 public class ModuleSettings {
+	public static final String PROPERTY_PREFIX = "openhmis.inventory.";
 	public static final String AUTO_GENERATE_OPERATION_NUMBER_PROPERTY = "openhmis.inventory.autoGenerateOperationNumber";
 	public static final String OPERATION_NUMBER_IDENTIFIER_SOURCE_ID_PROPERTY =
 	        "openhmis.inventory.operationNumberIdentifierSourceId";
@@ -38,11 +47,26 @@ public class ModuleSettings {
 	        "openhmis.inventory.restrictNegativeInventoryStockCreation";
 	public static final String AUTO_SELECT_ITEM_STOCK_FURTHEST_EXPIRATION_DATE =
 	        "openhmis.inventory.autoSelectItemStockWithFurthestExpiration";
+	public static final String ASYNC_OPERATION_SUBMISSION_PROPERTY = "openhmis.inventory.asyncOperationSubmission";
+	public static final String SUBMISSION_QUEUE_CAPACITY_PROPERTY = "openhmis.inventory.submissionQueueCapacity";
+	public static final String SUBMISSION_QUEUE_WORKER_COUNT_PROPERTY = "openhmis.inventory.submissionQueueWorkerCount";
+	public static final String DATABASE_STOCK_LOCKS_PROPERTY = "openhmis.inventory.databaseStockLocks";
+	public static final String OPERATION_NUMBER_BLOCK_SIZE_PROPERTY = "openhmis.inventory.operationNumberBlockSize";
+	public static final String ITEM_STOCK_CACHE_SIZE_PROPERTY = "openhmis.inventory.itemStockCacheSize";
+	public static final String ITEM_STOCK_CACHE_MAX_AGE_PROPERTY = "openhmis.inventory.itemStockCacheMaxAge";
+	public static final int DEFAULT_SUBMISSION_QUEUE_CAPACITY = 100;
+	public static final int DEFAULT_SUBMISSION_QUEUE_WORKER_COUNT = 2;
+	public static final int DEFAULT_OPERATION_NUMBER_BLOCK_SIZE = 50;
+	public static final int DEFAULT_ITEM_STOCK_CACHE_SIZE = 1000;
 	private static final String STOCK_OPERATIONS_BY_STOCKROOM_REPORT_ID_PROPERTY =
 	        "openhmis.inventory.reports.stockOperationsByStockroom";
 
+	private static final Object SNAPSHOT_LOCK = new Object();
+	private static volatile Snapshot snapshot;
+	private static int snapshotVersion;
+
 	public static boolean generateOperationNumber() {
-		return generateOperationNumber(Context.getAdministrationService());
+		return getSnapshot().generateOperationNumber;
 	}
 
 	protected static boolean generateOperationNumber(AdministrationService adminService) {
@@ -51,33 +75,73 @@ public class ModuleSettings {
 	}
 
 	public static boolean isOperationAutoCompleted() {
-		AdministrationService adminService = Context.getAdministrationService();
-		String property = adminService.getGlobalProperty(AUTO_COMPLETE_OPERATIONS_PROPERTY);
-		return Boolean.parseBoolean(property);
+		return getSnapshot().operationAutoCompleted;
 	}
 
 	public static boolean showOperationCancelReasonField() {
-		AdministrationService adminService = Context.getAdministrationService();
-		String property = adminService.getGlobalProperty(SHOW_OPERATATION_CANCEL_REASEON_FIELD);
-		return Boolean.parseBoolean(property);
+		return getSnapshot().showOperationCancelReasonField;
 	}
 
 	public static boolean isNegativeStockRestricted() {
-		AdministrationService adminService = Context.getAdministrationService();
-		String property = adminService.getGlobalProperty(RESTRICT_NEGATIVE_INVENTORY_STOCK_CREATION_FIELD);
-		return Boolean.parseBoolean(property);
+		return getSnapshot().negativeStockRestricted;
 	}
 
 	public static boolean autoSelectItemStockWithFurthestExpirationDate() {
-		AdministrationService adminService = Context.getAdministrationService();
-		String property = adminService.getGlobalProperty(AUTO_SELECT_ITEM_STOCK_FURTHEST_EXPIRATION_DATE);
-		return Boolean.parseBoolean(property);
+		return getSnapshot().autoSelectItemStockWithFurthestExpirationDate;
 	}
 
 	public static boolean useWildcardItemSearch() {
-		AdministrationService adminService = Context.getAdministrationService();
-		String property = adminService.getGlobalProperty(USE_WILDCARD_ITEM_SEARCH_PROPERTY);
-		return Boolean.parseBoolean(property);
+		return getSnapshot().wildcardItemSearch;
+	}
+
+	public static boolean isOperationSubmissionAsync() {
+		return getSnapshot().operationSubmissionAsync;
+	}
+
+	public static boolean useDatabaseStockLocks() {
+		return getSnapshot().databaseStockLocks;
+	}
+
+	public static int getSubmissionQueueCapacity() {
+		return getSnapshot().submissionQueueCapacity;
+	}
+
+	public static int getSubmissionQueueWorkerCount() {
+		return getSnapshot().submissionQueueWorkerCount;
+	}
+
+	public static int getOperationNumberBlockSize() {
+		return getSnapshot().operationNumberBlockSize;
+	}
+
+	public static int getItemStockCacheSize() {
+		return getSnapshot().itemStockCacheSize;
+	}
+
+	/**
+	 * Gets the number of seconds that item stock is cached for when database stock locks are used.
+	 * @return The maximum age or 0 if item stock is not cached when database stock locks are used.
+	 */
+	public static int getItemStockCacheMaxAge() {
+		return getSnapshot().itemStockCacheMaxAge;
+	}
+
+	/**
+	 * Discards the current settings snapshot so that the settings are reloaded from the global properties the next time
+	 * they are used.
+	 */
+	public static void invalidate() {
+		clearSnapshot();
+
+		// The change is not reported again if the transaction is rolled back so reload the settings once it completes
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					clearSnapshot();
+				}
+			});
+		}
 	}
 
 	public static Settings loadSettings() {
@@ -160,12 +224,19 @@ public class ModuleSettings {
 		}
 
 		Integer sourceId = settings.getOperationNumberGeneratorSourceId();
+		String previousSourceId = adminService.getGlobalProperty(OPERATION_NUMBER_IDENTIFIER_SOURCE_ID_PROPERTY);
 		if (sourceId != null) {
 			adminService.setGlobalProperty(OPERATION_NUMBER_IDENTIFIER_SOURCE_ID_PROPERTY, sourceId.toString());
 		} else {
 			adminService.setGlobalProperty(OPERATION_NUMBER_IDENTIFIER_SOURCE_ID_PROPERTY, "");
 		}
 
+		// Pooled operation numbers came from the previous source so they should no longer be used
+		OperationNumberPool pool = OperationNumberPool.getInstance();
+		if (pool != null && !StringUtils.equals(previousSourceId, sourceId == null ? "" : sourceId.toString())) {
+			pool.clear();
+		}
+
 		Integer reportId = settings.getStockTakeReportId();
 		if (reportId != null) {
 			adminService.setGlobalProperty(STOCK_TAKE_REPORT_ID_PROPERTY, reportId.toString());
@@ -223,5 +294,96 @@ public class ModuleSettings {
 		}
 	}
 
+	private static Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			int version;
+			synchronized (SNAPSHOT_LOCK) {
+				version = snapshotVersion;
+			}
+
+			current = new Snapshot(Context.getAdministrationService());
+
+			// Do not keep the new snapshot if a property was changed while it was being loaded
+			synchronized (SNAPSHOT_LOCK) {
+				if (version == snapshotVersion) {
+					snapshot = current;
+				}
+			}
+		}
+
+		return current;
+	}
+
+	private static void clearSnapshot() {
+		synchronized (SNAPSHOT_LOCK) {
+			snapshot = null;
+			snapshotVersion++;
+		}
+	}
+
+	private static boolean getBoolean(AdministrationService adminService, String propertyName) {
+		return Boolean.parseBoolean(adminService.getGlobalProperty(propertyName));
+	}
+
+	private static int getPositiveInteger(AdministrationService adminService, String propertyName, int defaultValue) {
+		String property = adminService.getGlobalProperty(propertyName);
+		if (StringUtils.isNotEmpty(property)) {
+			try {
+				int value = Integer.parseInt(property.trim());
+				if (value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException nfe) {
+				// Fall through to the default value
+			}
+		}
+
+		return defaultValue;
+	}
+
 	protected ModuleSettings() {}
+
+	/**
+	 * The settings read from the global properties at a point in time.
+	 */
+	private static final class Snapshot {
+		private final boolean generateOperationNumber;
+		private final boolean operationAutoCompleted;
+		private final boolean showOperationCancelReasonField;
+		private final boolean negativeStockRestricted;
+		private final boolean autoSelectItemStockWithFurthestExpirationDate;
+		private final boolean wildcardItemSearch;
+		private final boolean operationSubmissionAsync;
+		private final boolean databaseStockLocks;
+		private final int submissionQueueCapacity;
+		private final int submissionQueueWorkerCount;
+		private final int operationNumberBlockSize;
+		private final int itemStockCacheSize;
+		private final int itemStockCacheMaxAge;
+
+		private Snapshot(AdministrationService adminService) {
+			generateOperationNumber = ModuleSettings.generateOperationNumber(adminService);
+			operationAutoCompleted = getBoolean(adminService, AUTO_COMPLETE_OPERATIONS_PROPERTY);
+			showOperationCancelReasonField = getBoolean(adminService, SHOW_OPERATATION_CANCEL_REASEON_FIELD);
+			negativeStockRestricted = getBoolean(adminService, RESTRICT_NEGATIVE_INVENTORY_STOCK_CREATION_FIELD);
+			autoSelectItemStockWithFurthestExpirationDate =
+			        getBoolean(adminService, AUTO_SELECT_ITEM_STOCK_FURTHEST_EXPIRATION_DATE);
+			wildcardItemSearch = getBoolean(adminService, USE_WILDCARD_ITEM_SEARCH_PROPERTY);
+			operationSubmissionAsync = getBoolean(adminService, ASYNC_OPERATION_SUBMISSION_PROPERTY);
+			databaseStockLocks = getBoolean(adminService, DATABASE_STOCK_LOCKS_PROPERTY);
+			submissionQueueCapacity =
+			        getPositiveInteger(adminService, SUBMISSION_QUEUE_CAPACITY_PROPERTY,
+			            DEFAULT_SUBMISSION_QUEUE_CAPACITY);
+			submissionQueueWorkerCount =
+			        getPositiveInteger(adminService, SUBMISSION_QUEUE_WORKER_COUNT_PROPERTY,
+			            DEFAULT_SUBMISSION_QUEUE_WORKER_COUNT);
+			operationNumberBlockSize =
+			        getPositiveInteger(adminService, OPERATION_NUMBER_BLOCK_SIZE_PROPERTY,
+			            DEFAULT_OPERATION_NUMBER_BLOCK_SIZE);
+			itemStockCacheSize =
+			        getPositiveInteger(adminService, ITEM_STOCK_CACHE_SIZE_PROPERTY, DEFAULT_ITEM_STOCK_CACHE_SIZE);
+			itemStockCacheMaxAge = getPositiveInteger(adminService, ITEM_STOCK_CACHE_MAX_AGE_PROPERTY, 0);
+		}
+	}
 }
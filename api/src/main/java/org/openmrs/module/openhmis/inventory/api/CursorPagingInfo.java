@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.openhmis.commons.api.PagingInfo;
+
+/**
+ * Paging information that pages through results using a cursor rather than a page number. The cursor is an opaque token
+ * built from the sort key of the last result of the previous page so each page is read with an indexed range scan instead
+ * of skipping all the previous rows, which keeps deep pages as fast as the first one.
+ * <p>
+ * The total record count is not loaded unless {@link #setLoadRecordCount(boolean)} is set to {@code true}. Only the data
+ * service methods that document cursor support use the cursor; other methods treat this as a request for the first page.
+ * </p>
+ */
+public class CursorPagingInfo extends PagingInfo {
+	private String cursor;
+	private String nextCursor;
+
+	/**
+	 * Creates paging information for the first page of results.
+	 * @param pageSize The number of results to return.
+	 */
+	public CursorPagingInfo(int pageSize) {
+		this(null, pageSize);
+	}
+
+	/**
+	 * Creates paging information for the page of results that follows the specified cursor.
+	 * @param cursor The cursor returned with the previous page or {@code null} to return the first page.
+	 * @param pageSize The number of results to return.
+	 */
+	public CursorPagingInfo(String cursor, int pageSize) {
+		super(1, pageSize);
+
+		this.cursor = StringUtils.isEmpty(cursor) ? null : cursor;
+		setLoadRecordCount(false);
+	}
+
+	/**
+	 * Gets the cursor that the results start after.
+	 * @return The cursor or {@code null} for the first page.
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = StringUtils.isEmpty(cursor) ? null : cursor;
+	}
+
+	/**
+	 * Gets the cursor for the next page of results. This is set when the results are loaded.
+	 * @return The cursor for the next page or {@code null} if there are no more results.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	public boolean hasNextCursor() {
+		return nextCursor != null;
+	}
+}
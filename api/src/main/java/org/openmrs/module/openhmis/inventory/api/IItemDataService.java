@@ -156,6 +156,34 @@ public interface IItemDataService extends IMetadataDataService<Item> {
 	@Authorized({ PrivilegeConstants.VIEW_ITEMS })
 	List<Item> getItemsByItemSearch(ItemSearch itemSearch, PagingInfo pagingInfo);
 
+	/**
+	 * Finds the items whose name or code matches the specified text using the in-memory item search index, so that only the
+	 * requested page of items is loaded. The items with a code equal to the text are returned first, followed by the items
+	 * whose name starts with the text, the items with a code that starts with the text, and, if infix matching is
+	 * requested, the items whose name contains the text. Each group is sorted by name.
+	 * @param text The text to search for.
+	 * @param department The optional department of the items.
+	 * @param hasPhysicalInventory The optional physical inventory setting of the items.
+	 * @param matchInfix Whether to include the items whose name contains the text rather than only starts with it.
+	 * @param includeRetired Whether retired items should be included in the results.
+	 * @param pagingInfo The paging information.
+	 * @return The matching items or an empty list if no items were found.
+	 * @should throw NullPointerException if the text is null
+	 * @should return items with a matching code before items with a matching name
+	 * @should return items whose name starts with the text
+	 * @should only return items whose name contains the text if infix matching is requested
+	 * @should return items filtered by department and physical inventory
+	 * @should not return retired items unless specified
+	 * @should return paged items and set the total record count
+	 * @should find items saved after the index was loaded
+	 * @should not find purged items
+	 * @should not add items saved in the transaction to the shared index until the transaction is committed
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_ITEMS })
+	List<Item> searchItems(String text, Department department, Boolean hasPhysicalInventory, boolean matchInfix,
+	        boolean includeRetired, PagingInfo pagingInfo);
+
 	/**
 	 * Gets all items by {@link Concept} settings.
 	 * @param concept The concept.
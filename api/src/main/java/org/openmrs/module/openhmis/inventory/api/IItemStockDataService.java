@@ -20,6 +20,10 @@ import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.IObjectDataService;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockScan;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSummaryRecord;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -41,4 +45,50 @@ public interface IItemStockDataService extends IObjectDataService<ItemStock> {
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_METADATA })
 	List<ItemStock> getItemStockByItem(Item item, PagingInfo pagingInfo);
+
+	/**
+	 * Gets a read-only snapshot of the {@link ItemStock} for the specified {@link Stockroom} and {@link Item}. Snapshots
+	 * are cached until the item stock is saved or purged, so use {@link IStockroomDataService#getItem(Stockroom, Item)}
+	 * to get item stock that will be changed.
+	 * @param stockroom The stockroom.
+	 * @param item The item.
+	 * @return The item stock snapshot, with a zero quantity and no details if the stockroom has no stock of the item.
+	 * @should throw IllegalArgumentException if the stockroom is null
+	 * @should throw IllegalArgumentException if the item is null
+	 * @should return the quantity and details of the item stock
+	 * @should return a zero quantity if the stockroom has no stock of the item
+	 * @should return the cached snapshot until the item stock is saved
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	ItemStockSnapshot getItemStockSnapshot(Stockroom stockroom, Item item);
+
+	/**
+	 * Finds the {@link Item} with the specified code and its stock in the specified {@link Stockroom}, so that a scanned
+	 * barcode can be looked up in a single call.
+	 * @param itemCode The scanned item code.
+	 * @param stockroom The stockroom to get the item stock from.
+	 * @return The item, its quantity, and the stock detail with the nearest expiration, or {@code null} if no item has
+	 *         the code.
+	 * @should throw IllegalArgumentException if the item code is empty
+	 * @should throw IllegalArgumentException if the stockroom is null
+	 * @should return null if no item has the code
+	 * @should return the item with a zero quantity if the stockroom has no stock of the item
+	 * @should return the quantity and the stock detail with the nearest expiration
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	ItemStockScan getItemStockByCode(String itemCode, Stockroom stockroom);
+
+	/**
+	 * Rebuilds the {@link ItemStockSummaryRecord}s from the current item stock details. The summary records are normally
+	 * updated whenever item stock is saved or purged through this service so this only needs to be used for existing data
+	 * or item stock that was changed some other way (for example, by saving a stockroom with new item stock).
+	 * @param stockroom The stockroom to rebuild or {@code null} to rebuild the summary records for all stockrooms.
+	 * @should rebuild the summary records for the stockroom
+	 * @should rebuild the summary records for all stockrooms if the stockroom is null
+	 * @should not create summary records for expirations with a zero total
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	void rebuildItemStockSummary(Stockroom stockroom);
 }
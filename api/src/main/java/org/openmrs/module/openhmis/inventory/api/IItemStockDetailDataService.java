@@ -32,7 +32,7 @@ public interface IItemStockDetailDataService extends IObjectDataService<ItemStoc
 	/**
 	 * Returns the {@link ItemStockDetail} records for the specified {@link Stockroom}.
 	 * @param stockroom The stockroom.
-	 * @param pagingInfo The paging information.
+	 * @param pagingInfo The paging information. A {@link CursorPagingInfo} pages through the details by item name.
 	 * @return The item stock detail records or an empty list when none are found.
 	 */
 	@Transactional(readOnly = true)
@@ -40,7 +40,11 @@ public interface IItemStockDetailDataService extends IObjectDataService<ItemStoc
 	List<ItemStockDetail> getItemStockDetailsByStockroom(Stockroom stockroom, PagingInfo pagingInfo);
 
 	/**
-	 * Returns the aggregate {@link ItemStockSummary} records for the specified {@link Stockroom}.
+	 * Returns the aggregate {@link ItemStockSummary} records for the specified {@link Stockroom}. These are read from the
+	 * summary records that are updated as the item stock is saved, see
+	 * {@link IItemStockDataService#rebuildItemStockSummary(Stockroom)}. Item stock changed in the current transaction is
+	 * only included once the summary records have been updated for it, which is done when a stock operation is submitted
+	 * and before the transaction is committed.
 	 * @param stockroom The stockroom.
 	 * @param pagingInfo The paging information.
 	 * @return The item stock summary records or an empty list when none are found.
@@ -49,6 +53,7 @@ public interface IItemStockDetailDataService extends IObjectDataService<ItemStoc
 	 * @should return the item stock summary records
 	 * @should return paged results if paging is specified
 	 * @should return correctly paged results when aggregate qty is zero
+	 * @should return the summary records updated by applying transactions
 	 */
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_METADATA })
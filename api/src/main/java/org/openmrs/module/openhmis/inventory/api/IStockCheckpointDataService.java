@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api;
+
+import java.util.Date;
+import java.util.List;
+
+import org.openmrs.annotation.Authorized;
+import org.openmrs.module.openhmis.commons.api.PagingInfo;
+import org.openmrs.module.openhmis.commons.api.entity.IObjectDataService;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Interface that represents classes which perform data operations for {@link StockCheckpoint}s.
+ */
+@Transactional
+public interface IStockCheckpointDataService extends IObjectDataService<StockCheckpoint> {
+	/**
+	 * Returns the {@link StockCheckpoint}s for the specified {@link Stockroom}, newest first.
+	 * @param stockroom The stockroom.
+	 * @param paging The paging information or {@code null} to return all results.
+	 * @return The checkpoints for the stockroom.
+	 * @should throw IllegalArgumentException if the stockroom is null
+	 * @should return the checkpoints for the stockroom ordered by operation date and order descending
+	 * @should return an empty list if the stockroom has no checkpoints
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	List<StockCheckpoint> getCheckpointsByStockroom(Stockroom stockroom, PagingInfo paging);
+
+	/**
+	 * Returns the newest {@link StockCheckpoint} for the specified {@link Stockroom} that is before the specified operation
+	 * date and order. The time portion of the operation date is not considered.
+	 * @param stockroom The stockroom.
+	 * @param operationDate The operation date.
+	 * @param operationOrder The operation order.
+	 * @return The checkpoint or {@code null} if there is no checkpoint before the specified date and order.
+	 * @should throw IllegalArgumentException if the stockroom is null
+	 * @should throw IllegalArgumentException if the operation date is null
+	 * @should return the newest checkpoint before the operation date
+	 * @should return the newest checkpoint with a lower operation order on the same day
+	 * @should return null if there are no checkpoints before the operation date and order
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	StockCheckpoint getCheckpointBefore(Stockroom stockroom, Date operationDate, Integer operationOrder);
+
+	/**
+	 * Determines if there are any {@link StockCheckpoint}s that are not before the specified operation date and order.
+	 * These are the checkpoints that would be deleted by {@link #invalidateCheckpoints(Stockroom, Date, Integer)}.
+	 * @param stockroom The stockroom or {@code null} to check the checkpoints for all stockrooms.
+	 * @param operationDate The operation date.
+	 * @param operationOrder The operation order.
+	 * @return {@code true} if there are checkpoints at or after the operation date and order, otherwise {@code false}.
+	 * @should throw IllegalArgumentException if the operation date is null
+	 * @should return true if there are checkpoints at or after the operation date and order
+	 * @should return false if all the checkpoints are before the operation date and order
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	boolean hasCheckpointsFrom(Stockroom stockroom, Date operationDate, Integer operationOrder);
+
+	/**
+	 * Deletes the {@link StockCheckpoint}s that are not before the specified operation date and order. This must be called
+	 * when the item stock changes for an operation at or before the checkpoint as the checkpoint would no longer be valid.
+	 * @param stockroom The stockroom or {@code null} to delete the checkpoints for all stockrooms.
+	 * @param operationDate The operation date.
+	 * @param operationOrder The operation order.
+	 * @should throw IllegalArgumentException if the operation date is null
+	 * @should delete the checkpoints at or after the operation date and order
+	 * @should not delete the checkpoints before the operation date and order
+	 * @should delete the checkpoints for all stockrooms if the stockroom is null
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	void invalidateCheckpoints(Stockroom stockroom, Date operationDate, Integer operationOrder);
+
+	/**
+	 * Deletes all but the newest {@link StockCheckpoint}s for the specified {@link Stockroom}.
+	 * @param stockroom The stockroom.
+	 * @param keep The number of checkpoints to keep.
+	 * @should throw IllegalArgumentException if the stockroom is null
+	 * @should delete all but the newest checkpoints
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	void purgeOldCheckpoints(Stockroom stockroom, int keep);
+}
@@ -13,6 +13,7 @@
  */
 package org.openmrs.module.openhmis.inventory.api;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -97,7 +98,8 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	 * @param status The {@link StockOperationStatus}.
 	 * @param stockOperationType {@link IInstanceType}
 	 * @param item {@link Item}
-	 * @param paging The paging information or {@code null} to return all results.
+	 * @param paging The paging information or {@code null} to return all results. A {@link CursorPagingInfo} pages
+	 *            through the operations from newest to oldest.
 	 * @return The operations associated with the specified user with the specified status.
 	 * @should return all operations with the specified status for specified user
 	 * @should return specified operations created by user
@@ -109,6 +111,7 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	 * @should not return operations when user role is parent of attribute type role
 	 * @should return empty list when no operations
 	 * @should return paged operations when paging is specified
+	 * @should return the next page of operations when cursor paging is specified
 	 * @should return all operations when paging is null
 	 * @should throw IllegalArgumentException when user is null
 	 * @should return all operations for user when status is null
@@ -130,7 +133,8 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	/**
 	 * Gets all {@link StockOperation}s using the specified {@link StockOperationSearch} settings.
 	 * @param search The operation search settings.
-	 * @param paging The paging information.
+	 * @param paging The paging information. A {@link CursorPagingInfo} pages through the operations from newest to
+	 *            oldest.
 	 * @return The operations found or an empty list if no transactions were found.
 	 * @should throw IllegalArgumentException if operation search is null
 	 * @should throw IllegalArgumentException if operation search template object is null
@@ -144,6 +148,7 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	 * @should return operations filtered by stockroom
 	 * @should return all operations if paging is null
 	 * @should return paged operations if paging is specified
+	 * @should return the next page of operations when cursor paging is specified
 	 * @should return operations filtered by patient
 	 */
 	@Transactional(readOnly = true)
@@ -183,6 +188,41 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
 	List<StockOperation> getFutureOperations(StockOperation operation, PagingInfo paging);
 
+	/**
+	 * Gets the {@link StockOperation}s with an operation date after the specified operation date that include any of the
+	 * specified items, taking into account the operation order for operations that occurred on the same day.
+	 * @param operation The starting operation.
+	 * @param items The items to find operations for or {@code null} to return operations for all items.
+	 * @param paging The paging information.
+	 * @return The operations found or an empty list
+	 * @should throw IllegalArgumentException if the operation is null
+	 * @should return future operations that include any of the specified items
+	 * @should not return future operations that do not include the specified items
+	 * @should return all future operations if items is null
+	 * @should return an empty list if items is empty
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	List<StockOperation> getFutureOperations(StockOperation operation, Collection<Item> items, PagingInfo paging);
+
+	/**
+	 * Gets the next page of operations after the specified operation, ordered by operation day, operation order and then id.
+	 * Passing the last operation of a page returns the following page so that all the future operations can be read in
+	 * fixed size chunks without loading them all at once.
+	 * @param operation The operation to start after.
+	 * @param items The items that the operations must include or {@code null} to return operations for all items.
+	 * @param maxResults The maximum number of operations to return.
+	 * @return The operations after the specified operation.
+	 * @should throw IllegalArgumentException if the operation is null
+	 * @should return operations on later days and with a higher operation order on the same day
+	 * @should return the next page when passed the last operation of the previous page
+	 * @should only return operations that include the specified items
+	 * @should return an empty list if items is empty
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	List<StockOperation> getOperationsAfter(StockOperation operation, Collection<Item> items, int maxResults);
+
 	/**
 	 * Gets all operations that occurred on the specified operation date. The time portion of the operation date is not
 	 * considered.
@@ -192,6 +232,7 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	 * @should throw IllegalArgumentException if the operation is null
 	 * @should return an empty list if no operations are found
 	 * @should return operations that occurred on the specified date regardless of time
+	 * @should return operations whose operation date was moved to the specified date
 	 * @should return operations ordered by operation order
 	 * @should return all results if paging is null
 	 * @should return paged results if paging is specified
@@ -225,4 +266,43 @@ public interface IStockOperationDataService extends IMetadataDataService<StockOp
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
 	StockOperation getFirstOperationByDate(Date date);
+
+	/**
+	 * Gets the largest operation order used on the specified date that is less than the specified operation order. The
+	 * operations themselves are not loaded.
+	 * @param date The operation date.
+	 * @param operationOrder The exclusive upper bound or {@code null} to return the largest operation order on the date.
+	 * @return The operation order or {@code null} if no operations match.
+	 * @should return the largest operation order on the date that is less than the specified order
+	 * @should return the largest operation order on the date if the order is null
+	 * @should return null if no operations occurred on the specified date
+	 * @should throw IllegalArgumentException if the date is null
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	Integer getPreviousOperationOrder(Date date, Integer operationOrder);
+
+	/**
+	 * Gets the smallest operation order used on the date of the specified operation that is equal to or greater than the
+	 * order of the operation. The operation itself is excluded and the operations are not loaded.
+	 * @param operation The operation.
+	 * @return The operation order or {@code null} if no other operations match.
+	 * @should return the smallest operation order on the date that is equal to or greater than the operation order
+	 * @should not return the order of the specified operation
+	 * @should return null if no operations occurred on the specified date
+	 * @should throw IllegalArgumentException if the operation is null
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	Integer getNextOperationOrder(StockOperation operation);
+
+	/**
+	 * Gets the last {@link StockOperation} (that is, with the latest operation date and then the largest operation order).
+	 * @return The last stock operation or {@code null} if there are no operations.
+	 * @should return the operation with the largest operation order on the latest operation date
+	 * @should return null if there are no operations
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	StockOperation getLastOperation();
 }
@@ -14,11 +14,15 @@
 package org.openmrs.module.openhmis.inventory.api;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationResult;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -32,15 +36,27 @@ public interface IStockOperationService extends OpenmrsService {
 	 * operation status may be automatically completed if all the required attributes have been defined, otherwise the status
 	 * will be PENDING. If the operation is completed the completion action, as defined by the
 	 * {@link org.openmrs.module.openhmis.inventory.api.model.IStockOperationType} will be executed.
+	 * <p>
+	 * When called outside of a transaction the operation is processed in its own transaction, which is retried a limited
+	 * number of times if the item stock is changed by another process before it is committed.
+	 * </p>
+	 * <p>
+	 * When called inside an existing transaction the operation is not retried and the item stock locks are released when
+	 * this returns, before that transaction is committed. If another submission changes the same item stock before then,
+	 * the item stock version check makes the flush or commit fail with a concurrency exception that the caller must handle
+	 * by submitting the operation again.
+	 * </p>
 	 * @param operation The operation to submit.
 	 * @return The submitted and saved stock operation.
 	 * @should update the source stockroom item stock quantities
+	 * @should keep each item stock quantity equal to the sum of its details when submitted from several threads
 	 * @should remove empty item stock from the source stockroom
 	 * @should set the correct availability for the reserved stock quantity
 	 * @should update the destination stockroom item stock quantities
 	 * @should add the destination stockroom item stock if not found
 	 * @should calculate expiration if not defined for expirable item
 	 * @should calculate batch operation if not defined
+	 * @should take the stock from the oldest batch when the item uses fifo allocation
 	 * @should update operation status to pending if status is new
 	 * @should create new reservations from the operation items
 	 * @should not recreate existing reservations if submitted multiple times
@@ -49,6 +65,13 @@ public interface IStockOperationService extends OpenmrsService {
 	 * @should remove item stock from destination stockroom if quantity becomes zero
 	 * @should add stock if calculate expiration is false and expiration is null for an expirable item
 	 * @should not include rollback operations when rolling back and reapplying subsequent operations
+	 * @should insert an operation with an explicit order without changing the order of other operations
+	 * @should rebalance the operation orders on the day when there is no gap left for an explicit order
+	 * @should complete an auto-completed operation in a single pass with only the final transactions
+	 * @should run the pending and completed events of an auto-completed operation in a single replay window
+	 * @should reapply more following operations than are loaded into the session at once
+	 * @should only reapply the following operations that depend on a back-dated operation
+	 * @should not load the stockroom operations when creating an operation
 	 * @should throw APIException if the operation type is receipt and expiration is not defined for expirable items
 	 * @should throw an IllegalArgumentException if the operation is null
 	 * @should throw an APIException if the operation type is null
@@ -58,10 +81,36 @@ public interface IStockOperationService extends OpenmrsService {
 	 * @should throw an APIException if the operation type requires a patient and the patient is null
 	 * @should throw APIException if source stockroom is null and the expiration is not specified for an expirable item
 	 */
-	@Transactional
 	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
 	StockOperation submitOperation(StockOperation operation);
 
+	/**
+	 * Validates and submits the specified {@link StockOperation}s as a single batch. The operations are processed in
+	 * operation date and order. Any following operations that depend on the item stock of the batch are rolled back once
+	 * before the batch is processed and reapplied once afterwards, rather than once for each operation. An operation that
+	 * fails validation or processing is reported in the results and does not stop the rest of the batch. Each operation is
+	 * processed in a nested transaction so the changes made by a failed operation are rolled back to a savepoint, and only
+	 * that operation, its item stock and its stockrooms are removed from the session.
+	 * <p>
+	 * The savepoints are held by the enclosing transaction. If this is called without one, an operation that fails while
+	 * being processed fails the whole batch.
+	 * </p>
+	 * @param operations The operations to submit.
+	 * @return The result for each operation, in the same order as the specified operations.
+	 * @should submit each operation
+	 * @should return a failed result for invalid operations and submit the rest
+	 * @should not change the item stock for an operation that fails while being processed
+	 * @should keep the objects that the failed operation did not change in the session
+	 * @should process the operations in operation date order
+	 * @should assign increasing operation orders to operations on the same day
+	 * @should rollback and reapply following operations once
+	 * @should return an empty list if operations is empty
+	 * @should throw IllegalArgumentException if operations is null
+	 */
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	List<StockOperationResult> submitOperations(List<StockOperation> operations);
+
 	/**
 	 * Rolls back a completed operation from the system, re-applying any following operations.
 	 * @param operation The operation to rollback
@@ -76,6 +125,21 @@ public interface IStockOperationService extends OpenmrsService {
 	@Authorized({ PrivilegeConstants.ROLLBACK_OPERATIONS })
 	StockOperation rollbackOperation(StockOperation operation);
 
+	/**
+	 * Creates a {@link StockCheckpoint} of the current item stock in the specified stockroom. The checkpoint includes all
+	 * operations up to and including the last operation so that back-dated operations and rollbacks can rebuild the item
+	 * stock from the checkpoint rather than by reversing every following operation.
+	 * @param stockroom The stockroom.
+	 * @return The saved checkpoint or {@code null} if there are no operations.
+	 * @should create a checkpoint with the current item stock details
+	 * @should return the existing checkpoint if no operations have been processed since it was created
+	 * @should return null if there are no operations
+	 * @should throw IllegalArgumentException if the stockroom is null
+	 */
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	StockCheckpoint createCheckpoint(Stockroom stockroom);
+
 	/**
 	 * Applies the specified transactions against the referenced objects.
 	 * @param transactions The transactions to apply.
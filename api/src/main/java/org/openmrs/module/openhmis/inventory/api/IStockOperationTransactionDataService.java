@@ -13,11 +13,14 @@
  */
 package org.openmrs.module.openhmis.inventory.api;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.openmrs.annotation.Authorized;
 import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.IObjectDataService;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
@@ -42,4 +45,19 @@ public interface IStockOperationTransactionDataService extends IObjectDataServic
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
 	List<StockOperationTransaction> getTransactionByOperation(StockOperation operation, PagingInfo paging);
+
+	/**
+	 * Gets the {@link StockOperationTransaction}'s for the checkpoint stockroom that were created by operations after the
+	 * specified {@link StockCheckpoint}.
+	 * @param checkpoint The {@link StockCheckpoint}.
+	 * @param items The items to return the transactions for or {@code null} to return the transactions for all items.
+	 * @return The transactions ordered by operation date, operation order, and then the order they were created.
+	 * @should throw IllegalArgumentException if the checkpoint is null
+	 * @should return the transactions for operations after the checkpoint
+	 * @should not return the transactions for operations included in the checkpoint
+	 * @should only return the transactions for the specified items
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	List<StockOperationTransaction> getTransactionsSinceCheckpoint(StockCheckpoint checkpoint, Collection<Item> items);
 }
@@ -13,8 +13,10 @@
  */
 package org.openmrs.module.openhmis.inventory.api;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Location;
 import org.openmrs.annotation.Authorized;
@@ -38,12 +40,17 @@ import org.springframework.transaction.annotation.Transactional;
 public interface IStockroomDataService extends IMetadataDataService<Stockroom> {
 	/**
 	 * Gets all {@link ItemStock}'s in the specified {@link Stockroom}.
+	 * <p>
+	 * The items are always queried from the database as the pages are ordered and counted by the query, only the single
+	 * item stock reads in {@link #getItem(Stockroom, Item)} use the item stock cache.
+	 * </p>
 	 * @param stockroom The {@link Stockroom}.
-	 * @param paging The paging information.
+	 * @param paging The paging information. A {@link CursorPagingInfo} pages through the items by item name.
 	 * @return A list containing all of the stockroom items.
 	 * @should return all the items in the stockroom ordered by item name
 	 * @should return an empty list if there are no items in the stockroom
 	 * @should return paged items if paging is specified
+	 * @should return the next page of items when cursor paging is specified
 	 * @should return item stock sorted by item name
 	 * @should throw IllegalArgumentException if the stockroom is null
 	 */
@@ -54,11 +61,13 @@ public interface IStockroomDataService extends IMetadataDataService<Stockroom> {
 	/**
 	 * Gets all {@link StockOperationTransaction}'s in the specified {@link Stockroom}.
 	 * @param stockroom The {@link Stockroom}.
-	 * @param paging The paging information.
+	 * @param paging The paging information. A {@link CursorPagingInfo} pages through the transactions from newest to
+	 *            oldest.
 	 * @return A list containing all of the stockroom transactions.
 	 * @should return all the transactions in the stockroom ordered by the transaction date
 	 * @should return an empty list if there are no transactions
 	 * @should return paged items if paging is specified
+	 * @should return the next page of transactions when cursor paging is specified
 	 * @should throw IllegalArgumentException if the stockroom is null
 	 */
 	@Transactional(readOnly = true)
@@ -118,10 +127,16 @@ public interface IStockroomDataService extends IMetadataDataService<Stockroom> {
 
 	/**
 	 * Gets the {@link ItemStock} for the specified {@link Item} with the optionally defined expiration.
+	 * <p>
+	 * When the item stock cache is running this is found from the cached item stock snapshot, so that the item stock is
+	 * loaded from the session or the second level cache rather than queried.
+	 * </p>
 	 * @param stockroom The {@link Stockroom} items to search.
 	 * @param item The {@link Item} to find.
 	 * @return The {@link ItemStock} or {@code null} if not found.
 	 * @should return the stockroom item
+	 * @should return the cached item stock without querying the database
+	 * @should return null without querying the database when the cached snapshot has no stock
 	 * @should not return items from other stockrooms
 	 * @should return null when item is not found
 	 * @should throw IllegalArgumentException when stockroom is null
@@ -131,6 +146,24 @@ public interface IStockroomDataService extends IMetadataDataService<Stockroom> {
 	@Authorized({ PrivilegeConstants.VIEW_STOCKROOMS })
 	ItemStock getItem(Stockroom stockroom, Item item);
 
+	/**
+	 * Gets the {@link ItemStock} for each of the specified {@link Item}s, including the item stock details, using a single
+	 * query.
+	 * @param stockroom The {@link Stockroom} items to search.
+	 * @param items The {@link Item}s to find.
+	 * @return The {@link ItemStock} for each item that was found, keyed by item. Items that are not in the stockroom are not
+	 *         included.
+	 * @should return the item stock for each item
+	 * @should not return items from other stockrooms
+	 * @should not include items that are not found
+	 * @should return an empty map when items is empty
+	 * @should throw IllegalArgumentException when stockroom is null
+	 * @should throw IllegalArgumentException when items is null
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_STOCKROOMS })
+	Map<Item, ItemStock> getItems(Stockroom stockroom, Collection<Item> items);
+
 	/**
 	 * Gets the {@link ItemStockDetail} for the specified {@link Item} and qualifiers.
 	 * @param stockroom The stockroom item details to search.
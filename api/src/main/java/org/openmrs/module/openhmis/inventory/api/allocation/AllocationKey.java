@@ -0,0 +1,72 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+
+/**
+ * The precomputed sort keys used by an {@link IAllocationStrategy} to compare item stock details. The keys are computed
+ * once per detail so that comparing details does not need to create any objects.
+ */
+public class AllocationKey {
+	private final ItemStockDetail detail;
+	private final long expiration;
+	private final long batchDate;
+	private final int sequence;
+
+	/**
+	 * Creates the keys for the specified detail.
+	 * @param detail The item stock detail.
+	 * @param sequence The position of the detail in the item stock, used to order details that have the same keys.
+	 */
+	public AllocationKey(ItemStockDetail detail, int sequence) {
+		this.detail = detail;
+		this.sequence = sequence;
+
+		// Details without an expiration never expire
+		this.expiration = detail.getExpiration() == null ? Long.MAX_VALUE : detail.getExpiration().getTime();
+
+		if (detail.getBatchOperation() != null && detail.getBatchOperation().getOperationDate() != null) {
+			this.batchDate = detail.getBatchOperation().getOperationDate().getTime();
+		} else {
+			// Details without a batch are treated as the newest stock so that they always sort the same way
+			this.batchDate = Long.MAX_VALUE;
+		}
+	}
+
+	public ItemStockDetail getDetail() {
+		return detail;
+	}
+
+	/**
+	 * Gets the detail expiration.
+	 * @return The expiration in epoch milliseconds or {@link Long#MAX_VALUE} if the detail does not expire.
+	 */
+	public long getExpiration() {
+		return expiration;
+	}
+
+	/**
+	 * Gets the date of the detail batch operation.
+	 * @return The batch operation date in epoch milliseconds or {@link Long#MAX_VALUE} if the detail does not have a batch
+	 *         operation.
+	 */
+	public long getBatchDate() {
+		return batchDate;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.openmrs.module.openhmis.inventory.ModuleSettings;
+import org.openmrs.module.openhmis.inventory.api.model.AllocationStrategyType;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+
+/**
+ * Provides the {@link IAllocationStrategy} for each {@link AllocationStrategyType} and resolves the strategy used for an
+ * item. The item strategy is used if defined, then the item department strategy, and then the default strategy.
+ */
+public class AllocationStrategies {
+	private static final Map<AllocationStrategyType, IAllocationStrategy> STRATEGIES =
+	        new EnumMap<AllocationStrategyType, IAllocationStrategy>(AllocationStrategyType.class);
+
+	static {
+		STRATEGIES.put(AllocationStrategyType.FEFO, new FefoAllocationStrategy());
+		STRATEGIES.put(AllocationStrategyType.FIFO, new FifoAllocationStrategy());
+		STRATEGIES.put(AllocationStrategyType.LEFO, new LefoAllocationStrategy());
+		STRATEGIES.put(AllocationStrategyType.EXPLICIT, new ExplicitBatchAllocationStrategy());
+	}
+
+	protected AllocationStrategies() {}
+
+	/**
+	 * Gets the strategy for the specified type.
+	 * @param type The strategy type.
+	 * @return The strategy.
+	 */
+	public static IAllocationStrategy getStrategy(AllocationStrategyType type) {
+		if (type == null) {
+			throw new IllegalArgumentException("The allocation strategy type must be defined.");
+		}
+
+		synchronized (STRATEGIES) {
+			return STRATEGIES.get(type);
+		}
+	}
+
+	/**
+	 * Replaces the strategy used for the specified type.
+	 * @param type The strategy type.
+	 * @param strategy The strategy implementation.
+	 */
+	public static void setStrategy(AllocationStrategyType type, IAllocationStrategy strategy) {
+		if (type == null) {
+			throw new IllegalArgumentException("The allocation strategy type must be defined.");
+		}
+		if (strategy == null) {
+			throw new IllegalArgumentException("The allocation strategy must be defined.");
+		}
+
+		synchronized (STRATEGIES) {
+			STRATEGIES.put(type, strategy);
+		}
+	}
+
+	/**
+	 * Gets the strategy type used for the specified item.
+	 * @param item The item.
+	 * @return The item strategy type, the department strategy type, or the default strategy type.
+	 */
+	public static AllocationStrategyType getStrategyType(Item item) {
+		AllocationStrategyType type = null;
+		if (item != null) {
+			type = item.getAllocationStrategy();
+			if (type == null && item.getDepartment() != null) {
+				type = item.getDepartment().getAllocationStrategy();
+			}
+		}
+
+		if (type == null) {
+			type = ModuleSettings.autoSelectItemStockWithFurthestExpirationDate() ? AllocationStrategyType.LEFO
+			        : AllocationStrategyType.FEFO;
+		}
+
+		return type;
+	}
+
+	/**
+	 * Gets the strategy used for the specified item.
+	 * @param item The item.
+	 * @return The strategy.
+	 */
+	public static IAllocationStrategy getStrategy(Item item) {
+		return getStrategy(getStrategyType(item));
+	}
+}
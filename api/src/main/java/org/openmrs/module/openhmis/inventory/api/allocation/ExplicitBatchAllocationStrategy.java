@@ -0,0 +1,26 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+/**
+ * Requires the batch to be selected for each operation item that takes stock from a stockroom. Stock is only allocated
+ * by this strategy for operations that were created before the strategy was selected, in which case it takes the stock
+ * that expires the soonest.
+ */
+public class ExplicitBatchAllocationStrategy extends FefoAllocationStrategy {
+	@Override
+	public boolean isBatchRequired() {
+		return true;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+/**
+ * First expired, first out. Takes the stock that expires the soonest and then the oldest batch.
+ */
+public class FefoAllocationStrategy implements IAllocationStrategy {
+	@Override
+	public int compare(AllocationKey key1, AllocationKey key2) {
+		int result = compare(key1.getExpiration(), key2.getExpiration());
+		if (result == 0) {
+			result = compare(key1.getBatchDate(), key2.getBatchDate());
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean isBatchRequired() {
+		return false;
+	}
+
+	protected static int compare(long value1, long value2) {
+		return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+	}
+}
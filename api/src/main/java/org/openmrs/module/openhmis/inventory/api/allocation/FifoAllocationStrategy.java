@@ -0,0 +1,29 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+/**
+ * First in, first out. Takes the stock from the oldest batch operation and then the stock that expires the soonest.
+ */
+public class FifoAllocationStrategy extends FefoAllocationStrategy {
+	@Override
+	public int compare(AllocationKey key1, AllocationKey key2) {
+		int result = compare(key1.getBatchDate(), key2.getBatchDate());
+		if (result == 0) {
+			result = compare(key1.getExpiration(), key2.getExpiration());
+		}
+
+		return result;
+	}
+}
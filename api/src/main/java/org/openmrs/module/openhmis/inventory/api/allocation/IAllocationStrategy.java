@@ -0,0 +1,28 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+import java.util.Comparator;
+
+/**
+ * Decides which item stock detail is taken first when the expiration or batch of a stock operation item is calculated.
+ * Details that compare lower are taken first.
+ */
+public interface IAllocationStrategy extends Comparator<AllocationKey> {
+	/**
+	 * Gets whether operations that take stock from a stockroom must explicitly select the batch operation.
+	 * @return {@code true} if the batch must be selected, otherwise {@code false}.
+	 */
+	boolean isBatchRequired();
+}
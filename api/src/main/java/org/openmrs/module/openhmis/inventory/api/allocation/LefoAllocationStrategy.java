@@ -0,0 +1,30 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.allocation;
+
+/**
+ * Last expired, first out. Takes the stock that expires the furthest in the future (or never expires) and then the oldest
+ * batch.
+ */
+public class LefoAllocationStrategy extends FefoAllocationStrategy {
+	@Override
+	public int compare(AllocationKey key1, AllocationKey key2) {
+		int result = compare(key2.getExpiration(), key1.getExpiration());
+		if (result == 0) {
+			result = compare(key1.getBatchDate(), key2.getBatchDate());
+		}
+
+		return result;
+	}
+}
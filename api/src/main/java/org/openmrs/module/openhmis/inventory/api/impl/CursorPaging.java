@@ -0,0 +1,253 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.CursorPagingInfo;
+import org.openmrs.module.openhmis.inventory.api.util.HibernateCriteriaConstants;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Executes criteria queries that are paged with a {@link CursorPagingInfo}. The results are sorted by a set of keys that
+ * must uniquely identify each result (the last key is normally the id) and the cursor holds the key values of the last
+ * result so that the next page can be found with a range restriction rather than an offset.
+ */
+public class CursorPaging {
+	private static final String SEPARATOR = ",";
+	private static final String ENCODING = "UTF-8";
+
+	protected CursorPaging() {}
+
+	/**
+	 * Executes the criteria for the page following the cursor and sets the next cursor.
+	 * @param criteria The criteria for the results.
+	 * @param countCriteria The criteria used to load the record count, if requested.
+	 * @param action The action that adds the restrictions to the criteria.
+	 * @param paging The cursor paging information.
+	 * @param keys The sort keys, the last of which must be unique.
+	 * @param <E> The type of the results.
+	 * @return The results.
+	 */
+	@SafeVarargs
+	@SuppressWarnings("unchecked")
+	public static <E> List<E> execute(Criteria criteria, Criteria countCriteria, Action1<Criteria> action,
+	        CursorPagingInfo paging, Key<E>... keys) {
+		if (paging == null) {
+			throw new IllegalArgumentException("The paging information must be defined.");
+		}
+		if (keys == null || keys.length == 0) {
+			throw new IllegalArgumentException("At least one sort key must be defined.");
+		}
+
+		if (paging.shouldLoadRecordCount()) {
+			if (action != null) {
+				action.apply(countCriteria);
+			}
+			countCriteria.setProjection(Projections.rowCount());
+
+			paging.setTotalRecordCount(((Number)countCriteria.uniqueResult()).longValue());
+			paging.setLoadRecordCount(false);
+		}
+
+		if (action != null) {
+			action.apply(criteria);
+		}
+
+		if (paging.getCursor() != null) {
+			criteria.add(createAfterRestriction(decode(paging.getCursor(), keys), keys));
+		}
+		for (Key<E> key : keys) {
+			criteria.addOrder(key.isAscending() ? Order.asc(key.getProperty()) : Order.desc(key.getProperty()));
+		}
+
+		Integer pageSize = paging.getPageSize();
+		if (pageSize != null && pageSize > 0) {
+			// Load one more result than requested to find out if there is another page
+			criteria.setMaxResults(pageSize + 1);
+		}
+
+		List<E> results = criteria.list();
+		if (pageSize != null && pageSize > 0 && results.size() > pageSize) {
+			results = new ArrayList<E>(results.subList(0, pageSize));
+
+			paging.setNextCursor(encode(results.get(pageSize - 1), keys));
+		} else {
+			paging.setNextCursor(null);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Creates a unique id key for the results.
+	 * @param ascending {@code true} to sort the ids in ascending order, {@code false} for descending order.
+	 * @param <E> The type of the results.
+	 * @return The id key.
+	 */
+	public static <E extends OpenmrsObject> Key<E> idKey(boolean ascending) {
+		return new Key<E>(HibernateCriteriaConstants.ID, ascending) {
+			@Override
+			public Object getValue(E entity) {
+				return entity.getId();
+			}
+		};
+	}
+
+	@SafeVarargs
+	static <E> String encode(E entity, Key<E>... keys) {
+		StringBuilder builder = new StringBuilder();
+		for (Key<E> key : keys) {
+			Object value = key.getValue(entity);
+			if (builder.length() > 0) {
+				builder.append(SEPARATOR);
+			}
+
+			if (value instanceof Integer) {
+				builder.append('i').append(value);
+			} else if (value instanceof Date) {
+				builder.append('d').append(((Date)value).getTime());
+			} else if (value instanceof String) {
+				builder.append('s').append(urlEncode((String)value));
+			} else {
+				throw new IllegalArgumentException("The sort key '" + key.getProperty() + "' value cannot be used in a "
+				        + "cursor.");
+			}
+		}
+
+		return BaseEncoding.base64Url().omitPadding().encode(builder.toString().getBytes(Charsets.UTF_8));
+	}
+
+	@SafeVarargs
+	static <E> Object[] decode(String cursor, Key<E>... keys) {
+		String[] parts;
+		try {
+			parts = new String(BaseEncoding.base64Url().decode(cursor), Charsets.UTF_8).split(SEPARATOR, -1);
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException("The paging cursor is not valid.", iae);
+		}
+
+		if (parts.length != keys.length) {
+			throw new IllegalArgumentException("The paging cursor is not valid.");
+		}
+
+		Object[] values = new Object[parts.length];
+		try {
+			for (int i = 0; i < parts.length; i++) {
+				String part = parts[i];
+				String value = part.length() > 1 ? part.substring(1) : "";
+
+				switch (part.length() > 0 ? part.charAt(0) : ' ') {
+					case 'i':
+						values[i] = Integer.valueOf(value);
+						break;
+					case 'd':
+						values[i] = new Date(Long.parseLong(value));
+						break;
+					case 's':
+						values[i] = URLDecoder.decode(value, ENCODING);
+						break;
+					default:
+						throw new IllegalArgumentException("The paging cursor is not valid.");
+				}
+			}
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("The paging cursor is not valid.", nfe);
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+
+		return values;
+	}
+
+	@SafeVarargs
+	private static <E> Disjunction createAfterRestriction(Object[] values, Key<E>... keys) {
+		// (k1 > v1) or (k1 = v1 and k2 > v2) or ... using < for the keys that are sorted in descending order
+		Disjunction after = Restrictions.disjunction();
+		for (int i = 0; i < keys.length; i++) {
+			Conjunction conjunction = Restrictions.conjunction();
+			for (int j = 0; j < i; j++) {
+				conjunction.add(Restrictions.eq(keys[j].getProperty(), values[j]));
+			}
+
+			if (keys[i].isAscending()) {
+				conjunction.add(Restrictions.gt(keys[i].getProperty(), values[i]));
+			} else {
+				conjunction.add(Restrictions.lt(keys[i].getProperty(), values[i]));
+			}
+
+			after.add(conjunction);
+		}
+
+		return after;
+	}
+
+	private static String urlEncode(String value) {
+		try {
+			return URLEncoder.encode(value, ENCODING);
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+
+	/**
+	 * A sort key used to page through results with a cursor.
+	 * @param <E> The type of the results.
+	 */
+	public abstract static class Key<E> {
+		private final String property;
+		private final boolean ascending;
+
+		/**
+		 * Creates a new sort key.
+		 * @param property The criteria property (including any alias) to sort by.
+		 * @param ascending {@code true} to sort in ascending order, {@code false} for descending order.
+		 */
+		public Key(String property, boolean ascending) {
+			this.property = property;
+			this.ascending = ascending;
+		}
+
+		public String getProperty() {
+			return property;
+		}
+
+		public boolean isAscending() {
+			return ascending;
+		}
+
+		/**
+		 * Gets the value of this key for the specified result. This must be an {@link Integer}, {@link Date} or
+		 * {@link String}.
+		 * @param entity The result.
+		 * @return The key value.
+		 */
+		public abstract Object getValue(E entity);
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.javatuples.Pair;
+import org.openmrs.module.openhmis.inventory.api.impl.StockLockManager.StockLock;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Provides item stock locks that are shared by every OpenMRS node that uses the same database. The item stock stripes of a
+ * {@link StockLockManager} are locked in the JVM first and then the matching rows of the {@code inv_stock_lock} table are
+ * locked with {@code SELECT ... FOR UPDATE}. The row locks are held by the database until the current transaction
+ * completes; if there is no active transaction only the JVM-local locks are acquired.
+ */
+public class DatabaseStockLockProvider implements IStockLockProvider {
+	public static final String LOCK_TABLE = "inv_stock_lock";
+
+	private static final String UNIQUE_VIOLATION_STATE = "23505";
+	private static final String INTEGRITY_CONSTRAINT_VIOLATION_STATE = "23000";
+	private static final int MYSQL_DUPLICATE_ENTRY = 1062;
+	private static final int MYSQL_DUPLICATE_KEY = 1586;
+
+	private final StockLockManager localLocks;
+	private final SessionFactory sessionFactory;
+
+	public DatabaseStockLockProvider(StockLockManager localLocks, SessionFactory sessionFactory) {
+		if (localLocks == null) {
+			throw new IllegalArgumentException("The local lock manager must be defined.");
+		}
+
+		this.localLocks = localLocks;
+		this.sessionFactory = sessionFactory;
+	}
+
+	@Override
+	public IStockLock lockShared(Collection<Pair<Stockroom, Item>> keys) {
+		TreeSet<Integer> stripes = new TreeSet<Integer>();
+		if (keys != null) {
+			for (Pair<Stockroom, Item> key : keys) {
+				stripes.add(localLocks.getStripe(key.getValue0(), key.getValue1()));
+			}
+		}
+
+		StockLock lock = localLocks.lockShared(keys);
+		try {
+			lockStripes(stripes);
+		} catch (RuntimeException ex) {
+			lock.release();
+
+			throw ex;
+		}
+
+		return lock;
+	}
+
+	@Override
+	public IStockLock lockExclusive() {
+		TreeSet<Integer> stripes = new TreeSet<Integer>();
+		for (int i = 0; i < localLocks.getStripeCount(); i++) {
+			stripes.add(i);
+		}
+
+		StockLock lock = localLocks.lockExclusive();
+		try {
+			lockStripes(stripes);
+		} catch (RuntimeException ex) {
+			lock.release();
+
+			throw ex;
+		}
+
+		return lock;
+	}
+
+	/**
+	 * Locks the database rows for the specified stripes using the connection of the current transaction.
+	 * @param stripes The stripes to lock, in ascending order.
+	 */
+	protected void lockStripes(final Collection<Integer> stripes) {
+		if (stripes.size() == 0 || sessionFactory == null
+		        || !TransactionSynchronizationManager.isActualTransactionActive()) {
+			return;
+		}
+
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				lockRows(connection, stripes);
+			}
+		});
+	}
+
+	/**
+	 * Locks the lock table rows for the specified stripes, creating any rows that do not exist yet. A row that another node
+	 * creates at the same time is skipped; any other error is thrown.
+	 * @param connection The connection for the transaction that will hold the locks.
+	 * @param stripes The stripes to lock, in ascending order.
+	 * @throws SQLException
+	 */
+	protected static void lockRows(Connection connection, Collection<Integer> stripes) throws SQLException {
+		Set<Integer> locked = selectForUpdate(connection, stripes);
+		if (locked.size() == stripes.size()) {
+			return;
+		}
+
+		List<Integer> missing = new ArrayList<Integer>();
+		for (Integer stripe : stripes) {
+			if (!locked.contains(stripe)) {
+				missing.add(stripe);
+			}
+		}
+
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO " + LOCK_TABLE + " (lock_id) VALUES (?)");
+		try {
+			for (Integer stripe : missing) {
+				insert.setInt(1, stripe);
+
+				// Insert under a savepoint so that a failed insert does not abort the rest of the transaction on databases
+				//  such as PostgreSQL
+				Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+				try {
+					insert.executeUpdate();
+				} catch (SQLException ex) {
+					if (savepoint != null) {
+						connection.rollback(savepoint);
+						savepoint = null;
+					}
+
+					// Only skip the row if another node created it first
+					if (!isDuplicateKey(ex)) {
+						throw ex;
+					}
+				} finally {
+					if (savepoint != null) {
+						connection.releaseSavepoint(savepoint);
+					}
+				}
+			}
+		} finally {
+			insert.close();
+		}
+
+		selectForUpdate(connection, missing);
+	}
+
+	private static boolean isDuplicateKey(SQLException ex) {
+		for (SQLException current = ex; current != null; current = current.getNextException()) {
+			// MySQL reports all integrity constraint violations with the same SQL state so check its error code instead
+			if (UNIQUE_VIOLATION_STATE.equals(current.getSQLState())
+			        || (INTEGRITY_CONSTRAINT_VIOLATION_STATE.equals(current.getSQLState())
+			        && (current.getErrorCode() == MYSQL_DUPLICATE_ENTRY || current.getErrorCode() == MYSQL_DUPLICATE_KEY))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static Set<Integer> selectForUpdate(Connection connection, Collection<Integer> stripes) throws SQLException {
+		StringBuilder sql = new StringBuilder("SELECT lock_id FROM " + LOCK_TABLE + " WHERE lock_id IN (");
+		for (int i = 0; i < stripes.size(); i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+		}
+		sql.append(") ORDER BY lock_id FOR UPDATE");
+
+		Set<Integer> results = new HashSet<Integer>(stripes.size());
+		PreparedStatement select = connection.prepareStatement(sql.toString());
+		try {
+			int index = 1;
+			for (Integer stripe : stripes) {
+				select.setInt(index++, stripe);
+			}
+
+			ResultSet resultSet = select.executeQuery();
+			try {
+				while (resultSet.next()) {
+					results.add(resultSet.getInt(1));
+				}
+			} finally {
+				resultSet.close();
+			}
+		} finally {
+			select.close();
+		}
+
+		return results;
+	}
+}
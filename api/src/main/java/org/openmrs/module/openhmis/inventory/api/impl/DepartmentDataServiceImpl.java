@@ -13,11 +13,13 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import org.openmrs.annotation.Authorized;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseMetadataDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.entity.security.IMetadataAuthorizationPrivileges;
 import org.openmrs.module.openhmis.inventory.api.IDepartmentDataService;
 import org.openmrs.module.openhmis.inventory.api.model.Department;
 import org.openmrs.module.openhmis.inventory.api.security.BasicMetadataAuthorizationPrivileges;
+import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -34,4 +36,52 @@ public class DepartmentDataServiceImpl extends BaseMetadataDataServiceImpl<Depar
 	protected void validate(Department entity) {
 		return;
 	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_METADATA })
+	public Department save(Department department) {
+		ReferenceDataRegistry.DEPARTMENTS.remove(department);
+
+		return super.save(department);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	public Department getByUuid(String uuid) {
+		// Look up the id from the registry so that the departments can be loaded from the cache rather than queried
+		Integer id = ReferenceDataRegistry.DEPARTMENTS.getId(uuid);
+		if (id != null) {
+			Department department = getById(id);
+			if (department != null && uuid.equals(department.getUuid())) {
+				return department;
+			}
+
+			ReferenceDataRegistry.DEPARTMENTS.removeUuid(uuid);
+		}
+
+		Department department = super.getByUuid(uuid);
+		ReferenceDataRegistry.DEPARTMENTS.put(department);
+
+		return department;
+	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_METADATA })
+	public Department retire(Department department, String reason) {
+		ReferenceDataRegistry.DEPARTMENTS.remove(department);
+
+		return super.retire(department, reason);
+	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.PURGE_METADATA })
+	public void purge(Department department) {
+		ReferenceDataRegistry.DEPARTMENTS.remove(department);
+
+		super.purge(department);
+	}
 }
@@ -0,0 +1,123 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+/**
+ * The following operations that depend on the item stock of one or more back-dated {@link StockOperation}s. Only the id and
+ * position of each operation is kept so that the operations can be loaded a chunk at a time while they are rolled back and
+ * reapplied, rather than keeping every following operation in memory.
+ */
+public class FollowingOperations {
+	private final List<Integer> ids = new ArrayList<Integer>();
+	private final List<Date> days = new ArrayList<Date>();
+	private final List<Integer> orders = new ArrayList<Integer>();
+	private final Set<Integer> idSet = new HashSet<Integer>();
+	private final Map<Stockroom, Set<Item>> itemStock = new HashMap<Stockroom, Set<Item>>();
+	private final Set<Item> items = new HashSet<Item>();
+
+	/**
+	 * Adds the next following operation. Operations must be added from oldest to newest.
+	 * @param operation The saved following operation.
+	 */
+	public void add(StockOperation operation) {
+		if (operation == null || operation.getId() == null) {
+			throw new IllegalArgumentException("The following operation must be saved.");
+		}
+
+		ids.add(operation.getId());
+		days.add(operation.getOperationDay());
+		orders.add(operation.getOperationOrder());
+		idSet.add(operation.getId());
+
+		Set<Item> operationItems = StockOperationDependencyResolver.getItems(Collections.singletonList(operation));
+		items.addAll(operationItems);
+		for (Stockroom stockroom : new Stockroom[] { operation.getSource(), operation.getDestination() }) {
+			if (stockroom != null) {
+				Set<Item> stockroomItems = itemStock.get(stockroom);
+				if (stockroomItems == null) {
+					stockroomItems = new HashSet<Item>();
+					itemStock.put(stockroom, stockroomItems);
+				}
+
+				stockroomItems.addAll(operationItems);
+			}
+		}
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	public boolean isEmpty() {
+		return ids.isEmpty();
+	}
+
+	/**
+	 * Gets the ids of the following operations, from oldest to newest.
+	 * @return The operation ids.
+	 */
+	public List<Integer> getIds() {
+		return Collections.unmodifiableList(ids);
+	}
+
+	public boolean contains(Integer operationId) {
+		return operationId != null && idSet.contains(operationId);
+	}
+
+	/**
+	 * Gets the items used by the following operations.
+	 * @return The items.
+	 */
+	public Set<Item> getItems() {
+		return Collections.unmodifiableSet(items);
+	}
+
+	/**
+	 * Gets the items used by the following operations for each stockroom.
+	 * @return The item stock touched by the following operations.
+	 */
+	public Map<Stockroom, Set<Item>> getItemStock() {
+		return Collections.unmodifiableMap(itemStock);
+	}
+
+	/**
+	 * Compares the position of the following operation at the specified index with the specified operation, using the
+	 * operation day and then the operation order.
+	 * @param index The index of the following operation.
+	 * @param operation The operation to compare to.
+	 * @return A negative number, zero, or a positive number if the following operation occurs before, at the same
+	 *         position, or after the operation.
+	 */
+	public int compareTo(int index, StockOperation operation) {
+		int result = days.get(index).compareTo(operation.getOperationDay());
+		if (result == 0) {
+			result = orders.get(index).compareTo(operation.getOperationOrder());
+		}
+
+		return result;
+	}
+}
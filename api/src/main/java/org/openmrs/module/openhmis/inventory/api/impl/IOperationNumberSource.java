@@ -0,0 +1,35 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.List;
+
+/**
+ * Provides blocks of operation numbers to an {@link OperationNumberPool}.
+ */
+public interface IOperationNumberSource {
+	/**
+	 * Reserves the specified number of new operation numbers. The reservation must be committed by the time this returns;
+	 * the pool only calls this from its own thread so that it is never part of an operation's transaction.
+	 * @param count The number of operation numbers to reserve.
+	 * @return The reserved operation numbers.
+	 */
+	List<String> reserve(int count);
+
+	/**
+	 * Returns operation numbers that were reserved but not used.
+	 * @param numbers The unused operation numbers.
+	 */
+	void release(List<String> numbers);
+}
@@ -0,0 +1,31 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+/**
+ * Represents the item stock locks acquired from an {@link IStockLockProvider}.
+ */
+public interface IStockLock {
+	/**
+	 * Gets whether this lock is for all item stock.
+	 * @return {@code true} if this is an exclusive lock, otherwise {@code false}.
+	 */
+	boolean isExclusive();
+
+	/**
+	 * Releases the locks. Calling this more than once has no effect. Locks that are held by the database are kept until the
+	 * transaction that acquired them completes.
+	 */
+	void release();
+}
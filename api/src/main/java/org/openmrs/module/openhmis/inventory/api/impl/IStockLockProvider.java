@@ -0,0 +1,40 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Collection;
+
+import org.javatuples.Pair;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+/**
+ * Provides the locks used to serialize changes to item stock.
+ */
+public interface IStockLockProvider {
+	/**
+	 * Locks the item stock for the specified (stockroom, item) pairs. Callers must release the returned lock in a finally
+	 * block.
+	 * @param keys The stockroom and item pairs to lock.
+	 * @return The acquired lock.
+	 */
+	IStockLock lockShared(Collection<Pair<Stockroom, Item>> keys);
+
+	/**
+	 * Locks all item stock. Callers must release the returned lock in a finally block.
+	 * @return The acquired lock.
+	 * @throws IllegalStateException if the current thread already holds a shared lock.
+	 */
+	IStockLock lockExclusive();
+}
@@ -0,0 +1,71 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.idgen.IdentifierPool;
+import org.openmrs.module.idgen.IdentifierSource;
+import org.openmrs.module.idgen.service.IdentifierSourceService;
+import org.openmrs.module.openhmis.commons.api.util.IdgenUtil;
+import org.openmrs.module.openhmis.inventory.ModuleSettings;
+
+/**
+ * Reserves operation numbers from the idgen identifier source configured for the inventory module.
+ */
+public class IdgenOperationNumberSource implements IOperationNumberSource {
+	private static final Log LOG = LogFactory.getLog(IdgenOperationNumberSource.class);
+
+	private static final String COMMENT = "OpenHMIS Inventory operation numbers";
+
+	@Override
+	public List<String> reserve(int count) {
+		IdentifierSource source = getSource();
+		if (source == null) {
+			throw new APIException("The operation number identifier source is not defined.");
+		}
+
+		List<String> numbers = getService().generateIdentifiers(source, count, COMMENT);
+
+		return numbers == null ? new ArrayList<String>() : numbers;
+	}
+
+	@Override
+	public void release(List<String> numbers) {
+		if (numbers == null || numbers.size() == 0) {
+			return;
+		}
+
+		IdentifierSource source = getSource();
+		if (source instanceof IdentifierPool) {
+			getService().addIdentifiersToPool((IdentifierPool)source, numbers);
+		} else {
+			// Sequential sources cannot take identifiers back; the numbers are skipped, which leaves a gap but no duplicates
+			LOG.info("Skipping " + numbers.size() + " unused operation numbers starting at '" + numbers.get(0) + "'.");
+		}
+	}
+
+	protected IdentifierSource getSource() {
+		return IdgenUtil.getIdentifierSource(ModuleSettings.OPERATION_NUMBER_IDENTIFIER_SOURCE_ID_PROPERTY);
+	}
+
+	protected IdentifierSourceService getService() {
+		return Context.getService(IdentifierSourceService.class);
+	}
+}
@@ -13,11 +13,13 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import org.openmrs.annotation.Authorized;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseMetadataDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.entity.security.IMetadataAuthorizationPrivileges;
 import org.openmrs.module.openhmis.inventory.api.IInstitutionDataService;
 import org.openmrs.module.openhmis.inventory.api.model.Institution;
 import org.openmrs.module.openhmis.inventory.api.security.BasicMetadataAuthorizationPrivileges;
+import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -34,4 +36,52 @@ public class InstitutionDataServiceImpl extends BaseMetadataDataServiceImpl<Inst
 	protected void validate(Institution entity) {
 		return;
 	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_METADATA })
+	public Institution save(Institution institution) {
+		ReferenceDataRegistry.INSTITUTIONS.remove(institution);
+
+		return super.save(institution);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	public Institution getByUuid(String uuid) {
+		// Look up the id from the registry so that the institutions can be loaded from the cache rather than queried
+		Integer id = ReferenceDataRegistry.INSTITUTIONS.getId(uuid);
+		if (id != null) {
+			Institution institution = getById(id);
+			if (institution != null && uuid.equals(institution.getUuid())) {
+				return institution;
+			}
+
+			ReferenceDataRegistry.INSTITUTIONS.removeUuid(uuid);
+		}
+
+		Institution institution = super.getByUuid(uuid);
+		ReferenceDataRegistry.INSTITUTIONS.put(institution);
+
+		return institution;
+	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_METADATA })
+	public Institution retire(Institution institution, String reason) {
+		ReferenceDataRegistry.INSTITUTIONS.remove(institution);
+
+		return super.retire(institution, reason);
+	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.PURGE_METADATA })
+	public void purge(Institution institution) {
+		ReferenceDataRegistry.INSTITUTIONS.remove(institution);
+
+		super.purge(institution);
+	}
 }
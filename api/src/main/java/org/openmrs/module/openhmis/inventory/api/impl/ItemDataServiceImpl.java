@@ -15,10 +15,14 @@ package org.openmrs.module.openhmis.inventory.api.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Concept;
@@ -36,6 +40,9 @@ import org.openmrs.module.openhmis.inventory.api.search.ItemSearch;
 import org.openmrs.module.openhmis.inventory.api.util.HibernateCriteriaConstants;
 import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Data service implementation class for {@link Item}s.
@@ -45,6 +52,8 @@ public class ItemDataServiceImpl extends BaseCustomizableMetadataDataServiceImpl
         implements IItemDataService, IMetadataAuthorizationPrivileges {
 
 	private static final int MAX_ITEM_CODE_LENGTH = 255;
+	private static final int MAX_INDEX_LOAD_ATTEMPTS = 3;
+	private static final Object SEARCH_INDEX_CHANGES_KEY = new Object();
 
 	@Override
 	protected void validate(Item entity) {
@@ -73,10 +82,10 @@ public class ItemDataServiceImpl extends BaseCustomizableMetadataDataServiceImpl
 			throw new IllegalArgumentException("The item code must be less than 256 characters.");
 		}
 
-		Criteria criteria = getRepository().createCriteria(getEntityClass());
-		criteria.createAlias("codes", "c").add(Restrictions.ilike("c.code", itemCode));
+		// Look up the item id from the cached codes rather than joining to the item codes for each scan
+		List<Integer> ids = getSearchIndex().getIdsByCode(itemCode, getSearchIndexChanges(false));
 
-		return getRepository().selectSingle(getEntityClass(), criteria);
+		return ids.isEmpty() ? null : getById(ids.get(0));
 	}
 
 	@Override
@@ -190,6 +199,85 @@ public class ItemDataServiceImpl extends BaseCustomizableMetadataDataServiceImpl
 		}, getDefaultSort());
 	}
 
+	@Override
+	@Authorized({ PrivilegeConstants.VIEW_ITEMS })
+	@Transactional(readOnly = true)
+	public List<Item> searchItems(String text, Department department, Boolean hasPhysicalInventory, boolean matchInfix,
+	        boolean includeRetired, PagingInfo pagingInfo) {
+		if (text == null) {
+			throw new NullPointerException("The search text must be defined.");
+		}
+
+		List<Integer> ids = getSearchIndex().search(text, department == null ? null : department.getId(),
+		    hasPhysicalInventory, matchInfix, includeRetired, getSearchIndexChanges(false));
+
+		List<Integer> pageIds = ids;
+		if (pagingInfo != null) {
+			pagingInfo.setTotalRecordCount((long)ids.size());
+
+			Integer pageSize = pagingInfo.getPageSize();
+			if (pageSize != null && pageSize > 0) {
+				Integer page = pagingInfo.getPage();
+				int start = Math.min(((page == null || page < 1) ? 0 : page - 1) * pageSize, ids.size());
+				pageIds = ids.subList(start, Math.min(start + pageSize, ids.size()));
+			}
+		}
+
+		List<Item> results = new ArrayList<Item>(pageIds.size());
+		if (pageIds.isEmpty()) {
+			return results;
+		}
+
+		// Only load the items on the requested page and return them in the ranked order
+		Criteria criteria = getRepository().createCriteria(getEntityClass());
+		criteria.add(Restrictions.in(HibernateCriteriaConstants.ID, pageIds));
+
+		Map<Integer, Item> items = new HashMap<Integer, Item>();
+		for (Item item : getRepository().select(getEntityClass(), criteria)) {
+			items.put(item.getId(), item);
+		}
+		for (Integer id : pageIds) {
+			Item item = items.get(id);
+			if (item != null) {
+				results.add(item);
+			}
+		}
+
+		return results;
+	}
+
+	@Override
+	public Item save(Item item) {
+		Item result = super.save(item);
+		updateSearchIndex(result.getId(), ItemSearchIndex.Entry.create(result));
+
+		return result;
+	}
+
+	@Override
+	public Item retire(Item item, String reason) {
+		Item result = super.retire(item, reason);
+		updateSearchIndex(result.getId(), ItemSearchIndex.Entry.create(result));
+
+		return result;
+	}
+
+	@Override
+	public Item unretire(Item item) {
+		Item result = super.unretire(item);
+		updateSearchIndex(result.getId(), ItemSearchIndex.Entry.create(result));
+
+		return result;
+	}
+
+	@Override
+	public void purge(Item item) {
+		Integer id = item == null ? null : item.getId();
+
+		super.purge(item);
+		updateSearchIndex(id, null);
+	}
+
 	@Override
 	public List<Item> getItemsByConcept(final Concept concept) {
 		return executeCriteria(Item.class, new Action1<Criteria>() {
@@ -227,6 +315,120 @@ public class ItemDataServiceImpl extends BaseCustomizableMetadataDataServiceImpl
 		}, getDefaultSort());
 	}
 
+	private ItemSearchIndex getSearchIndex() {
+		ItemSearchIndex index = ItemSearchIndex.getInstance();
+		for (int attempt = 0; attempt < MAX_INDEX_LOAD_ATTEMPTS && !index.isLoaded(); attempt++) {
+			long version = index.getVersion();
+
+			// Load just the fields used by the index rather than every item with its prices and attributes
+			Map<Integer, List<String>> codes = new HashMap<Integer, List<String>>();
+			Query query = getRepository().createQuery("select c.item.id, c.code from ItemCode c");
+			for (Object row : query.list()) {
+				Object[] values = (Object[])row;
+				List<String> itemCodes = codes.get(values[0]);
+				if (itemCodes == null) {
+					itemCodes = new ArrayList<String>();
+					codes.put((Integer)values[0], itemCodes);
+				}
+
+				itemCodes.add((String)values[1]);
+			}
+
+			Map<Integer, ItemSearchIndex.Entry> entries = new LinkedHashMap<Integer, ItemSearchIndex.Entry>();
+			query = getRepository().createQuery(
+			    "select i.id, i.name, d.id, i.hasPhysicalInventory, i.retired from Item i left join i.department d");
+			for (Object row : query.list()) {
+				Object[] values = (Object[])row;
+				Integer id = (Integer)values[0];
+
+				entries.put(id, new ItemSearchIndex.Entry(id, (String)values[1], codes.get(id), (Integer)values[2],
+				        (Boolean)values[3], Boolean.TRUE.equals(values[4])));
+			}
+
+			// The entries are read again if an item changed while they were being read. The entries include the changes made
+			// in this transaction so the index needs to be loaded again if they are not committed.
+			if (index.load(entries.values(), version) && getSearchIndexChanges(false) != null) {
+				clearSearchIndexIfNotCommitted();
+			}
+		}
+
+		return index;
+	}
+
+	private void updateSearchIndex(Integer id, ItemSearchIndex.Entry entry) {
+		if (id == null) {
+			return;
+		}
+
+		Map<Integer, ItemSearchIndex.Entry> changes = getSearchIndexChanges(true);
+		if (changes == null) {
+			applySearchIndexChange(id, entry);
+		} else {
+			// Only this transaction can see the change until it is committed
+			changes.put(id, entry);
+		}
+	}
+
+	/**
+	 * Gets the search index changes that have been made in the current transaction. The changes are applied to the search
+	 * index after the transaction is committed and discarded otherwise.
+	 * @param create {@code true} to create the changes for the transaction if there are none yet.
+	 * @return The changes or {@code null} if there is no transaction or there are none and create is {@code false}.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Integer, ItemSearchIndex.Entry> getSearchIndexChanges(boolean create) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+
+		Map<Integer, ItemSearchIndex.Entry> changes =
+		        (Map<Integer, ItemSearchIndex.Entry>)TransactionSynchronizationManager.getResource(SEARCH_INDEX_CHANGES_KEY);
+		if (changes == null && create) {
+			final Map<Integer, ItemSearchIndex.Entry> newChanges = new LinkedHashMap<Integer, ItemSearchIndex.Entry>();
+			TransactionSynchronizationManager.bindResource(SEARCH_INDEX_CHANGES_KEY, newChanges);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					for (Map.Entry<Integer, ItemSearchIndex.Entry> change : newChanges.entrySet()) {
+						applySearchIndexChange(change.getKey(), change.getValue());
+					}
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(SEARCH_INDEX_CHANGES_KEY);
+				}
+			});
+
+			changes = newChanges;
+		}
+
+		return changes;
+	}
+
+	private static void applySearchIndexChange(Integer id, ItemSearchIndex.Entry entry) {
+		ItemSearchIndex index = ItemSearchIndex.getInstance();
+		if (entry == null) {
+			index.remove(id);
+		} else {
+			index.put(entry);
+		}
+	}
+
+	private void clearSearchIndexIfNotCommitted() {
+		// The index was loaded with changes that were made in this transaction, so reload it if they are rolled back
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status != TransactionSynchronization.STATUS_COMMITTED) {
+						ItemSearchIndex.getInstance().clear();
+					}
+				}
+			});
+		}
+	}
+
 	@Override
 	protected IMetadataAuthorizationPrivileges getPrivileges() {
 		return this;
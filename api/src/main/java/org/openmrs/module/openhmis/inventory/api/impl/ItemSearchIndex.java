@@ -0,0 +1,565 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.ItemCode;
+
+/**
+ * Keeps the name and codes of each item in memory so that the items can be found as a search is typed without querying the
+ * item table for each keystroke. The names and codes are kept in sorted maps to find prefix matches and each name is split
+ * into trigrams so that the items whose name contains the search text can be found without checking every item.
+ * <p>
+ * Only the ids and the fields needed to match and filter the items are kept; the data service loads the items a page at a
+ * time. {@link ItemDataServiceImpl} updates the index once the transaction that saved, retired, or purged an item has
+ * been committed. Until then, the uncommitted changes can be passed to the search methods so that the transaction finds
+ * its own changes without the other transactions seeing them.
+ * </p>
+ */
+public class ItemSearchIndex {
+	private static final int GRAM_LENGTH = 3;
+	private static final int RANK_COUNT = 4;
+	private static final ItemSearchIndex INSTANCE = new ItemSearchIndex();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	private final TreeMap<String, Set<Integer>> names = new TreeMap<String, Set<Integer>>();
+	private final TreeMap<String, Set<Integer>> codes = new TreeMap<String, Set<Integer>>();
+	private final Map<String, Set<Integer>> grams = new HashMap<String, Set<Integer>>();
+	private boolean loaded;
+	private long version;
+
+	public static ItemSearchIndex getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Checks if the index has been loaded. Items that are searched for before the index is loaded would not be found.
+	 * @return {@code true} if the index has been loaded, otherwise {@code false}.
+	 */
+	public boolean isLoaded() {
+		lock.readLock().lock();
+		try {
+			return loaded;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the version of the index, which changes each time an item is added or removed or the index is cleared.
+	 * @return The index version.
+	 */
+	public long getVersion() {
+		lock.readLock().lock();
+		try {
+			return version;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the contents of the index with the specified entries, unless the index has changed since the entries were
+	 * read. In that case the entries may not include the change and the index is left to be loaded again.
+	 * @param items The entries for all the items.
+	 * @param readVersion The version of the index when the entries were read.
+	 * @return {@code true} if the index was loaded, otherwise {@code false}.
+	 */
+	public boolean load(Collection<Entry> items, long readVersion) {
+		lock.writeLock().lock();
+		try {
+			if (version != readVersion) {
+				return false;
+			}
+
+			removeAll();
+			if (items != null) {
+				for (Entry entry : items) {
+					add(entry);
+				}
+			}
+			loaded = true;
+
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or replaces the entry for an item.
+	 * @param entry The item entry.
+	 */
+	public void put(Entry entry) {
+		if (entry == null || entry.getId() == null) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			remove(entries.get(entry.getId()));
+			add(entry);
+			version++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the entry for the item with the specified id.
+	 * @param id The item id.
+	 */
+	public void remove(Integer id) {
+		if (id == null) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			remove(entries.get(id));
+			version++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all the entries so that the index is loaded again the next time it is used.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			removeAll();
+			loaded = false;
+			version++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the ids of the items whose name or code matches the specified text. The items with a code equal to the text are
+	 * returned first, followed by the items whose name starts with the text, the items with a code that starts with the
+	 * text, and then the items whose name contains the text. Each group is sorted by the item name. Names and codes are
+	 * compared ignoring case.
+	 * @param text The text to search for.
+	 * @param departmentId The optional department id that the items must have.
+	 * @param hasPhysicalInventory The optional physical inventory setting that the items must have.
+	 * @param matchInfix Whether to include the items whose name contains the text rather than only starts with it.
+	 * @param includeRetired Whether retired items should be included in the results.
+	 * @return The ranked item ids.
+	 */
+	public List<Integer> search(String text, Integer departmentId, Boolean hasPhysicalInventory, boolean matchInfix,
+	        boolean includeRetired) {
+		return search(text, departmentId, hasPhysicalInventory, matchInfix, includeRetired, null);
+	}
+
+	/**
+	 * Finds the ids of the items whose name or code matches the specified text, using the specified entries in place of the
+	 * indexed entries for the same items. The results are ranked as in
+	 * {@link #search(String, Integer, Boolean, boolean, boolean)}.
+	 * @param text The text to search for.
+	 * @param departmentId The optional department id that the items must have.
+	 * @param hasPhysicalInventory The optional physical inventory setting that the items must have.
+	 * @param matchInfix Whether to include the items whose name contains the text rather than only starts with it.
+	 * @param includeRetired Whether retired items should be included in the results.
+	 * @param changes The optional uncommitted entries keyed by item id, with a {@code null} entry for a purged item.
+	 * @return The ranked item ids.
+	 */
+	public List<Integer> search(String text, Integer departmentId, Boolean hasPhysicalInventory, boolean matchInfix,
+	        boolean includeRetired, Map<Integer, Entry> changes) {
+		String query = normalize(text);
+		Filter filter = new Filter(departmentId, hasPhysicalInventory, includeRetired);
+
+		// The matches for each rank: code, name prefix, code prefix, and then name infix
+		List<List<Entry>> ranks = new ArrayList<List<Entry>>();
+		for (int i = 0; i < RANK_COUNT; i++) {
+			ranks.add(new ArrayList<Entry>());
+		}
+
+		// The indexed entries of the changed items are skipped as if they had already been found
+		Set<Integer> found = changes == null ? new HashSet<Integer>() : new HashSet<Integer>(changes.keySet());
+
+		lock.readLock().lock();
+		try {
+			if (query.length() > 0) {
+				addMatches(ranks.get(0), found, codes.get(query), filter);
+			}
+
+			for (Map.Entry<String, Set<Integer>> name : names.tailMap(query, true).entrySet()) {
+				if (!name.getKey().startsWith(query)) {
+					break;
+				}
+
+				addMatches(ranks.get(1), found, name.getValue(), filter);
+			}
+
+			if (query.length() > 0) {
+				for (Map.Entry<String, Set<Integer>> code : codes.tailMap(query, false).entrySet()) {
+					if (!code.getKey().startsWith(query)) {
+						break;
+					}
+
+					addMatches(ranks.get(2), found, code.getValue(), filter);
+				}
+
+				if (matchInfix) {
+					addMatches(ranks.get(3), found, findInfixMatches(query), filter);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if (changes != null) {
+			for (Entry entry : changes.values()) {
+				int rank = filter.matches(entry) ? getRank(entry, query, matchInfix) : -1;
+				if (rank >= 0) {
+					ranks.get(rank).add(entry);
+				}
+			}
+		}
+
+		List<Integer> results = new ArrayList<Integer>();
+		for (List<Entry> matches : ranks) {
+			addSorted(results, matches);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Finds the ids of the items that have the specified code, including retired items. Codes are compared ignoring case.
+	 * @param code The item code.
+	 * @return The item ids sorted by item name, or an empty list if no item has the code.
+	 */
+	public List<Integer> getIdsByCode(String code) {
+		return getIdsByCode(code, null);
+	}
+
+	/**
+	 * Finds the ids of the items that have the specified code, using the specified entries in place of the indexed entries
+	 * for the same items.
+	 * @param code The item code.
+	 * @param changes The optional uncommitted entries keyed by item id, with a {@code null} entry for a purged item.
+	 * @return The item ids sorted by item name, or an empty list if no item has the code.
+	 */
+	public List<Integer> getIdsByCode(String code, Map<Integer, Entry> changes) {
+		String query = normalize(code);
+		List<Entry> matches = new ArrayList<Entry>();
+		Set<Integer> found = changes == null ? new HashSet<Integer>() : new HashSet<Integer>(changes.keySet());
+
+		lock.readLock().lock();
+		try {
+			addMatches(matches, found, codes.get(query), new Filter(null, null, true));
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if (changes != null) {
+			for (Entry entry : changes.values()) {
+				if (entry != null && entry.getCodes().contains(query)) {
+					matches.add(entry);
+				}
+			}
+		}
+
+		List<Integer> results = new ArrayList<Integer>(matches.size());
+		addSorted(results, matches);
+
+		return results;
+	}
+
+	private Collection<Integer> findInfixMatches(String query) {
+		Collection<Integer> candidates;
+		if (query.length() < GRAM_LENGTH) {
+			candidates = entries.keySet();
+		} else {
+			// Only the items that have every trigram of the query can contain it, so start from the smallest posting list
+			List<Set<Integer>> postings = new ArrayList<Set<Integer>>();
+			for (String gram : getGrams(query)) {
+				Set<Integer> ids = grams.get(gram);
+				if (ids == null) {
+					return Collections.emptyList();
+				}
+
+				postings.add(ids);
+			}
+			Collections.sort(postings, new Comparator<Set<Integer>>() {
+				@Override
+				public int compare(Set<Integer> o1, Set<Integer> o2) {
+					return o1.size() - o2.size();
+				}
+			});
+
+			candidates = new ArrayList<Integer>();
+			for (Integer id : postings.get(0)) {
+				boolean inAll = true;
+				for (int i = 1; i < postings.size() && inAll; i++) {
+					inAll = postings.get(i).contains(id);
+				}
+
+				if (inAll) {
+					candidates.add(id);
+				}
+			}
+		}
+
+		// The trigrams can be found out of order so check that the name actually contains the query
+		List<Integer> results = new ArrayList<Integer>();
+		for (Integer id : candidates) {
+			if (entries.get(id).getName().contains(query)) {
+				results.add(id);
+			}
+		}
+
+		return results;
+	}
+
+	private void addMatches(List<Entry> matches, Set<Integer> found, Collection<Integer> ids, Filter filter) {
+		if (ids == null || ids.isEmpty()) {
+			return;
+		}
+
+		for (Integer id : ids) {
+			Entry entry = entries.get(id);
+			if (!found.contains(id) && filter.matches(entry)) {
+				matches.add(entry);
+				found.add(id);
+			}
+		}
+	}
+
+	private static void addSorted(List<Integer> results, List<Entry> matches) {
+		Collections.sort(matches);
+		for (Entry entry : matches) {
+			results.add(entry.getId());
+		}
+	}
+
+	private static int getRank(Entry entry, String query, boolean matchInfix) {
+		if (query.length() > 0 && entry.getCodes().contains(query)) {
+			return 0;
+		}
+		if (entry.getName().startsWith(query)) {
+			return 1;
+		}
+		if (query.length() > 0) {
+			for (String code : entry.getCodes()) {
+				if (code.startsWith(query)) {
+					return 2;
+				}
+			}
+
+			if (matchInfix && entry.getName().contains(query)) {
+				return 3;
+			}
+		}
+
+		return -1;
+	}
+
+	private void add(Entry entry) {
+		entries.put(entry.getId(), entry);
+
+		addPosting(names, entry.getName(), entry.getId());
+		for (String code : entry.getCodes()) {
+			addPosting(codes, code, entry.getId());
+		}
+		for (String gram : getGrams(entry.getName())) {
+			addPosting(grams, gram, entry.getId());
+		}
+	}
+
+	private void remove(Entry entry) {
+		if (entry == null) {
+			return;
+		}
+
+		entries.remove(entry.getId());
+
+		removePosting(names, entry.getName(), entry.getId());
+		for (String code : entry.getCodes()) {
+			removePosting(codes, code, entry.getId());
+		}
+		for (String gram : getGrams(entry.getName())) {
+			removePosting(grams, gram, entry.getId());
+		}
+	}
+
+	private void removeAll() {
+		entries.clear();
+		names.clear();
+		codes.clear();
+		grams.clear();
+	}
+
+	private static void addPosting(Map<String, Set<Integer>> postings, String key, Integer id) {
+		Set<Integer> ids = postings.get(key);
+		if (ids == null) {
+			ids = new HashSet<Integer>();
+			postings.put(key, ids);
+		}
+
+		ids.add(id);
+	}
+
+	private static void removePosting(Map<String, Set<Integer>> postings, String key, Integer id) {
+		Set<Integer> ids = postings.get(key);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				postings.remove(key);
+			}
+		}
+	}
+
+	private static Set<String> getGrams(String value) {
+		Set<String> results = new HashSet<String>();
+		for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+			results.add(value.substring(i, i + GRAM_LENGTH));
+		}
+
+		return results;
+	}
+
+	private static String normalize(String value) {
+		return value == null ? "" : StringUtils.trimToEmpty(value).toLowerCase();
+	}
+
+	/**
+	 * The name, codes, and search filter fields of an item.
+	 */
+	public static class Entry implements Comparable<Entry> {
+		private final Integer id;
+		private final String name;
+		private final Set<String> codes;
+		private final Integer departmentId;
+		private final Boolean hasPhysicalInventory;
+		private final boolean retired;
+
+		public Entry(Integer id, String name, Collection<String> codes, Integer departmentId, Boolean hasPhysicalInventory,
+		        boolean retired) {
+			this.id = id;
+			this.name = normalize(name);
+			this.departmentId = departmentId;
+			this.hasPhysicalInventory = hasPhysicalInventory;
+			this.retired = retired;
+
+			Set<String> itemCodes = new HashSet<String>();
+			if (codes != null) {
+				for (String code : codes) {
+					if (StringUtils.isNotBlank(code)) {
+						itemCodes.add(normalize(code));
+					}
+				}
+			}
+			this.codes = Collections.unmodifiableSet(itemCodes);
+		}
+
+		/**
+		 * Creates the entry for the specified item.
+		 * @param item The saved item.
+		 * @return The item entry.
+		 */
+		public static Entry create(Item item) {
+			List<String> itemCodes = new ArrayList<String>();
+			if (item.getCodes() != null) {
+				for (ItemCode code : item.getCodes()) {
+					itemCodes.add(code.getCode());
+				}
+			}
+
+			return new Entry(item.getId(), item.getName(), itemCodes,
+			        item.getDepartment() == null ? null : item.getDepartment().getId(), item.getHasPhysicalInventory(),
+			        Boolean.TRUE.equals(item.getRetired()));
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Set<String> getCodes() {
+			return codes;
+		}
+
+		public Integer getDepartmentId() {
+			return departmentId;
+		}
+
+		public Boolean getHasPhysicalInventory() {
+			return hasPhysicalInventory;
+		}
+
+		public boolean isRetired() {
+			return retired;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			int result = name.compareTo(o.name);
+			if (result == 0) {
+				result = id.compareTo(o.id);
+			}
+
+			return result;
+		}
+	}
+
+	private static class Filter {
+		private final Integer departmentId;
+		private final Boolean hasPhysicalInventory;
+		private final boolean includeRetired;
+
+		Filter(Integer departmentId, Boolean hasPhysicalInventory, boolean includeRetired) {
+			this.departmentId = departmentId;
+			this.hasPhysicalInventory = hasPhysicalInventory;
+			this.includeRetired = includeRetired;
+		}
+
+		boolean matches(Entry entry) {
+			return entry != null && (includeRetired || !entry.isRetired())
+			        && (departmentId == null || departmentId.equals(entry.getDepartmentId()))
+			        && (hasPhysicalInventory == null || hasPhysicalInventory.equals(entry.getHasPhysicalInventory()));
+		}
+	}
+}
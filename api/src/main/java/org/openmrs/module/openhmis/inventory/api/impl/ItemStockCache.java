@@ -0,0 +1,305 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.javatuples.Pair;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounded cache of {@link ItemStockSnapshot}s by stockroom and item so that the stock of frequently used items can be read
+ * without querying the item stock and its details each time. The least recently used snapshots are evicted once the cache
+ * is full.
+ * <p>
+ * The snapshot reads ({@code IItemStockDataService.getItemStockSnapshot} and the item code scan) are answered from the
+ * cache. {@code IStockroomDataService.getItem}, which is also used by the item stock search for a stockroom and item, uses
+ * the id in the cached snapshot to load the {@link ItemStock} through the session and the Hibernate second level cache
+ * rather than querying for it. Reads of all the item stock in a stockroom or for an item are paged queries and are not
+ * cached.
+ * </p>
+ * <p>
+ * The item stock data services invalidate a snapshot when its {@link ItemStock} is saved or purged and again once the
+ * transaction completes, so that a snapshot read by another transaction before the change was committed is not kept. A
+ * snapshot is only added if nothing has been invalidated since it was read.
+ * </p>
+ * <p>
+ * Other nodes that share the database do not invalidate this cache, so when database stock locks are used the cache is
+ * only created with a maximum snapshot age. Those snapshots can be out of date by up to that age and are only used for the
+ * snapshot reads, see {@link #isConsistent()}.
+ * </p>
+ */
+public class ItemStockCache {
+	// Bound to a transaction that has changed item stock, see isChangedInTransaction
+	private static final Object TRANSACTION_CHANGES_KEY = new Object();
+
+	private static volatile ItemStockCache instance;
+
+	private final int maxSize;
+	private final long maxAge;
+	private final LinkedHashMap<Pair<Integer, Integer>, CachedSnapshot> snapshots;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public ItemStockCache(int maxSize) {
+		this(maxSize, 0);
+	}
+
+	/**
+	 * Creates a new cache.
+	 * @param maxSize The maximum number of snapshots.
+	 * @param maxAge The number of milliseconds that a snapshot is kept or 0 to keep snapshots until they are invalidated.
+	 */
+	public ItemStockCache(int maxSize, long maxAge) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("The maximum size must be greater than zero.");
+		}
+		if (maxAge < 0) {
+			throw new IllegalArgumentException("The maximum age must not be negative.");
+		}
+
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+		this.snapshots = new LinkedHashMap<Pair<Integer, Integer>, CachedSnapshot>(16, 0.75f, true) {
+			private static final long serialVersionUID = 0L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Pair<Integer, Integer>, CachedSnapshot> eldest) {
+				if (size() > ItemStockCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets the running cache.
+	 * @return The cache or {@code null} if item stock is not cached.
+	 */
+	public static ItemStockCache getInstance() {
+		return instance;
+	}
+
+	public static void setInstance(ItemStockCache cache) {
+		instance = cache;
+	}
+
+	/**
+	 * Removes the snapshot for the specified item stock from the running cache, now and once the current transaction
+	 * completes.
+	 * @param stockroomId The stockroom id.
+	 * @param itemId The item id.
+	 */
+	public static void invalidate(final Integer stockroomId, final Integer itemId) {
+		final ItemStockCache cache = instance;
+		if (cache == null || stockroomId == null || itemId == null) {
+			return;
+		}
+
+		cache.remove(stockroomId, itemId);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			markChangedInTransaction();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					cache.remove(stockroomId, itemId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Removes the snapshots for all the item stock in the specified stockroom from the running cache, now and once the
+	 * current transaction completes.
+	 * @param stockroomId The stockroom id.
+	 */
+	public static void invalidateStockroom(final Integer stockroomId) {
+		final ItemStockCache cache = instance;
+		if (cache == null || stockroomId == null) {
+			return;
+		}
+
+		cache.removeStockroom(stockroomId);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			markChangedInTransaction();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					cache.removeStockroom(stockroomId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Checks if item stock has been changed in the current transaction. Snapshots read in that transaction may include
+	 * changes that are not committed and so are not cached.
+	 * @return {@code true} if item stock has been changed in the current transaction, otherwise {@code false}.
+	 */
+	public static boolean isChangedInTransaction() {
+		return TransactionSynchronizationManager.hasResource(TRANSACTION_CHANGES_KEY);
+	}
+
+	private static void markChangedInTransaction() {
+		if (!TransactionSynchronizationManager.hasResource(TRANSACTION_CHANGES_KEY)) {
+			TransactionSynchronizationManager.bindResource(TRANSACTION_CHANGES_KEY, Boolean.TRUE);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_CHANGES_KEY);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the cached snapshot for the specified item stock.
+	 * @param stockroomId The stockroom id.
+	 * @param itemId The item id.
+	 * @return The snapshot or {@code null} if it is not cached.
+	 */
+	public synchronized ItemStockSnapshot get(Integer stockroomId, Integer itemId) {
+		Pair<Integer, Integer> key = Pair.with(stockroomId, itemId);
+		CachedSnapshot cached = snapshots.get(key);
+		if (cached != null && maxAge > 0 && System.currentTimeMillis() - cached.loaded > maxAge) {
+			snapshots.remove(key);
+			cached = null;
+		}
+
+		if (cached == null) {
+			misses++;
+
+			return null;
+		} else {
+			hits++;
+
+			return cached.snapshot;
+		}
+	}
+
+	/**
+	 * Gets the generation of the cache, which changes each time a snapshot is invalidated. Read the generation before
+	 * loading a snapshot and pass it to {@link #put(ItemStockSnapshot, long)}.
+	 * @return The cache generation.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Adds the specified snapshot unless a snapshot has been invalidated since it was loaded or item stock has been changed
+	 * in the current transaction, in which case the snapshot may be out of date or not committed.
+	 * @param snapshot The snapshot.
+	 * @param readGeneration The generation of the cache before the snapshot was loaded.
+	 * @return {@code true} if the snapshot was added, otherwise {@code false}.
+	 */
+	public synchronized boolean put(ItemStockSnapshot snapshot, long readGeneration) {
+		if (snapshot == null || generation != readGeneration || isChangedInTransaction()) {
+			return false;
+		}
+
+		snapshots.put(Pair.with(snapshot.getStockroomId(), snapshot.getItemId()),
+		    new CachedSnapshot(snapshot, System.currentTimeMillis()));
+
+		return true;
+	}
+
+	public synchronized void remove(Integer stockroomId, Integer itemId) {
+		generation++;
+		snapshots.remove(Pair.with(stockroomId, itemId));
+	}
+
+	public synchronized void removeStockroom(Integer stockroomId) {
+		generation++;
+
+		Iterator<Pair<Integer, Integer>> keys = snapshots.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().getValue0().equals(stockroomId)) {
+				keys.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		generation++;
+		snapshots.clear();
+	}
+
+	public synchronized int size() {
+		return snapshots.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the number of milliseconds that a snapshot is kept.
+	 * @return The maximum snapshot age or 0 if snapshots are kept until they are invalidated.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Checks if the cached snapshots are always up to date with the committed item stock. This is only the case when the
+	 * snapshots are kept until they are invalidated, as an expiring cache is used when other nodes change the item stock.
+	 * @return {@code true} if the snapshots are up to date, otherwise {@code false}.
+	 */
+	public boolean isConsistent() {
+		return maxAge == 0;
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the fraction of the lookups that found a cached snapshot.
+	 * @return The hit ratio, from 0 to 1.
+	 */
+	public synchronized double getHitRatio() {
+		long total = hits + misses;
+
+		return total == 0 ? 0 : (double)hits / total;
+	}
+
+	private static class CachedSnapshot {
+		private final ItemStockSnapshot snapshot;
+		private final long loaded;
+
+		CachedSnapshot(ItemStockSnapshot snapshot, long loaded) {
+			this.snapshot = snapshot;
+			this.loaded = loaded;
+		}
+	}
+}
@@ -13,19 +13,43 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.javatuples.Pair;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseObjectDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.IItemDataService;
 import org.openmrs.module.openhmis.inventory.api.IItemStockDataService;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockScan;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSummaryRecord;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.security.BasicObjectAuthorizationPrivileges;
+import org.openmrs.module.openhmis.inventory.api.util.HibernateCriteriaConstants;
+import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
 /**
  * Data service implementation class for {@link ItemStock}.
@@ -33,6 +57,13 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class ItemStockDataServiceImpl extends BaseObjectDataServiceImpl<ItemStock, BasicObjectAuthorizationPrivileges>
         implements IItemStockDataService {
+	// The number of summary records to save before they are flushed and evicted from the session when rebuilding
+	private static final int REBUILD_CHUNK_SIZE = 100;
+	// The number of items to find the summary records of in a single query when applying the summary changes
+	private static final int SUMMARY_QUERY_CHUNK_SIZE = 500;
+
+	// Bound to a transaction with the summary changes that have not been applied yet, see getPendingSummaryChanges
+	private static final Object SUMMARY_CHANGES_KEY = new Object();
 
 	@Override
 	protected BasicObjectAuthorizationPrivileges getPrivileges() {
@@ -59,4 +90,378 @@ public class ItemStockDataServiceImpl extends BaseObjectDataServiceImpl<ItemStoc
 			}
 		}, Order.asc("s.name"));
 	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public ItemStockScan getItemStockByCode(String itemCode, Stockroom stockroom) {
+		if (StringUtils.isEmpty(itemCode)) {
+			throw new IllegalArgumentException("The item code must be defined.");
+		}
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+
+		// The item is found from the cached item codes and the stock from the cached snapshots
+		Item item = Context.getService(IItemDataService.class).getItemByCode(itemCode);
+		if (item == null) {
+			return null;
+		}
+
+		ItemStockSnapshot snapshot = getItemStockSnapshot(stockroom, item);
+
+		ItemStockScan result = new ItemStockScan();
+		result.setItem(item);
+		result.setStockroom(stockroom);
+		result.setQuantity(snapshot.getQuantity());
+		result.setNearestExpiration(snapshot.getNearestExpiration());
+
+		return result;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public ItemStockSnapshot getItemStockSnapshot(Stockroom stockroom, Item item) {
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+		if (item == null) {
+			throw new IllegalArgumentException("The item must be defined.");
+		}
+
+		ItemStockCache cache = ItemStockCache.getInstance();
+		long generation = 0;
+		if (cache != null) {
+			ItemStockSnapshot snapshot = cache.get(stockroom.getId(), item.getId());
+			if (snapshot != null) {
+				return snapshot;
+			}
+
+			generation = cache.getGeneration();
+		}
+
+		Criteria criteria = getRepository().createCriteria(ItemStock.class);
+		criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
+		criteria.add(Restrictions.eq(HibernateCriteriaConstants.ITEM, item));
+
+		ItemStockSnapshot snapshot =
+		        ItemStockSnapshot.create(stockroom, item, getRepository().selectSingle(ItemStock.class, criteria));
+		if (cache != null) {
+			cache.put(snapshot, generation);
+		}
+
+		return snapshot;
+	}
+
+	@Override
+	public ItemStock save(ItemStock stock) {
+		ItemStock result = super.save(stock);
+		invalidateSnapshot(result.getStockroom(), result.getItem());
+
+		// Querying the summary records here would flush the session on every save so only the changed item stock is kept
+		//  until the summary changes are applied
+		addSummaryChange(result.getStockroom(), result.getItem());
+
+		return result;
+	}
+
+	@Override
+	public void purge(ItemStock stock) {
+		Stockroom stockroom = stock == null ? null : stock.getStockroom();
+		Item item = stock == null ? null : stock.getItem();
+
+		super.purge(stock);
+		invalidateSnapshot(stockroom, item);
+
+		addSummaryChange(stockroom, item);
+	}
+
+	@Override
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	public void rebuildItemStockSummary(Stockroom stockroom) {
+		// The rebuilt records include any summary changes that have not been applied yet
+		PendingSummaryChanges pending = getPendingSummaryChanges();
+		if (pending != null) {
+			Iterator<SummaryChange> iterator = pending.changes.values().iterator();
+			while (iterator.hasNext()) {
+				SummaryChange change = iterator.next();
+				if (stockroom == null || stockroom.getId().equals(change.stockroom.getId())) {
+					iterator.remove();
+				}
+			}
+		}
+
+		Query query;
+		if (stockroom == null) {
+			query = getRepository().createQuery("delete from ItemStockSummaryRecord");
+		} else {
+			query = getRepository().createQuery("delete from ItemStockSummaryRecord r where r.stockroom.id = :stockroomId");
+			query.setParameter("stockroomId", stockroom.getId());
+		}
+		query.executeUpdate();
+
+		Map<Pair<Integer, Integer>, Map<Long, Integer>> totals =
+		        sumByExpirationDay(stockroom == null ? null : stockroom.getId(), null);
+
+		// Save the records a chunk at a time so that they do not all need to be in the session at once
+		List<ItemStockSummaryRecord> records = new ArrayList<ItemStockSummaryRecord>();
+		for (Map.Entry<Pair<Integer, Integer>, Map<Long, Integer>> entry : totals.entrySet()) {
+			Stockroom recordStockroom = getRepository().selectSingle(Stockroom.class, entry.getKey().getValue0());
+			Item item = getRepository().selectSingle(Item.class, entry.getKey().getValue1());
+			records.addAll(saveSummaryRecords(recordStockroom, item, entry.getValue()));
+
+			if (records.size() >= REBUILD_CHUNK_SIZE) {
+				flushAndEvict(records);
+			}
+		}
+		flushAndEvict(records);
+	}
+
+	/**
+	 * Updates the {@link ItemStockSummaryRecord}s for the item stock saved or purged in the current transaction. Saving
+	 * item stock only records which item stock was changed so that the summary records are not queried for every save; they
+	 * are updated when this is called or before the transaction is committed.
+	 * @should update the summary records for the saved item stock
+	 * @should remove the summary records for purged item stock
+	 * @should not update the summary records until the changes are applied
+	 */
+	static void applySummaryChanges() {
+		PendingSummaryChanges pending = getPendingSummaryChanges();
+		if (pending != null) {
+			pending.service.updateSummaryRecords(pending);
+		}
+	}
+
+	/**
+	 * Discards the summary changes that have not been applied in the current transaction. This is used when the item stock
+	 * changes have been rolled back to a savepoint.
+	 * @should not update the summary records for the discarded changes
+	 */
+	static void discardSummaryChanges() {
+		PendingSummaryChanges pending = getPendingSummaryChanges();
+		if (pending != null) {
+			pending.changes.clear();
+		}
+	}
+
+	private void invalidateSnapshot(Stockroom stockroom, Item item) {
+		if (stockroom != null && item != null) {
+			ItemStockCache.invalidate(stockroom.getId(), item.getId());
+		}
+	}
+
+	private void flushAndEvict(List<ItemStockSummaryRecord> records) {
+		Context.flushSession();
+		for (ItemStockSummaryRecord record : records) {
+			Context.evictFromSession(record);
+		}
+
+		records.clear();
+	}
+
+	private void addSummaryChange(Stockroom stockroom, Item item) {
+		if (stockroom == null || item == null || stockroom.getId() == null || item.getId() == null) {
+			return;
+		}
+
+		SummaryChange change = new SummaryChange(stockroom, item);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			// Without a transaction there is nothing to defer the changes to
+			updateSummaryRecords(Collections.singletonList(change));
+			return;
+		}
+
+		PendingSummaryChanges pending = getPendingSummaryChanges();
+		if (pending == null) {
+			pending = new PendingSummaryChanges(this);
+			TransactionSynchronizationManager.bindResource(SUMMARY_CHANGES_KEY, pending);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					applySummaryChanges();
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(SUMMARY_CHANGES_KEY);
+				}
+			});
+		}
+
+		pending.changes.put(change.getKey(), change);
+	}
+
+	/**
+	 * Gets the summary changes that have not been applied in the current transaction. The changes are applied before the
+	 * transaction is committed if they have not been applied already.
+	 * @return The summary changes or {@code null} if there is no transaction or no item stock has been changed in it.
+	 */
+	private static PendingSummaryChanges getPendingSummaryChanges() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+
+		return (PendingSummaryChanges)TransactionSynchronizationManager.getResource(SUMMARY_CHANGES_KEY);
+	}
+
+	private void updateSummaryRecords(PendingSummaryChanges pending) {
+		if (pending.changes.size() == 0) {
+			return;
+		}
+
+		List<SummaryChange> changes = new ArrayList<SummaryChange>(pending.changes.values());
+		pending.changes.clear();
+
+		updateSummaryRecords(changes);
+	}
+
+	private void updateSummaryRecords(List<SummaryChange> changes) {
+		// Find the existing summary records for the changed items a stockroom at a time
+		Map<Integer, List<SummaryChange>> stockroomChanges = new LinkedHashMap<Integer, List<SummaryChange>>();
+		for (SummaryChange change : changes) {
+			List<SummaryChange> list = stockroomChanges.get(change.stockroom.getId());
+			if (list == null) {
+				list = new ArrayList<SummaryChange>();
+				stockroomChanges.put(change.stockroom.getId(), list);
+			}
+			list.add(change);
+		}
+
+		for (List<SummaryChange> list : stockroomChanges.values()) {
+			for (List<SummaryChange> chunk : Lists.partition(list, SUMMARY_QUERY_CHUNK_SIZE)) {
+				updateSummaryRecords(chunk.get(0).stockroom, chunk);
+			}
+		}
+	}
+
+	private void updateSummaryRecords(Stockroom stockroom, List<SummaryChange> changes) {
+		List<Item> items = new ArrayList<Item>(changes.size());
+		List<Integer> itemIds = new ArrayList<Integer>(changes.size());
+		for (SummaryChange change : changes) {
+			items.add(change.item);
+			itemIds.add(change.item.getId());
+		}
+
+		Map<Pair<Integer, Integer>, Map<Long, Integer>> totals = sumByExpirationDay(stockroom.getId(), itemIds);
+
+		Criteria criteria = getRepository().createCriteria(ItemStockSummaryRecord.class);
+		criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
+		criteria.add(Restrictions.in(HibernateCriteriaConstants.ITEM, items));
+
+		for (ItemStockSummaryRecord record : getRepository().select(ItemStockSummaryRecord.class, criteria)) {
+			Map<Long, Integer> itemTotals = totals.get(Pair.with(stockroom.getId(), record.getItem().getId()));
+			Integer total = itemTotals == null ? null : itemTotals.remove(getDayKey(record.getExpiration()));
+
+			if (total == null) {
+				getRepository().delete(record);
+			} else if (record.getQuantity() != total) {
+				record.setQuantity(total);
+			}
+		}
+
+		for (SummaryChange change : changes) {
+			Map<Long, Integer> itemTotals = totals.get(change.getKey());
+			if (itemTotals != null) {
+				saveSummaryRecords(stockroom, change.item, itemTotals);
+			}
+		}
+	}
+
+	private List<ItemStockSummaryRecord> saveSummaryRecords(Stockroom stockroom, Item item, Map<Long, Integer> totals) {
+		List<ItemStockSummaryRecord> records = new ArrayList<ItemStockSummaryRecord>(totals.size());
+		for (Map.Entry<Long, Integer> total : totals.entrySet()) {
+			ItemStockSummaryRecord record = new ItemStockSummaryRecord();
+			record.setStockroom(stockroom);
+			record.setItem(item);
+			record.setExpiration(total.getKey() == null ? null : new Date(total.getKey()));
+			record.setQuantity(total.getValue());
+
+			records.add(getRepository().save(record));
+		}
+
+		return records;
+	}
+
+	/**
+	 * Sums the item stock detail quantities in the database by stockroom, item, and expiration day. The expirations are
+	 * truncated to the day by the database, the same as the liquibase changeset that first created the summary records, so
+	 * that the days do not depend on the time zone of the server. Expirations with a total of zero are not included.
+	 * @param stockroomId The stockroom to sum the details for or {@code null} to sum the details for all stockrooms.
+	 * @param itemIds The items to sum the details for or {@code null} to sum the details for all items.
+	 * @return The totals by expiration day for each stockroom and item.
+	 */
+	private Map<Pair<Integer, Integer>, Map<Long, Integer>> sumByExpirationDay(Integer stockroomId,
+	        List<Integer> itemIds) {
+		String hql = "select d.stockroom.id, d.item.id, cast(d.expiration as date), sum(d.quantity) "
+		        + "from ItemStockDetail d ";
+		if (stockroomId != null) {
+			hql += "where d.stockroom.id = :stockroomId ";
+			if (itemIds != null) {
+				hql += "and d.item.id in (:itemIds) ";
+			}
+		}
+		hql += "group by d.stockroom.id, d.item.id, cast(d.expiration as date)";
+
+		Query query = getRepository().createQuery(hql);
+		if (stockroomId != null) {
+			query.setParameter("stockroomId", stockroomId);
+			if (itemIds != null) {
+				query.setParameterList("itemIds", itemIds);
+			}
+		}
+
+		Map<Pair<Integer, Integer>, Map<Long, Integer>> totals =
+		        new LinkedHashMap<Pair<Integer, Integer>, Map<Long, Integer>>();
+		for (Object result : query.list()) {
+			Object[] row = (Object[])result;
+			int total = Ints.checkedCast((Long)row[3]);
+			if (total == 0) {
+				continue;
+			}
+
+			Pair<Integer, Integer> key = Pair.with((Integer)row[0], (Integer)row[1]);
+			Map<Long, Integer> itemTotals = totals.get(key);
+			if (itemTotals == null) {
+				itemTotals = new HashMap<Long, Integer>();
+				totals.put(key, itemTotals);
+			}
+
+			itemTotals.put(getDayKey((Date)row[2]), total);
+		}
+
+		return totals;
+	}
+
+	private static Long getDayKey(Date day) {
+		return day == null ? null : day.getTime();
+	}
+
+	/**
+	 * The summary changes that have not been applied in a transaction, along with the service that applies them.
+	 */
+	private static class PendingSummaryChanges {
+		private final ItemStockDataServiceImpl service;
+		private final Map<Pair<Integer, Integer>, SummaryChange> changes =
+		        new LinkedHashMap<Pair<Integer, Integer>, SummaryChange>();
+
+		PendingSummaryChanges(ItemStockDataServiceImpl service) {
+			this.service = service;
+		}
+	}
+
+	/**
+	 * The stockroom and item of item stock that was saved or purged.
+	 */
+	private static class SummaryChange {
+		private final Stockroom stockroom;
+		private final Item item;
+
+		SummaryChange(Stockroom stockroom, Item item) {
+			this.stockroom = stockroom;
+			this.item = item;
+		}
+
+		Pair<Integer, Integer> getKey() {
+			return Pair.with(stockroom.getId(), item.getId());
+		}
+	}
 }
@@ -0,0 +1,373 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.openmrs.module.openhmis.inventory.api.allocation.AllocationKey;
+import org.openmrs.module.openhmis.inventory.api.allocation.FefoAllocationStrategy;
+import org.openmrs.module.openhmis.inventory.api.allocation.IAllocationStrategy;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+
+/**
+ * Working view of the details of an {@link ItemStock} that is used to keep a running tally of the available quantities
+ * while the reservations for an operation are calculated.
+ * <p>
+ * The persistent details are never modified. Instead, quantity changes and removed details are recorded in an overlay so
+ * that nothing needs to be copied until it is actually changed. The details are indexed by expiration (sorted) and by
+ * batch operation, and the total quantity for each expiration is kept up to date, so the lookups used to find the source
+ * detail for a reservation do not need to scan every detail of the item stock.
+ * </p>
+ * <p>
+ * The details are also kept in the order defined by an {@link IAllocationStrategy} so that the detail to take stock from
+ * can be found without sorting the details for each reservation.
+ * </p>
+ */
+public class ItemStockWorkingSet {
+	private final ItemStock itemStock;
+
+	// Details with an expiration keyed by the expiration time
+	private final TreeMap<Long, List<ItemStockDetail>> byExpiration = new TreeMap<Long, List<ItemStockDetail>>();
+	private final TreeMap<Long, Integer> expirationTotals = new TreeMap<Long, Integer>();
+	private final List<ItemStockDetail> withoutExpiration = new ArrayList<ItemStockDetail>();
+	private int withoutExpirationTotal;
+
+	// Batch operations are keyed by id once saved, see isSameBatch
+	private final Map<Object, List<ItemStockDetail>> byBatch = new HashMap<Object, List<ItemStockDetail>>();
+	private final List<ItemStockDetail> withoutBatch = new ArrayList<ItemStockDetail>();
+
+	// The working quantity of each detail whose quantity has changed
+	private final Map<ItemStockDetail, Integer> quantities = new IdentityHashMap<ItemStockDetail, Integer>();
+	private int size;
+
+	// The details sorted by the allocation strategy
+	private final Comparator<AllocationKey> comparator;
+	private final TreeSet<AllocationKey> allocationOrder;
+	private final Map<ItemStockDetail, AllocationKey> keys = new IdentityHashMap<ItemStockDetail, AllocationKey>();
+
+	public ItemStockWorkingSet(ItemStock itemStock) {
+		this(itemStock, new FefoAllocationStrategy());
+	}
+
+	/**
+	 * Creates a new working set for the specified item stock.
+	 * @param itemStock The item stock.
+	 * @param strategy The strategy used to order the details.
+	 */
+	public ItemStockWorkingSet(ItemStock itemStock, final IAllocationStrategy strategy) {
+		if (itemStock == null) {
+			throw new IllegalArgumentException("The item stock must be defined.");
+		}
+		if (strategy == null) {
+			throw new IllegalArgumentException("The allocation strategy must be defined.");
+		}
+
+		this.itemStock = itemStock;
+
+		// Details that the strategy considers equal are ordered by their position in the item stock
+		this.comparator = new Comparator<AllocationKey>() {
+			@Override
+			public int compare(AllocationKey key1, AllocationKey key2) {
+				int result = strategy.compare(key1, key2);
+				if (result == 0) {
+					result = key1.getSequence() - key2.getSequence();
+				}
+
+				return result;
+			}
+		};
+		this.allocationOrder = new TreeSet<AllocationKey>(comparator);
+
+		if (itemStock.getDetails() != null) {
+			int sequence = 0;
+			for (ItemStockDetail detail : itemStock.getDetails()) {
+				add(detail, new AllocationKey(detail, sequence++));
+			}
+		}
+	}
+
+	/**
+	 * Gets the persistent item stock that this working set was created from.
+	 * @return The item stock.
+	 */
+	public ItemStock getItemStock() {
+		return itemStock;
+	}
+
+	/**
+	 * Gets the number of details that have not been removed.
+	 * @return The number of details.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the working quantity of the specified detail.
+	 * @param detail The detail.
+	 * @return The working quantity.
+	 */
+	public int getQuantity(ItemStockDetail detail) {
+		Integer quantity = quantities.get(detail);
+
+		return quantity == null ? detail.getQuantity() : quantity;
+	}
+
+	/**
+	 * Sets the working quantity of the specified detail. The persistent detail quantity is not changed.
+	 * @param detail The detail.
+	 * @param quantity The new working quantity.
+	 */
+	public void setQuantity(ItemStockDetail detail, int quantity) {
+		updateTotal(detail.getExpiration(), quantity - getQuantity(detail));
+
+		quantities.put(detail, quantity);
+	}
+
+	/**
+	 * Removes the specified detail from the working set. The persistent detail is not removed from the item stock.
+	 * @param detail The detail to remove.
+	 */
+	public void remove(ItemStockDetail detail) {
+		List<ItemStockDetail> expirationDetails = getExpirationDetails(detail.getExpiration());
+		if (!removeReference(expirationDetails, detail)) {
+			return;
+		}
+
+		if (expirationDetails.size() == 0 && detail.getExpiration() != null) {
+			byExpiration.remove(detail.getExpiration().getTime());
+		}
+
+		List<ItemStockDetail> batchDetails =
+		        detail.getBatchOperation() == null ? withoutBatch : byBatch.get(getBatchKey(detail.getBatchOperation()));
+		if (batchDetails != null) {
+			removeReference(batchDetails, detail);
+			if (batchDetails.size() == 0 && detail.getBatchOperation() != null) {
+				byBatch.remove(getBatchKey(detail.getBatchOperation()));
+			}
+		}
+
+		updateTotal(detail.getExpiration(), -getQuantity(detail));
+		if (detail.getExpiration() != null && byExpiration.get(detail.getExpiration().getTime()) == null) {
+			expirationTotals.remove(detail.getExpiration().getTime());
+		}
+
+		quantities.remove(detail);
+		allocationOrder.remove(keys.remove(detail));
+		size--;
+	}
+
+	/**
+	 * Removes all the details with the specified expiration.
+	 * @param expiration The expiration or {@code null} to remove the details without an expiration.
+	 */
+	public void removeByExpiration(Date expiration) {
+		List<ItemStockDetail> details = findByExpiration(expiration);
+		for (ItemStockDetail detail : details) {
+			remove(detail);
+		}
+	}
+
+	/**
+	 * Gets the total working quantity of the details with the specified expiration.
+	 * @param expiration The expiration or {@code null} for the details without an expiration.
+	 * @return The total quantity.
+	 */
+	public int getExpirationTotal(Date expiration) {
+		if (expiration == null) {
+			return withoutExpirationTotal;
+		}
+
+		Integer total = expirationTotals.get(expiration.getTime());
+
+		return total == null ? 0 : total;
+	}
+
+	/**
+	 * Finds the details with the specified expiration.
+	 * @param expiration The expiration or {@code null} for the details without an expiration.
+	 * @return The details.
+	 */
+	public List<ItemStockDetail> findByExpiration(Date expiration) {
+		return new ArrayList<ItemStockDetail>(getExpirationDetails(expiration));
+	}
+
+	/**
+	 * Finds the details with the specified batch operation.
+	 * @param batchOperation The batch operation or {@code null} for the details without a batch operation.
+	 * @return The details.
+	 */
+	public List<ItemStockDetail> findByBatch(StockOperation batchOperation) {
+		List<ItemStockDetail> details = batchOperation == null ? withoutBatch : byBatch.get(getBatchKey(batchOperation));
+
+		return details == null ? new ArrayList<ItemStockDetail>() : new ArrayList<ItemStockDetail>(details);
+	}
+
+	/**
+	 * Finds the detail that the allocation strategy would take stock from first.
+	 * @return The detail or {@code null} if there are no details.
+	 */
+	public ItemStockDetail findBest() {
+		return allocationOrder.size() == 0 ? null : allocationOrder.first().getDetail();
+	}
+
+	/**
+	 * Finds the detail of the specified details that the allocation strategy would take stock from first.
+	 * @param details The details to select from.
+	 * @return The detail or {@code null} if none of the details are in this working set.
+	 */
+	public ItemStockDetail findBest(Collection<ItemStockDetail> details) {
+		if (details == null) {
+			return null;
+		}
+
+		AllocationKey best = null;
+		for (ItemStockDetail detail : details) {
+			AllocationKey key = keys.get(detail);
+			if (key != null && (best == null || comparator.compare(key, best) < 0)) {
+				best = key;
+			}
+		}
+
+		return best == null ? null : best.getDetail();
+	}
+
+	/**
+	 * Finds the detail with the specified expiration and batch operation. If there is only a single detail and it has a
+	 * negative quantity then that detail is returned regardless of the expiration and batch operation.
+	 * @param expiration The expiration.
+	 * @param batchOperation The batch operation.
+	 * @return The detail or {@code null} if no matching detail was found.
+	 */
+	public ItemStockDetail findDetail(Date expiration, StockOperation batchOperation) {
+		if (size == 0) {
+			return null;
+		}
+
+		if (size == 1) {
+			ItemStockDetail detail =
+			        withoutExpiration.size() > 0 ? withoutExpiration.get(0) : byExpiration.firstEntry().getValue().get(0);
+			if (getQuantity(detail) < 0) {
+				// This detail can be used for all transactions, regardless of batch and expiration
+				return detail;
+			}
+		}
+
+		for (ItemStockDetail detail : getExpirationDetails(expiration)) {
+			if (isSameBatch(detail.getBatchOperation(), batchOperation)) {
+				return detail;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks if the specified batch operations are the same operation. Saved operations are compared by id because the
+	 * following operations are evicted from the session while they are replayed, so the same operation can be loaded into
+	 * more than one instance.
+	 * @param batch1 The first batch operation.
+	 * @param batch2 The second batch operation.
+	 * @return {@code true} if the batch operations are the same, otherwise {@code false}.
+	 */
+	public static boolean isSameBatch(StockOperation batch1, StockOperation batch2) {
+		if (batch1 == batch2) {
+			return true;
+		}
+		if (batch1 == null || batch2 == null || batch1.getId() == null) {
+			return false;
+		}
+
+		return batch1.getId().equals(batch2.getId());
+	}
+
+	private static Object getBatchKey(StockOperation batchOperation) {
+		return batchOperation.getId() == null ? batchOperation : batchOperation.getId();
+	}
+
+	private void add(ItemStockDetail detail, AllocationKey allocationKey) {
+		if (detail.getExpiration() == null) {
+			withoutExpiration.add(detail);
+		} else {
+			Long key = detail.getExpiration().getTime();
+			List<ItemStockDetail> details = byExpiration.get(key);
+			if (details == null) {
+				details = new ArrayList<ItemStockDetail>();
+				byExpiration.put(key, details);
+			}
+			details.add(detail);
+		}
+
+		if (detail.getBatchOperation() == null) {
+			withoutBatch.add(detail);
+		} else {
+			List<ItemStockDetail> details = byBatch.get(getBatchKey(detail.getBatchOperation()));
+			if (details == null) {
+				details = new ArrayList<ItemStockDetail>();
+				byBatch.put(getBatchKey(detail.getBatchOperation()), details);
+			}
+			details.add(detail);
+		}
+
+		updateTotal(detail.getExpiration(), detail.getQuantity());
+		keys.put(detail, allocationKey);
+		allocationOrder.add(allocationKey);
+		size++;
+	}
+
+	private List<ItemStockDetail> getExpirationDetails(Date expiration) {
+		if (expiration == null) {
+			return withoutExpiration;
+		}
+
+		List<ItemStockDetail> details = byExpiration.get(expiration.getTime());
+
+		return details == null ? Collections.<ItemStockDetail> emptyList() : details;
+	}
+
+	private void updateTotal(Date expiration, int change) {
+		if (expiration == null) {
+			withoutExpirationTotal += change;
+		} else {
+			Long key = expiration.getTime();
+			Integer total = expirationTotals.get(key);
+			expirationTotals.put(key, (total == null ? 0 : total) + change);
+		}
+	}
+
+	private static boolean removeReference(List<ItemStockDetail> details, ItemStockDetail detail) {
+		// Details are compared by reference because the working set only contains the persistent detail instances
+		for (int i = 0; i < details.size(); i++) {
+			if (details.get(i) == detail) {
+				details.remove(i);
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
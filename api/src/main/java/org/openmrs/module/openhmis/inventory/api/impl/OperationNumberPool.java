@@ -0,0 +1,340 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+
+/**
+ * In-memory pool of operation numbers that are reserved in blocks from an {@link IOperationNumberSource}. This keeps the
+ * identifier source (which is synchronized and database backed) off the path of every new operation.
+ * <p>
+ * When the number of pooled operation numbers drops below the low-water mark a new block is reserved in the background.
+ * If the pool is empty the caller waits for the block. Blocks are always reserved in a separate thread so that they are
+ * committed by the source even if the caller's transaction is rolled back; otherwise the source could hand out the
+ * pooled numbers again. Unused operation numbers are returned to the source when the pool is stopped or cleared.
+ * </p>
+ */
+public class OperationNumberPool {
+	public static final long DEFAULT_RESERVE_TIMEOUT_MILLISECONDS = 30000;
+
+	private static final Log LOG = LogFactory.getLog(OperationNumberPool.class);
+
+	private static volatile OperationNumberPool instance;
+
+	private final int blockSize;
+	private final int lowWaterMark;
+	private final IOperationNumberSource source;
+	private final ConcurrentLinkedQueue<String> numbers = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicBoolean refilling = new AtomicBoolean();
+	private final AtomicLong reserveCount = new AtomicLong();
+	private final Object reserveLock = new Object();
+	private final Object available = new Object();
+
+	// Guarded by available
+	private long refillCount;
+	private Exception refillError;
+	private boolean refillEmpty;
+
+	private DaemonToken daemonToken;
+	private volatile boolean running;
+	private long reserveTimeout = DEFAULT_RESERVE_TIMEOUT_MILLISECONDS;
+
+	/**
+	 * Creates a new operation number pool that refills when a quarter of a block is left.
+	 * @param blockSize The number of operation numbers reserved at a time.
+	 * @param source The source of the operation numbers.
+	 */
+	public OperationNumberPool(int blockSize, IOperationNumberSource source) {
+		this(blockSize, Math.max(1, blockSize / 4), source);
+	}
+
+	/**
+	 * Creates a new operation number pool.
+	 * @param blockSize The number of operation numbers reserved at a time.
+	 * @param lowWaterMark The number of pooled operation numbers below which a new block is reserved in the background.
+	 * @param source The source of the operation numbers.
+	 */
+	public OperationNumberPool(int blockSize, int lowWaterMark, IOperationNumberSource source) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("The block size must be greater than zero.");
+		}
+		if (lowWaterMark < 0 || lowWaterMark >= blockSize) {
+			throw new IllegalArgumentException("The low-water mark must be zero or more and less than the block size.");
+		}
+		if (source == null) {
+			throw new IllegalArgumentException("The operation number source must be defined.");
+		}
+
+		this.blockSize = blockSize;
+		this.lowWaterMark = lowWaterMark;
+		this.source = source;
+	}
+
+	/**
+	 * Gets the running operation number pool.
+	 * @return The pool or {@code null} if operation numbers are not pooled.
+	 */
+	public static OperationNumberPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Starts the specified pool and makes it the running pool, stopping any previously running pool.
+	 * @param pool The pool to start or {@code null} to only stop the running pool.
+	 */
+	public static synchronized void setInstance(OperationNumberPool pool) {
+		if (instance != null) {
+			instance.stop();
+		}
+
+		instance = pool;
+		if (pool != null) {
+			pool.start();
+		}
+	}
+
+	/**
+	 * Sets the token used to refill the pool in a daemon thread. The identifier source can only be called from a daemon
+	 * thread; without a token the pool is refilled in a plain thread.
+	 * @param daemonToken The module daemon token.
+	 */
+	public void setDaemonToken(DaemonToken daemonToken) {
+		this.daemonToken = daemonToken;
+	}
+
+	/**
+	 * Sets how long a caller waits for a new block when the pool is empty.
+	 * @param reserveTimeout The timeout in milliseconds.
+	 */
+	public void setReserveTimeout(long reserveTimeout) {
+		this.reserveTimeout = reserveTimeout;
+	}
+
+	public synchronized void start() {
+		running = true;
+	}
+
+	/**
+	 * Stops the pool and returns any unused operation numbers to the source.
+	 */
+	public synchronized void stop() {
+		running = false;
+
+		clear();
+
+		synchronized (available) {
+			available.notifyAll();
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Gets the next operation number.
+	 * @return The operation number.
+	 * @throws APIException if no operation number could be reserved.
+	 */
+	public String next() {
+		if (!running) {
+			throw new IllegalStateException("The operation number pool is not running.");
+		}
+
+		String number = take();
+		if (number == null) {
+			// The pool is empty so the caller has to wait for a new block
+			number = waitForNumber();
+		}
+
+		if (size.get() < lowWaterMark) {
+			refillAsync();
+		}
+
+		return number;
+	}
+
+	/**
+	 * Removes all the pooled operation numbers and returns them to the source. This should be called when the identifier
+	 * source changes so that numbers from the old source are no longer used.
+	 */
+	public void clear() {
+		List<String> unused = new ArrayList<String>();
+		synchronized (reserveLock) {
+			String number;
+			while ((number = take()) != null) {
+				unused.add(number);
+			}
+		}
+
+		if (unused.size() > 0) {
+			try {
+				source.release(unused);
+			} catch (Exception ex) {
+				LOG.warn("Could not return " + unused.size() + " unused operation numbers.", ex);
+			}
+		}
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getLowWaterMark() {
+		return lowWaterMark;
+	}
+
+	/**
+	 * Gets the number of operation numbers currently in the pool.
+	 * @return The pool size.
+	 */
+	public int getSize() {
+		return size.get();
+	}
+
+	/**
+	 * Gets the number of blocks that have been reserved from the source.
+	 * @return The number of reserved blocks.
+	 */
+	public long getReserveCount() {
+		return reserveCount.get();
+	}
+
+	private String waitForNumber() {
+		long deadline = System.currentTimeMillis() + reserveTimeout;
+		synchronized (available) {
+			long startRefillCount = refillCount;
+			String number;
+			while ((number = take()) == null) {
+				if (!running) {
+					throw new IllegalStateException("The operation number pool was stopped.");
+				}
+
+				// Fail if a refill finished while waiting and could not reserve any operation numbers
+				if (refillCount > startRefillCount) {
+					if (refillError != null) {
+						throw new APIException("Could not reserve operation numbers.", refillError);
+					}
+					if (refillEmpty) {
+						throw new APIException("The operation number source did not return any operation numbers.");
+					}
+				}
+
+				refillAsync();
+
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new APIException("Timed out waiting for operation numbers to be reserved.");
+				}
+
+				try {
+					available.wait(remaining);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+
+					throw new APIException("Interrupted while waiting for operation numbers to be reserved.", ie);
+				}
+			}
+
+			return number;
+		}
+	}
+
+	private String take() {
+		String number = numbers.poll();
+		if (number != null) {
+			size.decrementAndGet();
+		}
+
+		return number;
+	}
+
+	private void add(List<String> block) {
+		if (!running) {
+			// The pool was stopped while the block was being reserved
+			if (block.size() > 0) {
+				source.release(block);
+			}
+
+			return;
+		}
+
+		numbers.addAll(block);
+		size.addAndGet(block.size());
+	}
+
+	private List<String> reserve() {
+		reserveCount.incrementAndGet();
+
+		List<String> block = source.reserve(blockSize);
+
+		return block == null ? new ArrayList<String>() : new ArrayList<String>(block);
+	}
+
+	private void refillAsync() {
+		if (!refilling.compareAndSet(false, true)) {
+			return;
+		}
+
+		Runnable refill = new Runnable() {
+			@Override
+			public void run() {
+				Exception error = null;
+				boolean empty = false;
+				try {
+					synchronized (reserveLock) {
+						if (running && (size.get() == 0 || size.get() < lowWaterMark)) {
+							List<String> block = reserve();
+							empty = block.size() == 0;
+							add(block);
+						}
+					}
+				} catch (Exception ex) {
+					// Callers waiting on an empty pool will fail with this error
+					LOG.warn("Could not refill the operation number pool.", ex);
+					error = ex;
+				} finally {
+					refilling.set(false);
+
+					synchronized (available) {
+						refillCount++;
+						refillError = error;
+						refillEmpty = empty;
+						available.notifyAll();
+					}
+				}
+			}
+		};
+
+		if (daemonToken != null) {
+			Daemon.runInDaemonThread(refill, daemonToken);
+		} else {
+			Thread thread = new Thread(refill, "openhmis-inventory-operation-numbers");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.inventory.api.IDepartmentDataService;
+import org.openmrs.module.openhmis.inventory.api.IInstitutionDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationTypeDataService;
+import org.openmrs.module.openhmis.inventory.api.model.Department;
+import org.openmrs.module.openhmis.inventory.api.model.IStockOperationType;
+import org.openmrs.module.openhmis.inventory.api.model.Institution;
+
+/**
+ * Keeps the id of each reference data object by uuid so that looking up reference data by uuid does not need to query the
+ * database. Only the ids are kept; the objects themselves are loaded by id so that they come from the current session or
+ * the second-level cache rather than being shared, detached, between sessions.
+ * <p>
+ * The data services remove an object from the registry when it is saved, retired, or purged so that it is looked up again
+ * the next time it is requested.
+ * </p>
+ * @param <E> The reference data type.
+ */
+public class ReferenceDataRegistry<E extends OpenmrsObject> {
+	public static final ReferenceDataRegistry<IStockOperationType> OPERATION_TYPES =
+	        new ReferenceDataRegistry<IStockOperationType>();
+	public static final ReferenceDataRegistry<Department> DEPARTMENTS = new ReferenceDataRegistry<Department>();
+	public static final ReferenceDataRegistry<Institution> INSTITUTIONS = new ReferenceDataRegistry<Institution>();
+
+	private final ConcurrentHashMap<String, Integer> idsByUuid = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentHashMap<Integer, String> uuidsById = new ConcurrentHashMap<Integer, String>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Loads all the operation types, departments, and institutions into the registries.
+	 */
+	public static void warmAll() {
+		OPERATION_TYPES.warm(Context.getService(IStockOperationTypeDataService.class).getAll(true));
+		DEPARTMENTS.warm(Context.getService(IDepartmentDataService.class).getAll(true));
+		INSTITUTIONS.warm(Context.getService(IInstitutionDataService.class).getAll(true));
+	}
+
+	/**
+	 * Removes all the objects from the registries.
+	 */
+	public static void clearAll() {
+		OPERATION_TYPES.clear();
+		DEPARTMENTS.clear();
+		INSTITUTIONS.clear();
+	}
+
+	/**
+	 * Gets the id of the object with the specified uuid.
+	 * @param uuid The object uuid.
+	 * @return The object id or {@code null} if the object is not in the registry.
+	 */
+	public Integer getId(String uuid) {
+		Integer id = uuid == null ? null : idsByUuid.get(uuid);
+		if (id == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		return id;
+	}
+
+	/**
+	 * Adds the specified object to the registry.
+	 * @param entity The saved object.
+	 */
+	public void put(E entity) {
+		if (entity == null || entity.getId() == null || entity.getUuid() == null) {
+			return;
+		}
+
+		String previousUuid = uuidsById.put(entity.getId(), entity.getUuid());
+		if (previousUuid != null && !previousUuid.equals(entity.getUuid())) {
+			idsByUuid.remove(previousUuid);
+		}
+		idsByUuid.put(entity.getUuid(), entity.getId());
+	}
+
+	/**
+	 * Adds the specified objects to the registry.
+	 * @param entities The saved objects.
+	 */
+	public void warm(Collection<? extends E> entities) {
+		if (entities != null) {
+			for (E entity : entities) {
+				put(entity);
+			}
+		}
+	}
+
+	/**
+	 * Removes the specified object from the registry.
+	 * @param entity The object.
+	 */
+	public void remove(E entity) {
+		if (entity == null) {
+			return;
+		}
+
+		if (entity.getId() != null) {
+			String uuid = uuidsById.remove(entity.getId());
+			if (uuid != null) {
+				idsByUuid.remove(uuid);
+			}
+		}
+		if (entity.getUuid() != null) {
+			Integer id = idsByUuid.remove(entity.getUuid());
+			if (id != null) {
+				uuidsById.remove(id);
+			}
+		}
+	}
+
+	/**
+	 * Removes the object with the specified uuid from the registry.
+	 * @param uuid The object uuid.
+	 */
+	public void removeUuid(String uuid) {
+		Integer id = uuid == null ? null : idsByUuid.remove(uuid);
+		if (id != null) {
+			uuidsById.remove(id);
+		}
+	}
+
+	public void clear() {
+		idsByUuid.clear();
+		uuidsById.clear();
+	}
+
+	public int size() {
+		return idsByUuid.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+}
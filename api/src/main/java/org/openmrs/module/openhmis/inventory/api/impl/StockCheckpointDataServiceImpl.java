@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.module.openhmis.commons.api.PagingInfo;
+import org.openmrs.module.openhmis.commons.api.Utility;
+import org.openmrs.module.openhmis.commons.api.entity.impl.BaseObjectDataServiceImpl;
+import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.IStockCheckpointDataService;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.openmrs.module.openhmis.inventory.api.security.BasicObjectAuthorizationPrivileges;
+import org.openmrs.module.openhmis.inventory.api.util.HibernateCriteriaConstants;
+import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Data service implementation class for {@link StockCheckpoint}s.
+ */
+@Transactional
+public class StockCheckpointDataServiceImpl
+        extends BaseObjectDataServiceImpl<StockCheckpoint, BasicObjectAuthorizationPrivileges>
+        implements IStockCheckpointDataService {
+	@Override
+	protected BasicObjectAuthorizationPrivileges getPrivileges() {
+		return new BasicObjectAuthorizationPrivileges();
+	}
+
+	@Override
+	protected void validate(StockCheckpoint object) {
+
+	}
+
+	@Override
+	protected Order[] getDefaultSort() {
+		return new Order[] { Order.desc(HibernateCriteriaConstants.OPERATION_DATE),
+		        Order.desc(HibernateCriteriaConstants.OPERATION_ORDER) };
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	public List<StockCheckpoint> getCheckpointsByStockroom(final Stockroom stockroom, PagingInfo paging) {
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+
+		return executeCriteria(StockCheckpoint.class, paging, new Action1<Criteria>() {
+			@Override
+			public void apply(Criteria criteria) {
+				criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
+			}
+		}, getDefaultSort());
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	public StockCheckpoint getCheckpointBefore(final Stockroom stockroom, Date operationDate, final Integer operationOrder) {
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+		if (operationDate == null) {
+			throw new IllegalArgumentException("The operation date must be defined.");
+		}
+
+		// Checkpoints are stored with the day of the last included operation so the time is not considered here
+		final Date day = getDay(operationDate);
+
+		List<StockCheckpoint> results =
+		        executeCriteria(StockCheckpoint.class, null, new Action1<Criteria>() {
+			        @Override
+			        public void apply(Criteria criteria) {
+				        criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
+				        if (operationOrder == null) {
+					        criteria.add(Restrictions.lt(HibernateCriteriaConstants.OPERATION_DATE, day));
+				        } else {
+					        criteria.add(Restrictions.or(
+					            Restrictions.lt(HibernateCriteriaConstants.OPERATION_DATE, day),
+					            Restrictions.and(Restrictions.eq(HibernateCriteriaConstants.OPERATION_DATE, day),
+					                Restrictions.lt(HibernateCriteriaConstants.OPERATION_ORDER, operationOrder))));
+				        }
+				        criteria.setMaxResults(1);
+			        }
+		        }, getDefaultSort());
+
+		if (results == null || results.size() == 0) {
+			return null;
+		} else {
+			return results.get(0);
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	public boolean hasCheckpointsFrom(Stockroom stockroom, Date operationDate, Integer operationOrder) {
+		if (operationDate == null) {
+			throw new IllegalArgumentException("The operation date must be defined.");
+		}
+
+		Query query = getRepository().createQuery("select c.id from StockCheckpoint c " + getInvalidateWhere(stockroom));
+		setInvalidateParameters(query, stockroom, operationDate, operationOrder);
+		query.setMaxResults(1);
+
+		return query.list().size() > 0;
+	}
+
+	@Override
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	public void invalidateCheckpoints(Stockroom stockroom, Date operationDate, Integer operationOrder) {
+		if (operationDate == null) {
+			throw new IllegalArgumentException("The operation date must be defined.");
+		}
+
+		String where = getInvalidateWhere(stockroom);
+
+		// The details need to be deleted first as bulk deletes do not cascade
+		Query detailQuery = getRepository().createQuery(
+		    "delete from StockCheckpointDetail d where d.checkpoint.id in (select c.id from StockCheckpoint c " + where
+		            + ")");
+		setInvalidateParameters(detailQuery, stockroom, operationDate, operationOrder);
+		detailQuery.executeUpdate();
+
+		Query query = getRepository().createQuery("delete from StockCheckpoint c " + where);
+		setInvalidateParameters(query, stockroom, operationDate, operationOrder);
+		query.executeUpdate();
+	}
+
+	@Override
+	@Authorized({ PrivilegeConstants.MANAGE_OPERATIONS })
+	public void purgeOldCheckpoints(Stockroom stockroom, int keep) {
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+
+		List<StockCheckpoint> checkpoints = getCheckpointsByStockroom(stockroom, null);
+		for (int i = Math.max(keep, 0); i < checkpoints.size(); i++) {
+			purge(checkpoints.get(i));
+		}
+	}
+
+	private String getInvalidateWhere(Stockroom stockroom) {
+		String where = "where (c.operationDate > :day or (c.operationDate = :day and c.operationOrder >= :order))";
+		if (stockroom != null) {
+			where += " and c.stockroom.id = :stockroomId";
+		}
+
+		return where;
+	}
+
+	private void setInvalidateParameters(Query query, Stockroom stockroom, Date operationDate, Integer operationOrder) {
+		query.setTimestamp("day", getDay(operationDate));
+		query.setInteger("order", operationOrder == null ? 0 : operationOrder);
+		if (stockroom != null) {
+			query.setInteger("stockroomId", stockroom.getId());
+		}
+	}
+
+	private Date getDay(Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		Utility.clearCalendarTime(cal);
+
+		return cal.getTime();
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.javatuples.Pair;
+import org.openmrs.api.APIException;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+/**
+ * Provides the JVM-local locks used to serialize changes to item stock. Item stock is locked by (stockroom, item) pair using
+ * a fixed set of lock stripes so that operations on unrelated stock can be processed in parallel. Stripes are always
+ * acquired in ascending stripe order so that two operations touching the same stockrooms (for example, transfers in
+ * opposite directions) cannot deadlock.
+ * <p>
+ * Operations that must touch item stock that cannot be determined up front (for example, rolling back and reapplying
+ * following operations) can acquire an exclusive lock, which waits for all striped locks to be released and blocks any new
+ * striped locks until it is released.
+ * </p>
+ */
+public class StockLockManager implements IStockLockProvider {
+	public static final int DEFAULT_STRIPE_COUNT = 256;
+
+	// How long to wait for a stripe that is requested while other stripes are already held by the current thread
+	private static final long NESTED_LOCK_TIMEOUT_SECONDS = 30;
+
+	private final ReentrantReadWriteLock exclusiveLock = new ReentrantReadWriteLock();
+	private final ReentrantLock[] stripes;
+	private final int mask;
+
+	public StockLockManager() {
+		this(DEFAULT_STRIPE_COUNT);
+	}
+
+	/**
+	 * Creates a new lock manager with the specified number of stripes.
+	 * @param stripeCount The number of stripes; this will be rounded up to the next power of two.
+	 */
+	public StockLockManager(int stripeCount) {
+		if (stripeCount <= 0) {
+			throw new IllegalArgumentException("The stripe count must be greater than zero.");
+		}
+
+		int size = 1;
+		while (size < stripeCount) {
+			size <<= 1;
+		}
+
+		stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * Locks the item stock for the specified (stockroom, item) pairs. Callers must release the returned lock in a finally
+	 * block.
+	 * @param keys The stockroom and item pairs to lock.
+	 * @return The acquired lock.
+	 */
+	@Override
+	public StockLock lockShared(Collection<Pair<Stockroom, Item>> keys) {
+		TreeSet<Integer> stripeIndexes = new TreeSet<Integer>();
+		if (keys != null) {
+			for (Pair<Stockroom, Item> key : keys) {
+				stripeIndexes.add(getStripe(key.getValue0(), key.getValue1()));
+			}
+		}
+
+		return lockStripes(stripeIndexes);
+	}
+
+	/**
+	 * Locks all item stock. Callers must release the returned lock in a finally block.
+	 * @return The acquired lock.
+	 * @throws IllegalStateException if the current thread already holds a striped lock.
+	 */
+	@Override
+	public StockLock lockExclusive() {
+		if (exclusiveLock.getReadHoldCount() > 0 && !exclusiveLock.isWriteLockedByCurrentThread()) {
+			// A read lock cannot be upgraded to a write lock; waiting here would deadlock this thread.
+			throw new IllegalStateException("An exclusive stock lock cannot be acquired while holding a striped stock lock.");
+		}
+
+		exclusiveLock.writeLock().lock();
+
+		return new StockLock(this, true, null);
+	}
+
+	/**
+	 * Gets whether the current thread holds the exclusive lock.
+	 * @return {@code true} if the current thread holds the exclusive lock, otherwise {@code false}.
+	 */
+	public boolean isExclusiveHeldByCurrentThread() {
+		return exclusiveLock.isWriteLockedByCurrentThread();
+	}
+
+	/**
+	 * Gets the stripe index for the specified stockroom and item.
+	 * @param stockroom The stockroom.
+	 * @param item The item.
+	 * @return The stripe index.
+	 */
+	public int getStripe(Stockroom stockroom, Item item) {
+		int hash = 17;
+		hash = 31 * hash + (stockroom == null || stockroom.getUuid() == null ? 0 : stockroom.getUuid().hashCode());
+		hash = 31 * hash + (item == null || item.getUuid() == null ? 0 : item.getUuid().hashCode());
+
+		// Spread the hash bits so that similar uuids do not end up in the same stripe
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+		return hash & mask;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	private StockLock lockStripes(TreeSet<Integer> stripeIndexes) {
+		exclusiveLock.readLock().lock();
+
+		if (exclusiveLock.isWriteLockedByCurrentThread()) {
+			// The current thread already owns all the item stock so there is no need to lock any stripes
+			return new StockLock(this, false, null);
+		}
+
+		boolean nested = false;
+		for (ReentrantLock stripe : stripes) {
+			if (stripe.isHeldByCurrentThread()) {
+				nested = true;
+				break;
+			}
+		}
+
+		List<ReentrantLock> acquired = new ArrayList<ReentrantLock>(stripeIndexes.size());
+		try {
+			for (Integer index : stripeIndexes) {
+				ReentrantLock stripe = stripes[index];
+
+				if (!nested || stripe.isHeldByCurrentThread()) {
+					stripe.lock();
+				} else if (!stripe.tryLock(NESTED_LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					// Stripes taken out of order could deadlock so do not wait forever
+					throw new APIException("Could not lock the item stock for this operation, please try again.");
+				}
+
+				acquired.add(stripe);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			release(false, acquired);
+
+			throw new APIException("Interrupted while waiting for the item stock lock.", ie);
+		} catch (RuntimeException ex) {
+			release(false, acquired);
+
+			throw ex;
+		}
+
+		return new StockLock(this, false, acquired);
+	}
+
+	private void release(boolean exclusive, List<ReentrantLock> acquired) {
+		if (exclusive) {
+			exclusiveLock.writeLock().unlock();
+		} else {
+			if (acquired != null) {
+				// Release in the reverse order from which the stripes were acquired
+				for (int i = acquired.size() - 1; i >= 0; i--) {
+					acquired.get(i).unlock();
+				}
+			}
+
+			exclusiveLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Represents a set of item stock locks acquired from a {@link StockLockManager}.
+	 */
+	public static final class StockLock implements IStockLock {
+		private final StockLockManager manager;
+		private final boolean exclusive;
+		private final List<ReentrantLock> stripes;
+		private boolean released;
+
+		private StockLock(StockLockManager manager, boolean exclusive, List<ReentrantLock> stripes) {
+			this.manager = manager;
+			this.exclusive = exclusive;
+			this.stripes = stripes;
+		}
+
+		@Override
+		public boolean isExclusive() {
+			return exclusive;
+		}
+
+		@Override
+		public void release() {
+			if (!released) {
+				released = true;
+
+				manager.release(exclusive, stripes);
+			}
+		}
+	}
+}
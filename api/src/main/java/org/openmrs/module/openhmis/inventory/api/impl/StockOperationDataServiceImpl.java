@@ -13,7 +13,9 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -23,17 +25,18 @@ import org.hibernate.Criteria;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.APIException;
-import org.openmrs.module.openhmis.commons.api.CustomizedOrderBy;
 import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.Utility;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseCustomizableMetadataDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.CursorPagingInfo;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
 import org.openmrs.module.openhmis.inventory.api.model.IStockOperationType;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
@@ -54,6 +57,14 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
         implements IStockOperationDataService {
 	private static final int MAX_OPERATION_NUMBER_LENGTH = 255;
 
+	private static final CursorPaging.Key<StockOperation> DATE_CREATED_KEY =
+	        new CursorPaging.Key<StockOperation>(HibernateCriteriaConstants.DATE_CREATED, false) {
+		        @Override
+		        public Object getValue(StockOperation operation) {
+			        return operation.getDateCreated();
+		        }
+	        };
+
 	@Override
 	protected BasicMetadataAuthorizationPrivileges getPrivileges() {
 		return new BasicMetadataAuthorizationPrivileges();
@@ -140,7 +151,7 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 		// Get all the roles for this user (this traverses the role relationships to get any parent roles)
 		final Set<Role> roles = user.getAllRoles();
 
-		return executeCriteria(StockOperation.class, paging, new Action1<Criteria>() {
+		Action1<Criteria> action = new Action1<Criteria>() {
 			@Override
 			public void apply(Criteria criteria) {
 				DetachedCriteria subQuery = DetachedCriteria.forClass(IStockOperationType.class);
@@ -199,7 +210,13 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 					    Property.forName(HibernateCriteriaConstants.INSTANCE_TYPE).in(subQuery)));
 				}
 			}
-		}, Order.desc(HibernateCriteriaConstants.DATE_CREATED));
+		};
+
+		if (paging instanceof CursorPagingInfo) {
+			return executeCursorCriteria(action, (CursorPagingInfo)paging);
+		}
+
+		return executeCriteria(StockOperation.class, paging, action, Order.desc(HibernateCriteriaConstants.DATE_CREATED));
 	}
 
 	@Override
@@ -219,12 +236,18 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 			throw new IllegalArgumentException("The operation search template must be defined.");
 		}
 
-		return executeCriteria(StockOperation.class, paging, new Action1<Criteria>() {
+		Action1<Criteria> action = new Action1<Criteria>() {
 			@Override
 			public void apply(Criteria criteria) {
 				search.updateCriteria(criteria);
 			}
-		}, getDefaultSort());
+		};
+
+		if (paging instanceof CursorPagingInfo) {
+			return executeCursorCriteria(action, (CursorPagingInfo)paging);
+		}
+
+		return executeCriteria(StockOperation.class, paging, action, getDefaultSort());
 	}
 
 	@Override
@@ -247,23 +270,90 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
 	public List<StockOperation> getFutureOperations(final StockOperation operation, PagingInfo paging) {
+		return getFutureOperations(operation, null, paging);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	public List<StockOperation> getFutureOperations(final StockOperation operation, final Collection<Item> items,
+	        PagingInfo paging) {
 		if (operation == null) {
 			throw new IllegalArgumentException("The operation must be defined.");
 		}
+		if (items != null && items.size() == 0) {
+			return new ArrayList<StockOperation>();
+		}
 
 		return executeCriteria(StockOperation.class, paging, new Action1<Criteria>() {
 			@Override
 			public void apply(Criteria criteria) {
+				// Seek to the operation day on the (day, order) index and then skip the earlier operations on that day
+				criteria.add(Restrictions.ge(HibernateCriteriaConstants.OPERATION_DAY, operation.getOperationDay()));
 				criteria.add(Restrictions.or(
-				    Restrictions.and(createDateRestriction(operation.getOperationDate()),
-				        Restrictions.gt(HibernateCriteriaConstants.OPERATION_ORDER, operation.getOperationOrder())),
-				    Restrictions.gt(HibernateCriteriaConstants.OPERATION_DATE, operation.getOperationDate())));
-				// Note that this ordering may not support all databases
+				    Restrictions.gt(HibernateCriteriaConstants.OPERATION_DAY, operation.getOperationDay()),
+				    Restrictions.or(
+				        Restrictions.gt(HibernateCriteriaConstants.OPERATION_ORDER, operation.getOperationOrder()),
+				        Restrictions.gt(HibernateCriteriaConstants.OPERATION_DATE, operation.getOperationDate()))));
+
+				if (items != null) {
+					// Only include operations that have at least one of the items
+					DetachedCriteria subQuery = DetachedCriteria.forClass(StockOperationItem.class);
+					subQuery.add(Restrictions.in(HibernateCriteriaConstants.ITEM, items));
+					subQuery.setProjection(Property.forName(HibernateCriteriaConstants.OPERATION + "."
+					        + HibernateCriteriaConstants.ID));
+
+					criteria.add(Property.forName(HibernateCriteriaConstants.ID).in(subQuery));
+				}
 			}
-		}, CustomizedOrderBy.asc("convert(operation_date, date)"), Order.asc("operationOrder"),
+		}, Order.asc(HibernateCriteriaConstants.OPERATION_DAY), Order.asc(HibernateCriteriaConstants.OPERATION_ORDER),
 		    Order.asc(HibernateCriteriaConstants.OPERATION_DATE));
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	public List<StockOperation> getOperationsAfter(final StockOperation operation, final Collection<Item> items,
+	        final int maxResults) {
+		if (operation == null) {
+			throw new IllegalArgumentException("The operation must be defined.");
+		}
+		if (items != null && items.size() == 0) {
+			return new ArrayList<StockOperation>();
+		}
+
+		return executeCriteria(StockOperation.class, null, new Action1<Criteria>() {
+			@Override
+			public void apply(Criteria criteria) {
+				// Use the (day, order, id) key of the operation so that operations with the same order are not skipped
+				Criterion sameDay = Restrictions.gt(HibernateCriteriaConstants.OPERATION_ORDER, operation.getOperationOrder());
+				if (operation.getId() != null) {
+					sameDay =
+					        Restrictions.or(sameDay, Restrictions.and(
+					            Restrictions.eq(HibernateCriteriaConstants.OPERATION_ORDER, operation.getOperationOrder()),
+					            Restrictions.gt(HibernateCriteriaConstants.ID, operation.getId())));
+				}
+
+				criteria.add(Restrictions.ge(HibernateCriteriaConstants.OPERATION_DAY, operation.getOperationDay()));
+				criteria.add(Restrictions.or(
+				    Restrictions.gt(HibernateCriteriaConstants.OPERATION_DAY, operation.getOperationDay()), sameDay));
+
+				if (items != null) {
+					// Only include operations that have at least one of the items
+					DetachedCriteria subQuery = DetachedCriteria.forClass(StockOperationItem.class);
+					subQuery.add(Restrictions.in(HibernateCriteriaConstants.ITEM, items));
+					subQuery.setProjection(Property.forName(HibernateCriteriaConstants.OPERATION + "."
+					        + HibernateCriteriaConstants.ID));
+
+					criteria.add(Property.forName(HibernateCriteriaConstants.ID).in(subQuery));
+				}
+
+				criteria.setMaxResults(maxResults);
+			}
+		}, Order.asc(HibernateCriteriaConstants.OPERATION_DAY), Order.asc(HibernateCriteriaConstants.OPERATION_ORDER),
+		    Order.asc(HibernateCriteriaConstants.ID));
+	}
+
 	@Override
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
@@ -287,6 +377,22 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 		}
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	public StockOperation getLastOperation() {
+		// Find the latest operation date and then the last operation on that day
+		Criteria criteria = getRepository().createCriteria(StockOperation.class);
+		criteria.setProjection(Projections.max(HibernateCriteriaConstants.OPERATION_DATE));
+
+		Date lastDate = (Date)criteria.uniqueResult();
+		if (lastDate == null) {
+			return null;
+		}
+
+		return getLastOperationByDate(lastDate);
+	}
+
 	@Override
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
@@ -302,6 +408,46 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 		}
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	public Integer getPreviousOperationOrder(Date date, Integer operationOrder) {
+		if (date == null) {
+			throw new IllegalArgumentException("The date to search for must be defined.");
+		}
+
+		Criteria criteria = getRepository().createCriteria(StockOperation.class);
+		criteria.add(createDateRestriction(date));
+		if (operationOrder != null) {
+			criteria.add(Restrictions.lt(HibernateCriteriaConstants.OPERATION_ORDER, operationOrder));
+		}
+		criteria.setProjection(Projections.max(HibernateCriteriaConstants.OPERATION_ORDER));
+
+		return (Integer)criteria.uniqueResult();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	public Integer getNextOperationOrder(StockOperation operation) {
+		if (operation == null) {
+			throw new IllegalArgumentException("The operation must be defined.");
+		}
+		if (operation.getOperationDate() == null || operation.getOperationOrder() == null) {
+			throw new IllegalArgumentException("The operation date and order must be defined.");
+		}
+
+		Criteria criteria = getRepository().createCriteria(StockOperation.class);
+		criteria.add(createDateRestriction(operation.getOperationDate()));
+		criteria.add(Restrictions.ge(HibernateCriteriaConstants.OPERATION_ORDER, operation.getOperationOrder()));
+		if (operation.getId() != null) {
+			criteria.add(Restrictions.ne(HibernateCriteriaConstants.ID, operation.getId()));
+		}
+		criteria.setProjection(Projections.min(HibernateCriteriaConstants.OPERATION_ORDER));
+
+		return (Integer)criteria.uniqueResult();
+	}
+
 	private List<StockOperation> getOperationsByDate(final Date date, PagingInfo paging, final Integer maxResults,
 	        Order... orders) {
 		if (date == null) {
@@ -323,13 +469,15 @@ public class StockOperationDataServiceImpl extends BaseCustomizableMetadataDataS
 		Calendar cal = Calendar.getInstance();
 		cal.setTime(date);
 		Utility.clearCalendarTime(cal);
-		final Date start = cal.getTime();
 
-		cal.add(Calendar.DAY_OF_MONTH, 1);
-		cal.add(Calendar.MILLISECOND, -1);
-		final Date end = cal.getTime();
+		return Restrictions.eq(HibernateCriteriaConstants.OPERATION_DAY, cal.getTime());
+	}
 
-		return Restrictions.between(HibernateCriteriaConstants.OPERATION_DATE, start, end);
+	private List<StockOperation> executeCursorCriteria(Action1<Criteria> action, CursorPagingInfo paging) {
+		// Operations are sorted by creation date, newest first, with the id used to order operations created together
+		return CursorPaging.execute(getRepository().createCriteria(StockOperation.class),
+		    getRepository().createCriteria(StockOperation.class), action, paging, DATE_CREATED_KEY,
+		    CursorPaging.<StockOperation> idKey(false));
 	}
 
 	@Override
@@ -0,0 +1,138 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationItem;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+/**
+ * Finds the following operations whose item stock calculations depend on a back-dated {@link StockOperation}.
+ * <p>
+ * A following operation depends on the back-dated operation if it touches the item stock (that is, the stockroom and item
+ * pair) of the back-dated operation or of another dependent operation that occurred before it. For example, a back-dated
+ * receipt into the pharmacy affects a later transfer of the same item out of the pharmacy which in turn affects a later
+ * distribution of that item from the ward the transfer went to. Operations that only touch unrelated item stock do not
+ * need to be rolled back and reapplied.
+ * </p>
+ */
+public class StockOperationDependencyResolver {
+	// Track the stockrooms for each item whose stock has been touched by a back-dated or dependent operation
+	private final Map<Item, Set<Stockroom>> touched = new HashMap<Item, Set<Stockroom>>();
+
+	/**
+	 * Creates a resolver that checks the following operations one at a time, so that they do not all need to be loaded at
+	 * once. Back-dated operations must be added before any following operation that occurs after them is checked.
+	 */
+	public StockOperationDependencyResolver() {}
+
+	/**
+	 * Adds a back-dated operation whose item stock the following operations may depend on.
+	 * @param operation The back-dated operation.
+	 */
+	public void addBackDatedOperation(StockOperation operation) {
+		if (operation != null) {
+			addItemStock(touched, operation);
+		}
+	}
+
+	/**
+	 * Checks if the specified following operation depends on the back-dated operations or on a previously checked dependent
+	 * operation. The following operations must be checked from oldest to newest.
+	 * @param operation The following operation.
+	 * @return {@code true} if the operation depends on the back-dated operations, otherwise {@code false}.
+	 */
+	public boolean isDependent(StockOperation operation) {
+		// Rolled back operations do not have any transactions and are skipped when operations are reapplied
+		if (operation == null || operation.getStatus() == StockOperationStatus.ROLLBACK) {
+			return false;
+		}
+
+		if (touchesItemStock(touched, operation)) {
+			// Anything that touches this operation's item stock afterwards also depends on the back-dated operation
+			addItemStock(touched, operation);
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the distinct items for the specified operations.
+	 * @param operations The operations.
+	 * @return The items referenced by the operation items.
+	 */
+	public static Set<Item> getItems(Collection<StockOperation> operations) {
+		Set<Item> items = new HashSet<Item>();
+		if (operations != null) {
+			for (StockOperation operation : operations) {
+				if (operation.getItems() != null) {
+					for (StockOperationItem operationItem : operation.getItems()) {
+						items.add(operationItem.getItem());
+					}
+				}
+			}
+		}
+
+		return items;
+	}
+
+	private static boolean touchesItemStock(Map<Item, Set<Stockroom>> touched, StockOperation operation) {
+		if (operation.getItems() == null) {
+			return false;
+		}
+
+		for (StockOperationItem operationItem : operation.getItems()) {
+			Set<Stockroom> stockrooms = touched.get(operationItem.getItem());
+			if (stockrooms != null
+			        && ((operation.getSource() != null && stockrooms.contains(operation.getSource()))
+			        || (operation.getDestination() != null && stockrooms.contains(operation.getDestination())))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static void addItemStock(Map<Item, Set<Stockroom>> touched, StockOperation operation) {
+		if (operation.getItems() == null) {
+			return;
+		}
+
+		for (StockOperationItem operationItem : operation.getItems()) {
+			Set<Stockroom> stockrooms = touched.get(operationItem.getItem());
+			if (stockrooms == null) {
+				stockrooms = new HashSet<Stockroom>();
+				touched.put(operationItem.getItem(), stockrooms);
+			}
+
+			if (operation.getSource() != null) {
+				stockrooms.add(operation.getSource());
+			}
+			if (operation.getDestination() != null) {
+				stockrooms.add(operation.getDestination());
+			}
+		}
+	}
+}
@@ -13,6 +13,9 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -20,65 +23,141 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 import java.util.HashSet;
 
 import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.jdbc.Work;
 import org.javatuples.Pair;
 import org.javatuples.Triplet;
-import org.joda.time.DateTime;
-import org.joda.time.Duration;
-import org.joda.time.Seconds;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.Utility;
 import org.openmrs.module.openhmis.inventory.ModuleSettings;
 import org.openmrs.module.openhmis.inventory.api.IItemStockDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockCheckpointDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationTransactionDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
+import org.openmrs.module.openhmis.inventory.api.allocation.AllocationStrategies;
 import org.openmrs.module.openhmis.inventory.api.model.IStockOperationType;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetailBase;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSummaryRecord;
 import org.openmrs.module.openhmis.inventory.api.model.ReservedTransaction;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpointDetail;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationAttribute;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationItem;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationResult;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.model.TransactionBase;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.NestedTransactionNotSupportedException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionUsageException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.ResourceHolderSupport;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterators;
 
 /**
  * Provides {@link StockOperation} service implementations.
  */
 public class StockOperationServiceImpl extends BaseOpenmrsService implements IStockOperationService {
-	// This is the object that will provide synchronization
-	private static final UUID OPERATION_LOCK = UUID.randomUUID();
+	private static final Log LOG = LogFactory.getLog(StockOperationServiceImpl.class);
+
+	// This provides the JVM-local item stock locks used to synchronize operations that touch the same stock
+	protected static final StockLockManager LOCAL_LOCKS = new StockLockManager();
+
+	// How many times an operation is submitted when the item stock is changed by another node at the same time
+	private static final int MAX_SUBMIT_ATTEMPTS = 3;
+
+	// The space left between the operation orders on a day so that an operation can be inserted without reordering others
+	protected static final int OPERATION_ORDER_GAP = 1024;
+
+	// The number of following operations that are loaded into the session at a time while they are replayed
+	protected static final int REPLAY_CHUNK_SIZE = 100;
+
+	// Each operation in a batch is processed in a nested transaction, which uses a savepoint in the enclosing transaction
+	private static final TransactionDefinition NESTED_TRANSACTION =
+	        new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED);
+
+	// The entities that are changed when an operation is processed
+	private static final Class<?>[] STOCK_ENTITY_CLASSES = { StockOperation.class, StockOperationItem.class,
+	        StockOperationAttribute.class, TransactionBase.class, ItemStock.class, ItemStockDetailBase.class,
+	        ItemStockSummaryRecord.class, StockCheckpoint.class, Stockroom.class };
 
 	private IStockroomDataService stockroomService;
 	private IItemStockDataService itemStockService;
 	private IStockOperationDataService operationService;
-
-	// These calendars are used as temporary variables when sorting operations
-	private Calendar cal1 = Calendar.getInstance();
-	private Calendar cal2 = Calendar.getInstance();
+	private IStockOperationTransactionDataService transactionService;
+	private IStockCheckpointDataService checkpointService;
+	private PlatformTransactionManager transactionManager;
+	private SessionFactory sessionFactory;
 
 	@Autowired
 	public StockOperationServiceImpl(IStockOperationDataService operationService, IStockroomDataService stockroomService,
-	    IItemStockDataService itemStockService) {
+	    IItemStockDataService itemStockService, IStockOperationTransactionDataService transactionService,
+	    IStockCheckpointDataService checkpointService) {
 		this.operationService = operationService;
 		this.stockroomService = stockroomService;
 		this.itemStockService = itemStockService;
+		this.transactionService = transactionService;
+		this.checkpointService = checkpointService;
+	}
+
+	@Autowired(required = false)
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+
+		// Nested transactions are only used by the batch submission, other transactions are not affected
+		if (transactionManager instanceof AbstractPlatformTransactionManager) {
+			((AbstractPlatformTransactionManager)transactionManager).setNestedTransactionAllowed(true);
+		}
+	}
+
+	@Autowired(required = false)
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * Gets the item stock lock provider. Installations with multiple OpenMRS nodes sharing a database must use the
+	 * database locks so that the nodes do not change the same item stock at the same time.
+	 * @return The lock provider.
+	 */
+	protected IStockLockProvider getLockProvider() {
+		if (sessionFactory != null && ModuleSettings.useDatabaseStockLocks()) {
+			return new DatabaseStockLockProvider(LOCAL_LOCKS, sessionFactory);
+		}
+
+		return LOCAL_LOCKS;
 	}
 
 	/**
@@ -128,6 +207,16 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		}
 
 		if (operation.getInstanceType().getHasSource()) {
+			// Items that use the explicit allocation strategy must have the batch selected when stock is first reserved
+			if (operation.getReserved() == null || operation.getReserved().size() == 0) {
+				for (StockOperationItem item : operation.getItems()) {
+					if (item.getQuantity() > 0 && AllocationStrategies.getStrategy(item.getItem()).isBatchRequired()
+					        && (item.getBatchOperation() == null || Boolean.TRUE.equals(item.getCalculatedBatch()))) {
+						throw new APIException("The batch for item " + item.getItem().getName() + " must be selected.");
+					}
+				}
+			}
+
 			return;
 		}
 
@@ -143,85 +232,490 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @should release the item stock locks before an enclosing transaction is committed
+	 */
 	@Override
 	public StockOperation submitOperation(StockOperation operation) {
-		return submitOperation(operation, true);
+		validateOperation(operation);
+		validateOperationItems(operation);
+		checkOperationDate(operation);
+
+		if (operation.getItems() == null || operation.getItems().size() <= 0) {
+			throw new APIException("The operation must have at least one operation item defined.");
+		}
+
+		if (transactionManager == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+			// The operation is part of a larger transaction so it cannot be retried here. The in-memory locks are released
+			//  when this returns rather than when that transaction commits, as a later operation in the same transaction
+			//  may need the exclusive lock and a held stripe cannot be upgraded. An operation on another thread that
+			//  changes the same item stock before the commit fails on the item stock version instead.
+			IStockLock lock = lockOperation(operation);
+			try {
+				return processOperation(operation, true);
+			} finally {
+				lock.release();
+			}
+		}
+
+		return submitOperationWithRetry(operation);
 	}
 
-	private StockOperation submitOperation(StockOperation operation, boolean validate) {
-		/*
-			Submitting the operation will copy the items to the operation reservations (if not already done) and then
-			process those reservations based on the operation state.
-		 */
+	private StockOperation submitOperationWithRetry(StockOperation operation) {
+		boolean isNew = operation.getId() == null;
+		StockOperationStatus status = operation.getStatus();
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+		StockOperation current = operation;
+		for (int attempt = 1;; attempt++) {
+			final StockOperation attemptOperation = current;
+
+			// Only allow access to a single caller at a time for the item stock touched by this operation so that the
+			//  reservation calculation does not get messed up. The lock is held until the transaction is committed.
+			IStockLock lock = lockOperation(attemptOperation);
+			try {
+				return template.execute(new TransactionCallback<StockOperation>() {
+					@Override
+					public StockOperation doInTransaction(TransactionStatus transactionStatus) {
+						// Lock again within the transaction so that any database locks are held until it is committed
+						IStockLock transactionLock = lockOperation(attemptOperation);
+						try {
+							return processOperation(attemptOperation, true);
+						} finally {
+							transactionLock.release();
+						}
+					}
+				});
+			} catch (RuntimeException ex) {
+				// The item stock was changed by another node since it was loaded so recalculate the operation
+				if (attempt >= MAX_SUBMIT_ATTEMPTS || !isConcurrencyFailure(ex)) {
+					throw ex;
+				}
 
-		if (validate) {
-			validateOperation(operation);
-			validateOperationItems(operation);
-			checkOperationDate(operation);
+				LOG.info("The item stock for operation '" + operation.getOperationNumber() + "' was changed by another "
+				        + "process, retrying the submission (attempt " + (attempt + 1) + ").");
+			} finally {
+				lock.release();
+			}
+
+			current = resetOperationForRetry(operation, isNew, status);
 		}
+	}
 
-		if (operation.getItems() == null || operation.getItems().size() <= 0) {
-			throw new APIException("The operation must have at least one operation item defined.");
+	private StockOperation resetOperationForRetry(StockOperation operation, boolean isNew, StockOperationStatus status) {
+		// The stock objects in the session are in an unknown state after the failed transaction
+		evictStockEntities();
+
+		return resetOperation(operation, isNew, status);
+	}
+
+	/**
+	 * Removes the operations, item stock and stockrooms that processing an operation can change from the session, so that
+	 * they are reloaded from the database. Other objects that the caller has loaded in the session are kept.
+	 */
+	private void evictStockEntities() {
+		if (sessionFactory == null) {
+			Context.clearSession();
+
+			return;
 		}
 
-		// Only allow access to a single caller at a time so that the reservation calculation does not get messed up
-		synchronized (OPERATION_LOCK) {
-			if (operation.getStatus() == StockOperationStatus.NEW) {
-				// If this is a new operation, create the initial reservations based on the operation items
-				for (StockOperationItem item : operation.getItems()) {
-					ReservedTransaction tx = new ReservedTransaction(item);
-					tx.setCreator(Context.getAuthenticatedUser());
-					tx.setDateCreated(new Date());
+		Session session = sessionFactory.getCurrentSession();
+		List<Object> entities =
+		        new ArrayList<Object>(((SessionImplementor)session).getPersistenceContext().getEntitiesByKey().values());
+		for (Object entity : entities) {
+			for (Class<?> stockClass : STOCK_ENTITY_CLASSES) {
+				if (stockClass.isInstance(entity)) {
+					if (session.contains(entity)) {
+						session.evict(entity);
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	private StockOperation resetOperation(StockOperation operation, boolean isNew, StockOperationStatus status) {
+		if (!isNew) {
+			StockOperation reloaded = operationService.getByUuid(operation.getUuid());
+			if (reloaded == null) {
+				throw new APIException("The operation '" + operation.getOperationNumber() + "' could not be found.");
+			}
+
+			reloaded.setStatus(status);
+
+			return reloaded;
+		}
+
+		// Nothing was saved so discard the ids and the calculated records and start over
+		operation.setId(null);
+		operation.setStatus(status);
+		if (operation.getReserved() != null) {
+			operation.getReserved().clear();
+		}
+		if (operation.getTransactions() != null) {
+			operation.getTransactions().clear();
+		}
+		for (StockOperationItem item : operation.getItems()) {
+			item.setId(null);
+		}
+		if (operation.getAttributes() != null) {
+			for (StockOperationAttribute attribute : operation.getAttributes()) {
+				attribute.setId(null);
+			}
+		}
+
+		return operation;
+	}
+
+	/**
+	 * Starts a nested transaction so that the changes made by an operation in a batch can be rolled back to a savepoint
+	 * without rolling back the enclosing transaction.
+	 * @return The nested transaction or {@code null} if there is no enclosing transaction to hold a savepoint.
+	 */
+	private NestedTransaction beginNestedTransaction() {
+		if (transactionManager == null || sessionFactory == null
+		        || !TransactionSynchronizationManager.isActualTransactionActive()) {
+			return null;
+		}
+
+		// Write the changes made so far so that they are not undone if the savepoint is rolled back
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+
+		TransactionStatus status = getNestedTransactionStatus();
+		if (status != null) {
+			return new NestedTransaction(status, null);
+		}
+
+		// The transaction manager only creates savepoints when it exposes the JDBC connection, which the Hibernate
+		//  transaction manager does not do unless it has a data source, so set the savepoint on the session connection
+		final Savepoint[] savepoint = new Savepoint[1];
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				savepoint[0] = connection.setSavepoint();
+			}
+		});
+
+		return new NestedTransaction(null, savepoint[0]);
+	}
+
+	private TransactionStatus getNestedTransactionStatus() {
+		try {
+			return transactionManager.getTransaction(NESTED_TRANSACTION);
+		} catch (NestedTransactionNotSupportedException ex) {
+			return null;
+		} catch (TransactionUsageException ex) {
+			return null;
+		}
+	}
+
+	private void commitNestedTransaction(NestedTransaction nested) {
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+
+		if (nested.status != null) {
+			transactionManager.commit(nested.status);
+		} else {
+			final Savepoint savepoint = nested.savepoint;
+			session.doWork(new Work() {
+				@Override
+				public void execute(Connection connection) throws SQLException {
+					connection.releaseSavepoint(savepoint);
+				}
+			});
+		}
+	}
+
+	private void rollbackNestedTransaction(NestedTransaction nested) {
+		if (nested.status != null) {
+			transactionManager.rollback(nested.status);
+		} else {
+			final Savepoint savepoint = nested.savepoint;
+			sessionFactory.getCurrentSession().doWork(new Work() {
+				@Override
+				public void execute(Connection connection) throws SQLException {
+					connection.rollback(savepoint);
+				}
+			});
+		}
+
+		// A failure that passed through a transactional data service marks the session of the enclosing transaction as
+		//  rollback-only. Rolling back to the savepoint only resets the connection so reset the session as well.
+		Object sessionHolder = TransactionSynchronizationManager.getResource(sessionFactory);
+		if (sessionHolder instanceof ResourceHolderSupport) {
+			((ResourceHolderSupport)sessionHolder).resetRollbackOnly();
+		}
+	}
+
+	/**
+	 * Removes the specified operation, the item stock that it touches and its stockrooms from the session, so that the
+	 * changes that were rolled back are not written again. Other objects in the session, including the operations that
+	 * were already processed, are kept.
+	 * @param operation The operation that was rolled back.
+	 */
+	private void evictOperation(StockOperation operation) {
+		Set<Integer> stockroomIds = new HashSet<Integer>();
+		if (operation.getSource() != null) {
+			stockroomIds.add(operation.getSource().getId());
+		}
+		if (operation.getDestination() != null) {
+			stockroomIds.add(operation.getDestination().getId());
+		}
+		Set<Integer> itemIds = new HashSet<Integer>();
+		for (StockOperationItem item : operation.getItems()) {
+			itemIds.add(item.getItem().getId());
+		}
+
+		Session session = sessionFactory.getCurrentSession();
+		List<Object> entities =
+		        new ArrayList<Object>(((SessionImplementor)session).getPersistenceContext().getEntitiesByKey().values());
+		for (Object entity : entities) {
+			boolean evict;
+			if (entity instanceof Stockroom) {
+				evict = stockroomIds.contains(((Stockroom)entity).getId());
+			} else if (entity instanceof ItemStock) {
+				ItemStock stock = (ItemStock)entity;
+				evict = stockroomIds.contains(stock.getStockroom().getId()) && itemIds.contains(stock.getItem().getId());
+			} else if (entity instanceof ItemStockDetail) {
+				ItemStockDetail detail = (ItemStockDetail)entity;
+				evict = stockroomIds.contains(detail.getStockroom().getId()) && itemIds.contains(detail.getItem().getId());
+			} else if (entity instanceof ItemStockSummaryRecord) {
+				ItemStockSummaryRecord record = (ItemStockSummaryRecord)entity;
+				evict = stockroomIds.contains(record.getStockroom().getId()) && itemIds.contains(record.getItem().getId());
+			} else {
+				evict = entity == operation;
+			}
+
+			if (evict && session.contains(entity)) {
+				session.evict(entity);
+			}
+		}
+
+		// The operation items and calculated transactions are evicted with the operation
+		if (session.contains(operation)) {
+			session.evict(operation);
+		}
+	}
+
+	private static boolean isConcurrencyFailure(Throwable ex) {
+		Throwable cause = ex;
+		while (cause != null) {
+			if (cause instanceof StaleStateException || cause instanceof ConcurrencyFailureException
+			        || cause instanceof LockAcquisitionException) {
+				return true;
+			}
+
+			cause = cause.getCause();
+		}
 
-					operation.addReserved(tx);
+		return false;
+	}
+
+	@Override
+	public List<StockOperationResult> submitOperations(List<StockOperation> operations) {
+		if (operations == null) {
+			throw new IllegalArgumentException("The operations to submit must be defined.");
+		}
+
+		// Validate each operation up front so that invalid operations are reported without stopping the batch
+		List<StockOperationResult> results = new ArrayList<StockOperationResult>(operations.size());
+		Map<StockOperation, Integer> indexes = new IdentityHashMap<StockOperation, Integer>();
+		List<StockOperation> batch = new ArrayList<StockOperation>(operations.size());
+		for (StockOperation operation : operations) {
+			indexes.put(operation, results.size());
+
+			try {
+				validateOperation(operation);
+				validateOperationItems(operation);
+				if (operation.getItems() == null || operation.getItems().size() <= 0) {
+					throw new APIException("The operation must have at least one operation item defined.");
 				}
 
-				// Perform any required calculations to make the reservations valid
-				calculateReservations(operation);
+				results.add(new StockOperationResult(operation));
+				batch.add(operation);
+			} catch (RuntimeException ex) {
+				results.add(new StockOperationResult(operation, ex.getMessage()));
+			}
+		}
+
+		if (batch.size() == 0) {
+			return results;
+		}
+
+		checkOperationDates(batch);
+		sortOperations(batch);
+
+		// Keep what is needed to reset the operations that have not been processed if one of them fails
+		int size = batch.size();
+		int[] resultIndexes = new int[size];
+		boolean[] isNew = new boolean[size];
+		StockOperationStatus[] statuses = new StockOperationStatus[size];
+		for (int i = 0; i < size; i++) {
+			StockOperation operation = batch.get(i);
+			resultIndexes[i] = indexes.get(operation);
+			isNew[i] = operation.getId() == null;
+			statuses[i] = operation.getStatus();
+		}
 
-				operation.setStatus(StockOperationStatus.PENDING);
+		// The batch can touch any item stock so lock all of it
+		IStockLock lock = getLockProvider().lockExclusive();
+		try {
+			// Roll back the following operations that depend on any operation in the batch once for the whole batch
+			FollowingOperations followingOperations = findDependentOperations(batch);
+			if (!followingOperations.isEmpty() && !restoreFromCheckpoints(batch.get(0), batch, followingOperations, false)) {
+				rollbackFollowingOperations(followingOperations);
 			}
 
-			// Roll back any operations with an operation date after the specified operation
-			if (operation.getStatus() == StockOperationStatus.COMPLETED
-			        || operation.getStatus() == StockOperationStatus.CANCELLED) {
-				rollbackFollowingOperations(operation);
+			// Process the batch and reapply the following operations in operation date order so that each operation is
+			//  calculated against the item stock as of its position
+			int reapplied = 0;
+			for (int i = 0; i < size; i++) {
+				StockOperation operation = batch.get(i);
+				int next = reapplied;
+				while (next < followingOperations.size() && followingOperations.compareTo(next, operation) < 0) {
+					next++;
+				}
+				reapplyFollowingOperations(followingOperations, reapplied, next);
+				reapplied = next;
+				ItemStockDataServiceImpl.applySummaryChanges();
+
+				// Process each operation in a nested transaction so that a failed operation can be rolled back to a
+				//  savepoint without losing the changes made by the rest of the batch
+				NestedTransaction nested = beginNestedTransaction();
+				try {
+					operation = processOperation(operation, false);
+					if (nested != null) {
+						commitNestedTransaction(nested);
+					}
+
+					results.get(resultIndexes[i]).setOperation(operation);
+				} catch (RuntimeException ex) {
+					if (nested == null) {
+						// Without a savepoint the changes made by the failed operation cannot be separated from the batch
+						throw ex;
+					}
+
+					LOG.warn("Could not submit operation '" + operation.getOperationNumber() + "'", ex);
+
+					rollbackNestedTransaction(nested);
+					ItemStockDataServiceImpl.discardSummaryChanges();
+
+					// The session still holds the changes made by the failed operation so discard them and reset the
+					//  operations that have not been processed yet, the same as when a submission is retried
+					evictOperation(operation);
+					results.set(resultIndexes[i], new StockOperationResult(resetOperation(operation, isNew[i],
+					    statuses[i]), ex.getMessage()));
+					for (int j = i + 1; j < size; j++) {
+						batch.set(j, resetOperation(batch.get(j), isNew[j], statuses[j]));
+					}
+				}
 			}
+			reapplyFollowingOperations(followingOperations, reapplied, followingOperations.size());
 
-			// Trigger the appropriate status-based event so that the operation type can do what needs doing
-			//  Note: applyTransactions will be called as part of the event, if needed
-			switch (operation.getStatus()) {
-				case PENDING:
-					operation.getInstanceType().onPending(operation);
-					break;
-				case CANCELLED:
-					operation.getInstanceType().onCancelled(operation);
-					break;
-				case COMPLETED:
-					operation.getInstanceType().onCompleted(operation);
-					break;
-				default:
-					break;
+			invalidateCheckpoints(batch.get(0), batch, followingOperations);
+		} finally {
+			lock.release();
+		}
+
+		return results;
+	}
+
+	private StockOperation processOperation(StockOperation operation, boolean replayFollowing) {
+		/*
+			Submitting the operation will copy the items to the operation reservations (if not already done) and then
+			process those reservations based on the operation state.
+		 */
+
+		if (operation.getStatus() == StockOperationStatus.NEW) {
+			// If this is a new operation, create the initial reservations based on the operation items
+			for (StockOperationItem item : operation.getItems()) {
+				ReservedTransaction tx = new ReservedTransaction(item);
+				tx.setCreator(Context.getAuthenticatedUser());
+				tx.setDateCreated(new Date());
+
+				operation.addReserved(tx);
 			}
 
-			// Reapply any operations with an operation date after the specified operation
-			if (operation.getStatus() == StockOperationStatus.COMPLETED
-			        || operation.getStatus() == StockOperationStatus.CANCELLED) {
-				reapplyFollowingOperations(operation);
+			// Perform any required calculations to make the reservations valid
+			calculateReservations(operation);
+
+			operation.setStatus(StockOperationStatus.PENDING);
+		}
+
+		// When operations are auto-completed a pending operation goes straight to completed in this pass rather than being
+		//  saved as pending and then submitted again, so the following operations are only rolled back and reapplied once
+		boolean autoComplete =
+		        operation.getStatus() == StockOperationStatus.PENDING && ModuleSettings.isOperationAutoCompleted();
+
+		// Roll back any operations with an operation date after the specified operation that depend on its item stock
+		FollowingOperations followingOperations = null;
+		if (replayFollowing
+		        && (autoComplete || operation.getStatus() == StockOperationStatus.COMPLETED
+		        || operation.getStatus() == StockOperationStatus.CANCELLED)) {
+			followingOperations = findDependentOperations(operation);
+
+			// Rebuild the item stock from the checkpoints before this operation if possible, otherwise reverse each
+			//  following operation
+			if (!restoreFromCheckpoints(operation, Collections.singletonList(operation), followingOperations, false)) {
+				rollbackFollowingOperations(followingOperations);
 			}
+		}
 
-			// Save the operation and all sub-objects
+		// The item stock created by the operation references it and is flushed while the following operations are
+		//  reapplied so make sure that a new operation has been saved first. It is not saved again below; the changes
+		//  made to it from here on are written when the session is flushed.
+		boolean saved = false;
+		if (operation.getId() == null
+		        && (autoComplete || (followingOperations != null && !followingOperations.isEmpty()))) {
 			operation = operationService.save(operation);
+			saved = true;
+		}
 
-			// Check to see if we should autocomplete the operation
-			if (operation.getStatus() == StockOperationStatus.PENDING
-			        && ModuleSettings.isOperationAutoCompleted()) {
-				operation.setStatus(StockOperationStatus.COMPLETED);
-				operation = submitOperation(operation, false);
-			}
+		// Trigger the appropriate status-based event so that the operation type can do what needs doing
+		//  Note: applyTransactions will be called as part of the event, if needed
+		switch (operation.getStatus()) {
+			case PENDING:
+				operation.getInstanceType().onPending(operation);
+
+				if (autoComplete) {
+					// The pending transactions become the completed transactions, the same as when a following operation
+					//  is reapplied
+					operation.setStatus(StockOperationStatus.COMPLETED);
+					operation.getInstanceType().onCompleted(operation);
+				}
+				break;
+			case CANCELLED:
+				operation.getInstanceType().onCancelled(operation);
+				break;
+			case COMPLETED:
+				operation.getInstanceType().onCompleted(operation);
+				break;
+			default:
+				break;
+		}
+
+		// Reapply any operations with an operation date after the specified operation
+		if (followingOperations != null) {
+			reapplyFollowingOperations(followingOperations, 0, followingOperations.size());
+		}
+
+		// Any checkpoints that include the item stock changed by this operation are no longer valid
+		if (replayFollowing) {
+			invalidateCheckpoints(operation, Collections.singletonList(operation), followingOperations);
+		}
 
-			return operation;
+		// Save the operation and all sub-objects
+		if (!saved) {
+			operation = operationService.save(operation);
 		}
+
+		// Update the summary records for all the item stock changed by the operation at once
+		ItemStockDataServiceImpl.applySummaryChanges();
+
+		return operation;
 	}
 
 	@Override
@@ -233,19 +727,79 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 			throw new APIException("Only completed operations can be rolled back.");
 		}
 
-		// Rollback any following operations
-		rollbackFollowingOperations(operation);
+		// Rolling back reapplies the following operations, which can touch any item stock, so lock all of it
+		IStockLock lock = getLockProvider().lockExclusive();
+		try {
+			// Rollback any following operations that depend on the item stock of this operation
+			FollowingOperations followingOperations = findDependentOperations(operation);
+			if (!restoreFromCheckpoints(operation, Collections.singletonList(operation), followingOperations, true)) {
+				rollbackFollowingOperations(followingOperations);
+
+				// Rollback the specified operation
+				doOperationRollback(operation);
+			}
 
-		// Rollback the specified operation
-		doOperationRollback(operation);
+			// Now reapply the following operations
+			reapplyFollowingOperations(followingOperations, 0, followingOperations.size());
 
-		// Now reapply the following operations
-		reapplyFollowingOperations(operation);
+			invalidateCheckpoints(operation, Collections.singletonList(operation), followingOperations);
 
-		// Update the operation status
-		operation.setStatus(StockOperationStatus.ROLLBACK);
+			// Update the operation status
+			operation.setStatus(StockOperationStatus.ROLLBACK);
+
+			return operationService.save(operation);
+		} finally {
+			lock.release();
+		}
+	}
 
-		return operationService.save(operation);
+	@Override
+	public StockCheckpoint createCheckpoint(Stockroom stockroom) {
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+
+		// Lock all item stock so that the checkpoint cannot include a partially processed operation
+		IStockLock lock = getLockProvider().lockExclusive();
+		try {
+			StockOperation lastOperation = operationService.getLastOperation();
+			if (lastOperation == null) {
+				return null;
+			}
+
+			Date operationDay = getDay(lastOperation.getOperationDate());
+
+			// Checkpoints are deleted when an operation at or before them changes so if the newest checkpoint is for the
+			//  last operation then nothing has changed since it was created
+			PagingInfo paging = new PagingInfo(1, 1);
+			paging.setLoadRecordCount(false);
+			List<StockCheckpoint> checkpoints = checkpointService.getCheckpointsByStockroom(stockroom, paging);
+			if (checkpoints.size() > 0) {
+				StockCheckpoint last = checkpoints.get(0);
+				if (last.getOperationDate().getTime() == operationDay.getTime()
+				        && last.getOperationOrder().equals(lastOperation.getOperationOrder())) {
+					return last;
+				}
+			}
+
+			StockCheckpoint checkpoint = new StockCheckpoint();
+			checkpoint.setStockroom(stockroom);
+			checkpoint.setOperationDate(operationDay);
+			checkpoint.setOperationOrder(lastOperation.getOperationOrder());
+			checkpoint.setDateCreated(new Date());
+
+			for (ItemStock stock : stockroomService.getItemsByRoom(stockroom, null)) {
+				if (stock.getDetails() != null) {
+					for (ItemStockDetail detail : stock.getDetails()) {
+						checkpoint.addDetail(new StockCheckpointDetail(detail));
+					}
+				}
+			}
+
+			return checkpointService.save(checkpoint);
+		} finally {
+			lock.release();
+		}
 	}
 
 	@Override
@@ -272,22 +826,45 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 			return;
 		}
 
-		// Lock on the operation lock in case this method is called directly. If called via submitOperation this lock
-		//  will already be acquired and simply reenter.
-		synchronized (OPERATION_LOCK) {
+		// Create a map to store the tx grouped by item and stockroom
+		Map<Pair<Item, Stockroom>, List<StockOperationTransaction>> grouped = createGroupedTransactions(transactions);
+
+		// Lock the item stock in case this method is called directly. If called via submitOperation these locks will
+		//  already be held and simply reenter.
+		List<Pair<Stockroom, Item>> keys = new ArrayList<Pair<Stockroom, Item>>(grouped.size());
+		for (Pair<Item, Stockroom> key : grouped.keySet()) {
+			keys.add(Pair.with(key.getValue1(), key.getValue0()));
+		}
+
+		IStockLock lock = getLockProvider().lockShared(keys);
+		try {
 			// Note that we don't touch the stockroom operations, transactions, or item stock lists because that could result
 			//  in loading a large number of records from the database that we don't need for this. This means that
 			//  any existing stockroom objects must be refreshed before the data updated below will be seen.
 
-			// Create a map to store the tx grouped by item and stockroom
-			Map<Pair<Item, Stockroom>, List<StockOperationTransaction>> grouped = createGroupedTransactions(transactions);
+			// Load the item stock for all the items in each stockroom at once rather than querying for each item
+			Map<Stockroom, Set<Item>> stockroomItems = new HashMap<Stockroom, Set<Item>>();
+			for (Pair<Item, Stockroom> key : grouped.keySet()) {
+				Set<Item> items = stockroomItems.get(key.getValue1());
+				if (items == null) {
+					items = new HashSet<Item>();
+					stockroomItems.put(key.getValue1(), items);
+				}
+				items.add(key.getValue0());
+			}
+
+			Map<Stockroom, Map<Item, ItemStock>> stockroomStock = new HashMap<Stockroom, Map<Item, ItemStock>>();
+			for (Map.Entry<Stockroom, Set<Item>> entry : stockroomItems.entrySet()) {
+				stockroomStock.put(entry.getKey(), stockroomService.getItems(entry.getKey(), entry.getValue()));
+			}
+
 			for (Pair<Item, Stockroom> key : grouped.keySet()) {
 				Item item = key.getValue0();
 				Stockroom stockroom = key.getValue1();
 				List<StockOperationTransaction> itemTxs = grouped.get(key);
 
 				// Get the item stock from the stockroom
-				ItemStock stock = stockroomService.getItem(stockroom, item);
+				ItemStock stock = stockroomStock.get(stockroom).get(item);
 
 				// For each item transaction
 				int totalQty = 0;
@@ -358,6 +935,8 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 					itemStockService.save(stock);
 				}
 			}
+		} finally {
+			lock.release();
 		}
 	}
 
@@ -433,18 +1012,30 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 			and figure out exactly which specific item stock (called an item stock detail) to take.  This can result in
 			new transactions being created if a transaction cannot be fulfilled by a single detail. The calculation
 			also needs to take into account others transactions for the same item. To manage this, a Map is created to
-			store copies of the item stock detail and then these copies are then updated so that a running tally can be kept
-			of what is actually available when processing a specific transaction without modifying the actual detail records.
+			store a working set for each item stock and the working set quantities are then updated so that a running tally
+			can be kept of what is actually available when processing a specific transaction without modifying the actual
+			detail records.
 		 */
-		Map<Pair<Stockroom, Item>, ItemStock> stockMap = new HashMap<Pair<Stockroom, Item>, ItemStock>();
+		Map<Item, ItemStockWorkingSet> stockMap = new HashMap<Item, ItemStockWorkingSet>();
 		List<ReservedTransaction> newTransactions = new ArrayList<ReservedTransaction>();
 		boolean hasSource = operation.getSource() != null;
 		boolean isAdjustment = operation.isAdjustmentType();
 
+		// Load the source item stock for all the items at once rather than querying for each item
+		Map<Item, ItemStock> sourceStock = null;
+		if (hasSource) {
+			Set<Item> items = new HashSet<Item>();
+			for (ReservedTransaction tx : transactions) {
+				items.add(tx.getItem());
+			}
+
+			sourceStock = stockroomService.getItems(operation.getSource(), items);
+		}
+
 		for (ReservedTransaction tx : transactions) {
 			if (hasSource && (!isAdjustment || (isAdjustment && tx.getQuantity() < 0))) {
-				// Clone the item stock and find the detail record
-				ItemStock stock = findAndCloneStock(stockMap, operation.getSource(), tx.getItem());
+				// Get the working set for the item stock and find the detail record
+				ItemStockWorkingSet stock = findWorkingStock(stockMap, sourceStock, tx.getItem());
 				findAndUpdateSourceDetail(newTransactions, operation, stock, tx);
 			} else {
 				// Set the batch operation to the current operation because this must be some type of receipt operation
@@ -461,27 +1052,324 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		}
 	}
 
-	private void rollbackFollowingOperations(StockOperation operation) {
-		// Rolling back an operation reverses any operation transactions and deletes the reservation transactions for the
-		// operation. Basically, it sets the operation and associated item stock and stockroom data back to before this
-		// operation was performed.
+	private IStockLock lockOperation(StockOperation operation) {
+		// Lock the item stock for each operation item in the source and destination stockrooms
+		List<Pair<Stockroom, Item>> keys = new ArrayList<Pair<Stockroom, Item>>();
+		for (StockOperationItem item : operation.getItems()) {
+			if (operation.getSource() != null) {
+				keys.add(Pair.with(operation.getSource(), item.getItem()));
+			}
+			if (operation.getDestination() != null) {
+				keys.add(Pair.with(operation.getDestination(), item.getItem()));
+			}
+		}
+
+		IStockLock lock = getLockProvider().lockShared(keys);
+
+		// Check for following operations once the stock is locked so that none can be missed. If there are any for these
+		//  items then they may need to be rolled back and reapplied, which can touch other item stock, so switch to the
+		//  exclusive lock.
+		boolean hasFutureOperations;
+		try {
+			hasFutureOperations = hasFutureOperations(operation);
+		} catch (RuntimeException ex) {
+			lock.release();
+
+			throw ex;
+		}
+
+		if (hasFutureOperations) {
+			lock.release();
+
+			lock = getLockProvider().lockExclusive();
+		}
+
+		return lock;
+	}
 
-		// Get operations that were created after the specified operation
-		List<StockOperation> rollbackOperations = operationService.getFutureOperations(operation, null);
+	private boolean hasFutureOperations(StockOperation operation) {
+		PagingInfo paging = new PagingInfo(1, 1);
+		paging.setLoadRecordCount(false);
 
-		// Sort the transactions in reverse order by operation date (most recent first)
-		Collections.sort(rollbackOperations, new Comparator<StockOperation>() {
+		List<StockOperation> operations =
+		        operationService.getFutureOperations(operation,
+		            StockOperationDependencyResolver.getItems(Collections.singletonList(operation)), paging);
+
+		return operations != null && operations.size() > 0;
+	}
+
+	private FollowingOperations findDependentOperations(StockOperation operation) {
+		return findDependentOperations(Collections.singletonList(operation));
+	}
+
+	private FollowingOperations findDependentOperations(List<StockOperation> operations) {
+		/*
+			Only the following operations that touch the item stock of the specified operations (or the item stock of another
+			dependent operation) need to be rolled back and reapplied. Dependencies can only be followed through operations
+			that include at least one of the items already found so the following operations are read for those items
+			and then read again if any dependent operation brings in new items. The specified operations must be sorted
+			by operation date and order.
+
+			The following operations are read in chunks and evicted from the session once they have been checked so that
+			only the ids and positions of the dependent operations are kept, no matter how many operations follow.
+		 */
+		Set<Integer> backDatedIds = new HashSet<Integer>();
+		for (StockOperation operation : operations) {
+			if (operation.getId() != null) {
+				backDatedIds.add(operation.getId());
+			}
+		}
+
+		Set<Item> items = StockOperationDependencyResolver.getItems(operations);
+		while (true) {
+			StockOperationDependencyResolver resolver = new StockOperationDependencyResolver();
+			FollowingOperations results = new FollowingOperations();
+
+			int backDatedIndex = 0;
+			StockOperation last = operations.get(0);
+			List<StockOperation> chunk;
+			do {
+				chunk = operationService.getOperationsAfter(last, items, REPLAY_CHUNK_SIZE);
+				for (StockOperation following : chunk) {
+					// Add the back-dated operations that occur before (or at the same position as) this operation
+					while (backDatedIndex < operations.size()
+					        && compareOperationsByDateAndOrder(operations.get(backDatedIndex), following) <= 0) {
+						resolver.addBackDatedOperation(operations.get(backDatedIndex++));
+					}
+
+					if (!backDatedIds.contains(following.getId()) && resolver.isDependent(following)) {
+						results.add(following);
+					}
+				}
+
+				if (chunk.size() > 0) {
+					last = chunk.get(chunk.size() - 1);
+				}
+
+				// Any pending changes to these operations were flushed by the query so they can be safely evicted
+				for (StockOperation following : chunk) {
+					if (!backDatedIds.contains(following.getId())) {
+						Context.evictFromSession(following);
+					}
+				}
+			} while (chunk.size() == REPLAY_CHUNK_SIZE);
+
+			if (items.containsAll(results.getItems())) {
+				return results;
+			}
+
+			items.addAll(results.getItems());
+		}
+	}
+
+	private void sortOperations(List<StockOperation> operations) {
+		// Sort the operations by operation date (oldest first)
+		Collections.sort(operations, new Comparator<StockOperation>() {
 			@Override
 			public int compare(StockOperation o1, StockOperation o2) {
-				return compareOperationsByDateAndOrder(o1, o2) * -1;
+				return compareOperationsByDateAndOrder(o1, o2);
 			}
 		});
+	}
+
+	private boolean restoreFromCheckpoints(StockOperation operation, Collection<StockOperation> operations,
+	        FollowingOperations followingOperations, boolean excludeOperations) {
+		/*
+			Rather than reversing each following operation, the item stock touched by the operations and the following
+			operations can be rebuilt by restoring the checkpoint before the first operation and then applying the
+			transactions since the checkpoint, other than those of the following operations (and the operations themselves
+			when they are being rolled back). The following operations are then reapplied as normal. This requires a
+			checkpoint before the operation for every stockroom that is touched.
+		 */
+		if (followingOperations == null || followingOperations.isEmpty()) {
+			return false;
+		}
+
+		Map<Stockroom, Set<Item>> itemStock = getItemStock(operations);
+		for (Map.Entry<Stockroom, Set<Item>> entry : followingOperations.getItemStock().entrySet()) {
+			Set<Item> stockroomItems = itemStock.get(entry.getKey());
+			if (stockroomItems == null) {
+				stockroomItems = new HashSet<Item>();
+				itemStock.put(entry.getKey(), stockroomItems);
+			}
+
+			stockroomItems.addAll(entry.getValue());
+		}
+
+		Map<Stockroom, StockCheckpoint> checkpoints = new HashMap<Stockroom, StockCheckpoint>();
+		for (Stockroom stockroom : itemStock.keySet()) {
+			StockCheckpoint checkpoint =
+			        checkpointService.getCheckpointBefore(stockroom, operation.getOperationDate(),
+			            operation.getOperationOrder());
+			if (checkpoint == null) {
+				return false;
+			}
+
+			checkpoints.put(stockroom, checkpoint);
+		}
+
+		Set<Integer> excludedIds = new HashSet<Integer>();
+		if (excludeOperations) {
+			for (StockOperation excludedOperation : operations) {
+				if (excludedOperation.getId() != null) {
+					excludedIds.add(excludedOperation.getId());
+				}
+			}
+		}
+
+		for (Map.Entry<Stockroom, Set<Item>> entry : itemStock.entrySet()) {
+			StockCheckpoint checkpoint = checkpoints.get(entry.getKey());
+
+			List<StockOperationTransaction> transactions = new ArrayList<StockOperationTransaction>();
+			Set<Item> transactionItems = new HashSet<Item>();
+			for (StockOperationTransaction tx : transactionService.getTransactionsSinceCheckpoint(checkpoint,
+			    entry.getValue())) {
+				Integer operationId = tx.getOperation() == null ? null : tx.getOperation().getId();
+				if (!followingOperations.contains(operationId) && !excludedIds.contains(operationId)) {
+					transactions.add(tx);
+					transactionItems.add(tx.getItem());
+				}
+			}
+
+			for (Item item : entry.getValue()) {
+				restoreItemStock(checkpoint, item, transactionItems.contains(item));
+			}
+
+			applyTransactions(transactions);
+		}
+
+		// The restored item stock does not include the transactions for the excluded operations so they can simply be
+		//  deleted rather than reversed
+		if (excludeOperations) {
+			for (StockOperation excludedOperation : operations) {
+				clearTransactions(excludedOperation);
+			}
+		}
+
+		List<Integer> ids = followingOperations.getIds();
+		for (int start = 0; start < ids.size(); start += REPLAY_CHUNK_SIZE) {
+			List<StockOperation> chunk = new ArrayList<StockOperation>(REPLAY_CHUNK_SIZE);
+			for (int i = start; i < Math.min(ids.size(), start + REPLAY_CHUNK_SIZE); i++) {
+				StockOperation following = operationService.getById(ids.get(i));
+				clearTransactions(following);
+
+				chunk.add(following);
+			}
+
+			flushAndEvict(chunk);
+		}
+
+		return true;
+	}
+
+	private void restoreItemStock(StockCheckpoint checkpoint, Item item, boolean hasTransactions) {
+		Stockroom stockroom = checkpoint.getStockroom();
+		ItemStock stock = stockroomService.getItem(stockroom, item);
+
+		List<StockCheckpointDetail> details = new ArrayList<StockCheckpointDetail>();
+		if (checkpoint.getDetails() != null) {
+			for (StockCheckpointDetail detail : checkpoint.getDetails()) {
+				if (item.equals(detail.getItem())) {
+					details.add(detail);
+				}
+			}
+		}
+
+		if (stock == null) {
+			if (details.size() == 0) {
+				return;
+			}
+
+			stock = new ItemStock();
+			stock.setStockroom(stockroom);
+			stock.setItem(item);
+		} else if (stock.getDetails() != null) {
+			stock.getDetails().clear();
+		}
+
+		int quantity = 0;
+		for (StockCheckpointDetail checkpointDetail : details) {
+			ItemStockDetail detail = new ItemStockDetail();
+			detail.setStockroom(stockroom);
+			detail.setItem(item);
+			detail.setQuantity(checkpointDetail.getQuantity());
+			detail.setExpiration(checkpointDetail.getExpiration() == null ? null : (Date)checkpointDetail.getExpiration()
+			        .clone());
+			detail.setBatchOperation(checkpointDetail.getBatchOperation());
+			detail.setCalculatedExpiration(checkpointDetail.isCalculatedExpiration());
+			detail.setCalculatedBatch(checkpointDetail.isCalculatedBatch());
+
+			stock.addDetail(detail);
+			quantity += detail.getQuantity();
+		}
+		stock.setQuantity(quantity);
+
+		if (quantity == 0 && !stock.hasDetails() && !hasTransactions) {
+			// Nothing will be applied to this item stock so it can be removed now, see applyTransactions
+			stock.getStockroom().removeItem(stock);
+			itemStockService.purge(stock);
+		} else {
+			itemStockService.save(stock);
+		}
+	}
+
+	private Map<Stockroom, Set<Item>> getItemStock(Collection<StockOperation> operations) {
+		Map<Stockroom, Set<Item>> results = new HashMap<Stockroom, Set<Item>>();
+		for (StockOperation operation : operations) {
+			Set<Item> items = StockOperationDependencyResolver.getItems(Collections.singletonList(operation));
+
+			for (Stockroom stockroom : new Stockroom[] { operation.getSource(), operation.getDestination() }) {
+				if (stockroom != null) {
+					Set<Item> stockroomItems = results.get(stockroom);
+					if (stockroomItems == null) {
+						stockroomItems = new HashSet<Item>();
+						results.put(stockroom, stockroomItems);
+					}
+
+					stockroomItems.addAll(items);
+				}
+			}
+		}
+
+		return results;
+	}
+
+	private void invalidateCheckpoints(StockOperation operation, Collection<StockOperation> operations,
+	        FollowingOperations followingOperations) {
+		// Most operations are submitted after the newest checkpoint so check that there is something to delete first
+		if (!checkpointService.hasCheckpointsFrom(null, operation.getOperationDate(), operation.getOperationOrder())) {
+			return;
+		}
+
+		Set<Stockroom> stockrooms = new HashSet<Stockroom>(getItemStock(operations).keySet());
+		if (followingOperations != null) {
+			stockrooms.addAll(followingOperations.getItemStock().keySet());
+		}
 
-		// // Rollback each operation, starting from the newest
-		for (StockOperation rollbackOp : rollbackOperations) {
-			if (rollbackOp.getStatus() != StockOperationStatus.ROLLBACK) {
-				doOperationRollback(rollbackOp);
+		for (Stockroom stockroom : stockrooms) {
+			checkpointService.invalidateCheckpoints(stockroom, operation.getOperationDate(), operation.getOperationOrder());
+		}
+	}
+
+	private void rollbackFollowingOperations(FollowingOperations followingOperations) {
+		// Rolling back an operation reverses any operation transactions and deletes the reservation transactions for the
+		// operation. Basically, it sets the operation and associated item stock and stockroom data back to before this
+		// operation was performed.
+
+		// Rollback each operation, starting from the newest, loading a chunk of operations at a time
+		List<Integer> ids = followingOperations.getIds();
+		for (int end = ids.size(); end > 0; end -= REPLAY_CHUNK_SIZE) {
+			List<StockOperation> chunk = new ArrayList<StockOperation>(REPLAY_CHUNK_SIZE);
+			for (int i = end - 1; i >= Math.max(0, end - REPLAY_CHUNK_SIZE); i--) {
+				StockOperation rollbackOp = operationService.getById(ids.get(i));
+				if (rollbackOp.getStatus() != StockOperationStatus.ROLLBACK) {
+					doOperationRollback(rollbackOp);
+				}
+
+				chunk.add(rollbackOp);
 			}
+
+			flushAndEvict(chunk);
 		}
 	}
 
@@ -504,54 +1392,68 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		}
 	}
 
-	private void reapplyFollowingOperations(StockOperation operation) {
-		// Get operations that were created after the specified operation
-		List<StockOperation> rollbackOperations = operationService.getFutureOperations(operation, null);
+	private void clearTransactions(StockOperation operation) {
+		if (operation.getTransactions() != null) {
+			operation.getTransactions().clear();
+		}
+		if (operation.getReserved() != null) {
+			operation.getReserved().clear();
+		}
+	}
 
-		// Sort the transactions in reverse order by operation date (most recent first)
-		Collections.sort(rollbackOperations, new Comparator<StockOperation>() {
-			@Override
-			public int compare(StockOperation o1, StockOperation o2) {
-				return compareOperationsByDateAndOrder(o1, o2);
+	private void reapplyFollowingOperations(FollowingOperations followingOperations, int fromIndex, int toIndex) {
+		// Now reapply each operation, starting from the oldest, loading a chunk of operations at a time
+		List<Integer> ids = followingOperations.getIds();
+		for (int start = fromIndex; start < toIndex; start += REPLAY_CHUNK_SIZE) {
+			List<StockOperation> chunk = new ArrayList<StockOperation>(REPLAY_CHUNK_SIZE);
+			for (int i = start; i < Math.min(toIndex, start + REPLAY_CHUNK_SIZE); i++) {
+				StockOperation reapplyOp = operationService.getById(ids.get(i));
+				if (reapplyOp.getStatus() != StockOperationStatus.ROLLBACK) {
+					reapplyOperation(reapplyOp);
+				}
+
+				chunk.add(reapplyOp);
 			}
-		});
 
-		// Now reapply each operation, starting from the oldest
-		for (StockOperation reapplyOp : rollbackOperations) {
-			if (reapplyOp.getStatus() != StockOperationStatus.ROLLBACK) {
-				// Ensure that the transactions have been cleared
-				if (reapplyOp.getTransactions() != null) {
-					reapplyOp.getTransactions().clear();
-				}
-				if (reapplyOp.getReserved() != null) {
-					reapplyOp.getReserved().clear();
-				}
+			// The following operations are not saved by submitOperation so write the changes for this chunk now
+			flushAndEvict(chunk);
+		}
+	}
 
-				// Recreate the initial set of reserved transactions
-				for (StockOperationItem item : reapplyOp.getItems()) {
-					ReservedTransaction tx = new ReservedTransaction(item);
-					tx.setCreator(Context.getAuthenticatedUser());
-					tx.setDateCreated(new Date());
+	private void reapplyOperation(StockOperation reapplyOp) {
+		// Ensure that the transactions have been cleared
+		clearTransactions(reapplyOp);
 
-					reapplyOp.addReserved(tx);
-				}
+		// Recreate the initial set of reserved transactions
+		for (StockOperationItem item : reapplyOp.getItems()) {
+			ReservedTransaction tx = new ReservedTransaction(item);
+			tx.setCreator(Context.getAuthenticatedUser());
+			tx.setDateCreated(new Date());
+
+			reapplyOp.addReserved(tx);
+		}
 
-				// Now recalculate the reservations
-				calculateReservations(reapplyOp);
+		// Now recalculate the reservations
+		calculateReservations(reapplyOp);
 
-				// Apply the pending transactions
-				reapplyOp.getInstanceType().onPending(reapplyOp);
+		// Apply the pending transactions
+		reapplyOp.getInstanceType().onPending(reapplyOp);
 
-				// If the status is cancelled or completed then also apply those transactions as well
-				if (reapplyOp.getStatus() == StockOperationStatus.CANCELLED) {
-					reapplyOp.getInstanceType().onCancelled(reapplyOp);
-				} else if (reapplyOp.getStatus() == StockOperationStatus.COMPLETED) {
-					reapplyOp.getInstanceType().onCompleted(reapplyOp);
-				}
-			}
+		// If the status is cancelled or completed then also apply those transactions as well
+		if (reapplyOp.getStatus() == StockOperationStatus.CANCELLED) {
+			reapplyOp.getInstanceType().onCancelled(reapplyOp);
+		} else if (reapplyOp.getStatus() == StockOperationStatus.COMPLETED) {
+			reapplyOp.getInstanceType().onCompleted(reapplyOp);
 		}
+	}
 
-		// No need to save because this that will happen in submitOperation
+	private void flushAndEvict(List<StockOperation> operations) {
+		// Write the changes for the operations and then remove them from the session so that the session does not grow
+		//  with the number of following operations
+		Context.flushSession();
+		for (StockOperation operation : operations) {
+			Context.evictFromSession(operation);
+		}
 	}
 
 	private List<ReservedTransaction> findDuplicateReservedTransactions(StockOperation operation) {
@@ -612,16 +1514,15 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		return transactions;
 	}
 
-	private ItemStock findAndCloneStock(Map<Pair<Stockroom, Item>, ItemStock> workingMap, Stockroom stockroom, Item item) {
-		Pair<Stockroom, Item> pair = Pair.with(stockroom, item);
-
-		ItemStock stock = workingMap.get(pair);
+	private ItemStockWorkingSet findWorkingStock(Map<Item, ItemStockWorkingSet> workingMap,
+	        Map<Item, ItemStock> sourceStock, Item item) {
+		ItemStockWorkingSet stock = workingMap.get(item);
 		if (stock == null) {
-			stock = stockroomService.getItem(stockroom, item);
-			if (stock != null) {
-				stock = new ItemStock(stock);
+			ItemStock itemStock = sourceStock.get(item);
+			if (itemStock != null) {
+				stock = new ItemStockWorkingSet(itemStock, AllocationStrategies.getStrategy(item));
 
-				workingMap.put(pair, stock);
+				workingMap.put(item, stock);
 			}
 		}
 
@@ -629,7 +1530,7 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 	}
 
 	private void findAndUpdateSourceDetail(List<ReservedTransaction> newTransactions, StockOperation operation,
-	        ItemStock stock, ReservedTransaction tx) {
+	        ItemStockWorkingSet stock, ReservedTransaction tx) {
 		ItemStockDetail detail = findSourceDetail(operation, stock, tx);
 
 		if (detail == null) {
@@ -650,16 +1551,16 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 			// Set the tx fields that derive from the source detail
 			tx.setSourceCalculatedExpiration(detail.isCalculatedExpiration());
 			tx.setSourceCalculatedBatch(detail.isCalculatedBatch());
-			tx.setExpiration(detail.getExpiration());
+			tx.setExpiration(detail.getExpiration() == null ? null : (Date)detail.getExpiration().clone());
 			tx.setBatchOperation(detail.getBatchOperation());
 
 			// get the cumulative total quantity for item stocks with the same expiration date.
-			int cumulativeQuantity = calculateTotalItemStockQuantity(stock, detail);
+			int cumulativeQuantity = stock.getExpirationTotal(detail.getExpiration());
 			int remainingQuantity = 0;
 
 			if (cumulativeQuantity == 0) {
 				// DO NOT use this item stock or any other with the same expiration date.
-				deleteItemStockDetailRecords(stock, detail);
+				stock.removeByExpiration(detail.getExpiration());
 				// Find other details to fulfill this tx
 				findAndUpdateSourceDetail(newTransactions, operation, stock, tx);
 			} else {
@@ -676,22 +1577,24 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 					}
 				}
 
-				if (detail.getQuantity() < 0) {
+				int detailQuantity = stock.getQuantity(detail);
+				if (detailQuantity < 0) {
 					// The detail quantity is already negative so just subtract more
-					detail.setQuantity(detail.getQuantity() - tx.getQuantity());
+					stock.setQuantity(detail, detailQuantity - tx.getQuantity());
 				} else {
 					// Subtract the tx quantity from the detail and ensure that it has enough to fulfill the request
-					detail.setQuantity(detail.getQuantity() - Math.abs(tx.getQuantity()));
+					detailQuantity -= Math.abs(tx.getQuantity());
+					stock.setQuantity(detail, detailQuantity);
 
-					if (detail.getQuantity() == 0) {
+					if (detailQuantity == 0) {
 						// If the quantity is exactly zero than we can simply remove the detail record
-						stock.getDetails().remove(detail);
-					} else if (detail.getQuantity() < 0) {
-						stock.getDetails().remove(detail);
+						stock.remove(detail);
+					} else if (detailQuantity < 0) {
+						stock.remove(detail);
 
 						// Set the tx quantity to the number actually deduced from the detail
 						//Math.abs is needed to handle negative adjustments correctly
-						tx.setQuantity(Math.abs(tx.getQuantity()) + detail.getQuantity());
+						tx.setQuantity(Math.abs(tx.getQuantity()) + detailQuantity);
 
 						//if adjustment make sure that the quantity is negative (this method is only dealing with
 						// negative adjustments)
@@ -699,8 +1602,7 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 							tx.setQuantity(tx.getQuantity() * -1);
 						}
 
-						remainingQuantity +=
-						        operation.isAdjustmentType() ? detail.getQuantity() : Math.abs(detail.getQuantity());
+						remainingQuantity += operation.isAdjustmentType() ? detailQuantity : Math.abs(detailQuantity);
 					}
 				}
 			}
@@ -719,44 +1621,7 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		}
 	}
 
-	/**
-	 * Calculates the total quantities for item stocks with the same expiration date.
-	 * @param stock
-	 * @param detail
-	 * @return
-	 */
-	private int calculateTotalItemStockQuantity(ItemStock stock, ItemStockDetail detail) {
-		int cumulativeQuantity = 0;
-		for (ItemStockDetail stockDetail : stock.getDetails()) {
-			Date stockDetailExp = stockDetail.getExpiration();
-			Date detailExp = detail.getExpiration();
-			if (stockDetailExp == null && detailExp == null) {
-				cumulativeQuantity += stockDetail.getQuantity();
-			} else if (stockDetailExp != null && detailExp != null) {
-				if (stockDetailExp.getTime() == detail.getExpiration().getTime()) {
-					cumulativeQuantity += stockDetail.getQuantity();
-				}
-			}
-		}
-		return cumulativeQuantity;
-	}
-
-	/**
-	 * Deletes item stocks with given expiration date.
-	 * @param stock
-	 * @param detail
-	 */
-	private void deleteItemStockDetailRecords(ItemStock stock, ItemStockDetail detail) {
-		List<ItemStockDetail> deleteStockDetails = findDetailByExpiration(stock, detail.getExpiration());
-
-		if (deleteStockDetails.size() > 0) {
-			for (ItemStockDetail deleteDetail : deleteStockDetails) {
-				stock.getDetails().remove(deleteDetail);
-			}
-		}
-	}
-
-	private ItemStockDetail findSourceDetail(StockOperation operation, ItemStock stock, ReservedTransaction tx) {
+	private ItemStockDetail findSourceDetail(StockOperation operation, ItemStockWorkingSet stock, ReservedTransaction tx) {
 		// This method finds the item stock detail to satisfy the reservation
 
 		if (stock == null) {
@@ -784,35 +1649,18 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 			None		Exp			-> Return Null
 		*/
 
-		List<ItemStockDetail> results = null;
 		if (Boolean.TRUE.equals(tx.isCalculatedExpiration()) && Boolean.TRUE.equals(tx.isCalculatedBatch())) {
-			// Find the detail that will expire the soonest/ furthest (could be multiple, each with a different batch op)
-			results =
-			        findDetailByClosestOrFurthestExpiration(ModuleSettings.autoSelectItemStockWithFurthestExpirationDate(),
-			            stock.getDetails(), new DateTime(operation.getOperationDate()));
-
-			if (results == null || results.size() == 0) {
-				detail = null;
-			} else if (results.size() == 1) {
-				detail = results.get(0);
-			} else if (results.size() > 1) {
-				detail = findOldestBatch(operation, results);
-			}
+			// Find the detail that the item allocation strategy takes first
+			detail = stock.findBest();
 		} else if (Boolean.TRUE.equals(tx.isCalculatedExpiration())) {
 			// Find the detail with the specific batch and pick the best expiration if there are multiple
-			results = findDetailByBatch(stock, tx.getBatchOperation());
-			results =
-			        findDetailByClosestOrFurthestExpiration(ModuleSettings.autoSelectItemStockWithFurthestExpirationDate(),
-			            results, new DateTime(operation.getOperationDate()));
-
-			detail = results.size() == 0 ? null : results.get(0);
+			detail = stock.findBest(stock.findByBatch(tx.getBatchOperation()));
 		} else if (Boolean.TRUE.equals(tx.isCalculatedBatch())) {
 			// Find the detail with the specific exp and the best batch if there are multiple
-			results = findDetailByExpiration(stock, tx.getExpiration());
-			detail = findOldestBatch(operation, results);
+			detail = stock.findBest(stock.findByExpiration(tx.getExpiration()));
 		} else {
 			// Find the detail with the specific exp and specific batch
-			detail = findDetail(stock, tx);
+			detail = stock.findDetail(tx.getExpiration(), tx.getBatchOperation());
 		}
 
 		return detail;
@@ -836,7 +1684,7 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		// nulls with nulls
 		for (ItemStockDetail detail : stock.getDetails()) {
 			if (ObjectUtils.equals(detail.getExpiration(), tx.getExpiration())
-			        && ObjectUtils.equals(detail.getBatchOperation(), tx.getBatchOperation())) {
+			        && ItemStockWorkingSet.isSameBatch(detail.getBatchOperation(), tx.getBatchOperation())) {
 				return detail;
 			}
 		}
@@ -844,105 +1692,6 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		return null;
 	}
 
-	private List<ItemStockDetail> findDetailByExpiration(ItemStock stock, final Date date) {
-		if (stock == null || stock.getDetails() == null || stock.getDetails().size() == 0) {
-			return null;
-		}
-
-		List<ItemStockDetail> results = new ArrayList<ItemStockDetail>();
-		results.addAll(Collections2.filter(stock.getDetails(), new Predicate<ItemStockDetail>() {
-			@Override
-			public boolean apply(ItemStockDetail detail) {
-				return (detail.getExpiration() == null && date == null)
-				        || (detail.getExpiration() != null && date != null && detail.getExpiration().compareTo(date) == 0);
-			}
-		}));
-
-		return results;
-	}
-
-	private List<ItemStockDetail> findDetailByBatch(ItemStock stock, final StockOperation batchOperation) {
-		if (stock == null || stock.getDetails() == null || stock.getDetails().size() == 0) {
-			return null;
-		}
-
-		List<ItemStockDetail> results = new ArrayList<ItemStockDetail>();
-		results.addAll(Collections2.filter(stock.getDetails(), new Predicate<ItemStockDetail>() {
-			@Override
-			public boolean apply(ItemStockDetail detail) {
-				return (detail.getBatchOperation() == null && batchOperation == null)
-				        || (detail.getBatchOperation() != null && detail.getBatchOperation() == batchOperation);
-			}
-		}));
-
-		return results;
-	}
-
-	private List<ItemStockDetail> findDetailByClosestOrFurthestExpiration(
-	        boolean furthestExpirationDate, Collection<ItemStockDetail> details, DateTime date) {
-		if (details == null || details.size() == 0) {
-			return null;
-		}
-
-		List<ItemStockDetail> results = new ArrayList<ItemStockDetail>();
-
-		if (details.size() == 1) {
-			// If there is only a single detail record then we can just use that
-			results.addAll(details);
-		} else {
-			long range = 0;
-			for (ItemStockDetail detail : details) {
-				long temp;
-				if (detail.getExpiration() == null) {
-					temp = Long.MAX_VALUE;
-				} else {
-					temp = new Duration(date, new DateTime(detail.getExpiration())).getStandardSeconds();
-				}
-
-				if (results.size() == 0) {
-					results.add(detail);
-					range = temp;
-				} else {
-					if (temp == range) {
-						results.add(detail);
-					} else if ((temp < range && !furthestExpirationDate) || (temp > range && furthestExpirationDate)) {
-						results.clear();
-						results.add(detail);
-
-						range = temp;
-					}
-				}
-			}
-		}
-
-		return results;
-	}
-
-	private ItemStockDetail findOldestBatch(StockOperation operation, Collection<ItemStockDetail> details) {
-		if (details == null || details.size() == 0) {
-			return null;
-		} else if (details.size() == 1) {
-			return Iterators.getOnlyElement(details.iterator());
-		}
-
-		final DateTime operationTime = new DateTime(operation.getOperationDate());
-
-		return Collections.min(details, new Comparator<ItemStockDetail>() {
-			@Override
-			public int compare(ItemStockDetail o1, ItemStockDetail o2) {
-				DateTime o1Time =
-				        o1.getBatchOperation() == null ? operationTime : new DateTime(o1.getBatchOperation()
-				                .getOperationDate());
-				DateTime o2Time =
-				        o2.getBatchOperation() == null ? operationTime : new DateTime(o2.getBatchOperation()
-				                .getOperationDate());
-
-				return ((Integer)Seconds.secondsBetween(operationTime, o1Time).getSeconds()).compareTo(Seconds
-				        .secondsBetween(operationTime, o2Time).getSeconds());
-			}
-		});
-	}
-
 	private Map<Pair<Item, Stockroom>, List<StockOperationTransaction>> createGroupedTransactions(
 	        StockOperationTransaction[] transactions) {
 		Map<Pair<Item, Stockroom>, List<StockOperationTransaction>> grouped =
@@ -1007,13 +1756,7 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 	}
 
 	private int compareOperationsByDateAndOrder(StockOperation o1, StockOperation o2) {
-		cal1.setTime(o1.getOperationDate());
-		Utility.clearCalendarTime(cal1);
-
-		cal2.setTime(o2.getOperationDate());
-		Utility.clearCalendarTime(cal2);
-
-		int result = cal1.compareTo(cal2);
+		int result = o1.getOperationDay().compareTo(o2.getOperationDay());
 		if (result == 0) {
 			result = o1.getOperationOrder().compareTo(o2.getOperationOrder());
 		}
@@ -1021,6 +1764,44 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 		return result;
 	}
 
+	private static Date getDay(Date date) {
+		// Operations for unrelated item stock can be processed concurrently so the calendar cannot be shared
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		Utility.clearCalendarTime(cal);
+
+		return cal.getTime();
+	}
+
+	private void checkOperationDates(List<StockOperation> operations) {
+		// The batch operations are not saved until they are processed so the last operation order for a day does not
+		//  include them. Account for the orders already assigned to the batch operations on the same day.
+		List<StockOperation> checked = new ArrayList<StockOperation>(operations.size());
+		for (StockOperation operation : operations) {
+			boolean assignOrder = operation.getOperationOrder() == null;
+			checkOperationDate(operation);
+
+			if (operation.getStatus() == StockOperationStatus.NEW || operation.getStatus() == StockOperationStatus.PENDING) {
+				Date day = operation.getOperationDay();
+				for (StockOperation other : checked) {
+					if (other.getOperationOrder() == null || day.compareTo(other.getOperationDay()) != 0) {
+						continue;
+					}
+
+					if (assignOrder) {
+						if (other.getOperationOrder() >= operation.getOperationOrder()) {
+							operation.setOperationOrder(other.getOperationOrder() + OPERATION_ORDER_GAP);
+						}
+					} else if (other.getOperationOrder() >= operation.getOperationOrder()) {
+						other.setOperationOrder(other.getOperationOrder() + 1);
+					}
+				}
+			}
+
+			checked.add(operation);
+		}
+	}
+
 	private void checkOperationDate(StockOperation operation) {
 		// Ensure that the operation date and order are properly set
 		if (operation.getStatus() == StockOperationStatus.NEW || operation.getStatus() == StockOperationStatus.PENDING) {
@@ -1029,27 +1810,77 @@ public class StockOperationServiceImpl extends BaseOpenmrsService implements ISt
 			}
 
 			if (operation.getOperationOrder() == null) {
-				// Get the last operation for the operation day
-				StockOperation lastOp = operationService.getLastOperationByDate(operation.getOperationDate());
+				// Add the operation after the last operation for the operation day
+				Integer lastOrder = operationService.getPreviousOperationOrder(operation.getOperationDate(), null);
 
-				if (lastOp == null || lastOp.getOperationOrder() == null) {
-					operation.setOperationOrder(0);
-				} else {
-					operation.setOperationOrder(lastOp.getOperationOrder() + 1);
-				}
+				operation.setOperationOrder(lastOrder == null ? 0 : lastOrder + OPERATION_ORDER_GAP);
 			} else {
-				// The operation order has been explicitly set. Ensure that any subsequent operations on the same day have
-				//	their operation order incremented
-				List<StockOperation> operations = operationService.getOperationsByDate(operation.getOperationDate(), null);
-
-				for (StockOperation op : operations) {
-					if (op != operation && op.getOperationOrder() >= operation.getOperationOrder()) {
-						op.setOperationOrder(op.getOperationOrder() + 1);
-
-						operationService.save(op);
+				// The operation order has been explicitly set, meaning that the operation should occur before any existing
+				//	operation with that order. Place it in the gap before that operation so that no other operations change.
+				int order = operation.getOperationOrder();
+				Integer nextOrder = operationService.getNextOperationOrder(operation);
+				if (nextOrder != null && nextOrder == order) {
+					Integer previousOrder = operationService.getPreviousOperationOrder(operation.getOperationDate(), order);
+					if (previousOrder == null) {
+						operation.setOperationOrder(order - OPERATION_ORDER_GAP);
+					} else if (order - previousOrder > 1) {
+						operation.setOperationOrder(previousOrder + ((order - previousOrder) / 2));
+					} else {
+						// There is no gap left so spread out the orders for the day and then use the new gap
+						int index = rebalanceOperationOrders(operation, order);
+						operation.setOperationOrder((index * OPERATION_ORDER_GAP) - (OPERATION_ORDER_GAP / 2));
 					}
 				}
 			}
 		}
 	}
+
+	/**
+	 * Reassigns the operation orders for the operations on the same day as the specified operation so that there is an
+	 * {@link #OPERATION_ORDER_GAP} between each operation. This only needs to be done when an operation is inserted into a
+	 * gap that has been used up.
+	 * @param operation The operation being inserted.
+	 * @param order The order of the operation that the inserted operation should come before.
+	 * @return The index of the first operation that has an order equal to or greater than the specified order.
+	 */
+	private int rebalanceOperationOrders(StockOperation operation, int order) {
+		List<StockOperation> operations = operationService.getOperationsByDate(operation.getOperationDate(), null);
+		operations.remove(operation);
+
+		int insertIndex = operations.size();
+		for (int i = 0; i < operations.size(); i++) {
+			StockOperation op = operations.get(i);
+			if (insertIndex == operations.size() && op.getOperationOrder() >= order) {
+				insertIndex = i;
+			}
+		}
+
+		if (operations.size() > 0) {
+			// Checkpoints store the order of the last included operation so any on this day are now wrong
+			checkpointService.invalidateCheckpoints(null, operation.getOperationDate(), operations.get(0)
+			        .getOperationOrder());
+		}
+
+		for (int i = 0; i < operations.size(); i++) {
+			StockOperation op = operations.get(i);
+			op.setOperationOrder(i * OPERATION_ORDER_GAP);
+
+			operationService.save(op);
+		}
+
+		return insertIndex;
+	}
+
+	/**
+	 * A nested transaction that is either managed by the transaction manager or a savepoint on the session connection.
+	 */
+	private static final class NestedTransaction {
+		private final TransactionStatus status;
+		private final Savepoint savepoint;
+
+		private NestedTransaction(TransactionStatus status, Savepoint savepoint) {
+			this.status = status;
+			this.savepoint = savepoint;
+		}
+	}
 }
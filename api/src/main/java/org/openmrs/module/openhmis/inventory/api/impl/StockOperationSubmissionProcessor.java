@@ -0,0 +1,59 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationService;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmission;
+
+/**
+ * Submits the operations queued in the {@link StockOperationSubmissionQueue}. The operation is reloaded by uuid and
+ * submitted with the requested status using the {@link IStockOperationService}.
+ * <p>
+ * The queue workers run as the OpenMRS daemon user, which cannot take on the identity of another user, so the changes
+ * made by the submission (the operation changed by and the transactions and item stock created by) are audited as the
+ * daemon user. The user that submitted the operation is kept on the {@link StockOperationSubmission} and logged.
+ */
+public class StockOperationSubmissionProcessor implements Action1<StockOperationSubmission> {
+	private static final Log LOG = LogFactory.getLog(StockOperationSubmissionProcessor.class);
+
+	@Override
+	public void apply(StockOperationSubmission submission) {
+		try {
+			StockOperation operation = Context.getService(IStockOperationDataService.class).getByUuid(submission.getUuid());
+			if (operation == null) {
+				throw new APIException("The operation '" + submission.getUuid() + "' could not be found.");
+			}
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Submitting the operation '" + submission.getUuid() + "' for the user '"
+				        + submission.getSubmittedBy() + "'.");
+			}
+
+			operation.setStatus(submission.getRequestedStatus());
+			operation = Context.getService(IStockOperationService.class).submitOperation(operation);
+
+			submission.setOperationStatus(operation.getStatus());
+		} finally {
+			// The worker threads are long lived so the session must not keep the objects loaded for each operation
+			Context.clearSession();
+		}
+	}
+}
@@ -0,0 +1,459 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmission;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmissionState;
+
+/**
+ * Bounded in-process queue of {@link StockOperation}s waiting to be submitted by a fixed pool of worker threads. This allows
+ * a request to return as soon as the operation is queued instead of waiting for the operation (and any rollback and
+ * reapply of the following operations) to be processed.
+ * <p>
+ * When the queue is full new submissions are rejected with an estimate of how long the client should wait before trying
+ * again. The status of each submission is kept after it has been processed so that clients can poll for the result.
+ * </p>
+ */
+public class StockOperationSubmissionQueue {
+	public static final int DEFAULT_RETAINED_COUNT = 1000;
+
+	private static final Log LOG = LogFactory.getLog(StockOperationSubmissionQueue.class);
+
+	private static final long POLL_TIMEOUT_MILLISECONDS = 500;
+	private static final long DEFAULT_PROCESSING_MILLISECONDS = 1000;
+	private static final int MAX_RETRY_AFTER_SECONDS = 300;
+
+	private static volatile StockOperationSubmissionQueue instance;
+
+	private final int capacity;
+	private final int workerCount;
+	private final int retainedCount;
+	private final Action1<StockOperationSubmission> processor;
+	private final BlockingQueue<StockOperationSubmission> queue;
+	private final ConcurrentMap<String, StockOperationSubmission> submissions =
+	        new ConcurrentHashMap<String, StockOperationSubmission>();
+	private final Queue<String> finished = new ConcurrentLinkedQueue<String>();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final AtomicInteger finishedCount = new AtomicInteger();
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong totalWaitTime = new AtomicLong();
+	private final AtomicLong maxWaitTime = new AtomicLong();
+	private final AtomicLong totalProcessingTime = new AtomicLong();
+
+	private DaemonToken daemonToken;
+	private volatile boolean running;
+
+	/**
+	 * Creates a new submission queue.
+	 * @param capacity The maximum number of operations that can be waiting to be processed.
+	 * @param workerCount The number of worker threads that process the queued operations.
+	 * @param processor The action that submits a queued operation. Any exception thrown fails the submission.
+	 */
+	public StockOperationSubmissionQueue(int capacity, int workerCount, Action1<StockOperationSubmission> processor) {
+		this(capacity, workerCount, DEFAULT_RETAINED_COUNT, processor);
+	}
+
+	/**
+	 * Creates a new submission queue.
+	 * @param capacity The maximum number of operations that can be waiting to be processed.
+	 * @param workerCount The number of worker threads that process the queued operations.
+	 * @param retainedCount The number of processed submissions whose status is kept for polling.
+	 * @param processor The action that submits a queued operation. Any exception thrown fails the submission.
+	 */
+	public StockOperationSubmissionQueue(int capacity, int workerCount, int retainedCount,
+	    Action1<StockOperationSubmission> processor) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The queue capacity must be greater than zero.");
+		}
+		if (workerCount <= 0) {
+			throw new IllegalArgumentException("The worker count must be greater than zero.");
+		}
+		if (processor == null) {
+			throw new IllegalArgumentException("The processor must be defined.");
+		}
+
+		this.capacity = capacity;
+		this.workerCount = workerCount;
+		this.retainedCount = retainedCount;
+		this.processor = processor;
+		this.queue = new ArrayBlockingQueue<StockOperationSubmission>(capacity);
+	}
+
+	/**
+	 * Gets the running submission queue.
+	 * @return The submission queue or {@code null} if asynchronous submission has not been started.
+	 */
+	public static StockOperationSubmissionQueue getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Starts the specified queue and makes it the running submission queue, stopping any previously running queue.
+	 * @param queue The queue to start or {@code null} to only stop the running queue.
+	 */
+	public static synchronized void setInstance(StockOperationSubmissionQueue queue) {
+		if (instance != null) {
+			instance.stop();
+		}
+
+		instance = queue;
+		if (queue != null) {
+			queue.start();
+		}
+	}
+
+	/**
+	 * Sets the token used to run the workers as daemon threads. Workers need a daemon token to be able to call the OpenMRS
+	 * services; without one they are run as plain threads.
+	 * @param daemonToken The module daemon token.
+	 */
+	public void setDaemonToken(DaemonToken daemonToken) {
+		this.daemonToken = daemonToken;
+	}
+
+	/**
+	 * Starts the worker threads.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+
+		running = true;
+		for (int i = 0; i < workerCount; i++) {
+			Runnable worker = new Runnable() {
+				@Override
+				public void run() {
+					processQueue();
+				}
+			};
+
+			if (daemonToken != null) {
+				Daemon.runInDaemonThread(worker, daemonToken);
+			} else {
+				Thread thread = new Thread(worker, "openhmis-inventory-submission-" + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker threads. Operations that are still waiting in the queue are failed and must be submitted again.
+	 */
+	public synchronized void stop() {
+		running = false;
+
+		StockOperationSubmission submission;
+		while ((submission = queue.poll()) != null) {
+			finish(submission, StockOperationSubmissionState.FAILED,
+			    "The submission queue was stopped before the operation was processed.");
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Queues the specified operation to be submitted with the requested status.
+	 * @param operation The saved operation to submit.
+	 * @param requestedStatus The status to submit the operation with.
+	 * @return The queued submission. If the queue is full the submission state will be
+	 *         {@link StockOperationSubmissionState#REJECTED} and the submission will define how long to wait before
+	 *         trying again. If the operation is already waiting to be processed the existing submission is returned.
+	 */
+	public StockOperationSubmission enqueue(StockOperation operation, StockOperationStatus requestedStatus) {
+		return enqueue(operation, requestedStatus, null);
+	}
+
+	/**
+	 * Queues the specified operation to be submitted with the requested status on behalf of the specified user. The
+	 * workers submit the operation as the daemon user so the operation and the records created for it are audited as
+	 * the daemon user; the submission keeps the user that submitted it.
+	 * @param operation The saved operation to submit.
+	 * @param requestedStatus The status to submit the operation with.
+	 * @param submittedBy The uuid of the user submitting the operation.
+	 * @return The queued submission, see {@link #enqueue(StockOperation, StockOperationStatus)}.
+	 */
+	public StockOperationSubmission enqueue(StockOperation operation, StockOperationStatus requestedStatus,
+	        String submittedBy) {
+		if (operation == null) {
+			throw new IllegalArgumentException("The operation to submit must be defined.");
+		}
+		if (operation.getUuid() == null) {
+			throw new IllegalArgumentException("The operation to submit must have a uuid.");
+		}
+		if (!running) {
+			throw new IllegalStateException("The submission queue is not running.");
+		}
+
+		StockOperationSubmission submission = new StockOperationSubmission(operation, requestedStatus);
+		submission.setSubmittedBy(submittedBy);
+		submission.setState(StockOperationSubmissionState.QUEUED);
+		submission.setQueuedOn(new Date());
+
+		// Claim the operation uuid atomically so that concurrent submissions of the same operation only queue it once
+		StockOperationSubmission existing;
+		while ((existing = submissions.putIfAbsent(submission.getUuid(), submission)) != null) {
+			if (existing.getState() == StockOperationSubmissionState.QUEUED
+			        || existing.getState() == StockOperationSubmissionState.PROCESSING) {
+				return existing;
+			}
+
+			// The previous submission has been processed so it can be replaced
+			if (submissions.replace(submission.getUuid(), existing, submission)) {
+				break;
+			}
+		}
+
+		if (!queue.offer(submission)) {
+			submissions.remove(submission.getUuid(), submission);
+			rejectedCount.incrementAndGet();
+
+			submission.setState(StockOperationSubmissionState.REJECTED);
+			submission.setRetryAfterSeconds(getRetryAfterSeconds());
+
+			LOG.warn("The stock operation submission queue is full; rejected operation '" + submission.getUuid() + "'.");
+		} else {
+			submittedCount.incrementAndGet();
+		}
+
+		return submission;
+	}
+
+	/**
+	 * Gets the submission for the specified operation.
+	 * @param uuid The operation uuid.
+	 * @return The submission or {@code null} if the operation was not submitted through this queue or the submission is
+	 *         no longer retained.
+	 */
+	public StockOperationSubmission getSubmission(String uuid) {
+		if (uuid == null) {
+			return null;
+		}
+
+		return submissions.get(uuid);
+	}
+
+	/**
+	 * Gets the submissions that are waiting to be or are being processed.
+	 * @return The pending submissions.
+	 */
+	public List<StockOperationSubmission> getPendingSubmissions() {
+		List<StockOperationSubmission> results = new ArrayList<StockOperationSubmission>();
+		for (StockOperationSubmission submission : submissions.values()) {
+			if (submission.getState() == StockOperationSubmissionState.QUEUED
+			        || submission.getState() == StockOperationSubmissionState.PROCESSING) {
+				results.add(submission);
+			}
+		}
+
+		return results;
+	}
+
+	public boolean isFull() {
+		return queue.remainingCapacity() == 0;
+	}
+
+	/**
+	 * Estimates how long it will take for the currently queued operations to be processed.
+	 * @return The number of seconds a rejected client should wait before trying again.
+	 */
+	public int getRetryAfterSeconds() {
+		long processingTime = getAverageProcessingTime();
+		if (processingTime <= 0) {
+			processingTime = DEFAULT_PROCESSING_MILLISECONDS;
+		}
+
+		long milliseconds = (getUnprocessedCount() * processingTime) / workerCount;
+		long seconds = (milliseconds + 999) / 1000;
+
+		return (int)Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * Gets the number of operations waiting to be processed.
+	 * @return The queue depth.
+	 */
+	public int getQueueDepth() {
+		return (int)Math.max(0, getUnprocessedCount() - activeCount.get());
+	}
+
+	/**
+	 * Gets the number of operations currently being processed.
+	 * @return The number of busy workers.
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Gets the average time that processed operations waited in the queue.
+	 * @return The average wait time in milliseconds.
+	 */
+	public long getAverageWaitTime() {
+		long processed = completedCount.get() + failedCount.get();
+
+		return processed == 0 ? 0 : totalWaitTime.get() / processed;
+	}
+
+	/**
+	 * Gets the longest time that a processed operation waited in the queue.
+	 * @return The maximum wait time in milliseconds.
+	 */
+	public long getMaxWaitTime() {
+		return maxWaitTime.get();
+	}
+
+	/**
+	 * Gets the average time that it took a worker to process an operation.
+	 * @return The average processing time in milliseconds.
+	 */
+	public long getAverageProcessingTime() {
+		long processed = completedCount.get() + failedCount.get();
+
+		return processed == 0 ? 0 : totalProcessingTime.get() / processed;
+	}
+
+	private long getUnprocessedCount() {
+		// Every accepted submission is counted as completed or failed once it has been processed
+		return Math.max(0, submittedCount.get() - completedCount.get() - failedCount.get());
+	}
+
+	private void processQueue() {
+		while (running) {
+			StockOperationSubmission submission;
+			try {
+				submission = queue.poll(POLL_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			if (submission != null) {
+				process(submission);
+			}
+		}
+	}
+
+	private void process(StockOperationSubmission submission) {
+		activeCount.incrementAndGet();
+		try {
+			Date started = new Date();
+			submission.setStartedOn(started);
+			submission.setState(StockOperationSubmissionState.PROCESSING);
+
+			long waitTime = started.getTime() - submission.getQueuedOn().getTime();
+			totalWaitTime.addAndGet(waitTime);
+			long max;
+			do {
+				max = maxWaitTime.get();
+			} while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime));
+
+			try {
+				processor.apply(submission);
+
+				finish(submission, StockOperationSubmissionState.COMPLETED, null);
+			} catch (Exception ex) {
+				LOG.error("Could not submit the stock operation '" + submission.getUuid() + "'.", ex);
+
+				finish(submission, StockOperationSubmissionState.FAILED,
+				    ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage());
+			}
+
+			totalProcessingTime.addAndGet(submission.getCompletedOn().getTime() - started.getTime());
+		} finally {
+			activeCount.decrementAndGet();
+		}
+	}
+
+	private void finish(StockOperationSubmission submission, StockOperationSubmissionState state, String errorMessage) {
+		// Count the submission before changing its state so that the queue depth is correct once it is seen as processed
+		if (state == StockOperationSubmissionState.COMPLETED) {
+			completedCount.incrementAndGet();
+		} else {
+			failedCount.incrementAndGet();
+		}
+
+		submission.setErrorMessage(errorMessage);
+		submission.setCompletedOn(new Date());
+		submission.setState(state);
+
+		// Only keep the most recent processed submissions so that the status map does not grow without bounds
+		finished.add(submission.getUuid());
+		int count = finishedCount.incrementAndGet();
+		while (count > retainedCount) {
+			String uuid = finished.poll();
+			if (uuid == null) {
+				break;
+			}
+
+			count = finishedCount.decrementAndGet();
+			StockOperationSubmission old = submissions.get(uuid);
+			if (old != null && old.getState() != StockOperationSubmissionState.QUEUED
+			        && old.getState() != StockOperationSubmissionState.PROCESSING) {
+				submissions.remove(uuid, old);
+			}
+		}
+	}
+}
@@ -13,6 +13,9 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.hibernate.Criteria;
@@ -23,6 +26,8 @@ import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseObjectDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.f.Action1;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationTransactionDataService;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.security.BasicObjectAuthorizationPrivileges;
@@ -68,4 +73,37 @@ public class StockOperationTransactionDataServiceImpl
 			}
 		}, Order.desc(HibernateCriteriaConstants.DATE_CREATED), Order.desc(HibernateCriteriaConstants.ID));
 	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_OPERATIONS })
+	public List<StockOperationTransaction> getTransactionsSinceCheckpoint(final StockCheckpoint checkpoint,
+	        final Collection<Item> items) {
+		if (checkpoint == null) {
+			throw new IllegalArgumentException("The checkpoint must be defined");
+		}
+		if (items != null && items.size() == 0) {
+			return new ArrayList<StockOperationTransaction>();
+		}
+
+		// The checkpoint operation date is the day of the last included operation
+		final Date day = checkpoint.getOperationDate();
+
+		return executeCriteria(StockOperationTransaction.class, null, new Action1<Criteria>() {
+			@Override
+			public void apply(Criteria criteria) {
+				criteria.createAlias(HibernateCriteriaConstants.OPERATION, "o");
+				criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, checkpoint.getStockroom()));
+				if (items != null) {
+					criteria.add(Restrictions.in(HibernateCriteriaConstants.ITEM, items));
+				}
+
+				criteria.add(Restrictions.ge("o." + HibernateCriteriaConstants.OPERATION_DAY, day));
+				criteria.add(Restrictions.or(
+				    Restrictions.gt("o." + HibernateCriteriaConstants.OPERATION_DAY, day),
+				    Restrictions.gt("o." + HibernateCriteriaConstants.OPERATION_ORDER, checkpoint.getOperationOrder())));
+			}
+		}, Order.asc("o." + HibernateCriteriaConstants.OPERATION_DAY),
+		    Order.asc("o." + HibernateCriteriaConstants.OPERATION_ORDER), Order.asc(HibernateCriteriaConstants.ID));
+	}
 }
@@ -13,11 +13,14 @@
  */
 package org.openmrs.module.openhmis.inventory.api.impl;
 
+import org.openmrs.annotation.Authorized;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseMetadataDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.entity.security.IMetadataAuthorizationPrivileges;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationTypeDataService;
 import org.openmrs.module.openhmis.inventory.api.model.IStockOperationType;
 import org.openmrs.module.openhmis.inventory.api.security.BasicMetadataAuthorizationPrivileges;
+import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Data service implementation class for {@link IStockOperationType}.
@@ -34,6 +37,8 @@ public class StockOperationTypeDataServiceImpl extends BaseMetadataDataServiceIm
 	protected void validate(IStockOperationType object) {}
 
 	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_METADATA })
 	public IStockOperationType save(IStockOperationType type) {
 		// Check to see if this is a new entity
 		if (type.getId() == null) {
@@ -41,6 +46,47 @@ public class StockOperationTypeDataServiceImpl extends BaseMetadataDataServiceIm
 		}
 
 		// Update the existing entity
+		ReferenceDataRegistry.OPERATION_TYPES.remove(type);
+
 		return super.save(type);
 	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_METADATA })
+	public IStockOperationType getByUuid(String uuid) {
+		// Look up the id from the registry so that the operation types can be loaded from the cache rather than queried
+		Integer id = ReferenceDataRegistry.OPERATION_TYPES.getId(uuid);
+		if (id != null) {
+			IStockOperationType type = getById(id);
+			if (type != null && uuid.equals(type.getUuid())) {
+				return type;
+			}
+
+			ReferenceDataRegistry.OPERATION_TYPES.removeUuid(uuid);
+		}
+
+		IStockOperationType type = super.getByUuid(uuid);
+		ReferenceDataRegistry.OPERATION_TYPES.put(type);
+
+		return type;
+	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.MANAGE_METADATA })
+	public IStockOperationType retire(IStockOperationType type, String reason) {
+		ReferenceDataRegistry.OPERATION_TYPES.remove(type);
+
+		return super.retire(type, reason);
+	}
+
+	@Override
+	@Transactional
+	@Authorized({ PrivilegeConstants.PURGE_METADATA })
+	public void purge(IStockOperationType type) {
+		ReferenceDataRegistry.OPERATION_TYPES.remove(type);
+
+		super.purge(type);
+	}
 }
@@ -16,24 +16,32 @@ package org.openmrs.module.openhmis.inventory.api.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Location;
 import org.openmrs.OpenmrsObject;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.impl.BaseMetadataDataServiceImpl;
 import org.openmrs.module.openhmis.commons.api.entity.security.IMetadataAuthorizationPrivileges;
 import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.CursorPagingInfo;
+import org.openmrs.module.openhmis.inventory.api.IItemStockDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
@@ -49,6 +57,21 @@ import org.springframework.transaction.annotation.Transactional;
 public class StockroomDataServiceImpl extends BaseMetadataDataServiceImpl<Stockroom>
         implements IStockroomDataService, IMetadataAuthorizationPrivileges {
 	private static final int MAX_STOCKROOM_CODE_LENGTH = 255;
+	private static final int MAX_ITEMS_PER_QUERY = 500;
+
+	private static final CursorPaging.Key<ItemStock> ITEM_NAME_KEY = new CursorPaging.Key<ItemStock>("i.name", true) {
+		@Override
+		public Object getValue(ItemStock stock) {
+			return stock.getItem().getName();
+		}
+	};
+	private static final CursorPaging.Key<StockOperationTransaction> TRANSACTION_DATE_KEY =
+	        new CursorPaging.Key<StockOperationTransaction>(HibernateCriteriaConstants.DATE_CREATED, false) {
+		        @Override
+		        public Object getValue(StockOperationTransaction tx) {
+			        return tx.getDateCreated();
+		        }
+	        };
 
 	@Override
 	protected IMetadataAuthorizationPrivileges getPrivileges() {
@@ -68,6 +91,24 @@ public class StockroomDataServiceImpl extends BaseMetadataDataServiceImpl<Stockr
 		return results;
 	}
 
+	@Override
+	public Stockroom save(Stockroom stockroom) {
+		Stockroom result = super.save(stockroom);
+
+		// The item stock of the stockroom is saved along with it
+		ItemStockCache.invalidateStockroom(result.getId());
+
+		return result;
+	}
+
+	@Override
+	public void purge(Stockroom stockroom) {
+		Integer id = stockroom == null ? null : stockroom.getId();
+
+		super.purge(stockroom);
+		ItemStockCache.invalidateStockroom(id);
+	}
+
 	@Override
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_STOCKROOMS })
@@ -76,14 +117,22 @@ public class StockroomDataServiceImpl extends BaseMetadataDataServiceImpl<Stockr
 			throw new IllegalArgumentException("The stockroom must be defined");
 		}
 
-		return executeCriteria(ItemStock.class, paging, new Action1<Criteria>() {
+		Action1<Criteria> action = new Action1<Criteria>() {
 			@Override
 			public void apply(Criteria criteria) {
 				criteria.createAlias("item", "i");
 				criteria.setResultTransformer(Criteria.ROOT_ENTITY);
 				criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
 			}
-		}, Order.asc("i.name"));
+		};
+
+		if (paging instanceof CursorPagingInfo) {
+			return CursorPaging.execute(getRepository().createCriteria(ItemStock.class),
+			    getRepository().createCriteria(ItemStock.class), action, (CursorPagingInfo)paging, ITEM_NAME_KEY,
+			    CursorPaging.<ItemStock> idKey(true));
+		}
+
+		return executeCriteria(ItemStock.class, paging, action, Order.asc("i.name"));
 	}
 
 	@Override
@@ -94,12 +143,21 @@ public class StockroomDataServiceImpl extends BaseMetadataDataServiceImpl<Stockr
 			throw new IllegalArgumentException("The stockroom must be defined");
 		}
 
-		return executeCriteria(StockOperationTransaction.class, paging, new Action1<Criteria>() {
+		Action1<Criteria> action = new Action1<Criteria>() {
 			@Override
 			public void apply(Criteria criteria) {
 				criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
 			}
-		}, Order.desc(HibernateCriteriaConstants.DATE_CREATED), Order.desc(HibernateCriteriaConstants.ID));
+		};
+
+		if (paging instanceof CursorPagingInfo) {
+			return CursorPaging.execute(getRepository().createCriteria(StockOperationTransaction.class),
+			    getRepository().createCriteria(StockOperationTransaction.class), action, (CursorPagingInfo)paging,
+			    TRANSACTION_DATE_KEY, CursorPaging.<StockOperationTransaction> idKey(false));
+		}
+
+		return executeCriteria(StockOperationTransaction.class, paging, action,
+		    Order.desc(HibernateCriteriaConstants.DATE_CREATED), Order.desc(HibernateCriteriaConstants.ID));
 	}
 
 	@Override
@@ -183,6 +241,24 @@ public class StockroomDataServiceImpl extends BaseMetadataDataServiceImpl<Stockr
 			throw new IllegalArgumentException("The item must be defined.");
 		}
 
+		// The cached snapshot id lets the item stock be loaded from the session or second level cache rather than queried.
+		//  Snapshots that expire may not include changes made by other nodes and those read after item stock was changed
+		//  in this transaction are not cached so the item stock is queried in those cases.
+		ItemStockCache cache = ItemStockCache.getInstance();
+		if (cache != null && cache.isConsistent() && !ItemStockCache.isChangedInTransaction() && stockroom.getId() != null
+		        && item.getId() != null) {
+			IItemStockDataService itemStockService = Context.getService(IItemStockDataService.class);
+			ItemStockSnapshot snapshot = itemStockService.getItemStockSnapshot(stockroom, item);
+			if (snapshot.getItemStockId() == null) {
+				return null;
+			}
+
+			ItemStock stock = itemStockService.getById(snapshot.getItemStockId());
+			if (stock != null && stockroom.equals(stock.getStockroom()) && item.equals(stock.getItem())) {
+				return stock;
+			}
+		}
+
 		Criteria criteria = getRepository().createCriteria(ItemStock.class);
 		criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
 		criteria.add(Restrictions.eq(HibernateCriteriaConstants.ITEM, item));
@@ -190,6 +266,44 @@ public class StockroomDataServiceImpl extends BaseMetadataDataServiceImpl<Stockr
 		return getRepository().selectSingle(ItemStock.class, criteria);
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	@Authorized({ PrivilegeConstants.VIEW_STOCKROOMS })
+	public Map<Item, ItemStock> getItems(final Stockroom stockroom, Collection<Item> items) {
+		if (stockroom == null) {
+			throw new IllegalArgumentException("The stockroom must be defined.");
+		}
+		if (items == null) {
+			throw new IllegalArgumentException("The items must be defined.");
+		}
+
+		Map<Item, ItemStock> results = new HashMap<Item, ItemStock>();
+		List<Item> itemList = new ArrayList<Item>(new LinkedHashSet<Item>(items));
+		itemList.remove(null);
+
+		// Split very large item lists so that the IN clause does not exceed the database parameter limits
+		for (int i = 0; i < itemList.size(); i += MAX_ITEMS_PER_QUERY) {
+			final List<Item> chunk = itemList.subList(i, Math.min(i + MAX_ITEMS_PER_QUERY, itemList.size()));
+
+			// Fetch the details in the same query rather than with the mapped subselect
+			List<ItemStock> stocks = executeCriteria(ItemStock.class, null, new Action1<Criteria>() {
+				@Override
+				public void apply(Criteria criteria) {
+					criteria.add(Restrictions.eq(HibernateCriteriaConstants.STOCKROOM, stockroom));
+					criteria.add(Restrictions.in(HibernateCriteriaConstants.ITEM, chunk));
+					criteria.setFetchMode(HibernateCriteriaConstants.DETAILS, FetchMode.JOIN);
+					criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+				}
+			});
+
+			for (ItemStock stock : stocks) {
+				results.put(stock.getItem(), stock);
+			}
+		}
+
+		return results;
+	}
+
 	@Override
 	@Transactional(readOnly = true)
 	@Authorized({ PrivilegeConstants.VIEW_STOCKROOMS })
@@ -0,0 +1,39 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+/**
+ * The strategies that can be used to decide which item stock is taken when the expiration or batch of an operation item is
+ * not specified.
+ */
+public enum AllocationStrategyType {
+	/**
+	 * First expired, first out: take the stock that expires the soonest.
+	 */
+	FEFO(),
+	/**
+	 * First in, first out: take the stock from the oldest batch.
+	 */
+	FIFO(),
+	/**
+	 * Last expired, first out: take the stock that expires the furthest in the future.
+	 */
+	LEFO(),
+	/**
+	 * The batch must be explicitly selected for each operation item that takes stock from a stockroom.
+	 */
+	EXPLICIT();
+
+	private AllocationStrategyType() {}
+}
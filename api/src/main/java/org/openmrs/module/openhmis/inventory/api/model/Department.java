@@ -22,6 +22,7 @@ public class Department extends BaseSerializableOpenmrsMetadata {
 	public static final long serialVersionUID = 0L;
 
 	private Integer departmentId;
+	private AllocationStrategyType allocationStrategy;
 
 	@Override
 	public Integer getId() {
@@ -32,4 +33,16 @@ public class Department extends BaseSerializableOpenmrsMetadata {
 	public void setId(Integer id) {
 		departmentId = id;
 	}
+
+	/**
+	 * Gets the strategy used to select the item stock to take for the items in this department.
+	 * @return The allocation strategy or {@code null} to use the default strategy.
+	 */
+	public AllocationStrategyType getAllocationStrategy() {
+		return allocationStrategy;
+	}
+
+	public void setAllocationStrategy(AllocationStrategyType allocationStrategy) {
+		this.allocationStrategy = allocationStrategy;
+	}
 }
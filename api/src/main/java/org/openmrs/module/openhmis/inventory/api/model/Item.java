@@ -41,6 +41,7 @@ public class Item extends BaseSimpleCustomizableMetadata<ItemAttribute> implemen
 	private Boolean hasPhysicalInventory;
 	private Boolean conceptAccepted;
 	private BigDecimal buyingPrice;
+	private AllocationStrategyType allocationStrategy;
 
 	public Item() {}
 
@@ -218,6 +219,18 @@ public class Item extends BaseSimpleCustomizableMetadata<ItemAttribute> implemen
 		this.buyingPrice = buyingPrice;
 	}
 
+	/**
+	 * Gets the strategy used to select the item stock to take for this item.
+	 * @return The allocation strategy or {@code null} to use the department strategy.
+	 */
+	public AllocationStrategyType getAllocationStrategy() {
+		return allocationStrategy;
+	}
+
+	public void setAllocationStrategy(AllocationStrategyType allocationStrategy) {
+		this.allocationStrategy = allocationStrategy;
+	}
+
 	@Override
 	@JsonIgnore
 	public Boolean getRetired() {
@@ -31,6 +31,7 @@ public class ItemStock extends BaseOpenmrsObject implements Comparable<ItemStock
 	private Item item;
 	private int quantity;
 	private Set<ItemStockDetail> details;
+	private Integer version;
 
 	public ItemStock() {}
 
@@ -82,6 +83,18 @@ public class ItemStock extends BaseOpenmrsObject implements Comparable<ItemStock
 		this.quantity = quantity;
 	}
 
+	/**
+	 * Gets the version used to detect concurrent changes to this item stock.
+	 * @return The version.
+	 */
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+
 	public ItemStockDetail addDetail(ItemStockDetail detail) {
 		if (detail == null) {
 			throw new IllegalArgumentException("The detail record to add must be defined");
@@ -23,6 +23,7 @@ public class ItemStockDetail extends ItemStockDetailBase {
 
 	private ItemStock itemStock;
 	private Stockroom stockroom;
+	private Integer version;
 
 	/**
 	 * Creates a new empty {@link ItemStockDetail} object.
@@ -108,6 +109,22 @@ public class ItemStockDetail extends ItemStockDetailBase {
 		this.stockroom = stockroom;
 	}
 
+	/**
+	 * Gets the version used to detect concurrent changes to this detail.
+	 * @return The version.
+	 */
+	public Integer getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version used to detect concurrent changes to this detail.
+	 * @param version The version.
+	 */
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+
 	public boolean isNullBatch() {
 		return (this.getBatchOperation() == null && this.getExpiration() == null && this.getQuantity() < 0) ? true : false;
 	}
@@ -0,0 +1,86 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+import org.openmrs.OpenmrsObject;
+
+/**
+ * Model class that represents the item found for a scanned item code along with its stock in a specific stockroom.
+ */
+public class ItemStockScan implements OpenmrsObject {
+	public static final long serialVersionUID = 0L;
+
+	private Item item;
+	private Stockroom stockroom;
+	private int quantity;
+	private ItemStockSnapshot.Detail nearestExpiration;
+
+	// These are aggregate models and thus have no id or uuid.
+	@Override
+	public Integer getId() {
+		return null;
+	}
+
+	@Override
+	public void setId(Integer id) {
+
+	}
+
+	@Override
+	public String getUuid() {
+		return null;
+	}
+
+	@Override
+	public void setUuid(String uuid) {
+
+	}
+
+	public Item getItem() {
+		return item;
+	}
+
+	public void setItem(Item item) {
+		this.item = item;
+	}
+
+	public Stockroom getStockroom() {
+		return stockroom;
+	}
+
+	public void setStockroom(Stockroom stockroom) {
+		this.stockroom = stockroom;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	/**
+	 * Gets the item stock detail with stock that expires first. If none of the stock expires this is the first detail
+	 * with stock.
+	 * @return The item stock detail or {@code null} if there is no stock in the stockroom.
+	 */
+	public ItemStockSnapshot.Detail getNearestExpiration() {
+		return nearestExpiration;
+	}
+
+	public void setNearestExpiration(ItemStockSnapshot.Detail nearestExpiration) {
+		this.nearestExpiration = nearestExpiration;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable copy of the quantity and details of an {@link ItemStock} at a point in time. Snapshots are not attached to a
+ * session so they can be cached and shared between threads; use the {@link ItemStock} itself to change the stock.
+ */
+public class ItemStockSnapshot {
+	private final Integer itemStockId;
+	private final Integer stockroomId;
+	private final Integer itemId;
+	private final int quantity;
+	private final List<Detail> details;
+
+	public ItemStockSnapshot(Integer stockroomId, Integer itemId, int quantity, List<Detail> details) {
+		this(null, stockroomId, itemId, quantity, details);
+	}
+
+	public ItemStockSnapshot(Integer itemStockId, Integer stockroomId, Integer itemId, int quantity, List<Detail> details) {
+		this.itemStockId = itemStockId;
+		this.stockroomId = stockroomId;
+		this.itemId = itemId;
+		this.quantity = quantity;
+		this.details = details == null ? Collections.<Detail> emptyList()
+		        : Collections.unmodifiableList(new ArrayList<Detail>(details));
+	}
+
+	/**
+	 * Creates a snapshot of the specified item stock.
+	 * @param stockroom The stockroom.
+	 * @param item The item.
+	 * @param stock The item stock or {@code null} if the stockroom has no stock of the item.
+	 * @return The item stock snapshot, with a zero quantity and no details if there is no item stock.
+	 */
+	public static ItemStockSnapshot create(Stockroom stockroom, Item item, ItemStock stock) {
+		List<Detail> details = new ArrayList<Detail>();
+		if (stock != null && stock.getDetails() != null) {
+			for (ItemStockDetail detail : stock.getDetails()) {
+				details.add(new Detail(detail));
+			}
+		}
+
+		return new ItemStockSnapshot(stock == null ? null : stock.getId(), stockroom.getId(), item.getId(),
+		        stock == null ? 0 : stock.getQuantity(), details);
+	}
+
+	/**
+	 * Gets the id of the item stock that this is a snapshot of.
+	 * @return The item stock id or {@code null} if the stockroom has no stock of the item.
+	 */
+	public Integer getItemStockId() {
+		return itemStockId;
+	}
+
+	public Integer getStockroomId() {
+		return stockroomId;
+	}
+
+	public Integer getItemId() {
+		return itemId;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public List<Detail> getDetails() {
+		return details;
+	}
+
+	/**
+	 * Gets the detail with stock that expires first. If none of the stock expires this is the first detail with stock.
+	 * @return The detail or {@code null} if there is no stock.
+	 */
+	public Detail getNearestExpiration() {
+		Detail result = null;
+		for (Detail detail : details) {
+			if (detail.getQuantity() == null || detail.getQuantity() <= 0) {
+				continue;
+			}
+
+			if (result == null || (detail.getExpiration() != null
+			        && (result.getExpiration() == null || detail.getExpiration().before(result.getExpiration())))) {
+				result = detail;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Immutable copy of an {@link ItemStockDetail}.
+	 */
+	public static class Detail {
+		private final Integer id;
+		private final Long expiration;
+		private final Integer batchOperationId;
+		private final Integer quantity;
+		private final Boolean calculatedExpiration;
+		private final Boolean calculatedBatch;
+
+		public Detail(ItemStockDetail detail) {
+			this.id = detail.getId();
+			this.expiration = detail.getExpiration() == null ? null : detail.getExpiration().getTime();
+			this.batchOperationId = detail.getBatchOperation() == null ? null : detail.getBatchOperation().getId();
+			this.quantity = detail.getQuantity();
+			this.calculatedExpiration = detail.getCalculatedExpiration();
+			this.calculatedBatch = detail.getCalculatedBatch();
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public Date getExpiration() {
+			return expiration == null ? null : new Date(expiration);
+		}
+
+		public Integer getBatchOperationId() {
+			return batchOperationId;
+		}
+
+		public Integer getQuantity() {
+			return quantity;
+		}
+
+		public Boolean getCalculatedExpiration() {
+			return calculatedExpiration;
+		}
+
+		public Boolean getCalculatedBatch() {
+			return calculatedBatch;
+		}
+	}
+}
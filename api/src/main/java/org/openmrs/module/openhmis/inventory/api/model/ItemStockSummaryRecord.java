@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+import java.util.Date;
+
+import org.openmrs.BaseOpenmrsObject;
+
+/**
+ * Model class that represents the stored total item stock detail quantity for an item and expiration in a stockroom. These
+ * records are kept up to date as the item stock is saved so that the {@link ItemStockSummary} for a stockroom can be read
+ * without aggregating the item stock details.
+ */
+public class ItemStockSummaryRecord extends BaseOpenmrsObject {
+	public static final long serialVersionUID = 0L;
+
+	private Integer itemStockSummaryId;
+	private Stockroom stockroom;
+	private Item item;
+	private Date expiration;
+	private int quantity;
+
+	@Override
+	public Integer getId() {
+		return itemStockSummaryId;
+	}
+
+	@Override
+	public void setId(Integer id) {
+		itemStockSummaryId = id;
+	}
+
+	public Stockroom getStockroom() {
+		return stockroom;
+	}
+
+	public void setStockroom(Stockroom stockroom) {
+		this.stockroom = stockroom;
+	}
+
+	public Item getItem() {
+		return item;
+	}
+
+	public void setItem(Item item) {
+		this.item = item;
+	}
+
+	public Date getExpiration() {
+		return expiration;
+	}
+
+	public void setExpiration(Date expiration) {
+		this.expiration = expiration;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openmrs.BaseOpenmrsObject;
+
+/**
+ * Model class that represents a snapshot of the item stock in a stockroom. The snapshot includes the effect of every
+ * operation up to and including the operation date and order of the checkpoint so that historical item stock can be
+ * rebuilt from the checkpoint rather than by reversing every operation since that point.
+ */
+public class StockCheckpoint extends BaseOpenmrsObject {
+	public static final long serialVersionUID = 0L;
+
+	private Integer id;
+	private Stockroom stockroom;
+	private Date operationDate;
+	private Integer operationOrder;
+	private Date dateCreated;
+	private Set<StockCheckpointDetail> details;
+
+	@Override
+	public Integer getId() {
+		return id;
+	}
+
+	@Override
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public Stockroom getStockroom() {
+		return stockroom;
+	}
+
+	public void setStockroom(Stockroom stockroom) {
+		this.stockroom = stockroom;
+	}
+
+	/**
+	 * Gets the operation date of the last operation included in this checkpoint.
+	 * @return The operation date.
+	 */
+	public Date getOperationDate() {
+		return operationDate;
+	}
+
+	public void setOperationDate(Date operationDate) {
+		this.operationDate = operationDate;
+	}
+
+	/**
+	 * Gets the operation order of the last operation included in this checkpoint.
+	 * @return The operation order.
+	 */
+	public Integer getOperationOrder() {
+		return operationOrder;
+	}
+
+	public void setOperationOrder(Integer operationOrder) {
+		this.operationOrder = operationOrder;
+	}
+
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+
+	public void setDateCreated(Date dateCreated) {
+		this.dateCreated = dateCreated;
+	}
+
+	public StockCheckpointDetail addDetail(StockCheckpointDetail detail) {
+		if (detail == null) {
+			throw new IllegalArgumentException("The detail record to add must be defined");
+		}
+
+		if (details == null) {
+			details = new HashSet<StockCheckpointDetail>();
+		}
+
+		detail.setCheckpoint(this);
+		details.add(detail);
+
+		return detail;
+	}
+
+	public Set<StockCheckpointDetail> getDetails() {
+		return details;
+	}
+
+	public void setDetails(Set<StockCheckpointDetail> details) {
+		this.details = details;
+	}
+}
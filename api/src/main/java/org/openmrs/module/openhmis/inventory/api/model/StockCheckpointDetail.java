@@ -0,0 +1,58 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+import java.util.Date;
+
+/**
+ * Model class that represents the item stock detail quantity for a specific expiration and batch operation at the time of
+ * a {@link StockCheckpoint}.
+ */
+public class StockCheckpointDetail extends ItemStockDetailBase {
+	public static final long serialVersionUID = 0L;
+
+	private StockCheckpoint checkpoint;
+
+	/**
+	 * Creates a new empty {@link StockCheckpointDetail} object.
+	 */
+	public StockCheckpointDetail() {}
+
+	/**
+	 * Creates a new {@link StockCheckpointDetail} as a copy of the specified {@link ItemStockDetail}.
+	 * @param detail The item stock detail to copy.
+	 */
+	public StockCheckpointDetail(ItemStockDetail detail) {
+		if (detail == null) {
+			throw new IllegalArgumentException("The item stock detail to copy must be defined.");
+		}
+
+		setItem(detail.getItem());
+		if (detail.getExpiration() != null) {
+			setExpiration((Date)detail.getExpiration().clone());
+		}
+		setBatchOperation(detail.getBatchOperation());
+		setCalculatedExpiration(detail.isCalculatedExpiration());
+		setCalculatedBatch(detail.isCalculatedBatch());
+		setQuantity(detail.getQuantity());
+	}
+
+	public StockCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	public void setCheckpoint(StockCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+}
@@ -13,12 +13,15 @@
  */
 package org.openmrs.module.openhmis.inventory.api.model;
 
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.commons.api.Utility;
 import org.openmrs.module.openhmis.commons.api.entity.model.BaseInstanceCustomizableMetadata;
 import org.openmrs.module.openhmis.inventory.api.WellKnownOperationTypes;
 
@@ -46,6 +49,8 @@ public class StockOperation extends BaseInstanceCustomizableMetadata<IStockOpera
 
 	private String operationNumber;
 	private Date operationDate;
+	// The day of the operation date, stored separately so that operations can be found and sorted by day with an index
+	private Date operationDay;
 	private Integer operationOrder;
 	protected Stockroom source;
 	protected Stockroom destination;
@@ -54,6 +59,9 @@ public class StockOperation extends BaseInstanceCustomizableMetadata<IStockOpera
 	protected Department department;
 	private String cancelReason;
 
+	// The source and destination stockrooms, mapped to the stockroom operations table
+	private Set<Stockroom> stockrooms;
+
 	@Override
 	public Integer getId() {
 		return id;
@@ -86,6 +94,24 @@ public class StockOperation extends BaseInstanceCustomizableMetadata<IStockOpera
 
 	public void setOperationDate(Date operationDate) {
 		this.operationDate = operationDate;
+
+		if (operationDate == null) {
+			this.operationDay = null;
+		} else {
+			Calendar cal = Calendar.getInstance();
+			cal.setTime(operationDate);
+			Utility.clearCalendarTime(cal);
+
+			this.operationDay = cal.getTime();
+		}
+	}
+
+	/**
+	 * Gets the day of the operation date. This is set when the operation date is set.
+	 * @return The operation date without the time.
+	 */
+	public Date getOperationDay() {
+		return operationDay;
 	}
 
 	public Integer getOperationOrder() {
@@ -105,16 +131,11 @@ public class StockOperation extends BaseInstanceCustomizableMetadata<IStockOpera
 			return;
 		}
 
-		if (this.source != null && this.source != this.destination) {
-			this.source.removeOperation(this);
-		}
-
 		// Update the source
+		Stockroom previous = this.source;
 		this.source = newSource;
 
-		if (this.source != null) {
-			this.source.addOperation(this);
-		}
+		updateStockrooms(previous, newSource);
 	}
 
 	public Stockroom getDestination() {
@@ -126,18 +147,41 @@ public class StockOperation extends BaseInstanceCustomizableMetadata<IStockOpera
 			return;
 		}
 
-		if (this.destination != null && this.destination != this.source) {
-			this.destination.removeOperation(this);
-		}
-
 		// Update the destination
+		Stockroom previous = this.destination;
 		this.destination = newDestination;
 
-		if (this.destination != null) {
-			this.destination.addOperation(this);
+		updateStockrooms(previous, newDestination);
+	}
+
+	private void updateStockrooms(Stockroom previous, Stockroom current) {
+		// The stockroom operations records are owned by the operation so that setting the source or destination does not
+		// load every operation that the stockroom has ever had
+		if (stockrooms == null) {
+			stockrooms = new HashSet<Stockroom>();
+		}
+
+		if (previous != null && previous != source && previous != destination) {
+			stockrooms.remove(previous);
+
+			// Keep the stockroom operations in sync when they have already been loaded
+			if (isLoaded(previous.getOperations())) {
+				previous.getOperations().remove(this);
+			}
+		}
+		if (current != null) {
+			stockrooms.add(current);
+
+			if (isLoaded(current.getOperations())) {
+				current.getOperations().add(this);
+			}
 		}
 	}
 
+	private static boolean isLoaded(Set<StockOperation> operations) {
+		return operations != null && Hibernate.isInitialized(operations);
+	}
+
 	public Patient getPatient() {
 		return patient;
 	}
@@ -347,7 +391,8 @@ public class StockOperation extends BaseInstanceCustomizableMetadata<IStockOpera
 	}
 
 	public boolean isAdjustmentType() {
-		return (WellKnownOperationTypes.getAdjustment()).equals(this.getInstanceType());
+		// The well-known types are identified by uuid so there is no need to load the adjustment type
+		return getInstanceType() != null && WellKnownOperationTypes.ADJUSTMENT_UUID.equals(getInstanceType().getUuid());
 	}
 
 	@Override
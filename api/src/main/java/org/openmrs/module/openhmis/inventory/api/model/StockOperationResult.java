@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+/**
+ * Model class that represents the outcome of submitting a single {@link StockOperation} as part of a batch.
+ */
+public class StockOperationResult {
+	private StockOperation operation;
+	private boolean successful;
+	private String errorMessage;
+
+	public StockOperationResult() {}
+
+	public StockOperationResult(StockOperation operation) {
+		this.operation = operation;
+		this.successful = true;
+	}
+
+	public StockOperationResult(StockOperation operation, String errorMessage) {
+		this.operation = operation;
+		this.successful = false;
+		this.errorMessage = errorMessage;
+	}
+
+	public StockOperation getOperation() {
+		return operation;
+	}
+
+	public void setOperation(StockOperation operation) {
+		this.operation = operation;
+	}
+
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	public void setSuccessful(boolean successful) {
+		this.successful = successful;
+	}
+
+	/**
+	 * Gets the reason that the operation could not be submitted.
+	 * @return The error message or {@code null} if the operation was submitted.
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+}
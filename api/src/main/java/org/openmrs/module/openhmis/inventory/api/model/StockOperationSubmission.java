@@ -0,0 +1,171 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+import java.util.Date;
+
+import org.openmrs.OpenmrsObject;
+
+/**
+ * Model class that tracks the asynchronous submission of a {@link StockOperation}. The submission uuid is the uuid of the
+ * operation being submitted.
+ */
+public class StockOperationSubmission implements OpenmrsObject {
+	public static final long serialVersionUID = 0L;
+
+	private String uuid;
+	private String operationNumber;
+	private StockOperationStatus requestedStatus;
+	private String submittedBy;
+
+	// The submission is updated by the queue workers while it is read by the request threads
+	private volatile StockOperationSubmissionState state;
+	private volatile StockOperationStatus operationStatus;
+	private volatile String errorMessage;
+	private volatile Integer retryAfterSeconds;
+	private volatile Date queuedOn;
+	private volatile Date startedOn;
+	private volatile Date completedOn;
+
+	public StockOperationSubmission() {}
+
+	public StockOperationSubmission(StockOperation operation, StockOperationStatus requestedStatus) {
+		this.uuid = operation.getUuid();
+		this.operationNumber = operation.getOperationNumber();
+		this.operationStatus = operation.getStatus();
+		this.requestedStatus = requestedStatus;
+	}
+
+	// Submissions are not persisted and thus have no id.
+	@Override
+	public Integer getId() {
+		return null;
+	}
+
+	@Override
+	public void setId(Integer id) {
+
+	}
+
+	@Override
+	public String getUuid() {
+		return uuid;
+	}
+
+	@Override
+	public void setUuid(String uuid) {
+		this.uuid = uuid;
+	}
+
+	public String getOperationNumber() {
+		return operationNumber;
+	}
+
+	public void setOperationNumber(String operationNumber) {
+		this.operationNumber = operationNumber;
+	}
+
+	/**
+	 * Gets the status that the operation will be submitted with.
+	 * @return The requested operation status.
+	 */
+	public StockOperationStatus getRequestedStatus() {
+		return requestedStatus;
+	}
+
+	public void setRequestedStatus(StockOperationStatus requestedStatus) {
+		this.requestedStatus = requestedStatus;
+	}
+
+	/**
+	 * Gets the uuid of the user that submitted the operation. The operation itself is submitted by the queue workers as
+	 * the daemon user.
+	 * @return The user uuid or {@code null} if the submitting user is not known.
+	 */
+	public String getSubmittedBy() {
+		return submittedBy;
+	}
+
+	public void setSubmittedBy(String submittedBy) {
+		this.submittedBy = submittedBy;
+	}
+
+	public StockOperationSubmissionState getState() {
+		return state;
+	}
+
+	public void setState(StockOperationSubmissionState state) {
+		this.state = state;
+	}
+
+	/**
+	 * Gets the operation status after the operation was submitted.
+	 * @return The operation status.
+	 */
+	public StockOperationStatus getOperationStatus() {
+		return operationStatus;
+	}
+
+	public void setOperationStatus(StockOperationStatus operationStatus) {
+		this.operationStatus = operationStatus;
+	}
+
+	/**
+	 * Gets the reason that the operation could not be submitted.
+	 * @return The error message or {@code null} if the operation has not failed.
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * Gets how long the client should wait before submitting the operation again.
+	 * @return The number of seconds to wait or {@code null} if the submission was not rejected.
+	 */
+	public Integer getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	public void setRetryAfterSeconds(Integer retryAfterSeconds) {
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public Date getQueuedOn() {
+		return queuedOn;
+	}
+
+	public void setQueuedOn(Date queuedOn) {
+		this.queuedOn = queuedOn;
+	}
+
+	public Date getStartedOn() {
+		return startedOn;
+	}
+
+	public void setStartedOn(Date startedOn) {
+		this.startedOn = startedOn;
+	}
+
+	public Date getCompletedOn() {
+		return completedOn;
+	}
+
+	public void setCompletedOn(Date completedOn) {
+		this.completedOn = completedOn;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.model;
+
+/**
+ * The allowable {@link StockOperationSubmission} states.
+ */
+public enum StockOperationSubmissionState {
+	/**
+	 * The operation is waiting in the submission queue.
+	 */
+	QUEUED(),
+	/**
+	 * The operation is being submitted by a queue worker.
+	 */
+	PROCESSING(),
+	/**
+	 * The operation was submitted.
+	 */
+	COMPLETED(),
+	/**
+	 * The operation could not be submitted.
+	 */
+	FAILED(),
+	/**
+	 * The operation was not queued because the submission queue was full.
+	 */
+	REJECTED();
+
+	private StockOperationSubmissionState() {}
+}
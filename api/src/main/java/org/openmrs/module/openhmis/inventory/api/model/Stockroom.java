@@ -115,7 +115,11 @@ public class Stockroom extends BaseSerializableOpenmrsMetadata {
 	}
 
 	/**
-	 * Gets the set of operations for this stockroom.
+	 * Gets the set of operations for this stockroom. Note that this will result in the full set of operations being loaded
+	 * and that operations created in the current session are only included if the set was loaded before the operation
+	 * source or destination was set; use
+	 * {@link org.openmrs.module.openhmis.inventory.api.IStockOperationDataService#getOperationsByRoom} to page through the
+	 * operations instead.
 	 * @return The stockroom operations.
 	 */
 	public Set<StockOperation> getOperations() {
@@ -135,10 +139,13 @@ public class Stockroom extends BaseSerializableOpenmrsMetadata {
 	 * use the
 	 * {@link org.openmrs.module.openhmis.inventory.api.IStockOperationDataService#applyTransactions(java.util.Collection)}
 	 * method. Note that this will result in the full set of operations being loaded and should only be used when that is
-	 * needed. The correct way to add operations is to apply them and let the records be created through the normal
-	 * processing.
+	 * needed. The stockroom operations records are created when the operation source or destination is set so this is not
+	 * needed to add an operation to a stockroom.
 	 * @param operation The operation to add to this stockroom.
+	 * @deprecated Set the operation source or destination with {@link StockOperation#setSource(Stockroom)} or
+	 *             {@link StockOperation#setDestination(Stockroom)} instead.
 	 */
+	@Deprecated
 	public void addOperation(StockOperation operation) {
 		if (operation != null) {
 			if (operations == null) {
@@ -153,7 +160,10 @@ public class Stockroom extends BaseSerializableOpenmrsMetadata {
 	 * Removes an operation from this stockroom. Note that this will result in the full set of operations being loaded and
 	 * should only be used when that is needed.
 	 * @param operation The operation to remove from this stockroom.
+	 * @deprecated Change the operation source or destination with {@link StockOperation#setSource(Stockroom)} or
+	 *             {@link StockOperation#setDestination(Stockroom)} instead.
 	 */
+	@Deprecated
 	public void removeOperation(StockOperation operation) {
 		if (operation != null) {
 			if (operations == null) {
@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.task;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.inventory.api.IStockCheckpointDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationService;
+import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Scheduled task that creates a {@link org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint} for each
+ * stockroom. The interval is the repeat interval of the scheduled task. The number of checkpoints kept for each stockroom
+ * can be set with the {@value #RETENTION_COUNT_PROPERTY} task property.
+ */
+public class StockCheckpointTask extends AbstractTask {
+	public static final String RETENTION_COUNT_PROPERTY = "retentionCount";
+	public static final int DEFAULT_RETENTION_COUNT = 7;
+
+	private static final Log LOG = LogFactory.getLog(StockCheckpointTask.class);
+
+	@Override
+	public void execute() {
+		if (isExecuting()) {
+			return;
+		}
+
+		startExecuting();
+		try {
+			IStockroomDataService stockroomService = Context.getService(IStockroomDataService.class);
+			IStockOperationService operationService = Context.getService(IStockOperationService.class);
+			IStockCheckpointDataService checkpointService = Context.getService(IStockCheckpointDataService.class);
+
+			int retentionCount = getRetentionCount();
+			for (Stockroom stockroom : stockroomService.getAll(false)) {
+				operationService.createCheckpoint(stockroom);
+				checkpointService.purgeOldCheckpoints(stockroom, retentionCount);
+			}
+		} catch (Exception ex) {
+			LOG.error("Error while creating the stock checkpoints.", ex);
+		} finally {
+			stopExecuting();
+		}
+	}
+
+	private int getRetentionCount() {
+		String value = getTaskDefinition() == null ? null : getTaskDefinition().getProperty(RETENTION_COUNT_PROPERTY);
+		if (StringUtils.isNotEmpty(value)) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException nfe) {
+				LOG.warn("Invalid stock checkpoint retention count '" + value + "', using the default.");
+			}
+		}
+
+		return DEFAULT_RETENTION_COUNT;
+	}
+}
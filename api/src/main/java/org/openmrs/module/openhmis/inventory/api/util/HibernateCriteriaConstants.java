@@ -43,6 +43,8 @@ public class HibernateCriteriaConstants {
 	public static final String INSTANCE_TYPE = "instanceType";
 	public static final String OPERATION_NUMBER = "operationNumber";
 	public static final String OPERATION_DATE = "operationDate";
+	public static final String OPERATION_DAY = "operationDay";
 	public static final String OPERATION_ORDER = "operationOrder";
+	public static final String DETAILS = "details";
 
 }
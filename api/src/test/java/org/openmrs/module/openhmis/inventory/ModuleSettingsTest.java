@@ -0,0 +1,63 @@
+package org.openmrs.module.openhmis.inventory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.commons.api.BaseModuleContextTest;
+
+public class ModuleSettingsTest extends BaseModuleContextTest {
+	AdministrationService adminService;
+
+	@Before
+	public void before() throws Exception {
+		adminService = Context.getAdministrationService();
+	}
+
+	/**
+	 * @verifies return the new value once the global property is changed
+	 * @see ModuleSettings#isOperationAutoCompleted()
+	 */
+	@Test
+	public void isOperationAutoCompleted_shouldReturnTheNewValueOnceTheGlobalPropertyIsChanged() throws Exception {
+		adminService.saveGlobalProperty(new GlobalProperty(ModuleSettings.AUTO_COMPLETE_OPERATIONS_PROPERTY, "false"));
+		Assert.assertFalse(ModuleSettings.isOperationAutoCompleted());
+
+		adminService.saveGlobalProperty(new GlobalProperty(ModuleSettings.AUTO_COMPLETE_OPERATIONS_PROPERTY, "true"));
+		Assert.assertTrue(ModuleSettings.isOperationAutoCompleted());
+
+		adminService.purgeGlobalProperty(adminService.getGlobalPropertyObject(
+		    ModuleSettings.AUTO_COMPLETE_OPERATIONS_PROPERTY));
+		Assert.assertFalse(ModuleSettings.isOperationAutoCompleted());
+	}
+
+	/**
+	 * @verifies not read the global properties again until an inventory global property is changed
+	 * @see ModuleSettings#isNegativeStockRestricted()
+	 */
+	@Test
+	public void isNegativeStockRestricted_shouldNotReadTheGlobalPropertiesAgainUntilAnInventoryPropertyIsChanged()
+	        throws Exception {
+		adminService.saveGlobalProperty(new GlobalProperty(
+		        ModuleSettings.RESTRICT_NEGATIVE_INVENTORY_STOCK_CREATION_FIELD, "false"));
+		Assert.assertFalse(ModuleSettings.isNegativeStockRestricted());
+
+		// Change the property without going through the administration service so that no listener is notified
+		Context.flushSession();
+		adminService.executeSQL("update global_property set property_value = 'true' where property = '"
+		        + ModuleSettings.RESTRICT_NEGATIVE_INVENTORY_STOCK_CREATION_FIELD + "'", false);
+		Context.clearSession();
+		Assert.assertFalse(ModuleSettings.isNegativeStockRestricted());
+
+		// Properties for other modules do not reload the settings
+		adminService.saveGlobalProperty(new GlobalProperty("othermodule.setting", "true"));
+		Assert.assertFalse(ModuleSettings.isNegativeStockRestricted());
+
+		// Any inventory property reloads all the settings
+		adminService.saveGlobalProperty(new GlobalProperty(ModuleSettings.USE_WILDCARD_ITEM_SEARCH_PROPERTY, "true"));
+		Assert.assertTrue(ModuleSettings.isNegativeStockRestricted());
+		Assert.assertTrue(ModuleSettings.useWildcardItemSearch());
+	}
+}
@@ -27,6 +27,7 @@ import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.IMetadataDataServiceTest;
 import org.openmrs.module.openhmis.commons.api.entity.search.BaseObjectTemplateSearch;
 import org.openmrs.module.openhmis.commons.api.f.Action2;
+import org.openmrs.module.openhmis.inventory.api.impl.ItemSearchIndex;
 import org.openmrs.module.openhmis.inventory.api.model.Department;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemCode;
@@ -50,6 +51,9 @@ public class IItemDataServiceTest extends IMetadataDataServiceTest<IItemDataServ
 
 		executeDataSet(IDepartmentDataServiceTest.DEPARTMENT_DATASET);
 		executeDataSet(ITEM_DATASET);
+
+		// The search index is kept between tests so reload it from this test's data
+		ItemSearchIndex.getInstance().clear();
 	}
 
 	@Override
@@ -795,4 +799,183 @@ public class IItemDataServiceTest extends IMetadataDataServiceTest<IItemDataServ
 		Assert.assertEquals(3, items.size());
 
 	}
+
+	/**
+	 * @verifies throw NullPointerException if the text is null
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test(expected = NullPointerException.class)
+	public void searchItems_shouldThrowNullPointerExceptionIfTheTextIsNull() throws Exception {
+		service.searchItems(null, null, null, true, false, null);
+	}
+
+	/**
+	 * @verifies return items with a matching code before items with a matching name
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldReturnItemsWithAMatchingCodeBeforeItemsWithAMatchingName() throws Exception {
+		Item item = service.getById(4);
+		item.setName("Item 1 Code Box");
+		service.save(item);
+		Context.flushSession();
+
+		List<Item> results = service.searchItems("item 1 code", null, null, false, false, null);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(Integer.valueOf(0), results.get(0).getId());
+		Assert.assertEquals(Integer.valueOf(4), results.get(1).getId());
+	}
+
+	/**
+	 * @verifies return items whose name starts with the text
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldReturnItemsWhoseNameStartsWithTheText() throws Exception {
+		List<Item> results = service.searchItems("TEST", null, null, false, false, null);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(7, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			Assert.assertEquals(Integer.valueOf(i), results.get(i).getId());
+		}
+
+		results = service.searchItems("test 3", null, null, false, false, null);
+		Assert.assertEquals(1, results.size());
+		assertEntity(service.getById(2), results.get(0));
+	}
+
+	/**
+	 * @verifies only return items whose name contains the text if infix matching is requested
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldOnlyReturnItemsWhoseNameContainsTheTextIfInfixMatchingIsRequested() throws Exception {
+		List<Item> results = service.searchItems("2 item", null, null, false, false, null);
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+
+		results = service.searchItems("2 item", null, null, true, false, null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(Integer.valueOf(1), results.get(0).getId());
+	}
+
+	/**
+	 * @verifies return items filtered by department and physical inventory
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldReturnItemsFilteredByDepartmentAndPhysicalInventory() throws Exception {
+		Department department = departmentService.getById(0);
+
+		List<Item> results = service.searchItems("test", department, null, false, false, null);
+		Assert.assertNotNull(results);
+		Assert.assertEquals(3, results.size());
+
+		results = service.searchItems("test", department, true, false, false, null);
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(Integer.valueOf(1), results.get(0).getId());
+		Assert.assertEquals(Integer.valueOf(2), results.get(1).getId());
+
+		results = service.searchItems("test", null, false, false, false, null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(Integer.valueOf(0), results.get(0).getId());
+	}
+
+	/**
+	 * @verifies not return retired items unless specified
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldNotReturnRetiredItemsUnlessSpecified() throws Exception {
+		service.retire(service.getById(0), "test");
+		Context.flushSession();
+
+		List<Item> results = service.searchItems("test 1", null, null, false, false, null);
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+
+		results = service.searchItems("test 1", null, null, false, true, null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(Integer.valueOf(0), results.get(0).getId());
+	}
+
+	/**
+	 * @verifies return paged items and set the total record count
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldReturnPagedItemsAndSetTheTotalRecordCount() throws Exception {
+		PagingInfo paging = new PagingInfo(2, 3);
+
+		List<Item> results = service.searchItems("test", null, null, false, false, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(Integer.valueOf(3), results.get(0).getId());
+		Assert.assertEquals(Integer.valueOf(4), results.get(1).getId());
+		Assert.assertEquals(Integer.valueOf(5), results.get(2).getId());
+		Assert.assertEquals(7, (long)paging.getTotalRecordCount());
+	}
+
+	/**
+	 * @verifies find items saved after the index was loaded
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldFindItemsSavedAfterTheIndexWasLoaded() throws Exception {
+		Assert.assertEquals(0, service.searchItems("one", null, null, false, false, null).size());
+
+		Item item = createEntity(true);
+		service.save(item);
+		Context.flushSession();
+
+		List<Item> results = service.searchItems("one", null, null, false, false, null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(item.getId(), results.get(0).getId());
+
+		results = service.searchItems("test name", null, null, false, false, null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(item.getId(), results.get(0).getId());
+	}
+
+	/**
+	 * @verifies not find purged items
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldNotFindPurgedItems() throws Exception {
+		Item item = createEntity(true);
+		service.save(item);
+		Context.flushSession();
+		Assert.assertEquals(1, service.searchItems("test name", null, null, false, false, null).size());
+
+		service.purge(item);
+		Context.flushSession();
+
+		Assert.assertEquals(0, service.searchItems("test name", null, null, false, false, null).size());
+	}
+
+	/**
+	 * @verifies not add items saved in the transaction to the shared index until the transaction is committed
+	 * @see IItemDataService#searchItems(String, Department, Boolean, boolean, boolean, PagingInfo)
+	 */
+	@Test
+	public void searchItems_shouldNotAddItemsSavedInTheTransactionToTheSharedIndexUntilTheTransactionIsCommitted()
+	        throws Exception {
+		Assert.assertEquals(0, service.searchItems("test name", null, null, false, false, null).size());
+		int indexSize = ItemSearchIndex.getInstance().size();
+
+		Item item = createEntity(true);
+		service.save(item);
+		Context.flushSession();
+
+		// The test transaction is never committed so the item is only found by the search in this transaction
+		Assert.assertEquals(1, service.searchItems("test name", null, null, false, false, null).size());
+		Assert.assertEquals(item.getId(), service.getItemByCode(item.getCodes().iterator().next().getCode()).getId());
+		Assert.assertEquals(indexSize, ItemSearchIndex.getInstance().size());
+		Assert.assertEquals(0, ItemSearchIndex.getInstance().search("test name", null, null, false, false).size());
+	}
 }
@@ -1,24 +1,41 @@
 package org.openmrs.module.openhmis.inventory.api;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.IObjectDataServiceTest;
+import org.openmrs.module.openhmis.inventory.api.impl.ItemStockCache;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockScan;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSummary;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.collect.Iterators;
 
 public class IItemStockDataServiceTest extends IObjectDataServiceTest<IItemStockDataService, ItemStock> {
+	// The number of details added to each item stock when testing the batched inserts
+	private static final int BATCH_DETAIL_COUNT = 20;
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
 	private IItemDataService itemDataService;
 	private IStockroomDataService stockroomDataService;
 	private IStockOperationDataService stockOperationDataService;
+	private IItemStockDetailDataService itemStockDetailDataService;
 
 	@Override
 	public void before() throws Exception {
@@ -27,10 +44,12 @@ public class IItemStockDataServiceTest extends IObjectDataServiceTest<IItemStock
 		this.itemDataService = Context.getService(IItemDataService.class);
 		this.stockroomDataService = Context.getService(IStockroomDataService.class);
 		this.stockOperationDataService = Context.getService(IStockOperationDataService.class);
+		this.itemStockDetailDataService = Context.getService(IItemStockDetailDataService.class);
 
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 	}
 
 	@Override
@@ -174,4 +193,330 @@ public class IItemStockDataServiceTest extends IObjectDataServiceTest<IItemStock
 	public void getItemStockByItem_shouldThrowIllegalArgumentExceptionIfItemIsNull() throws Exception {
 		service.getItemStockByItem(null, null);
 	}
+
+	/**
+	 * @verifies rebuild the summary records for the stockroom
+	 * @see IItemStockDataService#rebuildItemStockSummary(Stockroom)
+	 */
+	@Test
+	public void rebuildItemStockSummary_shouldRebuildTheSummaryRecordsForTheStockroom() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		Stockroom other = stockroomDataService.getById(1);
+		Assert.assertEquals(0, itemStockDetailDataService.getItemStockSummaryByStockroom(stockroom, null).size());
+
+		service.rebuildItemStockSummary(stockroom);
+		service.rebuildItemStockSummary(stockroom);
+
+		List<ItemStockSummary> results = itemStockDetailDataService.getItemStockSummaryByStockroom(stockroom, null);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(17, getTotalQuantity(results));
+
+		Assert.assertEquals(0, itemStockDetailDataService.getItemStockSummaryByStockroom(other, null).size());
+	}
+
+	/**
+	 * @verifies rebuild the summary records for all stockrooms if the stockroom is null
+	 * @see IItemStockDataService#rebuildItemStockSummary(Stockroom)
+	 */
+	@Test
+	public void rebuildItemStockSummary_shouldRebuildTheSummaryRecordsForAllStockroomsIfTheStockroomIsNull()
+	        throws Exception {
+		service.rebuildItemStockSummary(null);
+
+		List<ItemStockSummary> results =
+		        itemStockDetailDataService.getItemStockSummaryByStockroom(stockroomDataService.getById(0), null);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(17, getTotalQuantity(results));
+
+		results = itemStockDetailDataService.getItemStockSummaryByStockroom(stockroomDataService.getById(1), null);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(11, getTotalQuantity(results));
+	}
+
+	/**
+	 * @verifies not create summary records for expirations with a zero total
+	 * @see IItemStockDataService#rebuildItemStockSummary(Stockroom)
+	 */
+	@Test
+	public void rebuildItemStockSummary_shouldNotCreateSummaryRecordsForExpirationsWithAZeroTotal() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		ItemStock stock = stockroomDataService.getItem(stockroom, itemDataService.getById(2));
+		ItemStockDetail existing = Iterators.getOnlyElement(stock.getDetails().iterator());
+
+		// Add a detail for the same expiration that cancels out the existing detail
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(existing.getExpiration());
+
+		ItemStockDetail detail = new ItemStockDetail();
+		detail.setStockroom(stockroom);
+		detail.setItem(stock.getItem());
+		detail.setExpiration(cal.getTime());
+		detail.setCalculatedBatch(false);
+		detail.setBatchOperation(stockOperationDataService.getById(1));
+		detail.setQuantity(-existing.getQuantity());
+		stock.addDetail(detail);
+
+		stockroomDataService.save(stockroom);
+		Context.flushSession();
+
+		service.rebuildItemStockSummary(stockroom);
+
+		List<ItemStockSummary> results = itemStockDetailDataService.getItemStockSummaryByStockroom(stockroom, null);
+		Assert.assertEquals(2, results.size());
+		for (ItemStockSummary summary : results) {
+			Assert.assertNull(summary.getExpiration());
+		}
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the stockroom is null
+	 * @see IItemStockDataService#getItemStockSnapshot(Stockroom, Item)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getItemStockSnapshot_shouldThrowIllegalArgumentExceptionIfTheStockroomIsNull() throws Exception {
+		service.getItemStockSnapshot(null, itemDataService.getById(0));
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the item is null
+	 * @see IItemStockDataService#getItemStockSnapshot(Stockroom, Item)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getItemStockSnapshot_shouldThrowIllegalArgumentExceptionIfTheItemIsNull() throws Exception {
+		service.getItemStockSnapshot(stockroomDataService.getById(0), null);
+	}
+
+	/**
+	 * @verifies return the quantity and details of the item stock
+	 * @see IItemStockDataService#getItemStockSnapshot(Stockroom, Item)
+	 */
+	@Test
+	public void getItemStockSnapshot_shouldReturnTheQuantityAndDetailsOfTheItemStock() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		Item item = itemDataService.getById(2);
+
+		ItemStockSnapshot snapshot = service.getItemStockSnapshot(stockroom, item);
+
+		Assert.assertNotNull(snapshot);
+		Assert.assertEquals(stockroom.getId(), snapshot.getStockroomId());
+		Assert.assertEquals(item.getId(), snapshot.getItemId());
+		Assert.assertEquals(8, snapshot.getQuantity());
+		Assert.assertEquals(1, snapshot.getDetails().size());
+
+		ItemStockSnapshot.Detail detail = snapshot.getDetails().get(0);
+		Assert.assertEquals(8, (int)detail.getQuantity());
+		Assert.assertNotNull(detail.getExpiration());
+		Assert.assertEquals(Integer.valueOf(0), detail.getBatchOperationId());
+	}
+
+	/**
+	 * @verifies return a zero quantity if the stockroom has no stock of the item
+	 * @see IItemStockDataService#getItemStockSnapshot(Stockroom, Item)
+	 */
+	@Test
+	public void getItemStockSnapshot_shouldReturnAZeroQuantityIfTheStockroomHasNoStockOfTheItem() throws Exception {
+		ItemStockSnapshot snapshot =
+		        service.getItemStockSnapshot(stockroomDataService.getById(2), itemDataService.getById(1));
+
+		Assert.assertNotNull(snapshot);
+		Assert.assertEquals(0, snapshot.getQuantity());
+		Assert.assertEquals(0, snapshot.getDetails().size());
+		Assert.assertNull(snapshot.getNearestExpiration());
+	}
+
+	/**
+	 * @verifies return the cached snapshot until the item stock is saved
+	 * @see IItemStockDataService#getItemStockSnapshot(Stockroom, Item)
+	 */
+	@Test
+	public void getItemStockSnapshot_shouldReturnTheCachedSnapshotUntilTheItemStockIsSaved() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		Item item = itemDataService.getById(0);
+
+		ItemStockCache cache = new ItemStockCache(10);
+		ItemStockCache.setInstance(cache);
+		try {
+			ItemStockSnapshot snapshot = service.getItemStockSnapshot(stockroom, item);
+			Assert.assertSame(snapshot, service.getItemStockSnapshot(stockroom, item));
+			Assert.assertEquals(1, cache.getMissCount());
+			Assert.assertEquals(1, cache.getHitCount());
+
+			ItemStock stock = stockroomDataService.getItem(stockroom, item);
+			stock.setQuantity(stock.getQuantity() + 1);
+			service.save(stock);
+			Context.flushSession();
+
+			Assert.assertEquals(0, cache.size());
+
+			// The change has not been committed so the new snapshot is not cached
+			snapshot = service.getItemStockSnapshot(stockroom, item);
+			Assert.assertEquals(5, snapshot.getQuantity());
+			Assert.assertEquals(0, cache.size());
+		} finally {
+			ItemStockCache.setInstance(null);
+		}
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the item code is empty
+	 * @see IItemStockDataService#getItemStockByCode(String, Stockroom)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getItemStockByCode_shouldThrowIllegalArgumentExceptionIfTheItemCodeIsEmpty() throws Exception {
+		service.getItemStockByCode("", stockroomDataService.getById(0));
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the stockroom is null
+	 * @see IItemStockDataService#getItemStockByCode(String, Stockroom)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getItemStockByCode_shouldThrowIllegalArgumentExceptionIfTheStockroomIsNull() throws Exception {
+		service.getItemStockByCode("item 1 code", null);
+	}
+
+	/**
+	 * @verifies return null if no item has the code
+	 * @see IItemStockDataService#getItemStockByCode(String, Stockroom)
+	 */
+	@Test
+	public void getItemStockByCode_shouldReturnNullIfNoItemHasTheCode() throws Exception {
+		Assert.assertNull(service.getItemStockByCode("not a code", stockroomDataService.getById(0)));
+	}
+
+	/**
+	 * @verifies return the item with a zero quantity if the stockroom has no stock of the item
+	 * @see IItemStockDataService#getItemStockByCode(String, Stockroom)
+	 */
+	@Test
+	public void getItemStockByCode_shouldReturnTheItemWithAZeroQuantityIfTheStockroomHasNoStockOfTheItem() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(2);
+
+		ItemStockScan result = service.getItemStockByCode("item 2 code", stockroom);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(itemDataService.getById(1), result.getItem());
+		Assert.assertEquals(stockroom, result.getStockroom());
+		Assert.assertEquals(0, result.getQuantity());
+		Assert.assertNull(result.getNearestExpiration());
+	}
+
+	/**
+	 * @verifies return the quantity and the stock detail with the nearest expiration
+	 * @see IItemStockDataService#getItemStockByCode(String, Stockroom)
+	 */
+	@Test
+	public void getItemStockByCode_shouldReturnTheQuantityAndTheStockDetailWithTheNearestExpiration() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		ItemStock stock = stockroomDataService.getItem(stockroom, itemDataService.getById(2));
+		ItemStockDetail existing = Iterators.getOnlyElement(stock.getDetails().iterator());
+
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(existing.getExpiration());
+		cal.add(Calendar.MONTH, -1);
+		ItemStockDetail nearest = addDetail(stock, cal.getTime(), 2);
+
+		// Details without any stock are not returned even if they expire first
+		cal.add(Calendar.MONTH, -1);
+		addDetail(stock, cal.getTime(), 0);
+
+		stock.setQuantity(stock.getQuantity() + 2);
+		stockroomDataService.save(stockroom);
+		Context.flushSession();
+
+		ItemStockScan result = service.getItemStockByCode("ITEM 3 CODE", stockroom);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(stock.getItem(), result.getItem());
+		Assert.assertEquals(10, result.getQuantity());
+		Assert.assertNotNull(result.getNearestExpiration());
+		Assert.assertEquals(nearest.getExpiration(), result.getNearestExpiration().getExpiration());
+		Assert.assertEquals(2, (int)result.getNearestExpiration().getQuantity());
+	}
+
+	/**
+	 * @verifies insert the item stock and details in jdbc batches
+	 * @see IItemStockDataService#save
+	 */
+	@Test
+	public void save_shouldInsertTheItemStockAndDetailsInJdbcBatches() throws Exception {
+		Stockroom stockroom = new Stockroom();
+		stockroom.setName("Batch Stockroom");
+		stockroomDataService.save(stockroom);
+
+		List<Item> items = itemDataService.getAll();
+		StockOperation operation = stockOperationDataService.getById(1);
+		Context.flushSession();
+
+		Statistics statistics = sessionFactory.getStatistics();
+		boolean statisticsEnabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+		try {
+			statistics.clear();
+
+			List<ItemStock> saved = new ArrayList<ItemStock>(items.size());
+			Calendar cal = Calendar.getInstance();
+			for (Item item : items) {
+				ItemStock stock = new ItemStock();
+				stock.setStockroom(stockroom);
+				stock.setItem(item);
+				stock.setQuantity(BATCH_DETAIL_COUNT);
+
+				for (int i = 0; i < BATCH_DETAIL_COUNT; i++) {
+					cal.add(Calendar.DAY_OF_MONTH, 1);
+
+					ItemStockDetail detail = new ItemStockDetail();
+					detail.setStockroom(stockroom);
+					detail.setItem(item);
+					detail.setExpiration(cal.getTime());
+					detail.setCalculatedBatch(false);
+					detail.setBatchOperation(operation);
+					detail.setQuantity(1);
+					stock.addDetail(detail);
+				}
+
+				saved.add(service.save(stock));
+			}
+			Context.flushSession();
+
+			// The ids come from the pooled generator rather than from an identity column, which would need a separate
+			//  insert statement for every record
+			long inserted = items.size() * (BATCH_DETAIL_COUNT + 1);
+			Assert.assertEquals(inserted, statistics.getEntityInsertCount());
+			long statements = statistics.getPrepareStatementCount();
+			Assert.assertTrue("Expected the " + inserted + " inserts to be batched but " + statements
+			        + " statements were prepared", statements * 10 < inserted);
+
+			for (ItemStock stock : saved) {
+				Assert.assertTrue(stock.getId() >= 1000);
+				for (ItemStockDetail detail : stock.getDetails()) {
+					Assert.assertTrue(detail.getId() >= 1000);
+				}
+			}
+		} finally {
+			statistics.setStatisticsEnabled(statisticsEnabled);
+		}
+	}
+
+	private ItemStockDetail addDetail(ItemStock stock, Date expiration, int quantity) {
+		ItemStockDetail detail = new ItemStockDetail();
+		detail.setStockroom(stock.getStockroom());
+		detail.setItem(stock.getItem());
+		detail.setExpiration(expiration);
+		detail.setCalculatedBatch(false);
+		detail.setBatchOperation(stockOperationDataService.getById(1));
+		detail.setQuantity(quantity);
+		stock.addDetail(detail);
+
+		return detail;
+	}
+
+	private int getTotalQuantity(List<ItemStockSummary> summaries) {
+		int total = 0;
+		for (ItemStockSummary summary : summaries) {
+			total += summary.getQuantity();
+		}
+
+		return total;
+	}
 }
@@ -14,6 +14,7 @@
 package org.openmrs.module.openhmis.inventory.api;
 
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.lang3.time.DateUtils;
@@ -27,13 +28,18 @@ import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockSummary;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
 public class IItemStockDetailDataServiceTest extends BaseModuleContextTest {
 	private IItemStockDetailDataService service;
 	private IItemDataService itemDataService;
 	private IStockroomDataService stockroomDataService;
 	private IStockOperationDataService stockOperationDataService;
+	private IItemStockDataService itemStockDataService;
+	private IStockOperationService stockOperationService;
 
 	@Before
 	public void before() throws Exception {
@@ -41,10 +47,13 @@ public class IItemStockDetailDataServiceTest extends BaseModuleContextTest {
 		this.itemDataService = Context.getService(IItemDataService.class);
 		this.stockroomDataService = Context.getService(IStockroomDataService.class);
 		this.stockOperationDataService = Context.getService(IStockOperationDataService.class);
+		this.itemStockDataService = Context.getService(IItemStockDataService.class);
+		this.stockOperationService = Context.getService(IStockOperationService.class);
 
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 	}
 
 	/**
@@ -167,6 +176,7 @@ public class IItemStockDetailDataServiceTest extends BaseModuleContextTest {
 
 		stockroomDataService.save(sr);
 		Context.flushSession();
+		itemStockDataService.rebuildItemStockSummary(sr);
 
 		List<ItemStockSummary> results = service.getItemStockSummaryByStockroom(sr, null);
 
@@ -281,6 +291,7 @@ public class IItemStockDetailDataServiceTest extends BaseModuleContextTest {
 
 		stockroomDataService.save(sr);
 		Context.flushSession();
+		itemStockDataService.rebuildItemStockSummary(sr);
 
 		PagingInfo pagingInfo = new PagingInfo(1, 1);
 		List<ItemStockSummary> results = service.getItemStockSummaryByStockroom(sr, pagingInfo);
@@ -454,6 +465,7 @@ public class IItemStockDetailDataServiceTest extends BaseModuleContextTest {
 
 		stockroomDataService.save(sr);
 		Context.flushSession();
+		itemStockDataService.rebuildItemStockSummary(sr);
 
 		PagingInfo pagingInfo = new PagingInfo(1, 5);
 		List<ItemStockSummary> results = service.getItemStockSummaryByStockroom(sr, pagingInfo);
@@ -487,4 +499,58 @@ public class IItemStockDetailDataServiceTest extends BaseModuleContextTest {
 		Assert.assertEquals(20, (long)summary.getQuantity());
 		Assert.assertTrue(DateUtils.isSameDay(cal4.getTime(), summary.getExpiration()));
 	}
+
+	/**
+	 * @verifies return the summary records updated by applying transactions
+	 * @see IItemStockDetailDataService#getItemStockSummaryByStockroom(Stockroom, PagingInfo)
+	 */
+	@Test
+	public void getItemStockSummaryByStockroom_shouldReturnTheSummaryRecordsUpdatedByApplyingTransactions()
+	        throws Exception {
+		Stockroom sr = new Stockroom();
+		sr.setName("new");
+
+		stockroomDataService.save(sr);
+		Context.flushSession();
+
+		Item item2 = itemDataService.getById(2);
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.YEAR, 2);
+
+		stockOperationService.applyTransactions(createTransaction(sr, item2, cal.getTime(), 10),
+		    createTransaction(sr, item2, null, 5));
+
+		// The summary records are updated before the transaction is committed
+		TransactionSynchronizationUtils.triggerBeforeCommit(false);
+
+		List<ItemStockSummary> results = service.getItemStockSummaryByStockroom(sr, null);
+		Assert.assertEquals(2, results.size());
+		Assert.assertNull(results.get(0).getExpiration());
+		Assert.assertEquals(5, (long)results.get(0).getQuantity());
+		Assert.assertTrue(DateUtils.isSameDay(cal.getTime(), results.get(1).getExpiration()));
+		Assert.assertEquals(10, (long)results.get(1).getQuantity());
+
+		// Removing the stock for an expiration removes the summary record
+		stockOperationService.applyTransactions(createTransaction(sr, item2, cal.getTime(), -10));
+		TransactionSynchronizationUtils.triggerBeforeCommit(false);
+
+		results = service.getItemStockSummaryByStockroom(sr, null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertNull(results.get(0).getExpiration());
+		Assert.assertEquals(5, (long)results.get(0).getQuantity());
+	}
+
+	private StockOperationTransaction createTransaction(Stockroom stockroom, Item item, Date expiration, int quantity) {
+		StockOperation operation = stockOperationDataService.getById(0);
+
+		StockOperationTransaction tx = new StockOperationTransaction();
+		tx.setOperation(operation);
+		tx.setBatchOperation(operation);
+		tx.setStockroom(stockroom);
+		tx.setItem(item);
+		tx.setExpiration(expiration);
+		tx.setQuantity(quantity);
+
+		return tx;
+	}
 }
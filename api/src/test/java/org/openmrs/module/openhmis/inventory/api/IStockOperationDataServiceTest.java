@@ -1,5 +1,7 @@
 package org.openmrs.module.openhmis.inventory.api;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
@@ -7,6 +9,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.Patient;
@@ -108,6 +111,7 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 
 		typeService = Context.getService(IStockOperationTypeDataService.class);
 		stockroomService = Context.getService(IStockroomDataService.class);
@@ -285,6 +289,7 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		Assert.assertTrue(destination.getOperations().contains(operation));
 
 		Stockroom newSource = stockroomService.getById(2);
+		Assert.assertFalse(newSource.getOperations().contains(operation));
 
 		operation.setSource(newSource);
 		operation.setDestination(null);
@@ -294,6 +299,78 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		Assert.assertFalse(destination.getOperations().contains(operation));
 	}
 
+	@Test
+	public void save_shouldNotLoadTheStockroomOperationsWhenTheSourceAndDestinationAreSet() throws Exception {
+		StockOperation operation = new StockOperation();
+		operation.setOperationNumber("123");
+		operation.setInstanceType(WellKnownOperationTypes.getTransfer());
+		operation.setStatus(StockOperationStatus.PENDING);
+		operation.setCreator(Context.getAuthenticatedUser());
+		operation.setOperationDate(new Date());
+
+		Stockroom source = stockroomService.getById(0);
+		Stockroom destination = stockroomService.getById(1);
+
+		operation.setSource(source);
+		operation.setDestination(destination);
+
+		// Setting the source and destination must not load the stockroom operations
+		Assert.assertFalse(Hibernate.isInitialized(source.getOperations()));
+		Assert.assertFalse(Hibernate.isInitialized(destination.getOperations()));
+
+		service.save(operation);
+		Context.flushSession();
+		Context.clearSession();
+
+		Assert.assertTrue(hasOperation(stockroomService.getById(0), operation));
+		Assert.assertTrue(hasOperation(stockroomService.getById(1), operation));
+	}
+
+	@Test
+	public void save_shouldUpdateTheStockroomOperationsRecordsWhenTheSourceOrDestinationIsChanged() throws Exception {
+		StockOperation operation = new StockOperation();
+		operation.setOperationNumber("123");
+		operation.setInstanceType(WellKnownOperationTypes.getTransfer());
+		operation.setStatus(StockOperationStatus.PENDING);
+		operation.setCreator(Context.getAuthenticatedUser());
+		operation.setOperationDate(new Date());
+
+		Stockroom source = stockroomService.getById(0);
+		Stockroom destination = stockroomService.getById(1);
+
+		operation.setSource(source);
+		operation.setDestination(destination);
+
+		service.save(operation);
+		Context.flushSession();
+		Context.clearSession();
+
+		Assert.assertTrue(hasOperation(stockroomService.getById(0), operation));
+		Assert.assertTrue(hasOperation(stockroomService.getById(1), operation));
+
+		operation = service.getById(operation.getId());
+		operation.setSource(stockroomService.getById(2));
+		operation.setDestination(null);
+
+		service.save(operation);
+		Context.flushSession();
+		Context.clearSession();
+
+		Assert.assertFalse(hasOperation(stockroomService.getById(0), operation));
+		Assert.assertTrue(hasOperation(stockroomService.getById(2), operation));
+		Assert.assertFalse(hasOperation(stockroomService.getById(1), operation));
+	}
+
+	private boolean hasOperation(Stockroom stockroom, StockOperation operation) {
+		for (StockOperation roomOperation : stockroom.getOperations()) {
+			if (roomOperation.getId().equals(operation.getId())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * @verifies return null if number is not found
 	 * @see IStockOperationDataService#getOperationByNumber(String)
@@ -641,6 +718,32 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		Assert.assertEquals(2, (long)pagingInfo.getTotalRecordCount());
 	}
 
+	/**
+	 * @verifies return the next page of operations when cursor paging is specified
+	 * @see IStockOperationDataService#getOperations(StockOperationSearch, PagingInfo)
+	 */
+	@Test
+	public void getOperations_shouldReturnTheNextPageOfOperationsWhenCursorPagingIsSpecified() throws Exception {
+		StockOperationSearch search = new StockOperationSearch();
+		search.getTemplate().setStatus(StockOperationStatus.COMPLETED);
+
+		CursorPagingInfo paging = new CursorPagingInfo(1);
+		List<StockOperation> results = service.getOperations(search, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertTrue(paging.hasNextCursor());
+		int id = results.get(0).getId();
+
+		paging = new CursorPagingInfo(paging.getNextCursor(), 1);
+		results = service.getOperations(search, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertFalse(paging.hasNextCursor());
+		Assert.assertFalse(id == results.get(0).getId());
+	}
+
 	/**
 	 * @verifies return operations filtered by creation date
 	 * @see IStockOperationDataService#getOperations(StockOperationSearch, PagingInfo)
@@ -1236,6 +1339,31 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		Assert.assertFalse(id == results.get(0).getId());
 	}
 
+	/**
+	 * @verifies return the next page of operations when cursor paging is specified
+	 * @see IStockOperationDataService#getUserOperations(User, StockOperationStatus, IStockOperationType, Item, Stockroom,
+	 *      PagingInfo)
+	 */
+	@Test
+	public void getUserOperations_shouldReturnTheNextPageOfOperationsWhenCursorPagingIsSpecified() throws Exception {
+		User user = Context.getUserService().getUser(1);
+		List<StockOperation> expected = service.getUserOperations(user, null, null, null, null, null);
+
+		List<StockOperation> results = new ArrayList<StockOperation>();
+		CursorPagingInfo paging = new CursorPagingInfo(2);
+		do {
+			List<StockOperation> page = service.getUserOperations(user, null, null, null, null, paging);
+			Assert.assertNotNull(page);
+			Assert.assertTrue(page.size() <= 2);
+
+			results.addAll(page);
+			paging = new CursorPagingInfo(paging.getNextCursor(), 2);
+		} while (paging.getCursor() != null);
+
+		Assert.assertEquals(expected.size(), results.size());
+		Assert.assertEquals(new HashSet<StockOperation>(expected), new HashSet<StockOperation>(results));
+	}
+
 	/**
 	 * @verifies return all operations when paging is null
 	 * @see IStockOperationDataService#getUserOperations(User, StockOperationStatus, IStockOperationType, Item, Stockroom,
@@ -1638,6 +1766,122 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		service.getLastOperationByDate(null);
 	}
 
+	/**
+	 * @verifies return the largest operation order on the date that is less than the specified order
+	 * @see IStockOperationDataService#getPreviousOperationOrder(java.util.Date, Integer)
+	 */
+	@Test
+	public void getPreviousOperationOrder_shouldReturnTheLargestOperationOrderOnTheDateThatIsLessThanTheSpecifiedOrder()
+	        throws Exception {
+		List<StockOperation> operations = createOrderedOperations();
+
+		Integer result = service.getPreviousOperationOrder(operations.get(0).getOperationDate(), 2048);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(1024, (int)result);
+	}
+
+	/**
+	 * @verifies return the largest operation order on the date if the order is null
+	 * @see IStockOperationDataService#getPreviousOperationOrder(java.util.Date, Integer)
+	 */
+	@Test
+	public void getPreviousOperationOrder_shouldReturnTheLargestOperationOrderOnTheDateIfTheOrderIsNull() throws Exception {
+		List<StockOperation> operations = createOrderedOperations();
+
+		Integer result = service.getPreviousOperationOrder(operations.get(0).getOperationDate(), null);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(2048, (int)result);
+	}
+
+	/**
+	 * @verifies return null if no operations occurred on the specified date
+	 * @see IStockOperationDataService#getPreviousOperationOrder(java.util.Date, Integer)
+	 */
+	@Test
+	public void getPreviousOperationOrder_shouldReturnNullIfNoOperationsOccurredOnTheSpecifiedDate() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.YEAR, 10);
+
+		Assert.assertNull(service.getPreviousOperationOrder(cal.getTime(), null));
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the date is null
+	 * @see IStockOperationDataService#getPreviousOperationOrder(java.util.Date, Integer)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getPreviousOperationOrder_shouldThrowIllegalArgumentExceptionIfTheDateIsNull() throws Exception {
+		service.getPreviousOperationOrder(null, null);
+	}
+
+	/**
+	 * @verifies return the smallest operation order on the date that is equal to or greater than the operation order
+	 * @see IStockOperationDataService#getNextOperationOrder(StockOperation)
+	 */
+	@Test
+	public void getNextOperationOrder_shouldReturnTheSmallestOperationOrderOnTheDateThatIsEqualToOrGreaterThanTheOperationOrder()
+	        throws Exception {
+		List<StockOperation> operations = createOrderedOperations();
+
+		StockOperation operation = createEntity(true);
+		operation.setOperationDate(operations.get(0).getOperationDate());
+		operation.setOperationOrder(1024);
+
+		Integer result = service.getNextOperationOrder(operation);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(1024, (int)result);
+
+		operation.setOperationOrder(1025);
+		result = service.getNextOperationOrder(operation);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(2048, (int)result);
+	}
+
+	/**
+	 * @verifies not return the order of the specified operation
+	 * @see IStockOperationDataService#getNextOperationOrder(StockOperation)
+	 */
+	@Test
+	public void getNextOperationOrder_shouldNotReturnTheOrderOfTheSpecifiedOperation() throws Exception {
+		List<StockOperation> operations = createOrderedOperations();
+
+		Integer result = service.getNextOperationOrder(operations.get(1));
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(2048, (int)result);
+
+		Assert.assertNull(service.getNextOperationOrder(operations.get(2)));
+	}
+
+	/**
+	 * @verifies return null if no operations occurred on the specified date
+	 * @see IStockOperationDataService#getNextOperationOrder(StockOperation)
+	 */
+	@Test
+	public void getNextOperationOrder_shouldReturnNullIfNoOperationsOccurredOnTheSpecifiedDate() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.YEAR, 10);
+
+		StockOperation operation = createEntity(true);
+		operation.setOperationDate(cal.getTime());
+		operation.setOperationOrder(0);
+
+		Assert.assertNull(service.getNextOperationOrder(operation));
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the operation is null
+	 * @see IStockOperationDataService#getNextOperationOrder(StockOperation)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getNextOperationOrder_shouldThrowIllegalArgumentExceptionIfTheOperationIsNull() throws Exception {
+		service.getNextOperationOrder(null);
+	}
+
 	/**
 	 * @verifies return the operation with the least operation order on the specified date
 	 * @see IStockOperationDataService#getFirstOperationByDate(java.util.Date)
@@ -2053,6 +2297,253 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		Assert.assertEquals(op7, results.get(4));
 	}
 
+	/**
+	 * @verifies throw IllegalArgumentException if the operation is null
+	 * @see IStockOperationDataService#getFutureOperations(StockOperation, java.util.Collection, PagingInfo)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getFutureOperations_shouldThrowIllegalArgumentExceptionIfTheOperationIsNullWithItems() throws Exception {
+		service.getFutureOperations(null, Arrays.asList(itemService.getById(0)), null);
+	}
+
+	/**
+	 * @verifies return future operations that include any of the specified items
+	 * @see IStockOperationDataService#getFutureOperations(StockOperation, java.util.Collection, PagingInfo)
+	 */
+	@Test
+	public void getFutureOperations_shouldReturnFutureOperationsThatIncludeAnyOfTheSpecifiedItems() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		Utility.clearCalendarTime(cal);
+		cal.add(Calendar.YEAR, 10);
+
+		Item item0 = itemService.getById(0);
+		Item item1 = itemService.getById(1);
+		Item item2 = itemService.getById(2);
+
+		StockOperation op1 = createEntity(true);
+		op1.setOperationDate(cal.getTime());
+		op1.setOperationOrder(0);
+		op1.addItem(item0, 1);
+
+		cal.add(Calendar.HOUR_OF_DAY, 1);
+		StockOperation op2 = createEntity(true);
+		op2.setOperationDate(cal.getTime());
+		op2.setOperationOrder(1);
+		op2.addItem(item0, 1);
+		op2.addItem(item2, 1);
+
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		StockOperation op3 = createEntity(true);
+		op3.setOperationDate(cal.getTime());
+		op3.setOperationOrder(0);
+		op3.addItem(item1, 1);
+
+		service.save(op1);
+		service.save(op2);
+		service.save(op3);
+		Context.flushSession();
+
+		List<StockOperation> results = service.getFutureOperations(op1, Arrays.asList(item0, item1), null);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(op2, results.get(0));
+		Assert.assertEquals(op3, results.get(1));
+	}
+
+	/**
+	 * @verifies not return future operations that do not include the specified items
+	 * @see IStockOperationDataService#getFutureOperations(StockOperation, java.util.Collection, PagingInfo)
+	 */
+	@Test
+	public void getFutureOperations_shouldNotReturnFutureOperationsThatDoNotIncludeTheSpecifiedItems() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		Utility.clearCalendarTime(cal);
+		cal.add(Calendar.YEAR, 10);
+
+		Item item0 = itemService.getById(0);
+		Item item1 = itemService.getById(1);
+
+		StockOperation op1 = createEntity(true);
+		op1.setOperationDate(cal.getTime());
+		op1.setOperationOrder(0);
+		op1.addItem(item0, 1);
+
+		cal.add(Calendar.HOUR_OF_DAY, 1);
+		StockOperation op2 = createEntity(true);
+		op2.setOperationDate(cal.getTime());
+		op2.setOperationOrder(1);
+		op2.addItem(item1, 1);
+
+		service.save(op1);
+		service.save(op2);
+		Context.flushSession();
+
+		List<StockOperation> results = service.getFutureOperations(op1, Arrays.asList(item0), null);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies return all future operations if items is null
+	 * @see IStockOperationDataService#getFutureOperations(StockOperation, java.util.Collection, PagingInfo)
+	 */
+	@Test
+	public void getFutureOperations_shouldReturnAllFutureOperationsIfItemsIsNull() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		Utility.clearCalendarTime(cal);
+		cal.add(Calendar.YEAR, 10);
+
+		StockOperation op1 = createEntity(true);
+		op1.setOperationDate(cal.getTime());
+		op1.setOperationOrder(0);
+		op1.addItem(itemService.getById(0), 1);
+
+		cal.add(Calendar.HOUR_OF_DAY, 1);
+		StockOperation op2 = createEntity(true);
+		op2.setOperationDate(cal.getTime());
+		op2.setOperationOrder(1);
+		op2.addItem(itemService.getById(1), 1);
+
+		service.save(op1);
+		service.save(op2);
+		Context.flushSession();
+
+		List<StockOperation> results = service.getFutureOperations(op1, null, null);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(op2, results.get(0));
+	}
+
+	/**
+	 * @verifies return an empty list if items is empty
+	 * @see IStockOperationDataService#getFutureOperations(StockOperation, java.util.Collection, PagingInfo)
+	 */
+	@Test
+	public void getFutureOperations_shouldReturnAnEmptyListIfItemsIsEmpty() throws Exception {
+		StockOperation op1 = createEntity(true);
+		op1.setOperationDate(new Date());
+		op1.setOperationOrder(0);
+
+		List<StockOperation> results = service.getFutureOperations(op1, new ArrayList<Item>(), null);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the operation is null
+	 * @see IStockOperationDataService#getOperationsAfter(StockOperation, java.util.Collection, int)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getOperationsAfter_shouldThrowIllegalArgumentExceptionIfTheOperationIsNull() throws Exception {
+		service.getOperationsAfter(null, null, 10);
+	}
+
+	/**
+	 * @verifies return operations on later days and with a higher operation order on the same day
+	 * @see IStockOperationDataService#getOperationsAfter(StockOperation, java.util.Collection, int)
+	 */
+	@Test
+	public void getOperationsAfter_shouldReturnOperationsOnLaterDaysAndWithAHigherOperationOrderOnTheSameDay()
+	        throws Exception {
+		List<StockOperation> operations = createOrderedOperations();
+
+		List<StockOperation> results = service.getOperationsAfter(operations.get(0), null, 10);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(operations.get(1), results.get(0));
+		Assert.assertEquals(operations.get(2), results.get(1));
+
+		// The last operation is on the next day
+		Assert.assertEquals(Integer.valueOf(0), results.get(2).getOperationOrder());
+	}
+
+	/**
+	 * @verifies return the next page when passed the last operation of the previous page
+	 * @see IStockOperationDataService#getOperationsAfter(StockOperation, java.util.Collection, int)
+	 */
+	@Test
+	public void getOperationsAfter_shouldReturnTheNextPageWhenPassedTheLastOperationOfThePreviousPage() throws Exception {
+		List<StockOperation> operations = createOrderedOperations();
+
+		// Give an operation the same order as the previous one so that the operations can only be told apart by id
+		operations.get(2).setOperationOrder(1024);
+		service.save(operations.get(2));
+		Context.flushSession();
+
+		List<StockOperation> first = service.getOperationsAfter(operations.get(0), null, 2);
+		Assert.assertEquals(2, first.size());
+
+		List<StockOperation> second = service.getOperationsAfter(first.get(1), null, 2);
+		Assert.assertEquals(1, second.size());
+		Assert.assertFalse(first.contains(second.get(0)));
+
+		List<StockOperation> third = service.getOperationsAfter(second.get(0), null, 2);
+		Assert.assertEquals(0, third.size());
+	}
+
+	/**
+	 * @verifies only return operations that include the specified items
+	 * @see IStockOperationDataService#getOperationsAfter(StockOperation, java.util.Collection, int)
+	 */
+	@Test
+	public void getOperationsAfter_shouldOnlyReturnOperationsThatIncludeTheSpecifiedItems() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		Utility.clearCalendarTime(cal);
+		cal.add(Calendar.YEAR, 10);
+
+		Item item0 = itemService.getById(0);
+		Item item1 = itemService.getById(1);
+
+		StockOperation op1 = createEntity(true);
+		op1.setOperationDate(cal.getTime());
+		op1.setOperationOrder(0);
+		op1.addItem(item0, 1);
+
+		cal.add(Calendar.HOUR_OF_DAY, 1);
+		StockOperation op2 = createEntity(true);
+		op2.setOperationDate(cal.getTime());
+		op2.setOperationOrder(1024);
+		op2.addItem(item1, 1);
+
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		StockOperation op3 = createEntity(true);
+		op3.setOperationDate(cal.getTime());
+		op3.setOperationOrder(0);
+		op3.addItem(item0, 1);
+
+		service.save(op1);
+		service.save(op2);
+		service.save(op3);
+		Context.flushSession();
+
+		List<StockOperation> results = service.getOperationsAfter(op1, Arrays.asList(item0), 10);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(op3, results.get(0));
+	}
+
+	/**
+	 * @verifies return an empty list if items is empty
+	 * @see IStockOperationDataService#getOperationsAfter(StockOperation, java.util.Collection, int)
+	 */
+	@Test
+	public void getOperationsAfter_shouldReturnAnEmptyListIfItemsIsEmpty() throws Exception {
+		StockOperation op1 = createEntity(true);
+		op1.setOperationDate(new Date());
+		op1.setOperationOrder(0);
+
+		List<StockOperation> results = service.getOperationsAfter(op1, new ArrayList<Item>(), 10);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+	}
+
 	/**
 	 * @verifies throw IllegalArgumentException if the operation is null
 	 * @see IStockOperationDataService#getOperationsByDate(java.util.Date, PagingInfo)
@@ -2131,6 +2622,42 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		Assert.assertEquals(op4, results.get(3));
 	}
 
+	/**
+	 * @verifies return operations whose operation date was moved to the specified date
+	 * @see IStockOperationDataService#getOperationsByDate(java.util.Date, PagingInfo)
+	 */
+	@Test
+	public void getOperationsByDate_shouldReturnOperationsWhoseOperationDateWasMovedToTheSpecifiedDate() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		Utility.clearCalendarTime(cal);
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		cal.add(Calendar.HOUR_OF_DAY, 10);
+		Date first = cal.getTime();
+
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		Date second = cal.getTime();
+
+		StockOperation operation = createEntity(true);
+		operation.setOperationDate(first);
+		operation.setOperationOrder(0);
+		service.save(operation);
+		Context.flushSession();
+
+		operation.setOperationDate(second);
+		service.save(operation);
+		Context.flushSession();
+		Context.clearSession();
+
+		List<StockOperation> results = service.getOperationsByDate(first, null);
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+
+		results = service.getOperationsByDate(second, null);
+		Assert.assertNotNull(results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(operation.getId(), results.get(0).getId());
+	}
+
 	/**
 	 * @verifies return operations ordered by operation order
 	 * @see IStockOperationDataService#getOperationsByDate(java.util.Date, PagingInfo)
@@ -2312,4 +2839,33 @@ public class IStockOperationDataServiceTest extends IMetadataDataServiceTest<ISt
 		results = service.getOperationsByDate(test, pagingInfo);
 		Assert.assertEquals(op4, results.get(0));
 	}
+
+	private List<StockOperation> createOrderedOperations() {
+		Calendar cal = Calendar.getInstance();
+		Utility.clearCalendarTime(cal);
+		cal.add(Calendar.YEAR, 10);
+
+		List<StockOperation> operations = new ArrayList<StockOperation>();
+		for (int i = 0; i < 3; i++) {
+			cal.add(Calendar.MINUTE, 10);
+
+			StockOperation op = createEntity(true);
+			op.setOperationDate(cal.getTime());
+			op.setOperationOrder(i * 1024);
+			service.save(op);
+
+			operations.add(op);
+		}
+
+		// Add an operation on the next day that should never be returned
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		StockOperation other = createEntity(true);
+		other.setOperationDate(cal.getTime());
+		other.setOperationOrder(0);
+		service.save(other);
+
+		Context.flushSession();
+
+		return operations;
+	}
 }
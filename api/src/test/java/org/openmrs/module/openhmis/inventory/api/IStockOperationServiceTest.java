@@ -1,12 +1,26 @@
 package org.openmrs.module.openhmis.inventory.api;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,26 +29,42 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.openhmis.commons.api.BaseModuleContextTest;
 import org.openmrs.module.openhmis.inventory.ModuleSettings;
+import org.openmrs.module.openhmis.inventory.api.model.AllocationStrategyType;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
 import org.openmrs.module.openhmis.inventory.api.model.ReservedTransaction;
 import org.openmrs.module.openhmis.inventory.api.model.Settings;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpoint;
+import org.openmrs.module.openhmis.inventory.api.model.StockCheckpointDetail;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationItem;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationResult;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.springframework.aop.MethodBeforeAdvice;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.NotTransactional;
+import org.springframework.transaction.support.ResourceHolderSupport;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
 
 public class IStockOperationServiceTest extends BaseModuleContextTest {
+	private static final int CONCURRENT_SUBMITTER_COUNT = 8;
+	private static final int CONCURRENT_OPERATION_COUNT = 20;
+
 	IStockOperationTypeDataService typeService;
 	IStockroomDataService stockroomService;
 	IItemDataService itemService;
 	IStockOperationDataService operationService;
 	IStockOperationService service;
+	IStockCheckpointDataService checkpointService;
+
+	@Autowired
+	private SessionFactory sessionFactory;
 
 	IItemDataServiceTest itemTest;
 	IStockOperationDataServiceTest operationTest;
@@ -44,12 +74,14 @@ public class IStockOperationServiceTest extends BaseModuleContextTest {
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 
 		typeService = Context.getService(IStockOperationTypeDataService.class);
 		stockroomService = Context.getService(IStockroomDataService.class);
 		itemService = Context.getService(IItemDataService.class);
 		operationService = Context.getService(IStockOperationDataService.class);
 		service = Context.getService(IStockOperationService.class);
+		checkpointService = Context.getService(IStockCheckpointDataService.class);
 
 		itemTest = new IItemDataServiceTest();
 		operationTest = new IStockOperationDataServiceTest();
@@ -846,6 +878,109 @@ public class IStockOperationServiceTest extends BaseModuleContextTest {
 		}
 	}
 
+	/**
+	 * @verifies keep each item stock quantity equal to the sum of its details when submitted from several threads
+	 * @see IStockOperationService#submitOperation(org.openmrs.module.openhmis.inventory.api.model.StockOperation)
+	 */
+	@Test
+	@NotTransactional
+	public void submitOperation_shouldKeepEachItemStockQuantityEqualToTheSumOfItsDetailsWhenSubmittedFromSeveralThreads()
+	        throws Exception {
+		// The operations are submitted from other threads, which can only see committed data
+		Context.flushSession();
+		getConnection().commit();
+		try {
+			final int[] itemIds = { 0, 1, 2 };
+			Map<Integer, Integer> totals = getItemTotals(itemIds);
+
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int t = 0; t < CONCURRENT_SUBMITTER_COUNT; t++) {
+				final int submitter = t;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						Context.openSession();
+						try {
+							Context.authenticate("admin", "test");
+							IStockroomDataService stockrooms = Context.getService(IStockroomDataService.class);
+							IItemDataService items = Context.getService(IItemDataService.class);
+							IStockOperationService operations = Context.getService(IStockOperationService.class);
+
+							for (int i = 0; i < CONCURRENT_OPERATION_COUNT; i++) {
+								// Transfer in both directions and overlap the items so that the submitters lock the same
+								//  item stock in different orders
+								boolean forward = (submitter + i) % 2 == 0;
+								StockOperation operation = new StockOperation();
+								operation.setInstanceType(WellKnownOperationTypes.getTransfer());
+								operation.setStatus(StockOperationStatus.NEW);
+								operation.setSource(stockrooms.getById(forward ? 0 : 1));
+								operation.setDestination(stockrooms.getById(forward ? 1 : 0));
+								operation.setOperationNumber("C" + submitter + "-" + i);
+								operation.setOperationDate(new Date());
+								operation.addItem(items.getById(itemIds[i % itemIds.length]), 1);
+								operation.addItem(items.getById(itemIds[(i + 1) % itemIds.length]), 2);
+
+								operations.submitOperation(operation);
+
+								operation.setStatus(StockOperationStatus.COMPLETED);
+								operations.submitOperation(operation);
+							}
+						} finally {
+							Context.closeSession();
+						}
+
+						return null;
+					}
+				});
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					// Rethrow any exception from the submitter threads
+					future.get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+
+			Context.clearSession();
+			for (Integer stockroomId : Arrays.asList(0, 1)) {
+				for (ItemStock stock : stockroomService.getItemsByRoom(stockroomService.getById(stockroomId), null)) {
+					int detailQuantity = 0;
+					for (ItemStockDetail detail : stock.getDetails()) {
+						detailQuantity += detail.getQuantity();
+					}
+
+					Assert.assertEquals(detailQuantity, stock.getQuantity());
+				}
+			}
+
+			// Transfers only move the stock so the total for each item must not change
+			Assert.assertEquals(totals, getItemTotals(itemIds));
+		} finally {
+			deleteAllData();
+		}
+	}
+
+	private Map<Integer, Integer> getItemTotals(int[] itemIds) {
+		Map<Integer, Integer> totals = new HashMap<Integer, Integer>();
+		for (int itemId : itemIds) {
+			int total = 0;
+			Item item = itemService.getById(itemId);
+			for (Integer stockroomId : Arrays.asList(0, 1)) {
+				ItemStock stock = stockroomService.getItem(stockroomService.getById(stockroomId), item);
+				if (stock != null) {
+					total += stock.getQuantity();
+				}
+			}
+
+			totals.put(itemId, total);
+		}
+
+		return totals;
+	}
+
 	/**
 	 * @verifies remove empty item stock from the source stockroom
 	 * @see IStockOperationService#submitOperation(org.openmrs.module.openhmis.inventory.api.model.StockOperation)
@@ -1238,6 +1373,62 @@ public class IStockOperationServiceTest extends BaseModuleContextTest {
 		Assert.assertTrue(destItemDetail.isCalculatedExpiration());
 	}
 
+	/**
+	 * @verifies take the stock from the oldest batch when the item uses fifo allocation
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldTakeTheStockFromTheOldestBatchWhenTheItemUsesFifoAllocation() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(true);
+		newItem.setAllocationStrategy(AllocationStrategyType.FIFO);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		// The oldest batch expires last so the first expired stock would come from the other batch
+		Date oldestExpiration = DateUtils.addYears(new Date(), 2);
+		StockOperation oldest = createReceipt(stockroom, newItem, 10, "A123-1", DateUtils.addDays(new Date(), -10));
+		oldest.getItems().iterator().next().setExpiration(oldestExpiration);
+		oldest = service.submitOperation(oldest);
+
+		StockOperation newest = createReceipt(stockroom, newItem, 10, "A123-2", DateUtils.addDays(new Date(), -5));
+		newest.getItems().iterator().next().setExpiration(DateUtils.addYears(new Date(), 1));
+		service.submitOperation(newest);
+		Context.flushSession();
+
+		StockOperation distribution = new StockOperation();
+		distribution.setInstanceType(WellKnownOperationTypes.getDistribution());
+		distribution.setStatus(StockOperationStatus.NEW);
+		distribution.setSource(stockroom);
+		distribution.setOperationNumber("A123-3");
+		distribution.setOperationDate(new Date());
+		distribution.setPatient(Context.getPatientService().getPatient(0));
+		distribution.addItem(newItem, 4);
+
+		distribution = service.submitOperation(distribution);
+		Context.flushSession();
+
+		Assert.assertEquals(StockOperationStatus.COMPLETED, distribution.getStatus());
+		Assert.assertTrue(distribution.getTransactions().size() > 0);
+		for (StockOperationTransaction tx : distribution.getTransactions()) {
+			Assert.assertEquals(oldest.getId(), tx.getBatchOperation().getId());
+			Assert.assertTrue(DateUtils.isSameDay(oldestExpiration, tx.getExpiration()));
+		}
+
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertEquals(16, stock.getQuantity());
+		for (ItemStockDetail detail : stock.getDetails()) {
+			int expected = detail.getBatchOperation().getId().equals(oldest.getId()) ? 6 : 10;
+			Assert.assertEquals(expected, (int)detail.getQuantity());
+		}
+	}
+
 	/**
 	 * @verifies calculate batch operation if not defined
 	 * @see IStockOperationService#submitOperation(org.openmrs.module.openhmis.inventory.api.model.StockOperation)
@@ -2841,6 +3032,953 @@ public class IStockOperationServiceTest extends BaseModuleContextTest {
 		service.rollbackOperation(null);
 	}
 
+	/**
+	 * @verifies rollback and reapply any following operations
+	 * @see IStockOperationService#rollbackOperation(org.openmrs.module.openhmis.inventory.api.model.StockOperation)
+	 */
+	@Test
+	public void rollbackOperation_shouldRollbackAndReapplyAnyFollowingOperationsFromCheckpoints() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom source = stockroomService.getById(0);
+		Stockroom dest = stockroomService.getById(1);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation op1 = new StockOperation();
+		op1.setInstanceType(WellKnownOperationTypes.getReceipt());
+		op1.setStatus(StockOperationStatus.NEW);
+		op1.setDestination(source);
+		op1.setOperationNumber("A123-1");
+		op1.setOperationDate(new Date());
+		op1.addItem(newItem, 25);
+
+		op1 = service.submitOperation(op1);
+		Context.flushSession();
+
+		// Create the checkpoints that the rollback will restore from
+		Assert.assertNotNull(service.createCheckpoint(source));
+		Assert.assertNotNull(service.createCheckpoint(dest));
+		Context.flushSession();
+
+		StockOperation op2 = new StockOperation();
+		op2.setInstanceType(WellKnownOperationTypes.getTransfer());
+		op2.setStatus(StockOperationStatus.NEW);
+		op2.setSource(source);
+		op2.setDestination(dest);
+		op2.setOperationNumber("A123-2");
+		op2.setOperationDate(new Date());
+		op2.addItem(newItem, 25);
+
+		op2 = service.submitOperation(op2);
+		Context.flushSession();
+
+		StockOperation op3 = new StockOperation();
+		op3.setInstanceType(WellKnownOperationTypes.getDistribution());
+		op3.setStatus(StockOperationStatus.NEW);
+		op3.setSource(source);
+		op3.setOperationNumber("A123-3");
+		op3.setOperationDate(new Date());
+		op3.setPatient(Context.getPatientService().getPatient(0));
+		op3.addItem(newItem, 10);
+
+		op3 = service.submitOperation(op3);
+		Context.flushSession();
+
+		ItemStock stock = stockroomService.getItem(source, newItem);
+		Assert.assertNotNull(stock);
+		Assert.assertEquals(-10, stock.getQuantity());
+
+		// The checkpoints are before op2 so they are still valid
+		Assert.assertEquals(1, checkpointService.getCheckpointsByStockroom(source, null).size());
+
+		op2 = service.rollbackOperation(op2);
+		Context.flushSession();
+
+		stock = stockroomService.getItem(source, newItem);
+		Assert.assertNotNull(stock);
+		Assert.assertEquals(15, stock.getQuantity());
+		ItemStockDetail detail = Iterators.getOnlyElement(stock.getDetails().iterator());
+		Assert.assertEquals(15, (long)detail.getQuantity());
+		Assert.assertEquals(op1, detail.getBatchOperation());
+
+		stock = stockroomService.getItem(dest, newItem);
+		Assert.assertNull(stock);
+
+		Assert.assertEquals(0, op2.getTransactions().size());
+		Assert.assertEquals(StockOperationStatus.ROLLBACK, op2.getStatus());
+	}
+
+	/**
+	 * @verifies create a checkpoint with the current item stock details
+	 * @see IStockOperationService#createCheckpoint(org.openmrs.module.openhmis.inventory.api.model.Stockroom)
+	 */
+	@Test
+	public void createCheckpoint_shouldCreateACheckpointWithTheCurrentItemStockDetails() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation op = new StockOperation();
+		op.setInstanceType(WellKnownOperationTypes.getReceipt());
+		op.setStatus(StockOperationStatus.NEW);
+		op.setDestination(stockroom);
+		op.setOperationNumber("A123-1");
+		op.setOperationDate(new Date());
+		op.addItem(newItem, 25);
+
+		op = service.submitOperation(op);
+		Context.flushSession();
+
+		StockCheckpoint checkpoint = service.createCheckpoint(stockroom);
+		Context.flushSession();
+
+		Assert.assertNotNull(checkpoint);
+		Assert.assertNotNull(checkpoint.getId());
+		Assert.assertEquals(stockroom, checkpoint.getStockroom());
+		Assert.assertEquals(op.getOperationOrder(), checkpoint.getOperationOrder());
+
+		StockCheckpointDetail newItemDetail = null;
+		int detailCount = 0;
+		for (ItemStock stock : stockroomService.getItemsByRoom(stockroom, null)) {
+			detailCount += stock.getDetails().size();
+		}
+		for (StockCheckpointDetail detail : checkpoint.getDetails()) {
+			if (newItem.equals(detail.getItem())) {
+				newItemDetail = detail;
+			}
+		}
+
+		Assert.assertEquals(detailCount, checkpoint.getDetails().size());
+		Assert.assertNotNull(newItemDetail);
+		Assert.assertEquals(25, (long)newItemDetail.getQuantity());
+		Assert.assertEquals(op, newItemDetail.getBatchOperation());
+	}
+
+	/**
+	 * @verifies return the existing checkpoint if no operations have been processed since it was created
+	 * @see IStockOperationService#createCheckpoint(org.openmrs.module.openhmis.inventory.api.model.Stockroom)
+	 */
+	@Test
+	public void createCheckpoint_shouldReturnTheExistingCheckpointIfNoOperationsHaveBeenProcessedSinceItWasCreated()
+	        throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		StockCheckpoint checkpoint = service.createCheckpoint(stockroom);
+		Context.flushSession();
+
+		StockCheckpoint checkpoint2 = service.createCheckpoint(stockroom);
+
+		Assert.assertNotNull(checkpoint);
+		Assert.assertEquals(checkpoint.getId(), checkpoint2.getId());
+		Assert.assertEquals(1, checkpointService.getCheckpointsByStockroom(stockroom, null).size());
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if the stockroom is null
+	 * @see IStockOperationService#createCheckpoint(org.openmrs.module.openhmis.inventory.api.model.Stockroom)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void createCheckpoint_shouldThrowIllegalArgumentExceptionIfTheStockroomIsNull() throws Exception {
+		service.createCheckpoint(null);
+	}
+
+	@Test
+	public void submitOperation_shouldInvalidateCheckpointsAfterABackDatedOperation() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+		Stockroom otherStockroom = stockroomService.getById(1);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation op1 = new StockOperation();
+		op1.setInstanceType(WellKnownOperationTypes.getReceipt());
+		op1.setStatus(StockOperationStatus.NEW);
+		op1.setDestination(stockroom);
+		op1.setOperationNumber("A123-1");
+		op1.setOperationDate(new Date());
+		op1.addItem(newItem, 25);
+
+		service.submitOperation(op1);
+		Context.flushSession();
+
+		Assert.assertNotNull(service.createCheckpoint(stockroom));
+		Assert.assertNotNull(service.createCheckpoint(otherStockroom));
+		Context.flushSession();
+
+		StockOperation op2 = new StockOperation();
+		op2.setInstanceType(WellKnownOperationTypes.getReceipt());
+		op2.setStatus(StockOperationStatus.NEW);
+		op2.setDestination(stockroom);
+		op2.setOperationNumber("A123-2");
+		op2.setOperationDate(DateUtils.addDays(new Date(), -1));
+		op2.addItem(newItem, 5);
+
+		service.submitOperation(op2);
+		Context.flushSession();
+
+		Assert.assertEquals(0, checkpointService.getCheckpointsByStockroom(stockroom, null).size());
+		Assert.assertEquals(1, checkpointService.getCheckpointsByStockroom(otherStockroom, null).size());
+
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertEquals(30, stock.getQuantity());
+	}
+
+	@Test
+	public void submitOperation_shouldNotInvalidateCheckpointsIfThereAreNoCheckpointsAfterTheOperation() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation op1 = new StockOperation();
+		op1.setInstanceType(WellKnownOperationTypes.getReceipt());
+		op1.setStatus(StockOperationStatus.NEW);
+		op1.setDestination(stockroom);
+		op1.setOperationNumber("A123-1");
+		op1.setOperationDate(DateUtils.addDays(new Date(), -1));
+		op1.addItem(newItem, 25);
+
+		service.submitOperation(op1);
+		Context.flushSession();
+
+		Assert.assertNotNull(service.createCheckpoint(stockroom));
+		Context.flushSession();
+
+		final List<String> invalidated = new ArrayList<String>();
+		MethodBeforeAdvice advice = new MethodBeforeAdvice() {
+			@Override
+			public void before(Method method, Object[] args, Object target) throws Throwable {
+				if ("invalidateCheckpoints".equals(method.getName())) {
+					invalidated.add(String.valueOf(args[0]));
+				}
+			}
+		};
+
+		StockOperation op2 = new StockOperation();
+		op2.setInstanceType(WellKnownOperationTypes.getReceipt());
+		op2.setStatus(StockOperationStatus.NEW);
+		op2.setDestination(stockroom);
+		op2.setOperationNumber("A123-2");
+		op2.setOperationDate(new Date());
+		op2.addItem(newItem, 5);
+
+		Context.addAdvice(IStockCheckpointDataService.class, advice);
+		try {
+			service.submitOperation(op2);
+			Context.flushSession();
+		} finally {
+			Context.removeAdvice(IStockCheckpointDataService.class, advice);
+		}
+
+		Assert.assertEquals(0, invalidated.size());
+		Assert.assertEquals(1, checkpointService.getCheckpointsByStockroom(stockroom, null).size());
+		Assert.assertEquals(30, stockroomService.getItem(stockroom, newItem).getQuantity());
+	}
+
+	/**
+	 * @verifies submit each operation
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldSubmitEachOperation() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation op1 = createReceipt(stockroom, newItem, 25, "A123-1", new Date());
+		StockOperation op2 = createReceipt(stockroom, newItem, 10, "A123-2", new Date());
+
+		List<StockOperationResult> results = service.submitOperations(Arrays.asList(op1, op2));
+		Context.flushSession();
+
+		Assert.assertEquals(2, results.size());
+		Assert.assertTrue(results.get(0).isSuccessful());
+		Assert.assertTrue(results.get(1).isSuccessful());
+		Assert.assertEquals(StockOperationStatus.COMPLETED, results.get(0).getOperation().getStatus());
+		Assert.assertEquals(StockOperationStatus.COMPLETED, results.get(1).getOperation().getStatus());
+		Assert.assertNotNull(results.get(0).getOperation().getId());
+		Assert.assertNotNull(results.get(1).getOperation().getId());
+
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertNotNull(stock);
+		Assert.assertEquals(35, stock.getQuantity());
+	}
+
+	/**
+	 * @verifies return a failed result for invalid operations and submit the rest
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldReturnAFailedResultForInvalidOperationsAndSubmitTheRest() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation invalid = createReceipt(stockroom, newItem, 5, "A123-1", new Date());
+		invalid.getItems().clear();
+		StockOperation valid = createReceipt(stockroom, newItem, 25, "A123-2", new Date());
+
+		List<StockOperationResult> results = service.submitOperations(Arrays.asList(invalid, valid));
+		Context.flushSession();
+
+		Assert.assertEquals(2, results.size());
+		Assert.assertFalse(results.get(0).isSuccessful());
+		Assert.assertNotNull(results.get(0).getErrorMessage());
+		Assert.assertSame(invalid, results.get(0).getOperation());
+		Assert.assertTrue(results.get(1).isSuccessful());
+		Assert.assertNull(results.get(1).getErrorMessage());
+
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertNotNull(stock);
+		Assert.assertEquals(25, stock.getQuantity());
+	}
+
+	/**
+	 * @verifies not change the item stock for an operation that fails while being processed
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldNotChangeTheItemStockForAnOperationThatFailsWhileBeingProcessed()
+	        throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Item otherItem = itemTest.createEntity(true);
+		otherItem.setHasExpiration(false);
+		itemService.save(otherItem);
+		Context.flushSession();
+
+		Date operationDate = new Date();
+		StockOperation op1 = createReceipt(stockroom, newItem, 25, "A123-1", operationDate);
+		// The operation number is too long for the operation table so this fails when the operation is saved
+		StockOperation failed = createReceipt(stockroom, newItem, 10, StringUtils.repeat("A", 300), operationDate);
+		failed.addItem(otherItem, 7);
+		StockOperation op3 = createReceipt(stockroom, newItem, 5, "A123-3", operationDate);
+
+		List<StockOperationResult> results = service.submitOperations(Arrays.asList(op1, failed, op3));
+		Context.flushSession();
+
+		Assert.assertEquals(3, results.size());
+		Assert.assertTrue(results.get(0).isSuccessful());
+		Assert.assertFalse(results.get(1).isSuccessful());
+		Assert.assertNotNull(results.get(1).getErrorMessage());
+		Assert.assertNull(results.get(1).getOperation().getId());
+		Assert.assertTrue(results.get(2).isSuccessful());
+
+		// The failed operation must not leave the transaction marked for rollback
+		for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+			if (resource instanceof ResourceHolderSupport) {
+				Assert.assertFalse(((ResourceHolderSupport)resource).isRollbackOnly());
+			}
+		}
+
+		Context.clearSession();
+
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertNotNull(stock);
+		Assert.assertEquals(30, stock.getQuantity());
+		Assert.assertNull(stockroomService.getItem(stockroom, otherItem));
+		Assert.assertNotNull(operationService.getOperationByNumber("A123-1"));
+		Assert.assertNotNull(operationService.getOperationByNumber("A123-3"));
+	}
+
+	/**
+	 * @verifies keep the objects that the failed operation did not change in the session
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldKeepTheObjectsThatTheFailedOperationDidNotChangeInTheSession() throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+		Patient patient = Context.getPatientService().getPatient(1);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		Date operationDate = new Date();
+		StockOperation op1 = createReceipt(stockroom, newItem, 25, "A123-1", operationDate);
+		// The operation number is too long for the operation table so this fails when the operation is saved
+		StockOperation failed = createReceipt(stockroom, newItem, 10, StringUtils.repeat("A", 300), operationDate);
+
+		List<StockOperationResult> results = service.submitOperations(Arrays.asList(op1, failed));
+
+		Assert.assertTrue(results.get(0).isSuccessful());
+		Assert.assertFalse(results.get(1).isSuccessful());
+
+		Session session = sessionFactory.getCurrentSession();
+		Assert.assertTrue(session.contains(patient));
+		Assert.assertTrue(session.contains(newItem));
+		Assert.assertFalse(session.contains(failed));
+	}
+
+	/**
+	 * @verifies assign increasing operation orders to operations on the same day
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldAssignIncreasingOperationOrdersToOperationsOnTheSameDay() throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		Date operationDate = new Date();
+		StockOperation op1 = createReceipt(stockroom, newItem, 25, "A123-1", operationDate);
+		StockOperation op2 = createReceipt(stockroom, newItem, 10, "A123-2", operationDate);
+		StockOperation op3 = createReceipt(stockroom, newItem, 5, "A123-3", operationDate);
+
+		service.submitOperations(Arrays.asList(op1, op2, op3));
+		Context.flushSession();
+
+		Assert.assertTrue(op1.getOperationOrder() < op2.getOperationOrder());
+		Assert.assertTrue(op2.getOperationOrder() < op3.getOperationOrder());
+	}
+
+	/**
+	 * @verifies insert an operation with an explicit order without changing the order of other operations
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldInsertAnOperationWithAnExplicitOrderWithoutChangingTheOrderOfOtherOperations()
+	        throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		Date operationDate = new Date();
+		StockOperation op1 = service.submitOperation(createReceipt(stockroom, newItem, 25, "A123-1", operationDate));
+		StockOperation op2 = service.submitOperation(createReceipt(stockroom, newItem, 10, "A123-2", operationDate));
+		Context.flushSession();
+
+		int order1 = op1.getOperationOrder();
+		int order2 = op2.getOperationOrder();
+
+		// Insert the new operation before the second operation
+		StockOperation op3 = createReceipt(stockroom, newItem, 5, "A123-3", operationDate);
+		op3.setOperationOrder(order2);
+		service.submitOperation(op3);
+		Context.flushSession();
+		Context.clearSession();
+
+		Assert.assertEquals(order1, (int)operationService.getById(op1.getId()).getOperationOrder());
+		Assert.assertEquals(order2, (int)operationService.getById(op2.getId()).getOperationOrder());
+		Assert.assertTrue(op3.getOperationOrder() > order1);
+		Assert.assertTrue(op3.getOperationOrder() < order2);
+	}
+
+	/**
+	 * @verifies rebalance the operation orders on the day when there is no gap left for an explicit order
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldRebalanceTheOperationOrdersOnTheDayWhenThereIsNoGapLeftForAnExplicitOrder()
+	        throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		Date operationDate = new Date();
+		StockOperation op1 = service.submitOperation(createReceipt(stockroom, newItem, 25, "A123-1", operationDate));
+		Context.flushSession();
+
+		// Use up the gap after the first operation
+		StockOperation op2 = createReceipt(stockroom, newItem, 10, "A123-2", operationDate);
+		op2.setOperationOrder(op1.getOperationOrder() + 1);
+		service.submitOperation(op2);
+		Context.flushSession();
+
+		StockOperation op3 = createReceipt(stockroom, newItem, 5, "A123-3", operationDate);
+		op3.setOperationOrder(op2.getOperationOrder());
+		service.submitOperation(op3);
+		Context.flushSession();
+		Context.clearSession();
+
+		int order1 = operationService.getById(op1.getId()).getOperationOrder();
+		int order2 = operationService.getById(op2.getId()).getOperationOrder();
+		Assert.assertTrue(op3.getOperationOrder() > order1);
+		Assert.assertTrue(op3.getOperationOrder() < order2);
+		Assert.assertTrue(order2 - order1 > 2);
+	}
+
+	/**
+	 * @verifies rollback and reapply following operations once
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldRollbackAndReapplyFollowingOperationsOnce() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation distribution = new StockOperation();
+		distribution.setInstanceType(WellKnownOperationTypes.getDistribution());
+		distribution.setStatus(StockOperationStatus.NEW);
+		distribution.setSource(stockroom);
+		distribution.setOperationNumber("A123-1");
+		distribution.setOperationDate(new Date());
+		distribution.setPatient(Context.getPatientService().getPatient(0));
+		distribution.addItem(newItem, 10);
+
+		distribution = service.submitOperation(distribution);
+		Context.flushSession();
+
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertEquals(-10, stock.getQuantity());
+
+		// Submit two back-dated receipts which the distribution depends on
+		StockOperation receipt1 = createReceipt(stockroom, newItem, 25, "A123-2", DateUtils.addDays(new Date(), -2));
+		StockOperation receipt2 = createReceipt(stockroom, newItem, 5, "A123-3", DateUtils.addDays(new Date(), -1));
+
+		List<StockOperationResult> results = service.submitOperations(Arrays.asList(receipt2, receipt1));
+		Context.flushSession();
+
+		Assert.assertTrue(results.get(0).isSuccessful());
+		Assert.assertTrue(results.get(1).isSuccessful());
+
+		// The distribution is reapplied after both receipts so it takes the stock from the oldest batch
+		stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertEquals(20, stock.getQuantity());
+		Assert.assertEquals(2, stock.getDetails().size());
+		for (ItemStockDetail detail : stock.getDetails()) {
+			if (receipt1.equals(detail.getBatchOperation())) {
+				Assert.assertEquals(15, (long)detail.getQuantity());
+			} else {
+				Assert.assertEquals(receipt2, detail.getBatchOperation());
+				Assert.assertEquals(5, (long)detail.getQuantity());
+			}
+		}
+	}
+
+	/**
+	 * @verifies return an empty list if operations is empty
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test
+	public void submitOperations_shouldReturnAnEmptyListIfOperationsIsEmpty() throws Exception {
+		List<StockOperationResult> results = service.submitOperations(new ArrayList<StockOperation>());
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException if operations is null
+	 * @see IStockOperationService#submitOperations(java.util.List)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void submitOperations_shouldThrowIllegalArgumentExceptionIfOperationsIsNull() throws Exception {
+		service.submitOperations(null);
+	}
+
+	/**
+	 * @verifies complete an auto-completed operation in a single pass with only the final transactions
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldCompleteAnAutoCompletedOperationInASinglePassWithOnlyTheFinalTransactions()
+	        throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom source = stockroomService.getById(0);
+		Stockroom dest = stockroomService.getById(1);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation receipt = service.submitOperation(createReceipt(source, newItem, 25, "A123-1", new Date()));
+		Context.flushSession();
+
+		Assert.assertEquals(StockOperationStatus.COMPLETED, receipt.getStatus());
+		Assert.assertEquals(0, receipt.getReserved().size());
+		Assert.assertEquals(1, receipt.getTransactions().size());
+
+		StockOperation transfer = new StockOperation();
+		transfer.setInstanceType(WellKnownOperationTypes.getTransfer());
+		transfer.setStatus(StockOperationStatus.NEW);
+		transfer.setSource(source);
+		transfer.setDestination(dest);
+		transfer.setOperationNumber("A123-2");
+		transfer.setOperationDate(new Date());
+		transfer.addItem(newItem, 10);
+
+		transfer = service.submitOperation(transfer);
+		Context.flushSession();
+
+		Assert.assertEquals(StockOperationStatus.COMPLETED, transfer.getStatus());
+		Assert.assertEquals(0, transfer.getReserved().size());
+
+		// The transfer only removes the stock from the source and adds it to the destination
+		Assert.assertEquals(2, transfer.getTransactions().size());
+		for (StockOperationTransaction tx : transfer.getTransactions()) {
+			if (tx.getStockroom().equals(source)) {
+				Assert.assertEquals(-10, (int)tx.getQuantity());
+			} else {
+				Assert.assertEquals(dest, tx.getStockroom());
+				Assert.assertEquals(10, (int)tx.getQuantity());
+			}
+		}
+
+		Assert.assertEquals(15, stockroomService.getItem(source, newItem).getQuantity());
+		Assert.assertEquals(10, stockroomService.getItem(dest, newItem).getQuantity());
+	}
+
+	/**
+	 * @verifies run the pending and completed events of an auto-completed operation in a single replay window
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldRunThePendingAndCompletedEventsOfAnAutoCompletedOperationInASingleReplayWindow()
+	        throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		final Stockroom source = stockroomService.getById(0);
+		Stockroom dest = stockroomService.getById(1);
+
+		final Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		service.submitOperation(createReceipt(source, newItem, 25, "A123-R", DateUtils.addDays(new Date(), -2)));
+
+		StockOperation distribution = new StockOperation();
+		distribution.setInstanceType(WellKnownOperationTypes.getDistribution());
+		distribution.setStatus(StockOperationStatus.NEW);
+		distribution.setSource(source);
+		distribution.setOperationNumber("A123-D");
+		distribution.setOperationDate(new Date());
+		distribution.setPatient(Context.getPatientService().getPatient(0));
+		distribution.addItem(newItem, 5);
+		service.submitOperation(distribution);
+		Context.flushSession();
+
+		Assert.assertEquals(20, stockroomService.getItem(source, newItem).getQuantity());
+
+		// Record the source item stock each time the transactions of an operation event are applied
+		final List<String> events = new ArrayList<String>();
+		MethodBeforeAdvice advice = new MethodBeforeAdvice() {
+			@Override
+			public void before(Method method, Object[] args, Object target) throws Throwable {
+				if (!"applyTransactions".equals(method.getName()) || args.length != 1 || args[0] == null) {
+					return;
+				}
+
+				Iterator<?> transactions = args[0] instanceof Collection ? ((Collection<?>)args[0]).iterator()
+				        : Arrays.asList((Object[])args[0]).iterator();
+				if (transactions.hasNext()) {
+					StockOperationTransaction tx = (StockOperationTransaction)transactions.next();
+					ItemStock stock = stockroomService.getItem(source, newItem);
+
+					events.add(tx.getOperation().getOperationNumber() + ":" + (stock == null ? 0 : stock.getQuantity()));
+				}
+			}
+		};
+
+		StockOperation transfer = new StockOperation();
+		transfer.setInstanceType(WellKnownOperationTypes.getTransfer());
+		transfer.setStatus(StockOperationStatus.NEW);
+		transfer.setSource(source);
+		transfer.setDestination(dest);
+		transfer.setOperationNumber("A123-T");
+		transfer.setOperationDate(DateUtils.addDays(new Date(), -1));
+		transfer.addItem(newItem, 10);
+
+		Context.addAdvice(IStockOperationService.class, advice);
+		try {
+			service.submitOperation(transfer);
+			Context.flushSession();
+		} finally {
+			Context.removeAdvice(IStockOperationService.class, advice);
+		}
+
+		// The distribution is rolled back before the pending event and only reapplied after the completed event
+		Assert.assertTrue(events.size() > 2);
+		Assert.assertEquals("A123-T:25", events.get(0));
+		Assert.assertEquals("A123-T:15", events.get(1));
+		for (String event : events.subList(2, events.size())) {
+			Assert.assertTrue(event, event.startsWith("A123-D:"));
+		}
+
+		Assert.assertEquals(10, stockroomService.getItem(source, newItem).getQuantity());
+		Assert.assertEquals(10, stockroomService.getItem(dest, newItem).getQuantity());
+	}
+
+	/**
+	 * @verifies reapply more following operations than are loaded into the session at once
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldReapplyMoreFollowingOperationsThanAreLoadedIntoTheSessionAtOnce() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		// Create more following operations than the replay chunk size
+		int count = 105;
+		List<Integer> distributionIds = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++) {
+			StockOperation distribution = new StockOperation();
+			distribution.setInstanceType(WellKnownOperationTypes.getDistribution());
+			distribution.setStatus(StockOperationStatus.NEW);
+			distribution.setSource(stockroom);
+			distribution.setOperationNumber("A123-D" + i);
+			distribution.setOperationDate(new Date());
+			distribution.setPatient(Context.getPatientService().getPatient(0));
+			distribution.addItem(newItem, 1);
+
+			distributionIds.add(service.submitOperation(distribution).getId());
+		}
+		Context.flushSession();
+
+		Assert.assertEquals(-count, stockroomService.getItem(stockroom, newItem).getQuantity());
+
+		StockOperation receipt =
+		        service.submitOperation(createReceipt(stockroom, newItem, 200, "A123-R", DateUtils.addDays(new Date(), -1)));
+		Context.flushSession();
+		Context.clearSession();
+
+		// Each distribution is reapplied against the back-dated receipt
+		ItemStock stock = stockroomService.getItem(stockroom, newItem);
+		Assert.assertEquals(200 - count, stock.getQuantity());
+		Assert.assertEquals(1, stock.getDetails().size());
+
+		ItemStockDetail detail = stock.getDetails().iterator().next();
+		Assert.assertEquals(receipt.getId(), detail.getBatchOperation().getId());
+		Assert.assertEquals(200 - count, (int)detail.getQuantity());
+
+		for (Integer id : distributionIds) {
+			StockOperation distribution = operationService.getById(id);
+			Assert.assertEquals(1, distribution.getTransactions().size());
+			Assert.assertEquals(receipt.getId(), distribution.getTransactions().iterator().next().getBatchOperation()
+			        .getId());
+		}
+	}
+
+	/**
+	 * @verifies only reapply the following operations that depend on a back-dated operation
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldOnlyReapplyTheFollowingOperationsThatDependOnABackDatedOperation() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom stockroom = stockroomService.getById(0);
+
+		Item receiptItem = itemTest.createEntity(true);
+		receiptItem.setHasExpiration(false);
+		itemService.save(receiptItem);
+		Item otherItem = itemTest.createEntity(true);
+		otherItem.setHasExpiration(false);
+		itemService.save(otherItem);
+		Context.flushSession();
+
+		// Distribute both items from the same stockroom; only the receipt item distributions depend on the receipt
+		int count = 50;
+		List<Integer> dependentIds = new ArrayList<Integer>();
+		List<Integer> otherIds = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			Item item = i % 5 == 0 ? receiptItem : otherItem;
+
+			StockOperation distribution = new StockOperation();
+			distribution.setInstanceType(WellKnownOperationTypes.getDistribution());
+			distribution.setStatus(StockOperationStatus.NEW);
+			distribution.setSource(stockroom);
+			distribution.setOperationNumber("A123-D" + i);
+			distribution.setOperationDate(new Date());
+			distribution.setPatient(Context.getPatientService().getPatient(0));
+			distribution.addItem(item, 1);
+
+			Integer id = service.submitOperation(distribution).getId();
+			if (item == receiptItem) {
+				dependentIds.add(id);
+			} else {
+				otherIds.add(id);
+			}
+		}
+		Context.flushSession();
+
+		Map<Integer, Integer> otherTransactionIds = new HashMap<Integer, Integer>();
+		for (Integer id : otherIds) {
+			otherTransactionIds.put(id, operationService.getById(id).getTransactions().iterator().next().getId());
+		}
+		Context.clearSession();
+
+		Statistics statistics = sessionFactory.getStatistics();
+		boolean statisticsEnabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+
+		stockroom = stockroomService.getById(0);
+		receiptItem = itemService.getById(receiptItem.getId());
+
+		StockOperation receipt;
+		long inserted;
+		try {
+			receipt =
+			        service.submitOperation(createReceipt(stockroom, receiptItem, 100, "A123-R",
+			            DateUtils.addDays(new Date(), -1)));
+			Context.flushSession();
+
+			inserted = statistics.getEntityStatistics(StockOperationTransaction.class.getName()).getInsertCount();
+		} finally {
+			statistics.setStatisticsEnabled(statisticsEnabled);
+		}
+		Context.clearSession();
+
+		// The transactions are only recreated for the receipt and the distributions that were reapplied
+		Assert.assertTrue(inserted < count);
+
+		for (Integer id : dependentIds) {
+			StockOperation distribution = operationService.getById(id);
+			Assert.assertEquals(1, distribution.getTransactions().size());
+			Assert.assertEquals(receipt.getId(), distribution.getTransactions().iterator().next().getBatchOperation()
+			        .getId());
+		}
+		for (Integer id : otherIds) {
+			StockOperation distribution = operationService.getById(id);
+			Assert.assertEquals(1, distribution.getTransactions().size());
+			Assert.assertEquals(otherTransactionIds.get(id), distribution.getTransactions().iterator().next().getId());
+		}
+
+		ItemStock stock = stockroomService.getItem(stockroomService.getById(0), itemService.getById(receiptItem.getId()));
+		Assert.assertEquals(100 - dependentIds.size(), stock.getQuantity());
+	}
+
+	/**
+	 * @verifies not load the stockroom operations when creating an operation
+	 * @see IStockOperationService#submitOperation(StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldNotLoadTheStockroomOperationsWhenCreatingAnOperation() throws Exception {
+		Settings settings = ModuleSettings.loadSettings();
+		settings.setAutoCompleteOperations(true);
+		ModuleSettings.saveSettings(settings);
+
+		Stockroom source = stockroomService.getById(0);
+		Stockroom destination = stockroomService.getById(1);
+
+		Item newItem = itemTest.createEntity(true);
+		newItem.setHasExpiration(false);
+		itemService.save(newItem);
+		Context.flushSession();
+
+		StockOperation transfer = new StockOperation();
+		transfer.setInstanceType(WellKnownOperationTypes.getTransfer());
+		transfer.setStatus(StockOperationStatus.NEW);
+		transfer.setSource(source);
+		transfer.setDestination(destination);
+		transfer.setOperationNumber("A123-T");
+		transfer.setOperationDate(new Date());
+		transfer.addItem(newItem, 5);
+
+		transfer = service.submitOperation(transfer);
+		Context.flushSession();
+
+		Assert.assertEquals(StockOperationStatus.COMPLETED, transfer.getStatus());
+		Assert.assertFalse(Hibernate.isInitialized(source.getOperations()));
+		Assert.assertFalse(Hibernate.isInitialized(destination.getOperations()));
+
+		// The stockroom operations records are still created for both stockrooms
+		Context.clearSession();
+		for (Stockroom stockroom : new Stockroom[] { stockroomService.getById(0), stockroomService.getById(1) }) {
+			boolean found = false;
+			for (StockOperation operation : stockroom.getOperations()) {
+				found |= operation.getId().equals(transfer.getId());
+			}
+
+			Assert.assertTrue(found);
+		}
+	}
+
+	private StockOperation createReceipt(Stockroom destination, Item item, int quantity, String operationNumber,
+	        Date operationDate) {
+		StockOperation operation = new StockOperation();
+		operation.setInstanceType(WellKnownOperationTypes.getReceipt());
+		operation.setStatus(StockOperationStatus.NEW);
+		operation.setDestination(destination);
+		operation.setOperationNumber(operationNumber);
+		operation.setOperationDate(operationDate);
+		operation.addItem(item, quantity);
+
+		return operation;
+	}
+
 	@Test
 	public void submitOperation_shouldUseItemStockWithSpecifiedExpiration() throws Exception {
 		Settings settings = ModuleSettings.loadSettings();
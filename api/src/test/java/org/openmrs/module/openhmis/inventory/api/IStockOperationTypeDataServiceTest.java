@@ -17,6 +17,7 @@ public class IStockOperationTypeDataServiceTest
 
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 	}
 
 	@Override
@@ -1,12 +1,18 @@
 package org.openmrs.module.openhmis.inventory.api;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.api.context.Context;
@@ -14,6 +20,7 @@ import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.entity.IMetadataDataServiceTest;
 import org.openmrs.module.openhmis.commons.api.entity.search.BaseObjectTemplateSearch;
 import org.openmrs.module.openhmis.commons.api.f.Action2;
+import org.openmrs.module.openhmis.inventory.api.impl.ItemStockCache;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.ItemPrice;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
@@ -25,6 +32,7 @@ import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.search.ItemSearch;
 import org.openmrs.module.openhmis.inventory.api.search.StockOperationSearch;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.collect.Iterators;
 
@@ -36,6 +44,9 @@ public class IStockroomDataServiceTest extends IMetadataDataServiceTest<IStockro
 	protected IStockOperationDataService operationService;
 	protected IItemStockDataService itemStockService;
 
+	@Autowired
+	private SessionFactory sessionFactory;
+
 	public static void assertStockroom(Stockroom expected, Stockroom actual) {
 		assertOpenmrsMetadata(expected, actual);
 
@@ -116,6 +127,7 @@ public class IStockroomDataServiceTest extends IMetadataDataServiceTest<IStockro
 		executeDataSet(IDepartmentDataServiceTest.DEPARTMENT_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 	}
 
 	@Override
@@ -429,6 +441,65 @@ public class IStockroomDataServiceTest extends IMetadataDataServiceTest<IStockro
 		Assert.assertNull(result);
 	}
 
+	/**
+	 * @verifies return the cached item stock without querying the database
+	 * @see IStockroomDataService#getItem(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      org.openmrs.module.openhmis.inventory.api.model.Item)
+	 */
+	@Test
+	public void getItem_shouldReturnTheCachedItemStockWithoutQueryingTheDatabase() throws Exception {
+		Stockroom room = service.getById(1);
+		Item item = itemService.getById(0);
+
+		ItemStockCache cache = new ItemStockCache(10);
+		ItemStockCache.setInstance(cache);
+		Statistics statistics = sessionFactory.getStatistics();
+		boolean statisticsEnabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+		try {
+			ItemStock stock = service.getItem(room, item);
+			Assert.assertNotNull(stock);
+			Assert.assertEquals(1, cache.getMissCount());
+
+			long statements = statistics.getPrepareStatementCount();
+			ItemStock result = service.getItem(room, item);
+
+			Assert.assertEquals(statements, statistics.getPrepareStatementCount());
+			Assert.assertEquals(1, cache.getHitCount());
+			Assert.assertSame(stock, result);
+			Assert.assertEquals(stock.getQuantity(), result.getQuantity());
+		} finally {
+			statistics.setStatisticsEnabled(statisticsEnabled);
+			ItemStockCache.setInstance(null);
+		}
+	}
+
+	/**
+	 * @verifies return null without querying the database when the cached snapshot has no stock
+	 * @see IStockroomDataService#getItem(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      org.openmrs.module.openhmis.inventory.api.model.Item)
+	 */
+	@Test
+	public void getItem_shouldReturnNullWithoutQueryingTheDatabaseWhenTheCachedSnapshotHasNoStock() throws Exception {
+		Stockroom room = service.getById(2);
+		Item item = itemService.getById(0);
+
+		ItemStockCache.setInstance(new ItemStockCache(10));
+		Statistics statistics = sessionFactory.getStatistics();
+		boolean statisticsEnabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+		try {
+			Assert.assertNull(service.getItem(room, item));
+
+			long statements = statistics.getPrepareStatementCount();
+			Assert.assertNull(service.getItem(room, item));
+			Assert.assertEquals(statements, statistics.getPrepareStatementCount());
+		} finally {
+			statistics.setStatisticsEnabled(statisticsEnabled);
+			ItemStockCache.setInstance(null);
+		}
+	}
+
 	/**
 	 * @verifies throw IllegalArgumentException when stockroom is null
 	 * @see IStockroomDataService#getItem(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
@@ -450,6 +521,91 @@ public class IStockroomDataServiceTest extends IMetadataDataServiceTest<IStockro
 		service.getItem(room, null);
 	}
 
+	/**
+	 * @verifies return the item stock for each item
+	 * @see IStockroomDataService#getItems(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      java.util.Collection)
+	 */
+	@Test
+	public void getItems_shouldReturnTheItemStockForEachItem() throws Exception {
+		Stockroom room = service.getById(1);
+		Item item0 = itemService.getById(0);
+		Item item2 = itemService.getById(2);
+
+		Map<Item, ItemStock> results = service.getItems(room, Arrays.asList(item0, item2));
+		Assert.assertNotNull(results);
+		Assert.assertEquals(2, results.size());
+
+		assertItemStock(service.getItem(room, item0), results.get(item0));
+		assertItemStock(service.getItem(room, item2), results.get(item2));
+	}
+
+	/**
+	 * @verifies not return items from other stockrooms
+	 * @see IStockroomDataService#getItems(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      java.util.Collection)
+	 */
+	@Test
+	public void getItems_shouldNotReturnItemsFromOtherStockrooms() throws Exception {
+		Item item = itemService.getById(2);
+
+		ItemStock result0 = service.getItems(service.getById(0), Collections.singletonList(item)).get(item);
+		ItemStock result1 = service.getItems(service.getById(1), Collections.singletonList(item)).get(item);
+		Assert.assertNotNull(result0);
+		Assert.assertNotNull(result1);
+
+		Assert.assertNotEquals(result0.getId(), result1.getId());
+		Assert.assertEquals(service.getById(0), result0.getStockroom());
+		Assert.assertEquals(service.getById(1), result1.getStockroom());
+	}
+
+	/**
+	 * @verifies not include items that are not found
+	 * @see IStockroomDataService#getItems(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      java.util.Collection)
+	 */
+	@Test
+	public void getItems_shouldNotIncludeItemsThatAreNotFound() throws Exception {
+		Map<Item, ItemStock> results =
+		        service.getItems(service.getById(2), Arrays.asList(itemService.getById(0), itemService.getById(1)));
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies return an empty map when items is empty
+	 * @see IStockroomDataService#getItems(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      java.util.Collection)
+	 */
+	@Test
+	public void getItems_shouldReturnAnEmptyMapWhenItemsIsEmpty() throws Exception {
+		Map<Item, ItemStock> results = service.getItems(service.getById(0), new ArrayList<Item>());
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException when stockroom is null
+	 * @see IStockroomDataService#getItems(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      java.util.Collection)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getItems_shouldThrowIllegalArgumentExceptionWhenStockroomIsNull() throws Exception {
+		service.getItems(null, Collections.singletonList(itemService.getById(0)));
+	}
+
+	/**
+	 * @verifies throw IllegalArgumentException when items is null
+	 * @see IStockroomDataService#getItems(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      java.util.Collection)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getItems_shouldThrowIllegalArgumentExceptionWhenItemsIsNull() throws Exception {
+		service.getItems(service.getById(0), null);
+	}
+
 	/**
 	 * @verifies return all the items in the stockroom ordered by item name
 	 * @see IStockroomDataService#getItemsByRoom(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
@@ -512,6 +668,36 @@ public class IStockroomDataServiceTest extends IMetadataDataServiceTest<IStockro
 		assertItemStock(itemStockService.getById(5), results.get(0));
 	}
 
+	/**
+	 * @verifies return the next page of items when cursor paging is specified
+	 * @see IStockroomDataService#getItemsByRoom(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      org.openmrs.module.openhmis.commons.api.PagingInfo)
+	 */
+	@Test
+	public void getItemsByRoom_shouldReturnTheNextPageOfItemsWhenCursorPagingIsSpecified() throws Exception {
+		Stockroom stockroom = service.getById(1);
+		List<ItemStock> expected = service.getItemsByRoom(stockroom, null);
+		Assert.assertEquals(3, expected.size());
+
+		CursorPagingInfo paging = new CursorPagingInfo(2);
+		List<ItemStock> results = service.getItemsByRoom(stockroom, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(2, results.size());
+		Assert.assertNull(paging.getTotalRecordCount());
+		Assert.assertTrue(paging.hasNextCursor());
+		assertItemStock(expected.get(0), results.get(0));
+		assertItemStock(expected.get(1), results.get(1));
+
+		paging = new CursorPagingInfo(paging.getNextCursor(), 2);
+		results = service.getItemsByRoom(stockroom, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertFalse(paging.hasNextCursor());
+		assertItemStock(expected.get(2), results.get(0));
+	}
+
 	/**
 	 * @verifies throw IllegalArgumentException if the stockroom is null
 	 * @see IStockroomDataService#getItemsByRoom(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
@@ -979,6 +1165,39 @@ public class IStockroomDataServiceTest extends IMetadataDataServiceTest<IStockro
 		Assert.assertEquals(6, (long)pagingInfo.getTotalRecordCount());
 	}
 
+	/**
+	 * @verifies return the next page of transactions when cursor paging is specified
+	 * @see IStockroomDataService#getTransactionsByRoom(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
+	 *      org.openmrs.module.openhmis.commons.api.PagingInfo)
+	 */
+	@Test
+	public void getTransactionsByRoom_shouldReturnTheNextPageOfTransactionsWhenCursorPagingIsSpecified() throws Exception {
+		Stockroom stockroom = service.getById(0);
+		List<StockOperationTransaction> expected = service.getTransactionsByRoom(stockroom, null);
+		Assert.assertEquals(6, expected.size());
+
+		CursorPagingInfo paging = new CursorPagingInfo(4);
+		paging.setLoadRecordCount(true);
+		List<StockOperationTransaction> results = service.getTransactionsByRoom(stockroom, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(4, results.size());
+		Assert.assertEquals(6, (long)paging.getTotalRecordCount());
+		Assert.assertTrue(paging.hasNextCursor());
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(expected.get(i).getId(), results.get(i).getId());
+		}
+
+		paging = new CursorPagingInfo(paging.getNextCursor(), 4);
+		results = service.getTransactionsByRoom(stockroom, paging);
+
+		Assert.assertNotNull(results);
+		Assert.assertEquals(2, results.size());
+		Assert.assertFalse(paging.hasNextCursor());
+		Assert.assertEquals(expected.get(4).getId(), results.get(0).getId());
+		Assert.assertEquals(expected.get(5).getId(), results.get(1).getId());
+	}
+
 	/**
 	 * @verifies throw IllegalArgumentException if the stockroom is null
 	 * @see IStockroomDataService#getTransactionsByRoom(org.openmrs.module.openhmis.inventory.api.model.Stockroom,
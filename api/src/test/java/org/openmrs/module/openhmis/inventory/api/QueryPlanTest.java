@@ -0,0 +1,277 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.commons.api.BaseModuleContextTest;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.openmrs.module.openhmis.inventory.api.search.StockOperationSearch;
+
+/**
+ * Checks the query plans of the SQL that the data services run for the stock operation, transaction, item code and item
+ * stock queries so that a change to a query or a missing index that causes a full scan of one of the large inventory
+ * tables fails the build. The SQL is captured from the Hibernate SQL log while the service method runs and then explained
+ * against the embedded test database.
+ */
+public class QueryPlanTest extends BaseModuleContextTest {
+	private static final String SQL_LOGGER = "org.hibernate.SQL";
+	private static final String TABLE_SCAN = ".TABLESCAN";
+
+	private IItemDataService itemService;
+	private IStockroomDataService stockroomService;
+	private IStockOperationDataService operationService;
+	private IItemStockDetailDataService itemStockDetailService;
+
+	private StatementAppender appender;
+	private Level previousLevel;
+
+	@Before
+	public void before() throws Exception {
+		executeDataSet(TestConstants.CORE_DATASET);
+		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
+		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
+
+		itemService = Context.getService(IItemDataService.class);
+		stockroomService = Context.getService(IStockroomDataService.class);
+		operationService = Context.getService(IStockOperationDataService.class);
+		itemStockDetailService = Context.getService(IItemStockDetailDataService.class);
+
+		Context.flushSession();
+		Context.clearSession();
+	}
+
+	@After
+	public void after() {
+		stopCapture();
+	}
+
+	/**
+	 * @see IStockroomDataService#getTransactionsByRoomAndItem
+	 */
+	@Test
+	public void getTransactionsByRoomAndItem_shouldNotScanTheTransactionTable() throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		startCapture();
+		stockroomService.getTransactionsByRoomAndItem(stockroom, itemService.getById(0), null);
+
+		assertNoTableScan("inv_transaction");
+	}
+
+	/**
+	 * @see IStockroomDataService#getTransactionsByRoom
+	 */
+	@Test
+	public void getTransactionsByRoom_shouldNotScanTheTransactionTable() throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		startCapture();
+		stockroomService.getTransactionsByRoom(stockroom, null);
+
+		assertNoTableScan("inv_transaction");
+	}
+
+	/**
+	 * @see IStockOperationDataService#getOperations(StockOperationSearch,
+	 *      org.openmrs.module.openhmis.commons.api.PagingInfo)
+	 */
+	@Test
+	public void getOperations_shouldNotScanTheOperationTableWhenSearchingByStatus() throws Exception {
+		StockOperationSearch search = new StockOperationSearch();
+		search.getTemplate().setStatus(StockOperationStatus.PENDING);
+
+		startCapture();
+		operationService.getOperations(search, null);
+
+		search.getTemplate().setInstanceType(WellKnownOperationTypes.getTransfer());
+		operationService.getOperations(search, null);
+
+		search.getTemplate().setInstanceType(null);
+		search.getTemplate().setSource(stockroomService.getById(0));
+		operationService.getOperations(search, null);
+
+		search.getTemplate().setSource(null);
+		search.getTemplate().setDestination(stockroomService.getById(1));
+		operationService.getOperations(search, null);
+
+		assertNoTableScan("inv_stock_operation");
+	}
+
+	/**
+	 * @see IStockOperationDataService#getOperationsByDate
+	 */
+	@Test
+	public void getOperationsByDate_shouldNotScanTheOperationTable() throws Exception {
+		StockOperation operation = operationService.getById(1);
+
+		startCapture();
+		operationService.getOperationsByDate(operation.getOperationDate(), null);
+
+		assertNoTableScan("inv_stock_operation");
+	}
+
+	/**
+	 * @see IStockOperationDataService#getFutureOperations(StockOperation,
+	 *      org.openmrs.module.openhmis.commons.api.PagingInfo)
+	 */
+	@Test
+	public void getFutureOperations_shouldNotScanTheOperationTable() throws Exception {
+		StockOperation operation = operationService.getById(1);
+
+		startCapture();
+		operationService.getFutureOperations(operation, null);
+
+		assertNoTableScan("inv_stock_operation");
+	}
+
+	/**
+	 * @see IItemDataService#getItemsByCode(String, boolean)
+	 */
+	@Test
+	public void getItemsByCode_shouldNotScanTheItemCodeTable() throws Exception {
+		startCapture();
+		itemService.getItemsByCode("code 1", false);
+
+		assertNoTableScan("inv_item_code");
+	}
+
+	/**
+	 * @see org.openmrs.module.openhmis.inventory.api.model.StockOperation#getReserved()
+	 */
+	@Test
+	public void getReserved_shouldNotScanTheReservedTransactionTable() throws Exception {
+		StockOperation operation = operationService.getById(1);
+
+		startCapture();
+		operation.getReserved().size();
+
+		assertNoTableScan("inv_reserved_transaction");
+	}
+
+	/**
+	 * @see IItemStockDetailDataService#getItemStockSummaryByStockroom
+	 */
+	@Test
+	public void getItemStockSummaryByStockroom_shouldNotScanTheSummaryTable() throws Exception {
+		Stockroom stockroom = stockroomService.getById(0);
+
+		startCapture();
+		itemStockDetailService.getItemStockSummaryByStockroom(stockroom, null);
+
+		assertNoTableScan("inv_item_stock_summary");
+	}
+
+	private void startCapture() {
+		Logger logger = Logger.getLogger(SQL_LOGGER);
+		previousLevel = logger.getLevel();
+		appender = new StatementAppender();
+
+		logger.setLevel(Level.DEBUG);
+		logger.addAppender(appender);
+	}
+
+	private List<String> stopCapture() {
+		if (appender == null) {
+			return new ArrayList<String>();
+		}
+
+		Logger logger = Logger.getLogger(SQL_LOGGER);
+		logger.removeAppender(appender);
+		logger.setLevel(previousLevel);
+
+		List<String> statements = appender.getStatements();
+		appender = null;
+
+		return statements;
+	}
+
+	private void assertNoTableScan(String table) throws SQLException {
+		List<String> statements = stopCapture();
+
+		// Only check the statements that read from the table; the plan names the table scan index after the table
+		String scan = "." + table.toUpperCase() + TABLE_SCAN;
+		boolean found = false;
+		for (String sql : statements) {
+			if (!sql.toLowerCase().contains(" " + table + " ")) {
+				continue;
+			}
+			found = true;
+
+			String plan = explain(sql);
+			Assert.assertFalse("The query '" + sql + "' scans the " + table + " table: " + plan,
+			    plan.toUpperCase().contains(scan));
+		}
+
+		Assert.assertTrue("No query was run against the " + table + " table", found);
+	}
+
+	private String explain(String sql) throws SQLException {
+		PreparedStatement statement = getConnection().prepareStatement("EXPLAIN " + sql);
+		try {
+			// The plan is chosen when the statement is prepared so the parameter values do not change it
+			int count = statement.getParameterMetaData().getParameterCount();
+			for (int i = 1; i <= count; i++) {
+				statement.setObject(i, null);
+			}
+
+			ResultSet results = statement.executeQuery();
+			Assert.assertTrue(results.next());
+
+			return results.getString(1);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Collects the SQL statements that Hibernate logs.
+	 */
+	private static class StatementAppender extends AppenderSkeleton {
+		private final List<String> statements = new ArrayList<String>();
+
+		public List<String> getStatements() {
+			return statements;
+		}
+
+		@Override
+		protected void append(LoggingEvent event) {
+			statements.add(event.getRenderedMessage());
+		}
+
+		@Override
+		public void close() {}
+
+		@Override
+		public boolean requiresLayout() {
+			return false;
+		}
+	}
+}
@@ -16,4 +16,6 @@ package org.openmrs.module.openhmis.inventory.api;
 public class TestConstants {
 	public static final String BASE_DATASET_DIR = "org/openmrs/module/openhmis/inventory/api/include/";
 	public static final String CORE_DATASET = BASE_DATASET_DIR + "CoreTest.xml";
+	// Starts the pooled id generators after the ids used by the datasets
+	public static final String ID_GENERATOR_DATASET = BASE_DATASET_DIR + "IdGeneratorTest.xml";
 }
@@ -48,6 +48,7 @@ public abstract class BaseOperationTest extends BaseModuleContextTest {
 		executeDataSet(IDepartmentDataServiceTest.DEPARTMENT_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 
 		stockroomDataService = Context.getService(IStockroomDataService.class);
 		itemDataService = Context.getService(IItemDataService.class);
@@ -0,0 +1,289 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.javatuples.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+public class DatabaseStockLockProviderTest {
+	private static final String URL = "jdbc:h2:mem:inv_stock_lock_test;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=60000";
+	private static final int THREADS_PER_NODE = 4;
+	private static final int DISTRIBUTION_COUNT = 2000;
+	private static final int INITIAL_QUANTITY = 100000;
+
+	private Connection setupConnection;
+
+	@Before
+	public void before() throws Exception {
+		Class.forName("org.h2.Driver");
+
+		setupConnection = DriverManager.getConnection(URL, "sa", "");
+		Statement statement = setupConnection.createStatement();
+		try {
+			statement.execute("CREATE TABLE " + DatabaseStockLockProvider.LOCK_TABLE + " (lock_id INT PRIMARY KEY)");
+			statement.execute("CREATE TABLE test_item_stock (item_stock_id INT PRIMARY KEY, quantity INT NOT NULL)");
+			statement.execute("INSERT INTO test_item_stock (item_stock_id, quantity) VALUES (1, " + INITIAL_QUANTITY + ")");
+		} finally {
+			statement.close();
+		}
+	}
+
+	@After
+	public void after() throws Exception {
+		Statement statement = setupConnection.createStatement();
+		try {
+			statement.execute("DROP ALL OBJECTS");
+		} finally {
+			statement.close();
+			setupConnection.close();
+		}
+	}
+
+	/**
+	 * @verifies not lose updates when two nodes distribute the same item stock concurrently
+	 * @see DatabaseStockLockProvider#lockShared(java.util.Collection)
+	 */
+	@Test(timeout = 120000)
+	public void lockShared_shouldNotLoseUpdatesWhenTwoNodesDistributeTheSameItemStockConcurrently() throws Exception {
+		// Each node has its own JVM-local locks so only the database locks keep the nodes from interfering
+		final Stockroom stockroom = new Stockroom();
+		final Item item = new Item();
+		final List<Pair<Stockroom, Item>> keys = Collections.singletonList(Pair.with(stockroom, item));
+
+		List<ConnectionStockLockProvider> nodes = new ArrayList<ConnectionStockLockProvider>();
+		nodes.add(new ConnectionStockLockProvider());
+		nodes.add(new ConnectionStockLockProvider());
+
+		final AtomicInteger counter = new AtomicInteger();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final ConnectionStockLockProvider node : nodes) {
+			for (int t = 0; t < THREADS_PER_NODE; t++) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						Connection connection = DriverManager.getConnection(URL, "sa", "");
+						connection.setAutoCommit(false);
+						node.setConnection(connection);
+						try {
+							while (counter.getAndIncrement() < DISTRIBUTION_COUNT) {
+								IStockLock lock = node.lockShared(keys);
+								try {
+									distribute(connection, 1);
+									connection.commit();
+								} catch (SQLException ex) {
+									connection.rollback();
+
+									throw ex;
+								} finally {
+									lock.release();
+								}
+							}
+						} finally {
+							node.setConnection(null);
+							connection.close();
+						}
+
+						return null;
+					}
+				});
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				// Rethrow any exception from the worker threads
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(INITIAL_QUANTITY - DISTRIBUTION_COUNT, getQuantity(setupConnection));
+	}
+
+	/**
+	 * @verifies create missing lock rows
+	 * @see DatabaseStockLockProvider#lockRows(java.sql.Connection, java.util.Collection)
+	 */
+	@Test
+	public void lockRows_shouldCreateMissingLockRows() throws Exception {
+		List<Integer> stripes = new ArrayList<Integer>();
+		stripes.add(3);
+		stripes.add(7);
+
+		setupConnection.setAutoCommit(false);
+		DatabaseStockLockProvider.lockRows(setupConnection, stripes);
+		DatabaseStockLockProvider.lockRows(setupConnection, stripes);
+		setupConnection.commit();
+		setupConnection.setAutoCommit(true);
+
+		Statement statement = setupConnection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + DatabaseStockLockProvider.LOCK_TABLE);
+			resultSet.next();
+			Assert.assertEquals(2, resultSet.getInt(1));
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * @verifies lock rows that another node created after they were found to be missing
+	 * @see DatabaseStockLockProvider#lockRows(java.sql.Connection, java.util.Collection)
+	 */
+	@Test
+	public void lockRows_shouldLockRowsThatAnotherNodeCreatedAfterTheyWereFoundToBeMissing() throws Exception {
+		setupConnection.setAutoCommit(false);
+		try {
+			// Create the row as the insert runs, as another node would between the select and the insert
+			Connection connection = createRowBeforeInsert(setupConnection, 5);
+			DatabaseStockLockProvider.lockRows(connection, Collections.singletonList(5));
+
+			// The transaction can still be used after the duplicate insert
+			Assert.assertEquals(INITIAL_QUANTITY, getQuantity(setupConnection));
+			setupConnection.commit();
+		} finally {
+			setupConnection.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * @verifies throw other errors from creating the lock rows
+	 * @see DatabaseStockLockProvider#lockRows(java.sql.Connection, java.util.Collection)
+	 */
+	@Test(expected = SQLException.class)
+	public void lockRows_shouldThrowOtherErrorsFromCreatingTheLockRows() throws Exception {
+		Statement statement = setupConnection.createStatement();
+		try {
+			// Lock ids must be positive so inserting a negative one fails with a check constraint error
+			statement.execute("ALTER TABLE " + DatabaseStockLockProvider.LOCK_TABLE + " ADD CONSTRAINT lock_id_positive "
+			        + "CHECK (lock_id >= 0)");
+		} finally {
+			statement.close();
+		}
+
+		setupConnection.setAutoCommit(false);
+		try {
+			DatabaseStockLockProvider.lockRows(setupConnection, Collections.singletonList(-1));
+		} finally {
+			setupConnection.rollback();
+			setupConnection.setAutoCommit(true);
+		}
+	}
+
+	private static Connection createRowBeforeInsert(final Connection connection, final int lockId) {
+		return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+		    new InvocationHandler() {
+			    @Override
+			    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				    if ("prepareStatement".equals(method.getName()) && ((String)args[0]).startsWith("INSERT")) {
+					    Connection other = DriverManager.getConnection(URL, "sa", "");
+					    try {
+						    Statement statement = other.createStatement();
+						    try {
+							    statement.execute("INSERT INTO " + DatabaseStockLockProvider.LOCK_TABLE
+							            + " (lock_id) VALUES (" + lockId + ")");
+						    } finally {
+							    statement.close();
+						    }
+					    } finally {
+						    other.close();
+					    }
+				    }
+
+				    try {
+					    return method.invoke(connection, args);
+				    } catch (InvocationTargetException ex) {
+					    throw ex.getCause();
+				    }
+			    }
+		    });
+	}
+
+	private static void distribute(Connection connection, int quantity) throws SQLException {
+		// Read, yield, and then write so that any missing lock shows up as a lost update
+		int current = getQuantity(connection);
+		Thread.yield();
+
+		PreparedStatement update = connection.prepareStatement("UPDATE test_item_stock SET quantity = ? WHERE item_stock_id = 1");
+		try {
+			update.setInt(1, current - quantity);
+			update.executeUpdate();
+		} finally {
+			update.close();
+		}
+	}
+
+	private static int getQuantity(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("SELECT quantity FROM test_item_stock WHERE item_stock_id = 1");
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Locks the rows using a connection bound to the worker thread rather than the Hibernate session.
+	 */
+	private static class ConnectionStockLockProvider extends DatabaseStockLockProvider {
+		private final ThreadLocal<Connection> connection = new ThreadLocal<Connection>();
+
+		ConnectionStockLockProvider() {
+			super(new StockLockManager(), null);
+		}
+
+		void setConnection(Connection connection) {
+			this.connection.set(connection);
+		}
+
+		@Override
+		protected void lockStripes(Collection<Integer> stripes) {
+			try {
+				lockRows(connection.get(), stripes);
+			} catch (SQLException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ItemSearchIndexTest {
+	private ItemSearchIndex index;
+
+	@Before
+	public void before() throws Exception {
+		index = new ItemSearchIndex();
+		index.load(Arrays.asList(
+		        new ItemSearchIndex.Entry(1, "Paracetamol 500mg", Arrays.asList("PCM500"), 1, true, false),
+		        new ItemSearchIndex.Entry(2, "Amoxicillin 250mg", Arrays.asList("AMX250"), 1, true, false),
+		        new ItemSearchIndex.Entry(3, "Gauze Pad", Arrays.asList("GZ1", "PARA"), 2, false, false),
+		        new ItemSearchIndex.Entry(4, "Paracetamol Syrup", Arrays.asList("PCM-SYR"), 1, true, true),
+		        new ItemSearchIndex.Entry(5, "Infant Paracetamol", null, 2, true, false)), index.getVersion());
+	}
+
+	/**
+	 * @verifies rank code matches, then name prefixes, then code prefixes, then infix matches
+	 * @see ItemSearchIndex#search(String, Integer, Boolean, boolean, boolean)
+	 */
+	@Test
+	public void search_shouldRankCodeMatchesThenNamePrefixesThenCodePrefixesThenInfixMatches() throws Exception {
+		Assert.assertEquals(Arrays.asList(3, 1, 5), index.search("para", null, null, true, false));
+		Assert.assertEquals(Arrays.asList(1, 4), index.search("pcm", null, null, false, true));
+	}
+
+	/**
+	 * @verifies only return infix matches when requested
+	 * @see ItemSearchIndex#search(String, Integer, Boolean, boolean, boolean)
+	 */
+	@Test
+	public void search_shouldOnlyReturnInfixMatchesWhenRequested() throws Exception {
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("250mg", null, null, false, false));
+		Assert.assertEquals(Arrays.asList(2), index.search("250mg", null, null, true, false));
+		Assert.assertEquals(Arrays.asList(2, 1), index.search("mg", null, null, true, false));
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("padgau", null, null, true, false));
+	}
+
+	/**
+	 * @verifies filter by department, physical inventory, and retired
+	 * @see ItemSearchIndex#search(String, Integer, Boolean, boolean, boolean)
+	 */
+	@Test
+	public void search_shouldFilterByDepartmentPhysicalInventoryAndRetired() throws Exception {
+		Assert.assertEquals(Arrays.asList(5), index.search("paracetamol", 2, null, true, false));
+		Assert.assertEquals(Arrays.asList(3), index.search("", null, false, false, false));
+		Assert.assertEquals(Arrays.asList(1, 4), index.search("paracetamol", 1, true, true, true));
+	}
+
+	/**
+	 * @verifies use the changed entries in place of the indexed entries
+	 * @see ItemSearchIndex#search(String, Integer, Boolean, boolean, boolean, java.util.Map)
+	 */
+	@Test
+	public void search_shouldUseTheChangedEntriesInPlaceOfTheIndexedEntries() throws Exception {
+		Map<Integer, ItemSearchIndex.Entry> changes = new HashMap<Integer, ItemSearchIndex.Entry>();
+		changes.put(2, new ItemSearchIndex.Entry(2, "Paracetamol 250mg", Arrays.asList("PCM250"), 1, true, false));
+		changes.put(3, null);
+		changes.put(6, new ItemSearchIndex.Entry(6, "Bandage", Arrays.asList("PARA"), 2, false, false));
+
+		Assert.assertEquals(Arrays.asList(6, 2, 1, 5), index.search("para", null, null, true, false, changes));
+		Assert.assertEquals(Arrays.asList(2, 1), index.search("pcm", null, null, false, false, changes));
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("amox", null, null, true, false, changes));
+		Assert.assertEquals(Arrays.asList(6), index.getIdsByCode("para", changes));
+
+		// The index itself is not changed
+		Assert.assertEquals(5, index.size());
+		Assert.assertEquals(Arrays.asList(3, 1, 5), index.search("para", null, null, true, false));
+	}
+
+	/**
+	 * @verifies find items by code ignoring case, including retired items
+	 * @see ItemSearchIndex#getIdsByCode(String)
+	 */
+	@Test
+	public void getIdsByCode_shouldFindItemsByCodeIgnoringCaseIncludingRetiredItems() throws Exception {
+		Assert.assertEquals(Arrays.asList(1), index.getIdsByCode("pcm500"));
+		Assert.assertEquals(Arrays.asList(4), index.getIdsByCode(" PCM-SYR "));
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.getIdsByCode("PCM"));
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.getIdsByCode(null));
+	}
+
+	/**
+	 * @verifies replace the previous entry for an item
+	 * @see ItemSearchIndex#put(ItemSearchIndex.Entry)
+	 */
+	@Test
+	public void put_shouldReplaceThePreviousEntryForAnItem() throws Exception {
+		index.put(new ItemSearchIndex.Entry(2, "Ibuprofen 200mg", Arrays.asList("IBU200"), 1, true, false));
+
+		Assert.assertEquals(5, index.size());
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("amx250", null, null, true, false));
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("amoxi", null, null, true, false));
+		Assert.assertEquals(Arrays.asList(2), index.search("ibu200", null, null, true, false));
+		Assert.assertEquals(Arrays.asList(2), index.search("profen", null, null, true, false));
+	}
+
+	/**
+	 * @verifies remove the name, codes, and trigrams of the item
+	 * @see ItemSearchIndex#remove(Integer)
+	 */
+	@Test
+	public void remove_shouldRemoveTheNameCodesAndTrigramsOfTheItem() throws Exception {
+		index.remove(1);
+
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("500mg", null, null, true, false));
+		Assert.assertEquals(Collections.<Integer> emptyList(), index.search("pcm500", null, null, true, false));
+		Assert.assertEquals(Arrays.asList(5), index.search("cetamol", null, null, true, false));
+	}
+
+	/**
+	 * @verifies not load entries read before the index changed
+	 * @see ItemSearchIndex#load(java.util.Collection, long)
+	 */
+	@Test
+	public void load_shouldNotLoadEntriesReadBeforeTheIndexChanged() throws Exception {
+		ItemSearchIndex newIndex = new ItemSearchIndex();
+		long version = newIndex.getVersion();
+		newIndex.put(new ItemSearchIndex.Entry(1, "Paracetamol 500mg", null, 1, true, false));
+
+		List<ItemSearchIndex.Entry> entries = Collections.emptyList();
+		Assert.assertFalse(newIndex.load(entries, version));
+		Assert.assertFalse(newIndex.isLoaded());
+
+		Assert.assertTrue(newIndex.load(entries, newIndex.getVersion()));
+		Assert.assertTrue(newIndex.isLoaded());
+		Assert.assertEquals(0, newIndex.size());
+	}
+}
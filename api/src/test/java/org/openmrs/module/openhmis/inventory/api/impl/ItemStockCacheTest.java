@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
+
+public class ItemStockCacheTest {
+	/**
+	 * @verifies evict the least recently used snapshot when the cache is full
+	 * @see ItemStockCache#put(ItemStockSnapshot, long)
+	 */
+	@Test
+	public void put_shouldEvictTheLeastRecentlyUsedSnapshotWhenTheCacheIsFull() throws Exception {
+		ItemStockCache cache = new ItemStockCache(2);
+		cache.put(createSnapshot(1, 1, 10), cache.getGeneration());
+		cache.put(createSnapshot(1, 2, 20), cache.getGeneration());
+
+		// Use the first snapshot so that the second is evicted
+		Assert.assertNotNull(cache.get(1, 1));
+		cache.put(createSnapshot(1, 3, 30), cache.getGeneration());
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertNotNull(cache.get(1, 1));
+		Assert.assertNull(cache.get(1, 2));
+		Assert.assertNotNull(cache.get(1, 3));
+	}
+
+	/**
+	 * @verifies not add a snapshot read before a snapshot was invalidated
+	 * @see ItemStockCache#put(ItemStockSnapshot, long)
+	 */
+	@Test
+	public void put_shouldNotAddASnapshotReadBeforeASnapshotWasInvalidated() throws Exception {
+		ItemStockCache cache = new ItemStockCache(10);
+		long generation = cache.getGeneration();
+		cache.remove(1, 1);
+
+		Assert.assertFalse(cache.put(createSnapshot(1, 1, 10), generation));
+		Assert.assertEquals(0, cache.size());
+
+		Assert.assertTrue(cache.put(createSnapshot(1, 1, 10), cache.getGeneration()));
+		Assert.assertEquals(1, cache.size());
+	}
+
+	/**
+	 * @verifies count hits and misses
+	 * @see ItemStockCache#get(Integer, Integer)
+	 */
+	@Test
+	public void get_shouldCountHitsAndMisses() throws Exception {
+		ItemStockCache cache = new ItemStockCache(10);
+		Assert.assertEquals(0, cache.getHitRatio(), 0);
+
+		cache.put(createSnapshot(1, 1, 10), cache.getGeneration());
+		Assert.assertEquals(10, cache.get(1, 1).getQuantity());
+		Assert.assertEquals(10, cache.get(1, 1).getQuantity());
+		Assert.assertNull(cache.get(2, 1));
+
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(2.0 / 3, cache.getHitRatio(), 0.0001);
+	}
+
+	/**
+	 * @verifies not return a snapshot that is older than the maximum age
+	 * @see ItemStockCache#get(Integer, Integer)
+	 */
+	@Test
+	public void get_shouldNotReturnASnapshotThatIsOlderThanTheMaximumAge() throws Exception {
+		ItemStockCache cache = new ItemStockCache(10, 1);
+		Assert.assertFalse(cache.isConsistent());
+
+		cache.put(createSnapshot(1, 1, 10), cache.getGeneration());
+		Thread.sleep(10);
+
+		Assert.assertNull(cache.get(1, 1));
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(0, cache.size());
+	}
+
+	/**
+	 * @verifies remove the snapshots for the stockroom only
+	 * @see ItemStockCache#removeStockroom(Integer)
+	 */
+	@Test
+	public void removeStockroom_shouldRemoveTheSnapshotsForTheStockroomOnly() throws Exception {
+		ItemStockCache cache = new ItemStockCache(10);
+		cache.put(createSnapshot(1, 1, 10), cache.getGeneration());
+		cache.put(createSnapshot(1, 2, 20), cache.getGeneration());
+		cache.put(createSnapshot(2, 1, 30), cache.getGeneration());
+
+		cache.removeStockroom(1);
+
+		Assert.assertEquals(1, cache.size());
+		Assert.assertNull(cache.get(1, 1));
+		Assert.assertNull(cache.get(1, 2));
+		Assert.assertEquals(30, cache.get(2, 1).getQuantity());
+	}
+
+	private ItemStockSnapshot createSnapshot(Integer stockroomId, Integer itemId, int quantity) {
+		return new ItemStockSnapshot(stockroomId, itemId, quantity, Collections.<ItemStockSnapshot.Detail> emptyList());
+	}
+}
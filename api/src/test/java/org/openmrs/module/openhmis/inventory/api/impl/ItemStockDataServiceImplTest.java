@@ -0,0 +1,197 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.commons.api.BaseModuleContextTest;
+import org.openmrs.module.openhmis.inventory.api.IItemDataService;
+import org.openmrs.module.openhmis.inventory.api.IItemDataServiceTest;
+import org.openmrs.module.openhmis.inventory.api.IItemStockDataService;
+import org.openmrs.module.openhmis.inventory.api.IItemStockDetailDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockroomDataServiceTest;
+import org.openmrs.module.openhmis.inventory.api.TestConstants;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSummary;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+import com.google.common.collect.Iterators;
+
+public class ItemStockDataServiceImplTest extends BaseModuleContextTest {
+	private IItemDataService itemDataService;
+	private IStockroomDataService stockroomDataService;
+	private IStockOperationDataService stockOperationDataService;
+	private IItemStockDataService itemStockDataService;
+	private IItemStockDetailDataService itemStockDetailDataService;
+
+	@Before
+	public void before() throws Exception {
+		executeDataSet(TestConstants.CORE_DATASET);
+		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
+		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
+
+		itemDataService = Context.getService(IItemDataService.class);
+		stockroomDataService = Context.getService(IStockroomDataService.class);
+		stockOperationDataService = Context.getService(IStockOperationDataService.class);
+		itemStockDataService = Context.getService(IItemStockDataService.class);
+		itemStockDetailDataService = Context.getService(IItemStockDetailDataService.class);
+	}
+
+	/**
+	 * @verifies update the summary records for the saved item stock
+	 * @see ItemStockDataServiceImpl#applySummaryChanges()
+	 */
+	@Test
+	public void applySummaryChanges_shouldUpdateTheSummaryRecordsForTheSavedItemStock() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		itemStockDataService.rebuildItemStockSummary(stockroom);
+
+		ItemStock stock = stockroomDataService.getItem(stockroom, itemDataService.getById(2));
+		ItemStockDetail existing = Iterators.getOnlyElement(stock.getDetails().iterator());
+		existing.setQuantity(existing.getQuantity() + 5);
+
+		// A second detail for the same expiration day is added to the same summary record
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(existing.getExpiration());
+		cal.set(Calendar.HOUR_OF_DAY, 12);
+		addDetail(stock, cal.getTime(), 2);
+
+		stock.setQuantity(stock.getQuantity() + 7);
+		itemStockDataService.save(stock);
+
+		ItemStockDataServiceImpl.applySummaryChanges();
+		Context.flushSession();
+
+		Assert.assertEquals(1, countSummaryRecords(stockroom, stock.getItem()));
+
+		List<ItemStockSummary> results = itemStockDetailDataService.getItemStockSummaryByStockroom(stockroom, null);
+		Assert.assertEquals(3, results.size());
+
+		int total = 0;
+		for (ItemStockSummary summary : results) {
+			total += summary.getQuantity();
+		}
+		Assert.assertEquals(24, total);
+	}
+
+	/**
+	 * @verifies remove the summary records for purged item stock
+	 * @see ItemStockDataServiceImpl#applySummaryChanges()
+	 */
+	@Test
+	public void applySummaryChanges_shouldRemoveTheSummaryRecordsForPurgedItemStock() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		itemStockDataService.rebuildItemStockSummary(stockroom);
+
+		ItemStock stock = stockroomDataService.getItem(stockroom, itemDataService.getById(2));
+		Item item = stock.getItem();
+		Assert.assertEquals(1, countSummaryRecords(stockroom, item));
+
+		stock.getStockroom().removeItem(stock);
+		itemStockDataService.purge(stock);
+
+		ItemStockDataServiceImpl.applySummaryChanges();
+		Context.flushSession();
+
+		Assert.assertEquals(0, countSummaryRecords(stockroom, item));
+	}
+
+	/**
+	 * @verifies not update the summary records until the changes are applied
+	 * @see ItemStockDataServiceImpl#applySummaryChanges()
+	 */
+	@Test
+	public void applySummaryChanges_shouldNotUpdateTheSummaryRecordsUntilTheChangesAreApplied() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		ItemStock stock = stockroomDataService.getItem(stockroom, itemDataService.getById(2));
+		ItemStockDetail existing = Iterators.getOnlyElement(stock.getDetails().iterator());
+		existing.setQuantity(existing.getQuantity() + 5);
+		stock.setQuantity(stock.getQuantity() + 5);
+
+		itemStockDataService.save(stock);
+		Context.flushSession();
+
+		// Reading the summary does not apply the changes
+		itemStockDetailDataService.getItemStockSummaryByStockroom(stockroom, null);
+		Assert.assertEquals(0, countSummaryRecords(stockroom, stock.getItem()));
+
+		ItemStockDataServiceImpl.applySummaryChanges();
+		Context.flushSession();
+
+		Assert.assertEquals(1, countSummaryRecords(stockroom, stock.getItem()));
+	}
+
+	/**
+	 * @verifies not update the summary records for the discarded changes
+	 * @see ItemStockDataServiceImpl#discardSummaryChanges()
+	 */
+	@Test
+	public void discardSummaryChanges_shouldNotUpdateTheSummaryRecordsForTheDiscardedChanges() throws Exception {
+		Stockroom stockroom = stockroomDataService.getById(0);
+		ItemStock stock = stockroomDataService.getItem(stockroom, itemDataService.getById(2));
+		ItemStockDetail existing = Iterators.getOnlyElement(stock.getDetails().iterator());
+		existing.setQuantity(existing.getQuantity() + 5);
+		stock.setQuantity(stock.getQuantity() + 5);
+		itemStockDataService.save(stock);
+
+		ItemStockDataServiceImpl.discardSummaryChanges();
+		ItemStockDataServiceImpl.applySummaryChanges();
+		Context.flushSession();
+
+		Assert.assertEquals(0, countSummaryRecords(stockroom, stock.getItem()));
+	}
+
+	private ItemStockDetail addDetail(ItemStock stock, Date expiration, int quantity) {
+		ItemStockDetail detail = new ItemStockDetail();
+		detail.setStockroom(stock.getStockroom());
+		detail.setItem(stock.getItem());
+		detail.setExpiration(expiration);
+		detail.setCalculatedBatch(false);
+		detail.setBatchOperation(stockOperationDataService.getById(1));
+		detail.setQuantity(quantity);
+		stock.addDetail(detail);
+
+		return detail;
+	}
+
+	private int countSummaryRecords(Stockroom stockroom, Item item) throws SQLException {
+		PreparedStatement statement = getConnection().prepareStatement(
+		    "SELECT COUNT(*) FROM inv_item_stock_summary WHERE stockroom_id = ? AND item_id = ?");
+		try {
+			statement.setInt(1, stockroom.getId());
+			statement.setInt(2, item.getId());
+
+			ResultSet results = statement.executeQuery();
+			results.next();
+
+			return results.getInt(1);
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.openhmis.inventory.api.allocation.AllocationKey;
+import org.openmrs.module.openhmis.inventory.api.allocation.FefoAllocationStrategy;
+import org.openmrs.module.openhmis.inventory.api.allocation.FifoAllocationStrategy;
+import org.openmrs.module.openhmis.inventory.api.allocation.LefoAllocationStrategy;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+
+public class ItemStockWorkingSetTest {
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private ItemStock stock;
+	private StockOperation batch1;
+	private StockOperation batch2;
+	private Date soon;
+	private Date later;
+
+	@Before
+	public void before() {
+		stock = new ItemStock();
+		batch1 = new StockOperation();
+		batch1.setOperationDate(new Date(System.currentTimeMillis() - (20 * DAY)));
+		batch2 = new StockOperation();
+		batch2.setOperationDate(new Date(System.currentTimeMillis() - (10 * DAY)));
+		soon = new Date(System.currentTimeMillis() + DAY);
+		later = new Date(System.currentTimeMillis() + (10 * DAY));
+	}
+
+	/**
+	 * @verifies not modify the persistent details
+	 * @see ItemStockWorkingSet#setQuantity(ItemStockDetail, int)
+	 */
+	@Test
+	public void setQuantity_shouldNotModifyThePersistentDetails() throws Exception {
+		ItemStockDetail detail = addDetail(soon, batch1, 10);
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock);
+
+		workingSet.setQuantity(detail, 4);
+		Assert.assertEquals(4, workingSet.getQuantity(detail));
+		Assert.assertEquals(4, workingSet.getExpirationTotal(soon));
+		Assert.assertEquals(10, (int)detail.getQuantity());
+
+		workingSet.remove(detail);
+		Assert.assertEquals(0, workingSet.size());
+		Assert.assertEquals(1, stock.getDetails().size());
+		Assert.assertNull(workingSet.findDetail(soon, batch1));
+	}
+
+	/**
+	 * @verifies find the detail that expires the soonest and then the oldest batch
+	 * @see ItemStockWorkingSet#findBest()
+	 */
+	@Test
+	public void findBest_shouldFindTheDetailThatExpiresTheSoonestAndThenTheOldestBatch() throws Exception {
+		ItemStockDetail soon2 = addDetail(new Date(soon.getTime()), batch2, 5);
+		ItemStockDetail soon1 = addDetail(soon, batch1, 5);
+		ItemStockDetail later1 = addDetail(later, batch1, 5);
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock, new FefoAllocationStrategy());
+
+		Assert.assertSame(soon1, workingSet.findBest());
+		Assert.assertEquals(10, workingSet.getExpirationTotal(soon));
+
+		workingSet.remove(soon1);
+		Assert.assertSame(soon2, workingSet.findBest());
+
+		// Once all the soonest stock has been used the next closest expiration is returned
+		workingSet.removeByExpiration(soon);
+		Assert.assertSame(later1, workingSet.findBest());
+		Assert.assertEquals(0, workingSet.getExpirationTotal(soon));
+
+		workingSet.remove(later1);
+		Assert.assertNull(workingSet.findBest());
+	}
+
+	/**
+	 * @verifies treat details without an expiration as expiring last
+	 * @see ItemStockWorkingSet#findBest()
+	 */
+	@Test
+	public void findBest_shouldTreatDetailsWithoutAnExpirationAsExpiringLast() throws Exception {
+		ItemStockDetail dated = addDetail(soon, batch1, 5);
+		ItemStockDetail undated = addDetail(null, batch2, 5);
+
+		Assert.assertSame(dated, new ItemStockWorkingSet(stock, new FefoAllocationStrategy()).findBest());
+		Assert.assertSame(undated, new ItemStockWorkingSet(stock, new LefoAllocationStrategy()).findBest());
+	}
+
+	/**
+	 * @verifies find the detail from the oldest batch when using fifo
+	 * @see ItemStockWorkingSet#findBest(java.util.Collection)
+	 */
+	@Test
+	public void findBest_shouldFindTheDetailFromTheOldestBatchWhenUsingFifo() throws Exception {
+		ItemStockDetail newer = addDetail(soon, batch2, 5);
+		ItemStockDetail older = addDetail(later, batch1, 5);
+		ItemStockDetail unbatched = addDetail(soon, null, 5);
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock, new FifoAllocationStrategy());
+
+		Assert.assertSame(older, workingSet.findBest());
+
+		// Details without a batch are treated as the newest stock
+		List<ItemStockDetail> soonest = workingSet.findByExpiration(soon);
+		Assert.assertSame(newer, workingSet.findBest(soonest));
+
+		workingSet.remove(newer);
+		Assert.assertSame(unbatched, workingSet.findBest(soonest));
+	}
+
+	/**
+	 * @verifies treat details without a batch as the newest stock
+	 * @see ItemStockWorkingSet#findBest(java.util.Collection)
+	 */
+	@Test
+	public void findBest_shouldTreatDetailsWithoutABatchAsTheNewestStock() throws Exception {
+		StockOperation future = new StockOperation();
+		future.setOperationDate(new Date(System.currentTimeMillis() + (10 * DAY)));
+
+		ItemStockDetail unbatched = addDetail(soon, null, 5);
+		ItemStockDetail newest = addDetail(soon, future, 5);
+		ItemStockDetail oldest = addDetail(soon, batch1, 5);
+
+		// The order does not depend on the date of the operation that the stock is allocated for
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock, new FifoAllocationStrategy());
+		Assert.assertSame(oldest, workingSet.findBest());
+		workingSet.remove(oldest);
+		Assert.assertSame(newest, workingSet.findBest());
+		workingSet.remove(newest);
+		Assert.assertSame(unbatched, workingSet.findBest());
+
+		workingSet = new ItemStockWorkingSet(stock, new LefoAllocationStrategy());
+		Assert.assertSame(oldest, workingSet.findBest());
+		workingSet.remove(oldest);
+		Assert.assertSame(newest, workingSet.findBest());
+	}
+
+	/**
+	 * @verifies compare far fewer details than sorting the details for each reservation
+	 * @see ItemStockWorkingSet#findBest()
+	 */
+	@Test
+	public void findBest_shouldCompareFarFewerDetailsThanSortingTheDetailsForEachReservation() throws Exception {
+		/*
+			Takes one unit of stock at a time from an item stock with many details, first the way reservations used to find
+			the source detail (copying and sorting every detail for each reservation) and then using the working set. The
+			number of comparisons is checked because it does not depend on the speed of the machine.
+		 */
+		final int detailCount = 2000;
+		final int reservationCount = 2000;
+
+		Random random = new Random(42);
+		List<StockOperation> batches = new ArrayList<StockOperation>();
+		for (int i = 0; i < 50; i++) {
+			StockOperation batch = new StockOperation();
+			batch.setOperationDate(new Date(System.currentTimeMillis() - (random.nextInt(365) * DAY)));
+			batches.add(batch);
+		}
+		for (int i = 0; i < detailCount; i++) {
+			Date expiration = random.nextInt(10) == 0 ? null : new Date(soon.getTime() + (random.nextInt(365) * DAY));
+			StockOperation batch = random.nextInt(10) == 0 ? null : batches.get(random.nextInt(batches.size()));
+			addDetail(expiration, batch, 1 + random.nextInt(5));
+		}
+
+		// Before: the details are copied and sorted for each reservation
+		final int[] beforeComparisons = new int[1];
+		Comparator<ItemStockDetail> comparator = new Comparator<ItemStockDetail>() {
+			@Override
+			public int compare(ItemStockDetail detail1, ItemStockDetail detail2) {
+				beforeComparisons[0]++;
+
+				int result = compareDates(detail1.getExpiration(), detail2.getExpiration());
+				if (result == 0) {
+					result =
+					        compareDates(detail1.getBatchOperation() == null ? null : detail1.getBatchOperation()
+					                .getOperationDate(), detail2.getBatchOperation() == null ? null : detail2
+					                .getBatchOperation().getOperationDate());
+				}
+
+				return result;
+			}
+		};
+
+		Map<ItemStockDetail, Integer> quantities = new IdentityHashMap<ItemStockDetail, Integer>();
+		List<ItemStockDetail> remaining = new ArrayList<ItemStockDetail>(stock.getDetails());
+		int beforeTaken = 0;
+		for (int i = 0; i < reservationCount && !remaining.isEmpty(); i++) {
+			List<ItemStockDetail> sorted = new ArrayList<ItemStockDetail>(remaining);
+			Collections.sort(sorted, comparator);
+
+			ItemStockDetail best = sorted.get(0);
+			Integer quantity = quantities.get(best);
+			quantity = (quantity == null ? best.getQuantity() : quantity) - 1;
+			if (quantity == 0) {
+				remaining.remove(best);
+			}
+			quantities.put(best, quantity);
+			beforeTaken++;
+		}
+
+		// After: the working set keeps the details in allocation order
+		final int[] afterComparisons = new int[1];
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock, new FefoAllocationStrategy() {
+			@Override
+			public int compare(AllocationKey key1, AllocationKey key2) {
+				afterComparisons[0]++;
+
+				return super.compare(key1, key2);
+			}
+		});
+
+		int afterTaken = 0;
+		for (int i = 0; i < reservationCount && workingSet.size() > 0; i++) {
+			ItemStockDetail best = workingSet.findBest();
+			int quantity = workingSet.getQuantity(best) - 1;
+			if (quantity == 0) {
+				workingSet.remove(best);
+			} else {
+				workingSet.setQuantity(best, quantity);
+			}
+			afterTaken++;
+		}
+
+		Assert.assertEquals(beforeTaken, afterTaken);
+		Assert.assertTrue(afterComparisons[0] * 10 < beforeComparisons[0]);
+	}
+
+	/**
+	 * @verifies find details by batch operation
+	 * @see ItemStockWorkingSet#findByBatch(StockOperation)
+	 */
+	@Test
+	public void findByBatch_shouldFindDetailsByBatchOperation() throws Exception {
+		ItemStockDetail first = addDetail(soon, batch1, 5);
+		ItemStockDetail second = addDetail(later, batch1, 5);
+		ItemStockDetail other = addDetail(soon, batch2, 5);
+		ItemStockDetail none = addDetail(null, null, -3);
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock);
+
+		List<ItemStockDetail> results = workingSet.findByBatch(batch1);
+		Assert.assertEquals(2, results.size());
+		Assert.assertTrue(results.contains(first));
+		Assert.assertTrue(results.contains(second));
+		Assert.assertSame(other, workingSet.findByBatch(batch2).get(0));
+		Assert.assertSame(none, workingSet.findByBatch(null).get(0));
+		Assert.assertSame(other, workingSet.findDetail(soon, batch2));
+		Assert.assertNull(workingSet.findDetail(later, batch2));
+	}
+
+	/**
+	 * @verifies return a single negative detail for any expiration and batch
+	 * @see ItemStockWorkingSet#findDetail(Date, StockOperation)
+	 */
+	@Test
+	public void findDetail_shouldReturnASingleNegativeDetailForAnyExpirationAndBatch() throws Exception {
+		ItemStockDetail negative = addDetail(null, null, -5);
+		ItemStockWorkingSet workingSet = new ItemStockWorkingSet(stock);
+
+		Assert.assertSame(negative, workingSet.findDetail(soon, batch1));
+		Assert.assertEquals(-5, workingSet.getExpirationTotal(null));
+	}
+
+	private ItemStockDetail addDetail(Date expiration, StockOperation batchOperation, int quantity) {
+		ItemStockDetail detail = new ItemStockDetail();
+		detail.setExpiration(expiration);
+		detail.setBatchOperation(batchOperation);
+		detail.setQuantity(quantity);
+		stock.addDetail(detail);
+
+		return detail;
+	}
+
+	private static int compareDates(Date date1, Date date2) {
+		// Dates that are not defined are sorted last
+		if (date1 == null) {
+			return date2 == null ? 0 : 1;
+		}
+
+		return date2 == null ? -1 : date1.compareTo(date2);
+	}
+}
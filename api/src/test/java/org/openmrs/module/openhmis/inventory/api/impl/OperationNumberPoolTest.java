@@ -0,0 +1,422 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+import org.openmrs.module.idgen.IdentifierSource;
+import org.openmrs.module.idgen.SequentialIdentifierGenerator;
+import org.openmrs.module.idgen.service.IdentifierSourceService;
+import org.openmrs.module.openhmis.inventory.ModuleSettings;
+
+public class OperationNumberPoolTest {
+	private static final Log LOG = LogFactory.getLog(OperationNumberPoolTest.class);
+
+	private static final int CALLER_COUNT = 50;
+	private static final int NUMBERS_PER_CALLER = 40;
+
+	/**
+	 * @verifies return unique operation numbers to concurrent callers
+	 * @see OperationNumberPool#next()
+	 */
+	@Test(timeout = 60000)
+	public void next_shouldReturnUniqueOperationNumbersToConcurrentCallers() throws Exception {
+		TestSource source = new TestSource();
+		final OperationNumberPool pool = new OperationNumberPool(25, source);
+		pool.start();
+
+		List<String> numbers = generate(CALLER_COUNT, NUMBERS_PER_CALLER, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return pool.next();
+			}
+		});
+
+		Assert.assertEquals(CALLER_COUNT * NUMBERS_PER_CALLER, numbers.size());
+		Assert.assertEquals(numbers.size(), new HashSet<String>(numbers).size());
+	}
+
+	/**
+	 * @verifies reserve a new block in the background when below the low-water mark
+	 * @see OperationNumberPool#next()
+	 */
+	@Test(timeout = 30000)
+	public void next_shouldReserveANewBlockInTheBackgroundWhenBelowTheLowWaterMark() throws Exception {
+		TestSource source = new TestSource();
+		OperationNumberPool pool = new OperationNumberPool(10, 5, source);
+		pool.start();
+
+		// The first call waits for a block to be reserved in the background and leaves nine numbers
+		pool.next();
+		Assert.assertEquals(1, source.getReserveCount());
+
+		for (int i = 0; i < 5; i++) {
+			pool.next();
+		}
+
+		// There are now four numbers left, which is below the low-water mark
+		while (source.getReserveCount() < 2 || pool.getSize() < 10) {
+			Thread.sleep(10);
+		}
+
+		Assert.assertEquals(2, source.getReserveCount());
+		Assert.assertEquals(14, pool.getSize());
+	}
+
+	/**
+	 * @verifies reserve blocks outside of the caller's thread when the pool is empty
+	 * @see OperationNumberPool#next()
+	 */
+	@Test(timeout = 30000)
+	public void next_shouldReserveBlocksOutsideOfTheCallersThreadWhenThePoolIsEmpty() throws Exception {
+		TestSource source = new TestSource();
+		OperationNumberPool pool = new OperationNumberPool(10, 0, source);
+		pool.start();
+
+		// Each block is emptied so that every reservation happens while the caller is waiting
+		for (int i = 0; i < 30; i++) {
+			pool.next();
+		}
+
+		Assert.assertEquals(3, source.getReserveCount());
+		Assert.assertFalse(source.getReserveThreads().contains(Thread.currentThread()));
+	}
+
+	/**
+	 * @verifies throw APIException when the source cannot reserve a block
+	 * @see OperationNumberPool#next()
+	 */
+	@Test(expected = APIException.class, timeout = 30000)
+	public void next_shouldThrowAPIExceptionWhenTheSourceCannotReserveABlock() throws Exception {
+		OperationNumberPool pool = new OperationNumberPool(10, 0, new TestSource() {
+			@Override
+			public synchronized List<String> reserve(int count) {
+				throw new IllegalStateException("The identifier source is not available.");
+			}
+		});
+		pool.start();
+
+		pool.next();
+	}
+
+	/**
+	 * @verifies return the unused operation numbers to the source
+	 * @see OperationNumberPool#stop()
+	 */
+	@Test
+	public void stop_shouldReturnTheUnusedOperationNumbersToTheSource() throws Exception {
+		TestSource source = new TestSource();
+		OperationNumberPool pool = new OperationNumberPool(10, 0, source);
+		pool.start();
+
+		String first = pool.next();
+		pool.stop();
+
+		Assert.assertEquals(0, pool.getSize());
+		Assert.assertEquals(9, source.getReleased().size());
+		Assert.assertFalse(source.getReleased().contains(first));
+	}
+
+	/**
+	 * @verifies throw IllegalStateException when the pool is not running
+	 * @see OperationNumberPool#next()
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void next_shouldThrowIllegalStateExceptionWhenThePoolIsNotRunning() throws Exception {
+		new OperationNumberPool(10, new TestSource()).next();
+	}
+
+	/**
+	 * Compares generating an operation number for each call against pooled allocation with 50 concurrent callers. Both go
+	 * through {@link IdgenOperationNumberSource} to an idgen service that does the database work of a sequential identifier
+	 * source: each call locks and updates the sequence and logs every identifier in its own transaction.
+	 * @verifies reserve far fewer blocks and finish sooner than per call idgen generation
+	 * @see OperationNumberPool#next()
+	 */
+	@Test(timeout = 120000)
+	public void next_shouldReserveFarFewerBlocksAndFinishSoonerThanPerCallIdgenGeneration() throws Exception {
+		IdgenDatabase perCallDatabase = new IdgenDatabase("inv_idgen_per_call");
+		IdgenDatabase pooledDatabase = new IdgenDatabase("inv_idgen_pooled");
+		try {
+			final IdgenOperationNumberSource perCallSource = createIdgenSource(perCallDatabase.getService());
+			long start = System.nanoTime();
+			List<String> perCall = generate(CALLER_COUNT, NUMBERS_PER_CALLER, new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return perCallSource.reserve(1).get(0);
+				}
+			});
+			long perCallTime = (System.nanoTime() - start) / 1000000;
+
+			final OperationNumberPool pool = new OperationNumberPool(ModuleSettings.DEFAULT_OPERATION_NUMBER_BLOCK_SIZE,
+			        createIdgenSource(pooledDatabase.getService()));
+			pool.start();
+			start = System.nanoTime();
+			List<String> pooled = generate(CALLER_COUNT, NUMBERS_PER_CALLER, new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return pool.next();
+				}
+			});
+			long pooledTime = (System.nanoTime() - start) / 1000000;
+			pool.stop();
+
+			LOG.info("Generated " + perCall.size() + " operation numbers with " + CALLER_COUNT + " callers: per call "
+			        + perCallTime + "ms (" + perCallDatabase.getGenerateCount() + " idgen calls), pooled " + pooledTime
+			        + "ms (" + pooledDatabase.getGenerateCount() + " idgen calls)");
+
+			Assert.assertEquals(perCall.size(), new HashSet<String>(perCall).size());
+			Assert.assertEquals(pooled.size(), new HashSet<String>(pooled).size());
+			Assert.assertEquals(CALLER_COUNT * NUMBERS_PER_CALLER, perCallDatabase.getGenerateCount());
+			Assert.assertTrue(pooledDatabase.getLogEntryCount() >= pooled.size());
+			Assert.assertTrue(pooledDatabase.getGenerateCount() * 10 < perCallDatabase.getGenerateCount());
+			Assert.assertTrue(pooledTime < perCallTime);
+		} finally {
+			perCallDatabase.close();
+			pooledDatabase.close();
+		}
+	}
+
+	private static IdgenOperationNumberSource createIdgenSource(final IdentifierSourceService service) {
+		final SequentialIdentifierGenerator generator = new SequentialIdentifierGenerator();
+		generator.setName("Operation Numbers");
+
+		return new IdgenOperationNumberSource() {
+			@Override
+			protected IdentifierSource getSource() {
+				return generator;
+			}
+
+			@Override
+			protected IdentifierSourceService getService() {
+				return service;
+			}
+		};
+	}
+
+	private static List<String> generate(int callerCount, final int numbersPerCaller, final Callable<String> generator)
+	        throws Exception {
+		List<Callable<List<String>>> tasks = new ArrayList<Callable<List<String>>>(callerCount);
+		for (int i = 0; i < callerCount; i++) {
+			tasks.add(new Callable<List<String>>() {
+				@Override
+				public List<String> call() throws Exception {
+					List<String> results = new ArrayList<String>(numbersPerCaller);
+					for (int n = 0; n < numbersPerCaller; n++) {
+						results.add(generator.call());
+					}
+
+					return results;
+				}
+			});
+		}
+
+		List<String> numbers = new ArrayList<String>();
+		ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+		try {
+			for (Future<List<String>> future : executor.invokeAll(tasks)) {
+				// Rethrow any exception from the worker threads
+				numbers.addAll(future.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return numbers;
+	}
+
+	/**
+	 * Generates sequential operation numbers, one caller at a time, like a sequential idgen identifier source.
+	 */
+	private static class TestSource implements IOperationNumberSource {
+		private final List<String> released = Collections.synchronizedList(new ArrayList<String>());
+		private final Set<Thread> reserveThreads = new HashSet<Thread>();
+		private int next;
+		private int reserveCount;
+
+		@Override
+		public synchronized List<String> reserve(int count) {
+			reserveCount++;
+			reserveThreads.add(Thread.currentThread());
+
+			List<String> numbers = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				numbers.add("OP-" + (next++));
+			}
+
+			return numbers;
+		}
+
+		@Override
+		public void release(List<String> numbers) {
+			released.addAll(numbers);
+		}
+
+		public synchronized int getReserveCount() {
+			return reserveCount;
+		}
+
+		public Set<String> getReleased() {
+			return new HashSet<String>(released);
+		}
+
+		public synchronized Set<Thread> getReserveThreads() {
+			return new HashSet<Thread>(reserveThreads);
+		}
+	}
+
+	/**
+	 * An in-memory database with the idgen sequence and log tables that backs an idgen service. Like idgen, identifiers are
+	 * generated one caller at a time and each call is committed in its own transaction.
+	 */
+	private static class IdgenDatabase implements InvocationHandler {
+		private final Connection connection;
+		private int generateCount;
+
+		IdgenDatabase(String name) throws Exception {
+			Class.forName("org.h2.Driver");
+
+			connection = DriverManager.getConnection("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute("CREATE TABLE idgen_seq_id_gen (id INT PRIMARY KEY, next_sequence_value BIGINT NOT NULL)");
+				statement.execute("CREATE TABLE idgen_log_entry (id INT AUTO_INCREMENT PRIMARY KEY, source INT NOT NULL, "
+				        + "identifier VARCHAR(50) NOT NULL, date_generated TIMESTAMP NOT NULL, comment VARCHAR(255))");
+				statement.execute("INSERT INTO idgen_seq_id_gen (id, next_sequence_value) VALUES (1, 1)");
+			} finally {
+				statement.close();
+			}
+
+			connection.setAutoCommit(false);
+		}
+
+		public IdentifierSourceService getService() {
+			return (IdentifierSourceService)Proxy.newProxyInstance(IdentifierSourceService.class.getClassLoader(),
+			    new Class<?>[] { IdentifierSourceService.class }, this);
+		}
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				return method.invoke(this, args);
+			}
+			if (!"generateIdentifiers".equals(method.getName())) {
+				throw new UnsupportedOperationException(method.getName());
+			}
+
+			return generateIdentifiers((Integer)args[1], (String)args[2]);
+		}
+
+		public synchronized int getGenerateCount() {
+			return generateCount;
+		}
+
+		public synchronized int getLogEntryCount() throws SQLException {
+			Statement statement = connection.createStatement();
+			try {
+				ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM idgen_log_entry");
+				results.next();
+
+				return results.getInt(1);
+			} finally {
+				statement.close();
+			}
+		}
+
+		public void close() throws SQLException {
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute("DROP ALL OBJECTS");
+			} finally {
+				statement.close();
+				connection.close();
+			}
+		}
+
+		private List<String> generateIdentifiers(int count, String comment) throws SQLException {
+			generateCount++;
+
+			List<String> identifiers = new ArrayList<String>(count);
+			try {
+				long next;
+				PreparedStatement select = connection.prepareStatement(
+				    "SELECT next_sequence_value FROM idgen_seq_id_gen WHERE id = 1 FOR UPDATE");
+				try {
+					ResultSet results = select.executeQuery();
+					results.next();
+					next = results.getLong(1);
+				} finally {
+					select.close();
+				}
+
+				PreparedStatement update = connection.prepareStatement(
+				    "UPDATE idgen_seq_id_gen SET next_sequence_value = ? WHERE id = 1");
+				try {
+					update.setLong(1, next + count);
+					update.executeUpdate();
+				} finally {
+					update.close();
+				}
+
+				PreparedStatement log = connection.prepareStatement(
+				    "INSERT INTO idgen_log_entry (source, identifier, date_generated, comment) VALUES (1, ?, ?, ?)");
+				try {
+					Timestamp now = new Timestamp(System.currentTimeMillis());
+					for (int i = 0; i < count; i++) {
+						String identifier = "OP-" + (next + i);
+						identifiers.add(identifier);
+
+						log.setString(1, identifier);
+						log.setTimestamp(2, now);
+						log.setString(3, comment);
+						log.executeUpdate();
+					}
+				} finally {
+					log.close();
+				}
+
+				connection.commit();
+			} catch (SQLException ex) {
+				connection.rollback();
+
+				throw ex;
+			}
+
+			return identifiers;
+		}
+	}
+}
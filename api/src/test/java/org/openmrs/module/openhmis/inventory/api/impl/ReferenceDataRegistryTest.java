@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.openhmis.inventory.api.model.Department;
+
+public class ReferenceDataRegistryTest {
+	/**
+	 * @verifies count a hit for a registered uuid and a miss for an unknown uuid
+	 * @see ReferenceDataRegistry#getId(String)
+	 */
+	@Test
+	public void getId_shouldCountAHitForARegisteredUuidAndAMissForAnUnknownUuid() throws Exception {
+		ReferenceDataRegistry<Department> registry = new ReferenceDataRegistry<Department>();
+		Department department = createDepartment(1);
+		registry.put(department);
+
+		Assert.assertEquals(Integer.valueOf(1), registry.getId(department.getUuid()));
+		Assert.assertNull(registry.getId(UUID.randomUUID().toString()));
+		Assert.assertNull(registry.getId(null));
+
+		Assert.assertEquals(1, registry.getHitCount());
+		Assert.assertEquals(2, registry.getMissCount());
+	}
+
+	/**
+	 * @verifies not register objects that have not been saved
+	 * @see ReferenceDataRegistry#put(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void put_shouldNotRegisterObjectsThatHaveNotBeenSaved() throws Exception {
+		ReferenceDataRegistry<Department> registry = new ReferenceDataRegistry<Department>();
+		registry.put(createDepartment(null));
+		registry.put(null);
+
+		Assert.assertEquals(0, registry.size());
+	}
+
+	/**
+	 * @verifies replace the previous uuid when the uuid of an object changes
+	 * @see ReferenceDataRegistry#put(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void put_shouldReplaceThePreviousUuidWhenTheUuidOfAnObjectChanges() throws Exception {
+		ReferenceDataRegistry<Department> registry = new ReferenceDataRegistry<Department>();
+		Department department = createDepartment(1);
+		String oldUuid = department.getUuid();
+		registry.put(department);
+
+		department.setUuid(UUID.randomUUID().toString());
+		registry.put(department);
+
+		Assert.assertEquals(1, registry.size());
+		Assert.assertNull(registry.getId(oldUuid));
+		Assert.assertEquals(Integer.valueOf(1), registry.getId(department.getUuid()));
+	}
+
+	/**
+	 * @verifies remove the object by id even if its uuid has changed
+	 * @see ReferenceDataRegistry#remove(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void remove_shouldRemoveTheObjectByIdEvenIfItsUuidHasChanged() throws Exception {
+		ReferenceDataRegistry<Department> registry = new ReferenceDataRegistry<Department>();
+		Department department = createDepartment(1);
+		String oldUuid = department.getUuid();
+		registry.warm(Arrays.asList(department, createDepartment(2)));
+
+		department.setUuid(UUID.randomUUID().toString());
+		registry.remove(department);
+
+		Assert.assertEquals(1, registry.size());
+		Assert.assertNull(registry.getId(oldUuid));
+	}
+
+	private static Department createDepartment(Integer id) {
+		Department department = new Department();
+		department.setId(id);
+		department.setUuid(UUID.randomUUID().toString());
+		department.setName("Department " + id);
+
+		return department;
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.openhmis.inventory.api.impl.StockLockManager.StockLock;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+public class StockLockManagerTest {
+	private static final int THREAD_COUNT = 16;
+	private static final int DISTRIBUTION_COUNT = 20000;
+	private static final int ITEM_COUNT = 12;
+	private static final int DETAIL_COUNT = 4;
+
+	/**
+	 * @verifies keep item stock quantity equal to the sum of its details under concurrent disjoint distributions
+	 * @see StockLockManager#lockShared(java.util.Collection)
+	 */
+	@Test
+	public void lockShared_shouldKeepItemStockQuantityEqualToDetailSumUnderConcurrentDistributions() throws Exception {
+		// Use a small number of stripes so that unrelated item stock regularly shares a stripe
+		final StockLockManager manager = new StockLockManager(8);
+
+		final Stockroom pharmacy = createStockroom("Pharmacy");
+		final Stockroom ward = createStockroom("Ward");
+		final List<ItemStock> pharmacyStock = new ArrayList<ItemStock>(ITEM_COUNT);
+		final List<ItemStock> wardStock = new ArrayList<ItemStock>(ITEM_COUNT);
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			Item item = new Item();
+			item.setName("Item " + i);
+
+			pharmacyStock.add(createStock(pharmacy, item, DISTRIBUTION_COUNT));
+			wardStock.add(createStock(ward, item, DISTRIBUTION_COUNT));
+		}
+
+		final AtomicInteger counter = new AtomicInteger();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(THREAD_COUNT);
+		for (int t = 0; t < THREAD_COUNT; t++) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					int index;
+					while ((index = counter.getAndIncrement()) < DISTRIBUTION_COUNT) {
+						List<ItemStock> room = index % 2 == 0 ? pharmacyStock : wardStock;
+						ItemStock stock = room.get(index % ITEM_COUNT);
+
+						StockLock lock =
+						        manager.lockShared(Collections.singletonList(Pair.with(stock.getStockroom(), stock.getItem())));
+						try {
+							distribute(stock, 1 + (index % 3));
+						} finally {
+							lock.release();
+						}
+					}
+
+					return null;
+				}
+			});
+		}
+
+		runAll(tasks);
+
+		for (ItemStock stock : pharmacyStock) {
+			assertConsistent(stock);
+		}
+		for (ItemStock stock : wardStock) {
+			assertConsistent(stock);
+		}
+	}
+
+	/**
+	 * @verifies not deadlock when pairs are locked in opposite orders
+	 * @see StockLockManager#lockShared(java.util.Collection)
+	 */
+	@Test(timeout = 60000)
+	public void lockShared_shouldNotDeadlockWhenPairsAreLockedInOppositeOrders() throws Exception {
+		final StockLockManager manager = new StockLockManager();
+
+		final Stockroom source = createStockroom("Source");
+		final Stockroom destination = createStockroom("Destination");
+		final Item item = new Item();
+		final ItemStock sourceStock = createStock(source, item, 0);
+		final ItemStock destinationStock = createStock(destination, item, 0);
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(THREAD_COUNT);
+		for (int t = 0; t < THREAD_COUNT; t++) {
+			final boolean forward = t % 2 == 0;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < 2000; i++) {
+						// Transfer one unit in either direction between the two stockrooms
+						ItemStock from = forward ? sourceStock : destinationStock;
+						ItemStock to = forward ? destinationStock : sourceStock;
+
+						StockLock lock =
+						        manager.lockShared(Arrays.asList(Pair.with(from.getStockroom(), item),
+						            Pair.with(to.getStockroom(), item)));
+						try {
+							distribute(from, 1);
+							distribute(to, -1);
+						} finally {
+							lock.release();
+						}
+					}
+
+					return null;
+				}
+			});
+		}
+
+		runAll(tasks);
+
+		assertConsistent(sourceStock);
+		assertConsistent(destinationStock);
+		Assert.assertEquals(0, sourceStock.getQuantity() + destinationStock.getQuantity());
+	}
+
+	/**
+	 * @verifies block striped locks while the exclusive lock is held
+	 * @see StockLockManager#lockExclusive()
+	 */
+	@Test(timeout = 60000)
+	public void lockExclusive_shouldBlockStripedLocksWhileHeld() throws Exception {
+		final StockLockManager manager = new StockLockManager();
+		final Stockroom stockroom = createStockroom("Stockroom");
+		final Item item = new Item();
+
+		StockLock exclusive = manager.lockExclusive();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					StockLock lock = manager.lockShared(Collections.singletonList(Pair.with(stockroom, item)));
+					lock.release();
+
+					return true;
+				}
+			});
+
+			Thread.sleep(200);
+			Assert.assertFalse(future.isDone());
+
+			exclusive.release();
+			Assert.assertTrue(future.get(30, TimeUnit.SECONDS));
+		} finally {
+			exclusive.release();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @verifies allow striped locks to be reentered by the exclusive lock owner
+	 * @see StockLockManager#lockShared(java.util.Collection)
+	 */
+	@Test
+	public void lockShared_shouldAllowTheExclusiveLockOwnerToReenter() throws Exception {
+		StockLockManager manager = new StockLockManager();
+
+		StockLock exclusive = manager.lockExclusive();
+		try {
+			StockLock nested =
+			        manager.lockShared(Collections.singletonList(Pair.with(createStockroom("Stockroom"), new Item())));
+			nested.release();
+
+			Assert.assertTrue(manager.isExclusiveHeldByCurrentThread());
+		} finally {
+			exclusive.release();
+		}
+
+		Assert.assertFalse(manager.isExclusiveHeldByCurrentThread());
+	}
+
+	/**
+	 * @verifies throw IllegalStateException when a striped lock is already held
+	 * @see StockLockManager#lockExclusive()
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void lockExclusive_shouldThrowIllegalStateExceptionWhenAStripedLockIsAlreadyHeld() throws Exception {
+		StockLockManager manager = new StockLockManager();
+
+		StockLock lock = manager.lockShared(Collections.singletonList(Pair.with(createStockroom("Stockroom"), new Item())));
+		try {
+			manager.lockExclusive();
+		} finally {
+			lock.release();
+		}
+	}
+
+	private static void distribute(ItemStock stock, int quantity) {
+		// Take the quantity from the first detail that has stock, similar to what applyTransactions does
+		ItemStockDetail detail = null;
+		for (ItemStockDetail d : stock.getDetails()) {
+			detail = d;
+			if (d.getQuantity() >= quantity) {
+				break;
+			}
+		}
+
+		// Read, yield, and then write so that any missing synchronization shows up as a lost update
+		int detailQuantity = detail.getQuantity();
+		int stockQuantity = stock.getQuantity();
+		Thread.yield();
+
+		detail.setQuantity(detailQuantity - quantity);
+		stock.setQuantity(stockQuantity - quantity);
+	}
+
+	private static void assertConsistent(ItemStock stock) {
+		int sum = 0;
+		for (ItemStockDetail detail : stock.getDetails()) {
+			sum += detail.getQuantity();
+		}
+
+		Assert.assertEquals(sum, stock.getQuantity());
+	}
+
+	private static void runAll(List<Callable<Void>> tasks) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				// Rethrow any exception from the worker threads
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Stockroom createStockroom(String name) {
+		Stockroom stockroom = new Stockroom();
+		stockroom.setName(name);
+
+		return stockroom;
+	}
+
+	private static ItemStock createStock(Stockroom stockroom, Item item, int quantity) {
+		ItemStock stock = new ItemStock();
+		stock.setStockroom(stockroom);
+		stock.setItem(item);
+
+		int total = 0;
+		for (int i = 0; i < DETAIL_COUNT; i++) {
+			ItemStockDetail detail = new ItemStockDetail();
+			detail.setStockroom(stockroom);
+			detail.setItem(item);
+			detail.setQuantity(quantity / DETAIL_COUNT);
+			stock.addDetail(detail);
+
+			total += detail.getQuantity();
+		}
+		stock.setQuantity(total);
+
+		return stock;
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.openhmis.inventory.api.model.Item;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+
+public class StockOperationDependencyResolverTest {
+	/**
+	 * @verifies return following operations that touch the same item stock
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldReturnFollowingOperationsThatTouchTheSameItemStock() throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Item item = createItem("Item");
+
+		StockOperation receipt = createOperation(null, pharmacy, item);
+		StockOperation distribution = createOperation(pharmacy, null, item);
+
+		List<StockOperation> results =
+		        findDependentOperations(receipt, Arrays.asList(distribution));
+
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(distribution, results.get(0));
+	}
+
+	/**
+	 * @verifies not return following operations for the same item in other stockrooms
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldNotReturnFollowingOperationsForTheSameItemInOtherStockrooms()
+	        throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Stockroom ward = createStockroom("Ward");
+		Item item = createItem("Item");
+
+		StockOperation receipt = createOperation(null, pharmacy, item);
+		StockOperation distribution = createOperation(ward, null, item);
+
+		List<StockOperation> results =
+		        findDependentOperations(receipt, Arrays.asList(distribution));
+
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies not return following operations for other items in the same stockroom
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldNotReturnFollowingOperationsForOtherItemsInTheSameStockroom()
+	        throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Item item = createItem("Item");
+		Item otherItem = createItem("Other Item");
+
+		StockOperation receipt = createOperation(null, pharmacy, item);
+		StockOperation distribution = createOperation(pharmacy, null, otherItem);
+
+		List<StockOperation> results =
+		        findDependentOperations(receipt, Arrays.asList(distribution));
+
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies follow dependencies through transfers
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldFollowDependenciesThroughTransfers() throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Stockroom ward = createStockroom("Ward");
+		Item item = createItem("Item");
+
+		StockOperation receipt = createOperation(null, pharmacy, item);
+		// This happens before the transfer so it does not depend on the receipt
+		StockOperation earlyWardDistribution = createOperation(ward, null, item);
+		StockOperation transfer = createOperation(pharmacy, ward, item);
+		StockOperation wardDistribution = createOperation(ward, null, item);
+
+		List<StockOperation> results =
+		        findDependentOperations(receipt,
+		            Arrays.asList(earlyWardDistribution, transfer, wardDistribution));
+
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(transfer, results.get(0));
+		Assert.assertEquals(wardDistribution, results.get(1));
+	}
+
+	/**
+	 * @verifies follow dependencies through the other items of dependent operations
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldFollowDependenciesThroughTheOtherItemsOfDependentOperations()
+	        throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Item item = createItem("Item");
+		Item otherItem = createItem("Other Item");
+
+		StockOperation receipt = createOperation(null, pharmacy, item);
+		StockOperation distribution = createOperation(pharmacy, null, item, otherItem);
+		StockOperation otherDistribution = createOperation(pharmacy, null, otherItem);
+
+		List<StockOperation> results =
+		        findDependentOperations(receipt,
+		            Arrays.asList(distribution, otherDistribution));
+
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(distribution, results.get(0));
+		Assert.assertEquals(otherDistribution, results.get(1));
+	}
+
+	/**
+	 * @verifies skip rolled back operations
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldSkipRolledBackOperations() throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Stockroom ward = createStockroom("Ward");
+		Item item = createItem("Item");
+
+		StockOperation receipt = createOperation(null, pharmacy, item);
+		StockOperation transfer = createOperation(pharmacy, ward, item);
+		transfer.setStatus(StockOperationStatus.ROLLBACK);
+		StockOperation wardDistribution = createOperation(ward, null, item);
+
+		List<StockOperation> results =
+		        findDependentOperations(receipt, Arrays.asList(transfer, wardDistribution));
+
+		Assert.assertEquals(0, results.size());
+	}
+
+	/**
+	 * @verifies only return operations after the back-dated operation they depend on
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldOnlyReturnOperationsAfterTheBackDatedOperationTheyDependOn()
+	        throws Exception {
+		Stockroom pharmacy = createStockroom("Pharmacy");
+		Stockroom ward = createStockroom("Ward");
+		Item item = createItem("Item");
+
+		StockOperation pharmacyReceipt = createOperation(null, pharmacy, item);
+		StockOperation wardDistribution = createOperation(ward, null, item);
+		StockOperation wardReceipt = createOperation(null, ward, item);
+		StockOperation pharmacyDistribution = createOperation(pharmacy, null, item);
+		StockOperation laterWardDistribution = createOperation(ward, null, item);
+
+		List<StockOperation> results =
+		        findDependentOperations(Arrays.asList(pharmacyReceipt, wardReceipt),
+		            Arrays.asList(pharmacyReceipt, wardDistribution, wardReceipt, pharmacyDistribution,
+		                laterWardDistribution));
+
+		// The first ward distribution happens before the ward receipt so it does not depend on the batch
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(pharmacyDistribution, results.get(0));
+		Assert.assertEquals(laterWardDistribution, results.get(1));
+	}
+
+	/**
+	 * @verifies return far fewer operations than all following operations
+	 * @see StockOperationDependencyResolver#isDependent(StockOperation)
+	 */
+	@Test
+	public void isDependent_shouldReturnFarFewerOperationsThanAllFollowingOperations() throws Exception {
+		/*
+			Builds a synthetic history for a number of sites, each with a main store that receives stock and transfers it to
+			a few wards, which then distribute it. Every following operation used to be replayed for a back-dated receipt;
+			only the dependent operations are replayed now. The replay itself is checked against the database by
+			IStockOperationServiceTest.
+		 */
+		final int siteCount = 10;
+		final int wardsPerSite = 5;
+		final int itemCount = 100;
+		final int operationCount = 20000;
+
+		Random random = new Random(42);
+		List<Item> items = new ArrayList<Item>(itemCount);
+		for (int i = 0; i < itemCount; i++) {
+			items.add(createItem("Item " + i));
+		}
+
+		List<Stockroom[]> sites = new ArrayList<Stockroom[]>(siteCount);
+		for (int s = 0; s < siteCount; s++) {
+			Stockroom[] rooms = new Stockroom[wardsPerSite + 1];
+			for (int r = 0; r < rooms.length; r++) {
+				rooms[r] = createStockroom("Site " + s + " Room " + r);
+			}
+			sites.add(rooms);
+		}
+
+		List<StockOperation> history = new ArrayList<StockOperation>(operationCount);
+		for (int i = 0; i < operationCount; i++) {
+			Stockroom[] rooms = sites.get(random.nextInt(siteCount));
+			Stockroom ward = rooms[1 + random.nextInt(wardsPerSite)];
+			Item item = items.get(random.nextInt(itemCount));
+
+			int type = random.nextInt(10);
+			if (type < 2) {
+				history.add(createOperation(null, rooms[0], item));
+			} else if (type < 4) {
+				history.add(createOperation(rooms[0], ward, item));
+			} else {
+				history.add(createOperation(ward, null, item));
+			}
+		}
+
+		StockOperation backDated = createOperation(null, sites.get(0)[0], items.get(0));
+
+		List<StockOperation> dependent = findDependentOperations(backDated, history);
+
+		Assert.assertTrue(dependent.size() > 0);
+		Assert.assertTrue(dependent.size() * 10 < history.size());
+	}
+
+	private static List<StockOperation> findDependentOperations(StockOperation backDated, List<StockOperation> following) {
+		List<StockOperation> operations = new ArrayList<StockOperation>(following.size() + 1);
+		operations.add(backDated);
+		operations.addAll(following);
+
+		return findDependentOperations(Collections.singletonList(backDated), operations);
+	}
+
+	private static List<StockOperation> findDependentOperations(Collection<StockOperation> backDated,
+	        List<StockOperation> operations) {
+		// Check the operations the same way the stock operation service does while it streams the following operations
+		StockOperationDependencyResolver resolver = new StockOperationDependencyResolver();
+		List<StockOperation> results = new ArrayList<StockOperation>();
+		for (StockOperation operation : operations) {
+			if (backDated.contains(operation)) {
+				resolver.addBackDatedOperation(operation);
+			} else if (resolver.isDependent(operation)) {
+				results.add(operation);
+			}
+		}
+
+		return results;
+	}
+
+	private static StockOperation createOperation(Stockroom source, Stockroom destination, Item... items) {
+		StockOperation operation = new StockOperation();
+		operation.setStatus(StockOperationStatus.COMPLETED);
+		operation.setSource(source);
+		operation.setDestination(destination);
+
+		for (Item item : items) {
+			operation.addItem(item, 1);
+		}
+
+		return operation;
+	}
+
+	private static Stockroom createStockroom(String name) {
+		Stockroom stockroom = new Stockroom();
+		stockroom.setName(name);
+
+		return stockroom;
+	}
+
+	private static Item createItem(String name) {
+		Item item = new Item();
+		item.setName(name);
+
+		return item;
+	}
+}
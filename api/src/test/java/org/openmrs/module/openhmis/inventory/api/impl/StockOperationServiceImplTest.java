@@ -5,12 +5,16 @@ import static org.openmrs.module.openhmis.inventory.ModuleSettings.isNegativeSto
 
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
 import org.apache.commons.lang3.time.DateUtils;
+import org.javatuples.Pair;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +43,7 @@ import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationItem;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
@@ -62,6 +67,7 @@ public class StockOperationServiceImplTest extends BaseModuleContextTest {
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 
 		stockroomDataService = Context.getService(IStockroomDataService.class);
 		itemDataService = Context.getService(IItemDataService.class);
@@ -101,6 +107,46 @@ public class StockOperationServiceImplTest extends BaseModuleContextTest {
 		return results.size() == 0 ? null : results;
 	}
 
+	/**
+	 * @verifies release the item stock locks before an enclosing transaction is committed
+	 * @see StockOperationServiceImpl#submitOperation(org.openmrs.module.openhmis.inventory.api.model.StockOperation)
+	 */
+	@Test
+	public void submitOperation_shouldReleaseTheItemStockLocksBeforeAnEnclosingTransactionIsCommitted() throws Exception {
+		// The test transaction is still open once the operation has been submitted
+		Assert.assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+
+		Stockroom source = stockroomDataService.getById(0);
+		Item item = itemDataService.getById(0);
+
+		StockOperation operation = operationTest.createEntity(true);
+		operation.getReserved().clear();
+		operation.setInstanceType(WellKnownOperationTypes.getDistribution());
+		operation.setSource(source);
+		operation.setPatient(Context.getPatientService().getPatient(1));
+		operation.addItem(item, 1);
+
+		service.submitOperation(operation);
+
+		// The operation is not retried in an enclosing transaction, so another thread can change the same item stock before
+		//  that transaction is committed and the item stock version check is what stops the change from being lost
+		final List<Pair<Stockroom, Item>> keys = Collections.singletonList(Pair.with(source, item));
+		final boolean[] locked = new boolean[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				IStockLock lock = StockOperationServiceImpl.LOCAL_LOCKS.lockShared(keys);
+				locked[0] = true;
+				lock.release();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		thread.join(TimeUnit.SECONDS.toMillis(10));
+
+		Assert.assertTrue(locked[0]);
+	}
+
 	/**
 	 * @verifies use furthest expiration from the source stockroom
 	 * @see StockOperationServiceImpl#calculateReservations(org.openmrs.module.openhmis.inventory.api.model.StockOperation)
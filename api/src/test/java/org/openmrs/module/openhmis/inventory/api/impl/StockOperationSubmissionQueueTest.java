@@ -0,0 +1,335 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.openhmis.commons.api.f.Action1;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmission;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmissionState;
+
+public class StockOperationSubmissionQueueTest {
+	private StockOperationSubmissionQueue queue;
+
+	@After
+	public void after() {
+		if (queue != null) {
+			queue.stop();
+		}
+	}
+
+	/**
+	 * @verifies process queued operations on a worker thread
+	 * @see StockOperationSubmissionQueue#enqueue(StockOperation, StockOperationStatus)
+	 */
+	@Test(timeout = 30000)
+	public void enqueue_shouldProcessQueuedOperationsOnAWorkerThread() throws Exception {
+		final Thread requestThread = Thread.currentThread();
+		final CountDownLatch processed = new CountDownLatch(1);
+		queue = new StockOperationSubmissionQueue(10, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				Assert.assertNotSame(requestThread, Thread.currentThread());
+				submission.setOperationStatus(submission.getRequestedStatus());
+				processed.countDown();
+			}
+		});
+		queue.start();
+
+		StockOperation operation = createOperation();
+		StockOperationSubmission submission = queue.enqueue(operation, StockOperationStatus.COMPLETED);
+		Assert.assertNotNull(submission.getQueuedOn());
+		Assert.assertSame(submission, queue.getSubmission(operation.getUuid()));
+
+		Assert.assertTrue(processed.await(10, TimeUnit.SECONDS));
+		waitForState(submission, StockOperationSubmissionState.COMPLETED);
+
+		Assert.assertEquals(StockOperationStatus.COMPLETED, submission.getOperationStatus());
+		Assert.assertNull(submission.getErrorMessage());
+		Assert.assertNotNull(submission.getCompletedOn());
+		Assert.assertEquals(1, queue.getSubmittedCount());
+		Assert.assertEquals(1, queue.getCompletedCount());
+		Assert.assertEquals(0, queue.getFailedCount());
+	}
+
+	/**
+	 * @verifies keep the user that submitted the operation
+	 * @see StockOperationSubmissionQueue#enqueue(StockOperation, StockOperationStatus, String)
+	 */
+	@Test(timeout = 30000)
+	public void enqueue_shouldKeepTheUserThatSubmittedTheOperation() throws Exception {
+		final String userUuid = UUID.randomUUID().toString();
+		final AtomicReference<String> processedBy = new AtomicReference<String>();
+		queue = new StockOperationSubmissionQueue(10, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				processedBy.set(submission.getSubmittedBy());
+			}
+		});
+		queue.start();
+
+		StockOperationSubmission submission = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED, userUuid);
+		Assert.assertEquals(userUuid, submission.getSubmittedBy());
+
+		waitForState(submission, StockOperationSubmissionState.COMPLETED);
+		Assert.assertEquals(userUuid, processedBy.get());
+	}
+
+	/**
+	 * @verifies fail the submission if the operation cannot be processed
+	 * @see StockOperationSubmissionQueue#enqueue(StockOperation, StockOperationStatus)
+	 */
+	@Test(timeout = 30000)
+	public void enqueue_shouldFailTheSubmissionIfTheOperationCannotBeProcessed() throws Exception {
+		queue = new StockOperationSubmissionQueue(10, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				throw new IllegalStateException("Not enough stock");
+			}
+		});
+		queue.start();
+
+		StockOperationSubmission submission = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+		waitForState(submission, StockOperationSubmissionState.FAILED);
+
+		Assert.assertEquals("Not enough stock", submission.getErrorMessage());
+		Assert.assertEquals(1, queue.getFailedCount());
+		Assert.assertEquals(0, queue.getCompletedCount());
+	}
+
+	/**
+	 * @verifies reject operations with a retry hint when the queue is full
+	 * @see StockOperationSubmissionQueue#enqueue(StockOperation, StockOperationStatus)
+	 */
+	@Test(timeout = 30000)
+	public void enqueue_shouldRejectOperationsWithARetryHintWhenTheQueueIsFull() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		queue = new StockOperationSubmissionQueue(1, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		queue.start();
+
+		try {
+			// The first operation keeps the only worker busy and the second fills the queue
+			StockOperationSubmission first = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+			StockOperationSubmission second = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+			Assert.assertEquals(StockOperationSubmissionState.QUEUED, second.getState());
+			Assert.assertTrue(queue.isFull());
+			Assert.assertEquals(1, queue.getQueueDepth());
+			Assert.assertEquals(1, queue.getActiveCount());
+
+			StockOperation rejectedOperation = createOperation();
+			StockOperationSubmission rejected = queue.enqueue(rejectedOperation, StockOperationStatus.COMPLETED);
+			Assert.assertEquals(StockOperationSubmissionState.REJECTED, rejected.getState());
+			Assert.assertNotNull(rejected.getRetryAfterSeconds());
+			Assert.assertTrue(rejected.getRetryAfterSeconds() > 0);
+			Assert.assertNull(queue.getSubmission(rejectedOperation.getUuid()));
+			Assert.assertEquals(1, queue.getRejectedCount());
+
+			release.countDown();
+			waitForState(first, StockOperationSubmissionState.COMPLETED);
+			waitForState(second, StockOperationSubmissionState.COMPLETED);
+		} finally {
+			release.countDown();
+		}
+	}
+
+	/**
+	 * @verifies return the existing submission if the operation is already queued
+	 * @see StockOperationSubmissionQueue#enqueue(StockOperation, StockOperationStatus)
+	 */
+	@Test(timeout = 30000)
+	public void enqueue_shouldReturnTheExistingSubmissionIfTheOperationIsAlreadyQueued() throws Exception {
+		queue = new StockOperationSubmissionQueue(10, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		queue.start();
+
+		StockOperation operation = createOperation();
+		StockOperationSubmission first = queue.enqueue(operation, StockOperationStatus.COMPLETED);
+		StockOperationSubmission second = queue.enqueue(operation, StockOperationStatus.COMPLETED);
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, queue.getSubmittedCount());
+	}
+
+	/**
+	 * @verifies only queue an operation once when it is submitted concurrently
+	 * @see StockOperationSubmissionQueue#enqueue(StockOperation, StockOperationStatus)
+	 */
+	@Test(timeout = 30000)
+	public void enqueue_shouldOnlyQueueAnOperationOnceWhenItIsSubmittedConcurrently() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger processed = new AtomicInteger();
+		queue = new StockOperationSubmissionQueue(100, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				processed.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		queue.start();
+
+		final StockOperation operation = createOperation();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Callable<StockOperationSubmission>> tasks = new ArrayList<Callable<StockOperationSubmission>>();
+		for (int i = 0; i < 16; i++) {
+			tasks.add(new Callable<StockOperationSubmission>() {
+				@Override
+				public StockOperationSubmission call() throws Exception {
+					start.await();
+
+					return queue.enqueue(operation, StockOperationStatus.COMPLETED);
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<Future<StockOperationSubmission>> futures = new ArrayList<Future<StockOperationSubmission>>();
+			for (Callable<StockOperationSubmission> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			start.countDown();
+
+			StockOperationSubmission submission = futures.get(0).get();
+			for (Future<StockOperationSubmission> future : futures) {
+				Assert.assertSame(submission, future.get());
+			}
+
+			Assert.assertEquals(1, queue.getSubmittedCount());
+			release.countDown();
+			waitForState(submission, StockOperationSubmissionState.COMPLETED);
+			Assert.assertEquals(1, processed.get());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @verifies track the time that operations wait in the queue
+	 * @see StockOperationSubmissionQueue#getAverageWaitTime()
+	 */
+	@Test(timeout = 30000)
+	public void getAverageWaitTime_shouldTrackTheTimeThatOperationsWaitInTheQueue() throws Exception {
+		queue = new StockOperationSubmissionQueue(10, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		queue.start();
+
+		StockOperationSubmission first = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+		StockOperationSubmission second = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+		waitForState(first, StockOperationSubmissionState.COMPLETED);
+		waitForState(second, StockOperationSubmissionState.COMPLETED);
+
+		// The second operation had to wait for the first to be processed
+		Assert.assertTrue(queue.getMaxWaitTime() >= 50);
+		Assert.assertTrue(queue.getAverageWaitTime() > 0);
+		Assert.assertTrue(queue.getAverageProcessingTime() >= 50);
+		Assert.assertEquals(0, queue.getQueueDepth());
+	}
+
+	/**
+	 * @verifies fail queued operations when the queue is stopped
+	 * @see StockOperationSubmissionQueue#stop()
+	 */
+	@Test
+	public void stop_shouldFailQueuedOperations() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		queue = new StockOperationSubmissionQueue(10, 1, new Action1<StockOperationSubmission>() {
+			@Override
+			public void apply(StockOperationSubmission submission) {
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		queue.start();
+
+		try {
+			queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+			StockOperationSubmission waiting = queue.enqueue(createOperation(), StockOperationStatus.COMPLETED);
+			Thread.sleep(200);
+
+			queue.stop();
+
+			Assert.assertEquals(StockOperationSubmissionState.FAILED, waiting.getState());
+			Assert.assertNotNull(waiting.getErrorMessage());
+			Assert.assertFalse(queue.isRunning());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	private static StockOperation createOperation() {
+		StockOperation operation = new StockOperation();
+		operation.setUuid(UUID.randomUUID().toString());
+		operation.setStatus(StockOperationStatus.NEW);
+
+		return operation;
+	}
+
+	private static void waitForState(StockOperationSubmission submission, StockOperationSubmissionState state)
+	        throws InterruptedException {
+		while (submission.getState() != state) {
+			Thread.sleep(10);
+		}
+	}
+}
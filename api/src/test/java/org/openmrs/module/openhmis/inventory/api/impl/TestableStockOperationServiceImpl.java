@@ -1,7 +1,9 @@
 package org.openmrs.module.openhmis.inventory.api.impl;
 
 import org.openmrs.module.openhmis.inventory.api.IItemStockDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockCheckpointDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationTransactionDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
 import org.openmrs.module.openhmis.inventory.api.ITestableStockOperationService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,7 +11,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 public class TestableStockOperationServiceImpl extends StockOperationServiceImpl implements ITestableStockOperationService {
 	@Autowired
 	public TestableStockOperationServiceImpl(IStockOperationDataService operationService,
-	    IStockroomDataService stockroomService, IItemStockDataService itemStockService) {
-		super(operationService, stockroomService, itemStockService);
+	    IStockroomDataService stockroomService, IItemStockDataService itemStockService,
+	    IStockOperationTransactionDataService transactionService, IStockCheckpointDataService checkpointService) {
+		super(operationService, stockroomService, itemStockService, transactionService, checkpointService);
 	}
 }
@@ -22,6 +22,7 @@ public abstract class BaseOperationTypeTest extends BaseModuleContextTest {
 		executeDataSet(TestConstants.CORE_DATASET);
 		executeDataSet(IItemDataServiceTest.ITEM_DATASET);
 		executeDataSet(IStockroomDataServiceTest.DATASET);
+		executeDataSet(TestConstants.ID_GENERATOR_DATASET);
 		executeDataSet(DATASET);
 
 		stockOperationTypeDataService = Context.getService(IStockOperationTypeDataService.class);
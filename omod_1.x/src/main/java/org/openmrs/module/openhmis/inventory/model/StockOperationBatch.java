@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.openhmis.inventory.model;
+
+import java.util.List;
+
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationResult;
+
+/**
+ * View model class that represents a batch of stock operations to submit together.
+ */
+public class StockOperationBatch extends BaseOpenmrsObject {
+	public static final long serialVersionUID = 0L;
+
+	private List<StockOperation> operations;
+	private List<StockOperationResult> results;
+
+	public List<StockOperation> getOperations() {
+		return operations;
+	}
+
+	public void setOperations(List<StockOperation> operations) {
+		this.operations = operations;
+	}
+
+	public List<StockOperationResult> getResults() {
+		return results;
+	}
+
+	public void setResults(List<StockOperationResult> results) {
+		this.results = results;
+	}
+
+	@Override
+	public Integer getId() {
+		return null;
+	}
+
+	@Override
+	public void setId(Integer id) {
+
+	}
+}
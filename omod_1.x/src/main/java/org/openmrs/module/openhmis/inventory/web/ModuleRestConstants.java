@@ -38,6 +38,7 @@ public class ModuleRestConstants extends ModuleWebConstants {
 	public static final String ITEM_ATTRIBUTE_TYPE_RESOURCE = MODULE_REST_ROOT + "itemAttributeType";
 	public static final String INVENTORY_STOCK_TAKE_RESOURCE = MODULE_REST_ROOT + "inventoryStockTake";
 	public static final String INVENTORY_STOCK_TAKE_SUMMARY_RESOURCE = MODULE_REST_ROOT + "inventoryStockTakeSummary";
+	public static final String ITEM_STOCK_SCAN_RESOURCE = MODULE_REST_ROOT + "itemStockScan";
 
 	public static final String OPERATION_RESOURCE = MODULE_REST_ROOT + "stockOperation";
 	public static final String OPERATION_TYPE_RESOURCE = MODULE_REST_ROOT + "stockOperationType";
@@ -45,6 +46,8 @@ public class ModuleRestConstants extends ModuleWebConstants {
 	public static final String OPERATION_ATTRIBUTE_RESOURCE = MODULE_REST_ROOT + "stockOperationAttribute";
 	public static final String OPERATION_ATTRIBUTE_TYPE_RESOURCE = MODULE_REST_ROOT + "stockOperationAttributeType";
 	public static final String OPERATION_TRANSACTION_RESOURCE = MODULE_REST_ROOT + "stockOperationTransaction";
+	public static final String OPERATION_BATCH_RESOURCE = MODULE_REST_ROOT + "stockOperationBatch";
+	public static final String OPERATION_SUBMISSION_RESOURCE = MODULE_REST_ROOT + "stockOperationSubmission";
 
 	public static final String RESERVATION_TRANSACTION_RESOURCE = MODULE_REST_ROOT + "reservationTransaction";
 
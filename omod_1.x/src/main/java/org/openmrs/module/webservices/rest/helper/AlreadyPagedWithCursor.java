@@ -0,0 +1,52 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.helper;
+
+import java.util.List;
+
+import org.openmrs.module.openhmis.inventory.api.CursorPagingInfo;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.resource.api.Converter;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+
+/**
+ * A page of results that was loaded with a {@link CursorPagingInfo}. Rather than a link to the next page index, the result
+ * includes the cursor for the next page (if there is one) and the total record count (if it was requested).
+ * @param <T> The result type.
+ */
+public class AlreadyPagedWithCursor<T> extends AlreadyPaged<T> {
+	private final CursorPagingInfo pagingInfo;
+
+	public AlreadyPagedWithCursor(RequestContext context, List<T> results, CursorPagingInfo pagingInfo) {
+		// The next page is found with the cursor so no next page link is created
+		super(context, results, false);
+
+		this.pagingInfo = pagingInfo;
+	}
+
+	@Override
+	public SimpleObject toSimpleObject(Converter preferredConverter) throws ResponseException {
+		SimpleObject result = super.toSimpleObject(preferredConverter);
+		if (pagingInfo.hasNextCursor()) {
+			result.add(CursorPagingUtil.CURSOR_PARAMETER, pagingInfo.getNextCursor());
+		}
+		if (pagingInfo.getTotalRecordCount() != null) {
+			result.add(CursorPagingUtil.TOTAL_COUNT_PARAMETER, pagingInfo.getTotalRecordCount());
+		}
+
+		return result;
+	}
+}
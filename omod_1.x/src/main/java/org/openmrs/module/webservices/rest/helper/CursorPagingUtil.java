@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.helper;
+
+import java.util.List;
+
+import org.openmrs.module.openhmis.commons.api.PagingInfo;
+import org.openmrs.module.openhmis.inventory.api.CursorPagingInfo;
+import org.openmrs.module.webservices.rest.resource.AlreadyPagedWithLength;
+import org.openmrs.module.webservices.rest.resource.PagingUtil;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
+
+/**
+ * Helper class for resources and search handlers that support paging with a cursor. A request pages with a cursor when it
+ * includes the {@code cursor} parameter; the first page is requested with an empty cursor and each response includes the
+ * cursor for the following page.
+ */
+public class CursorPagingUtil {
+	public static final String CURSOR_PARAMETER = "cursor";
+	public static final String TOTAL_COUNT_PARAMETER = "totalCount";
+
+	protected CursorPagingUtil() {}
+
+	/**
+	 * Gets the paging information for the request, which is a {@link CursorPagingInfo} when the request includes a cursor.
+	 * The total record count is only loaded for cursor paging when the {@code totalCount} parameter is {@code true}.
+	 * @param context The request context.
+	 * @return The paging information.
+	 */
+	public static PagingInfo getPagingInfoFromContext(RequestContext context) {
+		String cursor = context.getParameter(CURSOR_PARAMETER);
+		if (cursor == null) {
+			return PagingUtil.getPagingInfoFromContext(context);
+		}
+
+		CursorPagingInfo pagingInfo = new CursorPagingInfo(cursor, context.getLimit());
+		pagingInfo.setLoadRecordCount(Boolean.parseBoolean(context.getParameter(TOTAL_COUNT_PARAMETER)));
+
+		return pagingInfo;
+	}
+
+	/**
+	 * Creates the result for a page of results loaded with the specified paging information.
+	 * @param context The request context.
+	 * @param results The page of results.
+	 * @param pagingInfo The paging information used to load the results or {@code null} if the results are not paged.
+	 * @param <T> The result type.
+	 * @return The pageable result.
+	 */
+	public static <T> PageableResult createResult(RequestContext context, List<T> results, PagingInfo pagingInfo) {
+		if (pagingInfo == null) {
+			return new AlreadyPaged<T>(context, results, false);
+		} else if (pagingInfo instanceof CursorPagingInfo) {
+			return new AlreadyPagedWithCursor<T>(context, results, (CursorPagingInfo)pagingInfo);
+		}
+
+		return new AlreadyPagedWithLength<T>(context, results, pagingInfo.hasMoreResults(),
+		        pagingInfo.getTotalRecordCount());
+	}
+}
@@ -18,6 +18,7 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.openhmis.commons.api.util.IdgenUtil;
 import org.openmrs.module.openhmis.commons.api.util.ModuleUtil;
 import org.openmrs.module.openhmis.inventory.ModuleSettings;
+import org.openmrs.module.openhmis.inventory.api.impl.OperationNumberPool;
 
 /**
  * Helper class for ID number generation.
@@ -32,6 +33,12 @@ public class IdgenHelper {
 
 	public static String generateId() {
 		try {
+			// Use the pre-reserved operation numbers when the pool is running
+			OperationNumberPool pool = OperationNumberPool.getInstance();
+			if (pool != null && pool.isRunning()) {
+				return pool.next();
+			}
+
 			String generatedId = IdgenUtil.generateId(ModuleSettings.OPERATION_NUMBER_IDENTIFIER_SOURCE_ID_PROPERTY);
 			return generatedId;
 		} catch (Exception ex) {
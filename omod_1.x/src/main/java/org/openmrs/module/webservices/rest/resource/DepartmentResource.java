@@ -34,6 +34,7 @@ public class DepartmentResource extends BaseRestMetadataResource<Department> {
 	public DelegatingResourceDescription getRepresentationDescription(Representation rep) {
 		DelegatingResourceDescription description = super.getRepresentationDescription(rep);
 		description.addProperty("description", Representation.REF);
+		description.addProperty("allocationStrategy");
 
 		return description;
 	}
@@ -63,6 +63,7 @@ public class ItemResource extends BaseRestSimpleCustomizableMetadataResource<Ite
 			description.addProperty("prices", Representation.REF);
 			description.addProperty("concept", Representation.REF);
 			description.addProperty("buyingPrice");
+			description.addProperty("allocationStrategy");
 		}
 
 		description.addProperty("defaultPrice", Representation.REF);
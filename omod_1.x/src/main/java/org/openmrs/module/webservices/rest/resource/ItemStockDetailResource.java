@@ -24,6 +24,7 @@ import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
 import org.openmrs.module.openhmis.inventory.api.model.ItemStockDetail;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
+import org.openmrs.module.webservices.rest.helper.CursorPagingUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.annotation.Resource;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
@@ -58,13 +59,11 @@ public class ItemStockDetailResource extends ItemStockDetailBaseResource<ItemSto
 		PageableResult result;
 		String stockroomUuid = context.getParameter("stockroom_uuid");
 		if (StringUtils.isNotBlank(stockroomUuid)) {
-			PagingInfo pagingInfo = PagingUtil.getPagingInfoFromContext(context);
+			PagingInfo pagingInfo = CursorPagingUtil.getPagingInfoFromContext(context);
 			Stockroom stockroom = stockroomDataService.getByUuid(stockroomUuid);
 			List<ItemStockDetail> itemStockDetails =
 			        itemStockDetailDataService.getItemStockDetailsByStockroom(stockroom, pagingInfo);
-			result =
-			        new AlreadyPagedWithLength<ItemStockDetail>(context, itemStockDetails, pagingInfo.hasMoreResults(),
-			                pagingInfo.getTotalRecordCount());
+			result = CursorPagingUtil.createResult(context, itemStockDetails, pagingInfo);
 		} else {
 			result = super.doSearch(context);
 		}
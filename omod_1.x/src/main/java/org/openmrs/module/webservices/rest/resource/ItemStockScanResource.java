@@ -0,0 +1,145 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.inventory.api.IItemStockDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
+import org.openmrs.module.openhmis.inventory.api.impl.ItemStockCache;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockScan;
+import org.openmrs.module.openhmis.inventory.api.model.ItemStockSnapshot;
+import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
+import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
+import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+
+/**
+ * REST resource representing an {@link ItemStockScan}. Searching with the {@code code} and {@code stockroom_uuid}
+ * parameters returns the item for a scanned code along with its stock in the stockroom. Getting all scans returns the
+ * item stock cache metrics.
+ */
+@Resource(name = ModuleRestConstants.ITEM_STOCK_SCAN_RESOURCE, supportedClass = ItemStockScan.class,
+        supportedOpenmrsVersions = { "1.9.*", "1.10.*", "1.11.*", "1.12.*", "2.*" })
+public class ItemStockScanResource extends DelegatingCrudResource<ItemStockScan> {
+
+	private IStockroomDataService stockroomDataService;
+	private IItemStockDataService itemStockDataService;
+
+	public ItemStockScanResource() {
+		this.stockroomDataService = Context.getService(IStockroomDataService.class);
+		this.itemStockDataService = Context.getService(IItemStockDataService.class);
+	}
+
+	@Override
+	public DelegatingResourceDescription getRepresentationDescription(Representation rep) {
+		DelegatingResourceDescription description = new DelegatingResourceDescription();
+		description.addProperty("item", Representation.DEFAULT);
+		description.addProperty("stockroom", Representation.REF);
+		description.addProperty("quantity", Representation.DEFAULT);
+		description.addProperty("nearestExpiration", Representation.DEFAULT);
+
+		return description;
+	}
+
+	@PropertyGetter("nearestExpiration")
+	public SimpleObject getNearestExpiration(ItemStockScan scan) {
+		ItemStockSnapshot.Detail detail = scan.getNearestExpiration();
+		if (detail == null) {
+			return null;
+		}
+
+		SimpleObject result = new SimpleObject();
+		result.put("expiration", detail.getExpiration());
+		result.put("quantity", detail.getQuantity());
+		result.put("calculatedExpiration", detail.getCalculatedExpiration());
+
+		return result;
+	}
+
+	@Override
+	public ItemStockScan newDelegate() {
+		return new ItemStockScan();
+	}
+
+	@Override
+	protected PageableResult doSearch(RequestContext context) {
+		String code = context.getParameter("code");
+		String stockroomUuid = context.getParameter("stockroom_uuid");
+		if (StringUtils.isBlank(code) || StringUtils.isBlank(stockroomUuid)) {
+			return super.doSearch(context);
+		}
+
+		Stockroom stockroom = stockroomDataService.getByUuid(stockroomUuid);
+		ItemStockScan scan = stockroom == null ? null : itemStockDataService.getItemStockByCode(code, stockroom);
+		if (scan == null) {
+			return new EmptySearchResult();
+		}
+
+		List<ItemStockScan> results = new ArrayList<ItemStockScan>(1);
+		results.add(scan);
+
+		return new AlreadyPaged<ItemStockScan>(context, results, false);
+	}
+
+	@Override
+	public SimpleObject getAll(RequestContext context) throws ResponseException {
+		SimpleObject result = new SimpleObject();
+
+		ItemStockCache cache = ItemStockCache.getInstance();
+		result.put("enabled", cache != null);
+		if (cache != null) {
+			result.put("size", cache.size());
+			result.put("maxSize", cache.getMaxSize());
+			result.put("hitCount", cache.getHitCount());
+			result.put("missCount", cache.getMissCount());
+			result.put("evictionCount", cache.getEvictionCount());
+			result.put("hitRatio", cache.getHitRatio());
+		}
+
+		return result;
+	}
+
+	@Override
+	public ItemStockScan save(ItemStockScan delegate) {
+		return null;
+	}
+
+	@Override
+	public ItemStockScan getByUniqueId(String uniqueId) {
+		return null;
+	}
+
+	@Override
+	protected void delete(ItemStockScan delegate, String reason, RequestContext context) throws ResponseException {
+		// Deletes not supported
+	}
+
+	@Override
+	public void purge(ItemStockScan delegate, RequestContext context) throws ResponseException {
+		// Purges not supported
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.commons.api.entity.IObjectDataService;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationService;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationResult;
+import org.openmrs.module.openhmis.inventory.model.StockOperationBatch;
+import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
+
+/**
+ * REST resource representing a {@link StockOperationBatch}. Posting a batch submits all of its operations in a single
+ * request and returns the result for each operation.
+ */
+@Resource(name = ModuleRestConstants.OPERATION_BATCH_RESOURCE, supportedClass = StockOperationBatch.class,
+        supportedOpenmrsVersions = { "1.9.*", "1.10.*", "1.11.*", "1.12.*", "2.*" })
+public class StockOperationBatchResource extends BaseRestObjectResource<StockOperationBatch> {
+	private IStockOperationService operationService;
+
+	public StockOperationBatchResource() {
+		this.operationService = Context.getService(IStockOperationService.class);
+	}
+
+	@Override
+	public DelegatingResourceDescription getRepresentationDescription(Representation rep) {
+		DelegatingResourceDescription description = super.getRepresentationDescription(rep);
+		description.removeProperty("name");
+		description.removeProperty("description");
+		description.addProperty("results", findMethod("getOperationResults"));
+
+		return description;
+	}
+
+	@Override
+	public DelegatingResourceDescription getCreatableProperties() {
+		DelegatingResourceDescription description = new DelegatingResourceDescription();
+		description.addProperty("operations");
+
+		return description;
+	}
+
+	@Override
+	public StockOperationBatch newDelegate() {
+		return new StockOperationBatch();
+	}
+
+	@Override
+	public StockOperationBatch save(StockOperationBatch delegate) {
+		List<StockOperation> operations = delegate.getOperations();
+		if (operations == null) {
+			operations = new ArrayList<StockOperation>();
+		}
+
+		try {
+			// Operations the current user cannot process are reported as failed rather than failing the whole batch
+			List<StockOperation> authorized = new ArrayList<StockOperation>(operations.size());
+			for (StockOperation operation : operations) {
+				if (operation.getInstanceType() == null
+				        || StockOperationTypeResource.userCanProcess(operation.getInstanceType())) {
+					authorized.add(operation);
+				}
+			}
+
+			List<StockOperationResult> submitted = operationService.submitOperations(authorized);
+
+			List<StockOperationResult> results = new ArrayList<StockOperationResult>(operations.size());
+			int index = 0;
+			for (StockOperation operation : operations) {
+				if (index < authorized.size() && authorized.get(index) == operation) {
+					results.add(submitted.get(index++));
+				} else {
+					results.add(new StockOperationResult(operation,
+					        "The current user is not authorized to process this operation."));
+				}
+			}
+
+			delegate.setResults(results);
+		} finally {
+			// Converting the operations sets the submit flags on the operation resource but they are submitted here instead
+			StockOperationResource operationResource =
+			        (StockOperationResource)Context.getService(RestService.class).getResourceBySupportedClass(
+			            StockOperation.class);
+			operationResource.clearRequiredActions();
+		}
+
+		return delegate;
+	}
+
+	public List<SimpleObject> getOperationResults(StockOperationBatch batch) {
+		List<SimpleObject> results = new ArrayList<SimpleObject>();
+		if (batch.getResults() == null) {
+			return results;
+		}
+
+		for (StockOperationResult result : batch.getResults()) {
+			StockOperation operation = result.getOperation();
+
+			SimpleObject item = new SimpleObject();
+			item.put("uuid", operation == null ? null : operation.getUuid());
+			item.put("operationNumber", operation == null ? null : operation.getOperationNumber());
+			item.put("status",
+			    operation == null || operation.getStatus() == null ? null : operation.getStatus().name());
+			item.put("success", result.isSuccessful());
+			item.put("error", result.getErrorMessage());
+
+			results.add(item);
+		}
+
+		return results;
+	}
+
+	@Override
+	public Class<? extends IObjectDataService<StockOperationBatch>> getServiceClass() {
+		return null;
+	}
+}
@@ -28,22 +28,28 @@ import org.openmrs.module.openhmis.commons.api.PagingInfo;
 import org.openmrs.module.openhmis.commons.api.Utility;
 import org.openmrs.module.openhmis.commons.api.entity.IMetadataDataService;
 import org.openmrs.module.openhmis.commons.api.f.Action2;
+import org.openmrs.module.openhmis.inventory.ModuleSettings;
 import org.openmrs.module.openhmis.inventory.api.IItemDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationService;
 import org.openmrs.module.openhmis.inventory.api.IStockOperationTypeDataService;
 import org.openmrs.module.openhmis.inventory.api.IStockroomDataService;
+import org.openmrs.module.openhmis.inventory.api.impl.StockOperationSubmissionQueue;
 import org.openmrs.module.openhmis.inventory.api.model.IStockOperationType;
 import org.openmrs.module.openhmis.inventory.api.model.Item;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationAttribute;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationItem;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmission;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmissionState;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.search.StockOperationSearch;
 import org.openmrs.module.openhmis.inventory.api.search.StockOperationTemplate;
 import org.openmrs.module.openhmis.inventory.api.util.PrivilegeConstants;
 import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.helper.CursorPagingUtil;
 import org.openmrs.module.webservices.rest.helper.IdgenHelper;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.annotation.PropertySetter;
@@ -53,7 +59,10 @@ import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
 import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 /**
  * REST resource representing a {@link StockOperation}.
@@ -64,12 +73,15 @@ public class StockOperationResource
         extends BaseRestInstanceCustomizableMetadataResource<StockOperation, IStockOperationType, StockOperationAttribute> {
 	private static final Log LOG = LogFactory.getLog(StockOperationResource.class);
 
+	// The resource is shared by all requests so the per-request submission state is kept on the request
+	private static final String ASYNC_REQUIRED_ATTRIBUTE = StockOperationResource.class.getName() + ".asyncRequired";
+	private static final String REQUIRED_ACTIONS_ATTRIBUTE = StockOperationResource.class.getName() + ".requiredActions";
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+
 	private IStockOperationService operationService;
 	private IStockOperationTypeDataService stockOperationTypeDataService;
 	private IStockroomDataService stockroomDataService;
 	private IItemDataService itemDataService;
-	private boolean submitRequired = false;
-	private boolean rollbackRequired = false;
 
 	public StockOperationResource() {
 		this.operationService = Context.getService(IStockOperationService.class);
@@ -130,6 +142,34 @@ public class StockOperationResource
 		return Context.hasPrivilege(PrivilegeConstants.ROLLBACK_OPERATIONS);
 	}
 
+	@Override
+	public Object create(SimpleObject propertiesToCreate, RequestContext context) throws ResponseException {
+		setRequestAttribute(ASYNC_REQUIRED_ATTRIBUTE, isAsyncRequested(context) ? Boolean.TRUE : null);
+		try {
+			return super.create(propertiesToCreate, context);
+		} catch (SubmissionQueueFullException ex) {
+			setRetryAfter(context, ex);
+
+			throw ex;
+		} finally {
+			setRequestAttribute(ASYNC_REQUIRED_ATTRIBUTE, null);
+		}
+	}
+
+	@Override
+	public Object update(String uuid, SimpleObject propertiesToUpdate, RequestContext context) throws ResponseException {
+		setRequestAttribute(ASYNC_REQUIRED_ATTRIBUTE, isAsyncRequested(context) ? Boolean.TRUE : null);
+		try {
+			return super.update(uuid, propertiesToUpdate, context);
+		} catch (SubmissionQueueFullException ex) {
+			setRetryAfter(context, ex);
+
+			throw ex;
+		} finally {
+			setRequestAttribute(ASYNC_REQUIRED_ATTRIBUTE, null);
+		}
+	}
+
 	@Override
 	public StockOperation save(StockOperation operation) {
 		// Ensure that the current user can process the operation
@@ -140,10 +180,15 @@ public class StockOperationResource
 		StockOperation result;
 
 		// If the status has changed, submit the operation
+		RequiredActions actions = getRequiredActions(false);
 		try {
-			if (submitRequired) {
+			StockOperationSubmissionQueue queue = StockOperationSubmissionQueue.getInstance();
+			boolean asyncRequired = Boolean.TRUE.equals(getRequestAttribute(ASYNC_REQUIRED_ATTRIBUTE));
+			if (actions.submit && asyncRequired && queue != null && queue.isRunning()) {
+				result = submitAsync(queue, operation, actions.previousStatus);
+			} else if (actions.submit) {
 				result = operationService.submitOperation(operation);
-			} else if (rollbackRequired) {
+			} else if (actions.rollback) {
 				if (!userCanRollback(operation)) {
 					throw new RestClientException("The current user not authorized to rollback this operation.");
 				}
@@ -153,13 +198,46 @@ public class StockOperationResource
 				result = super.save(operation);
 			}
 		} finally {
-			submitRequired = false;
-			rollbackRequired = false;
+			clearRequiredActions();
 		}
 
 		return result;
 	}
 
+	/**
+	 * Saves the operation without changing its status and queues it to be submitted by the submission queue workers. The
+	 * submission status can be polled using the {@link StockOperationSubmissionResource}. The workers submit the operation
+	 * as the daemon user, so the current user is recorded on the submission as the user that submitted it.
+	 */
+	protected StockOperation submitAsync(StockOperationSubmissionQueue queue, StockOperation operation,
+	        StockOperationStatus previousStatus) {
+		if (queue.isFull()) {
+			throw new SubmissionQueueFullException(queue.getRetryAfterSeconds());
+		}
+
+		StockOperationStatus requestedStatus = operation.getStatus();
+		operation.setStatus(previousStatus == null ? StockOperationStatus.NEW : previousStatus);
+
+		StockOperation result = super.save(operation);
+
+		User user = Context.getAuthenticatedUser();
+		StockOperationSubmission submission = queue.enqueue(result, requestedStatus, user == null ? null : user.getUuid());
+		if (submission.getState() == StockOperationSubmissionState.REJECTED) {
+			// The operation has been saved with its previous status so it can simply be submitted again later
+			throw new SubmissionQueueFullException(submission.getRetryAfterSeconds());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Clears the submit and rollback flags set by the property setters. This must be called when operations are converted
+	 * by this resource but are not saved through it.
+	 */
+	public void clearRequiredActions() {
+		setRequestAttribute(REQUIRED_ACTIONS_ATTRIBUTE, null);
+	}
+
 	@PropertySetter("operationNumber")
 	public void setOperationNumber(StockOperation instance, String operationNumber) {
 		if (StringUtils.isEmpty(instance.getOperationNumber())) {
@@ -185,10 +263,14 @@ public class StockOperationResource
 	@PropertySetter("status")
 	public void setStatus(StockOperation operation, StockOperationStatus status) {
 		if (operation.getStatus() != status) {
+			RequiredActions actions = getRequiredActions(true);
 			if (status == StockOperationStatus.ROLLBACK) {
-				rollbackRequired = true;
+				actions.rollback = true;
 			} else {
-				submitRequired = true;
+				if (!actions.submit) {
+					actions.previousStatus = operation.getStatus();
+				}
+				actions.submit = true;
 
 				operation.setStatus(status);
 			}
@@ -238,6 +320,56 @@ public class StockOperationResource
 		instance.setOperationDate(date);
 	}
 
+	private boolean isAsyncRequested(RequestContext context) {
+		String async = context.getParameter("async");
+		if (StringUtils.isNotEmpty(async)) {
+			return Boolean.parseBoolean(async);
+		}
+
+		return ModuleSettings.isOperationSubmissionAsync();
+	}
+
+	private static void setRetryAfter(RequestContext context, SubmissionQueueFullException ex) {
+		if (context.getResponse() != null) {
+			context.getResponse().setHeader(RETRY_AFTER_HEADER, String.valueOf(ex.getRetryAfterSeconds()));
+		}
+	}
+
+	/**
+	 * Gets the actions required by the properties set for the current request.
+	 * @param create {@code true} to store new required actions on the request if there are none yet.
+	 * @return The required actions. When there are none on the request and create is {@code false}, or there is no
+	 *         request, actions that do not require anything are returned.
+	 */
+	private static RequiredActions getRequiredActions(boolean create) {
+		RequiredActions actions = (RequiredActions)getRequestAttribute(REQUIRED_ACTIONS_ATTRIBUTE);
+		if (actions == null) {
+			actions = new RequiredActions();
+			if (create) {
+				setRequestAttribute(REQUIRED_ACTIONS_ATTRIBUTE, actions);
+			}
+		}
+
+		return actions;
+	}
+
+	private static Object getRequestAttribute(String name) {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+		return attributes == null ? null : attributes.getAttribute(name, RequestAttributes.SCOPE_REQUEST);
+	}
+
+	private static void setRequestAttribute(String name, Object value) {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes != null) {
+			if (value == null) {
+				attributes.removeAttribute(name, RequestAttributes.SCOPE_REQUEST);
+			} else {
+				attributes.setAttribute(name, value, RequestAttributes.SCOPE_REQUEST);
+			}
+		}
+	}
+
 	@Override
 	protected PageableResult doSearch(RequestContext context) {
 		PageableResult result;
@@ -276,7 +408,7 @@ public class StockOperationResource
 		IStockOperationType stockOperationType = getStockOperationType(context);
 		Item item = getItem(context);
 		Stockroom stockroom = getStockroom(context);
-		PagingInfo pagingInfo = PagingUtil.getPagingInfoFromContext(context);
+		PagingInfo pagingInfo = CursorPagingUtil.getPagingInfoFromContext(context);
 
 		List<StockOperation> results;
 		if (status == null && stockOperationType == null && item == null && stockroom == null) {
@@ -287,12 +419,11 @@ public class StockOperationResource
 			            stockroom, pagingInfo);
 		}
 
-		return new AlreadyPagedWithLength<StockOperation>(context, results, pagingInfo.hasMoreResults(),
-		        pagingInfo.getTotalRecordCount());
+		return CursorPagingUtil.createResult(context, results, pagingInfo);
 	}
 
 	protected PageableResult getOperationsByContextParams(RequestContext context) {
-		PagingInfo pagingInfo = PagingUtil.getPagingInfoFromContext(context);
+		PagingInfo pagingInfo;
 		StockOperationStatus status = getStatus(context);
 		IStockOperationType stockOperationType = getStockOperationType(context);
 		Stockroom stockroom = getStockroom(context);
@@ -300,8 +431,12 @@ public class StockOperationResource
 
 		List<StockOperation> results;
 		if (status == null && stockOperationType == null && item == null) {
+			pagingInfo = PagingUtil.getPagingInfoFromContext(context);
 			results = getService().getAll(context.getIncludeAll(), pagingInfo);
 		} else {
+			// Searched operations can also be paged with a cursor
+			pagingInfo = CursorPagingUtil.getPagingInfoFromContext(context);
+
 			StockOperationSearch search = new StockOperationSearch();
 			StockOperationTemplate template = search.getTemplate();
 			if (status != null) {
@@ -320,8 +455,7 @@ public class StockOperationResource
 			results = ((IStockOperationDataService)getService()).getOperations(search, pagingInfo);
 		}
 
-		return new AlreadyPagedWithLength<StockOperation>(context, results, pagingInfo.hasMoreResults(),
-		        pagingInfo.getTotalRecordCount());
+		return CursorPagingUtil.createResult(context, results, pagingInfo);
 	}
 
 	protected StockOperationStatus getStatus(RequestContext context) {
@@ -427,4 +561,13 @@ public class StockOperationResource
 			}
 		}
 	}
+
+	/**
+	 * The submit or rollback required by the status set for an operation in the current request.
+	 */
+	private static class RequiredActions {
+		private boolean submit;
+		private boolean rollback;
+		private StockOperationStatus previousStatus;
+	}
 }
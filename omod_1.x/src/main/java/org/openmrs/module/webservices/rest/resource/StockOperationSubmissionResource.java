@@ -0,0 +1,131 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.openhmis.inventory.api.IStockOperationDataService;
+import org.openmrs.module.openhmis.inventory.api.impl.StockOperationSubmissionQueue;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmission;
+import org.openmrs.module.openhmis.inventory.api.model.StockOperationSubmissionState;
+import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+
+/**
+ * REST resource representing a {@link StockOperationSubmission}. Clients poll this resource using the operation uuid to
+ * find out when an asynchronously submitted operation has been processed. Getting all submissions returns the submission
+ * queue metrics.
+ */
+@Resource(name = ModuleRestConstants.OPERATION_SUBMISSION_RESOURCE, supportedClass = StockOperationSubmission.class,
+        supportedOpenmrsVersions = { "1.9.*", "1.10.*", "1.11.*", "1.12.*", "2.*" })
+public class StockOperationSubmissionResource extends DelegatingCrudResource<StockOperationSubmission> {
+	private IStockOperationDataService operationDataService;
+
+	public StockOperationSubmissionResource() {
+		this.operationDataService = Context.getService(IStockOperationDataService.class);
+	}
+
+	@Override
+	public DelegatingResourceDescription getRepresentationDescription(Representation rep) {
+		DelegatingResourceDescription description = new DelegatingResourceDescription();
+		description.addProperty("uuid");
+		description.addProperty("operationNumber");
+		description.addProperty("state");
+		description.addProperty("requestedStatus");
+		description.addProperty("submittedBy");
+		description.addProperty("operationStatus");
+		description.addProperty("errorMessage");
+		description.addProperty("queuedOn");
+		description.addProperty("startedOn");
+		description.addProperty("completedOn");
+
+		return description;
+	}
+
+	@Override
+	public StockOperationSubmission newDelegate() {
+		return new StockOperationSubmission();
+	}
+
+	@Override
+	public StockOperationSubmission getByUniqueId(String uniqueId) {
+		StockOperationSubmissionQueue queue = StockOperationSubmissionQueue.getInstance();
+		StockOperationSubmission submission = queue == null ? null : queue.getSubmission(uniqueId);
+		if (submission == null) {
+			// The submission is no longer tracked (or the operation was submitted synchronously) so use the operation status
+			StockOperation operation = operationDataService.getByUuid(uniqueId);
+			if (operation != null && operation.getStatus() != StockOperationStatus.NEW) {
+				submission = new StockOperationSubmission(operation, operation.getStatus());
+				submission.setState(StockOperationSubmissionState.COMPLETED);
+			}
+		}
+
+		return submission;
+	}
+
+	@Override
+	public SimpleObject getAll(RequestContext context) throws ResponseException {
+		SimpleObject result = new SimpleObject();
+
+		StockOperationSubmissionQueue queue = StockOperationSubmissionQueue.getInstance();
+		result.put("running", queue != null && queue.isRunning());
+		if (queue != null) {
+			result.put("capacity", queue.getCapacity());
+			result.put("workerCount", queue.getWorkerCount());
+			result.put("queueDepth", queue.getQueueDepth());
+			result.put("activeCount", queue.getActiveCount());
+			result.put("submittedCount", queue.getSubmittedCount());
+			result.put("completedCount", queue.getCompletedCount());
+			result.put("failedCount", queue.getFailedCount());
+			result.put("rejectedCount", queue.getRejectedCount());
+			result.put("averageWaitTime", queue.getAverageWaitTime());
+			result.put("maxWaitTime", queue.getMaxWaitTime());
+			result.put("averageProcessingTime", queue.getAverageProcessingTime());
+
+			List<String> pending = new ArrayList<String>();
+			for (StockOperationSubmission submission : queue.getPendingSubmissions()) {
+				pending.add(submission.getUuid());
+			}
+			result.put("pending", pending);
+		}
+
+		return result;
+	}
+
+	@Override
+	public StockOperationSubmission save(StockOperationSubmission delegate) {
+		return null;
+	}
+
+	@Override
+	protected void delete(StockOperationSubmission delegate, String reason, RequestContext context)
+	        throws ResponseException {
+		// Deletes not supported
+	}
+
+	@Override
+	public void purge(StockOperationSubmission delegate, RequestContext context) throws ResponseException {
+		// Purges not supported
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * Copyright (C) OpenHMIS.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.resource;
+
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when an operation cannot be queued for submission because the submission queue is full.
+ */
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class SubmissionQueueFullException extends ResponseException {
+	private static final long serialVersionUID = 0L;
+
+	private final int retryAfterSeconds;
+
+	public SubmissionQueueFullException(int retryAfterSeconds) {
+		super("Too many operations are waiting to be processed, please try again in " + retryAfterSeconds + " seconds.");
+
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Gets how long the client should wait before submitting the operation again.
+	 * @return The number of seconds to wait.
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
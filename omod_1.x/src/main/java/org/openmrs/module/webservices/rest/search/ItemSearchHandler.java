@@ -18,7 +18,6 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.module.openhmis.commons.api.PagingInfo;
-import org.openmrs.module.openhmis.commons.api.entity.search.BaseObjectTemplateSearch;
 import org.openmrs.module.openhmis.inventory.ModuleSettings;
 import org.openmrs.module.openhmis.inventory.api.IDepartmentDataService;
 import org.openmrs.module.openhmis.inventory.api.IItemDataService;
@@ -80,34 +79,16 @@ public class ItemSearchHandler
 		List<Item> items = null;
 		PagingInfo pagingInfo = PagingUtil.getPagingInfoFromContext(context);
 
-		// If no parameters are specified, check if the global 'wildcard item search' setting is enabled
-		// and search by name, then by code. If the global 'wildcard' is not enabled, search by code (an exact match),
-		// then by name
-		if (department == null && hasPhysicalInventory == null) {
-			if (query != null) {
-
-				// Check if the global wildcard search is enabled
-				if (ModuleSettings.useWildcardItemSearch()) {
-					query = '%' + query + '%';
-					items = service.getByNameFragment(query, context.getIncludeAll(), pagingInfo);
-				}
-
-				if (items == null || items.size() == 0) {
-					// Try searching by code
-					pagingInfo = PagingUtil.getPagingInfoFromContext(context);
-					items = service.getItemsByCode(query, context.getIncludeAll(), pagingInfo);
-				}
-			}
-
-			if (items == null || items.size() == 0) {
-				//new paging info as otherwise the old one is used and paging does not work
-				pagingInfo = PagingUtil.getPagingInfoFromContext(context);
-				// If no items are found, search by name
-				items = service.getByNameFragment(query, context.getIncludeAll(), pagingInfo);
-			}
+		if (query != null) {
+			// Find the matching item ids in the search index and only load the requested page of items. Items whose name
+			// contains the query are included when the global 'wildcard item search' setting is enabled
+			items = service.searchItems(query, department, hasPhysicalInventory, ModuleSettings.useWildcardItemSearch(),
+			    context.getIncludeAll(), pagingInfo);
+		} else if (department == null && hasPhysicalInventory == null) {
+			items = service.getByNameFragment(query, context.getIncludeAll(), pagingInfo);
 		} else {
 			// Create the item search template with the specified parameters
-			ItemSearch search = createSearchTemplate(context, query, department, hasPhysicalInventory);
+			ItemSearch search = createSearchTemplate(context, department, hasPhysicalInventory);
 
 			items = service.getItemsByItemSearch(search, pagingInfo);
 		}
@@ -116,20 +97,9 @@ public class ItemSearchHandler
 		        pagingInfo.getTotalRecordCount());
 	}
 
-	private ItemSearch createSearchTemplate(RequestContext context, String name, Department department,
-	        Boolean hasPhysicalInventory) {
+	private ItemSearch createSearchTemplate(RequestContext context, Department department, Boolean hasPhysicalInventory) {
 		ItemSearch template = new ItemSearch();
 
-		if (StringUtils.isNotEmpty(name)) {
-			template.setNameComparisonType(BaseObjectTemplateSearch.StringComparisonType.LIKE);
-			if (ModuleSettings.useWildcardItemSearch()) {
-				template.getTemplate().setName("%" + name + "%");
-			} else {
-				template.getTemplate().setName(name + "%");
-			}
-
-		}
-
 		template.getTemplate().setDepartment(department);
 		template.getTemplate().setHasPhysicalInventory(hasPhysicalInventory);
 
@@ -30,7 +30,7 @@ import org.openmrs.module.openhmis.inventory.api.model.ItemStock;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.search.ItemSearch;
 import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
-import org.openmrs.module.webservices.rest.resource.AlreadyPagedWithLength;
+import org.openmrs.module.webservices.rest.helper.CursorPagingUtil;
 import org.openmrs.module.webservices.rest.resource.PagingUtil;
 import org.openmrs.module.webservices.rest.resource.search.BaseSearchHandler;
 import org.openmrs.module.webservices.rest.web.RequestContext;
@@ -38,7 +38,6 @@ import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchConfig;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchHandler;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchQuery;
-import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
 import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -109,7 +108,8 @@ public class ItemStockSearchHandler
 				}
 			} else {
 				if (item == null) {
-					// Return all item stock for the specified stockroom
+					// Return all item stock for the specified stockroom, which can also be paged with a cursor
+					pagingInfo = CursorPagingUtil.getPagingInfoFromContext(context);
 					items = stockroomDataService.getItemsByRoom(stockroom, pagingInfo);
 				} else {
 					// Return the item stock record for the specified stockroom and item
@@ -125,11 +125,6 @@ public class ItemStockSearchHandler
 			return new EmptySearchResult();
 		}
 
-		if (pagingInfo == null) {
-			return new AlreadyPaged<ItemStock>(context, items, false);
-		}
-
-		return new AlreadyPagedWithLength<ItemStock>(context, items, pagingInfo.hasMoreResults(),
-		        pagingInfo.getTotalRecordCount());
+		return CursorPagingUtil.createResult(context, items, pagingInfo);
 	}
 }
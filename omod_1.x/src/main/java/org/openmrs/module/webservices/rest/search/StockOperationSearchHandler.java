@@ -29,7 +29,7 @@ import org.openmrs.module.openhmis.inventory.api.model.StockOperationStatus;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.api.search.StockOperationSearch;
 import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
-import org.openmrs.module.webservices.rest.resource.AlreadyPagedWithLength;
+import org.openmrs.module.webservices.rest.helper.CursorPagingUtil;
 import org.openmrs.module.webservices.rest.resource.PagingUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
@@ -122,7 +122,8 @@ public class StockOperationSearchHandler implements SearchHandler {
 					// No search was defined so just return everything (excluding retired)
 					operations = operationDataService.getAll(false, pagingInfo);
 				} else {
-					// Return the operations with the specified status
+					// Return the operations with the specified status, which can also be paged with a cursor
+					pagingInfo = CursorPagingUtil.getPagingInfoFromContext(context);
 					operations = operationDataService.getOperations(search, pagingInfo);
 				}
 			} else {
@@ -134,8 +135,7 @@ public class StockOperationSearchHandler implements SearchHandler {
 		if (operations == null || operations.size() == 0) {
 			return new EmptySearchResult();
 		} else {
-			return new AlreadyPagedWithLength<StockOperation>(context, operations, pagingInfo.hasMoreResults(),
-			        pagingInfo.getTotalRecordCount());
+			return CursorPagingUtil.createResult(context, operations, pagingInfo);
 		}
 	}
 }
@@ -27,7 +27,7 @@ import org.openmrs.module.openhmis.inventory.api.model.StockOperation;
 import org.openmrs.module.openhmis.inventory.api.model.StockOperationTransaction;
 import org.openmrs.module.openhmis.inventory.api.model.Stockroom;
 import org.openmrs.module.openhmis.inventory.web.ModuleRestConstants;
-import org.openmrs.module.webservices.rest.resource.AlreadyPagedWithLength;
+import org.openmrs.module.webservices.rest.helper.CursorPagingUtil;
 import org.openmrs.module.webservices.rest.resource.PagingUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
@@ -89,24 +89,26 @@ public class StockOperationTransactionSearchHandler implements SearchHandler {
 			return new EmptySearchResult();
 		}
 
-		PagingInfo pagingInfo = PagingUtil.getPagingInfoFromContext(context);
-		List<StockOperationTransaction> transactions = null;
-
-		if (StringUtils.isNotEmpty(stockroomUuid)) {
-			Stockroom stockroom = stockroomService.getByUuid(stockroomUuid);
-			transactions = stockroomService.getTransactionsByRoom(stockroom, pagingInfo);
-		}
+		PagingInfo pagingInfo;
+		List<StockOperationTransaction> transactions;
 
 		if (StringUtils.isNotEmpty(operationUuid)) {
+			pagingInfo = PagingUtil.getPagingInfoFromContext(context);
+
 			StockOperation operation = operationService.getByUuid(operationUuid);
 			transactions = transactionService.getTransactionByOperation(operation, pagingInfo);
+		} else {
+			// Stockroom transactions can also be paged with a cursor
+			pagingInfo = CursorPagingUtil.getPagingInfoFromContext(context);
+
+			Stockroom stockroom = stockroomService.getByUuid(stockroomUuid);
+			transactions = stockroomService.getTransactionsByRoom(stockroom, pagingInfo);
 		}
 
 		if (transactions == null || transactions.size() == 0) {
 			return new EmptySearchResult();
 		} else {
-			return new AlreadyPagedWithLength<StockOperationTransaction>(context, transactions,
-			        pagingInfo.hasMoreResults(), pagingInfo.getTotalRecordCount());
+			return CursorPagingUtil.createResult(context, transactions, pagingInfo);
 		}
 	}
 }